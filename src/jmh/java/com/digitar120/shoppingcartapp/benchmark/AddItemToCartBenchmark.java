@@ -0,0 +1,119 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.dto.QuantityMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CartService#addItemToCart(Long, Long, Integer)} over Carts of different sizes, compared with the single
+ * statement upsert of {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)}.
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AddItemToCartBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int cartSize;
+
+    /**
+     * A Product none of the seeded Carts references.
+     */
+    private static final long NEW_PRODUCT_ID = BenchmarkDatabase.PRODUCTS;
+
+    /**
+     * A Product that doesn't exist.
+     */
+    private static final long MISSING_PRODUCT_ID = BenchmarkDatabase.PRODUCTS + 1_000;
+
+    private Long cartId;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void createCart(BenchmarkDatabase database) {
+        cartId = database.createCart(cartSize);
+    }
+
+    /**
+     * The Product is already in the Cart, so its Item's quantity is updated.
+     */
+    @Benchmark
+    public Cart updateExistingItem(BenchmarkDatabase database) {
+        invocation++;
+        long productId = invocation % cartSize + 1;
+        return database.cartService.addItemToCart(cartId, productId, invocation % 50 + 1);
+    }
+
+    /**
+     * The Product isn't in the Cart, so a new Item is created. It's removed after each call, so the Cart keeps its size.
+     */
+    @Benchmark
+    public Cart addNewItem(BenchmarkDatabase database, NewItemCleanup cleanup) {
+        return database.cartService.addItemToCart(cartId, NEW_PRODUCT_ID, 1);
+    }
+
+    /**
+     * Same update as {@link AddItemToCartBenchmark#updateExistingItem(BenchmarkDatabase)}, without loading the Cart.
+     */
+    @Benchmark
+    public void upsertExistingItem(BenchmarkDatabase database) {
+        invocation++;
+        long productId = invocation % cartSize + 1;
+        database.cartService.upsertItem(cartId, productId, invocation % 50 + 1, QuantityMode.SET);
+    }
+
+    /**
+     * Same insert as {@link AddItemToCartBenchmark#addNewItem(BenchmarkDatabase, NewItemCleanup)}, without loading the
+     * Cart.
+     */
+    @Benchmark
+    public void upsertNewItem(BenchmarkDatabase database, NewItemCleanup cleanup) {
+        database.cartService.upsertItem(cartId, NEW_PRODUCT_ID, 1, QuantityMode.INCREMENT);
+    }
+
+    /**
+     * The Product doesn't exist, so the upsert is rejected by the {@link com.digitar120.shoppingcartapp.service.ProductIdIndex}
+     * before any write.
+     */
+    @Benchmark
+    public Object upsertMissingProduct(BenchmarkDatabase database) {
+        try {
+            database.cartService.upsertItem(cartId, MISSING_PRODUCT_ID, 1, QuantityMode.INCREMENT);
+            return null;
+        } catch (NotFoundException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Only used by the benchmarks that create an Item, so the others aren't timed per invocation.
+     */
+    @State(Scope.Thread)
+    public static class NewItemCleanup {
+
+        @TearDown(Level.Invocation)
+        public void removeNewItem(BenchmarkDatabase database) {
+            database.jdbcTemplate.update("DELETE FROM ITEM WHERE PRODUCT_ID = ?", NEW_PRODUCT_ID);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.persistence.entity.Item;
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.service.CartService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CartService#addMultipleItemsToCart(Long, Set)} with batches of different sizes, both for Products that are
+ * already in the Cart and for Products that aren't.
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AddMultipleItemsToCartBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int batchSize;
+
+    private Long filledCartId;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void createCart(BenchmarkDatabase database) {
+        filledCartId = database.createCart(batchSize);
+    }
+
+    /**
+     * Every Product is already in the Cart, so only quantities are updated.
+     */
+    @Benchmark
+    public void updateItems(BenchmarkDatabase database) {
+        invocation++;
+        database.cartService.addMultipleItemsToCart(filledCartId, itemSet(batchSize, invocation % 50 + 1));
+    }
+
+    /**
+     * No Product is in the Cart, so every Item is inserted. The Items are removed after each call.
+     */
+    @Benchmark
+    public void insertItems(BenchmarkDatabase database, EmptyCart emptyCart) {
+        database.cartService.addMultipleItemsToCart(emptyCart.cartId, itemSet(batchSize, 1));
+    }
+
+    private static Set<Item> itemSet(int size, int quantity) {
+        Set<Item> items = new HashSet<>();
+        for (long productId = 1; productId <= size; productId++) {
+            items.add(new Item(quantity, null, new Product(productId)));
+        }
+        return items;
+    }
+
+    /**
+     * A Cart that's emptied after each call. Only used by
+     * {@link AddMultipleItemsToCartBenchmark#insertItems(BenchmarkDatabase, EmptyCart)}, so the other benchmark isn't
+     * timed per invocation.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyCart {
+
+        private Long cartId;
+
+        @Setup(Level.Trial)
+        public void createCart(BenchmarkDatabase database) {
+            cartId = database.createCart(0);
+        }
+
+        @TearDown(Level.Invocation)
+        public void emptyCart(BenchmarkDatabase database) {
+            database.emptyCart(cartId);
+        }
+    }
+}
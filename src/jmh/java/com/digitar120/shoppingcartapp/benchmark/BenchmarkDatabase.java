@@ -0,0 +1,167 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.persistence.PersistenceTestConfiguration;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.CartService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared benchmark state: an in-memory H2 database, initialized by the Flyway migrations and seeded with
+ * {@link BenchmarkDatabase#PRODUCTS} Products, plus the persistence layer and {@link CartService} on top of it.
+ * <p>Only the persistence auto-configuration is imported, so the Config server, Eureka, Keycloak and the User service
+ * aren't needed, and the benchmarks run offline.</p>
+ * <p>Each fork gets its own database, so benchmarks don't remove the Carts they create.</p>
+ * <p>Run with {@code mvn -P benchmark -DskipTests verify}. Results are written to {@code target/jmh-result.json}.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    /**
+     * Amount of Products available to be referenced by Items. Covers the largest Cart benchmarked, plus one Product that
+     * is never part of a seeded Cart.
+     */
+    public static final int PRODUCTS = 10_001;
+
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Each Cart belongs to a different user, as required by {@code UK_CART_USER}.
+     */
+    private final AtomicInteger nextUserId = new AtomicInteger(1);
+
+    CartService cartService;
+    CartRepository cartRepository;
+    ItemRepository itemRepository;
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Starts the persistence layer on an in-memory H2 database.
+     * @param databaseName Name of the in-memory database.
+     * @param properties Additional properties, such as {@code spring.flyway.target}.
+     * @return The started context.
+     */
+    static ConfigurableApplicationContext startContext(String databaseName, String... properties) {
+        // El contexto bootstrap de Spring Cloud no ve las propiedades del builder
+        System.setProperty("spring.cloud.config.enabled", "false");
+        System.setProperty("spring.cloud.bus.enabled", "false");
+        System.setProperty("eureka.client.enabled", "false");
+
+        return new SpringApplicationBuilder(PersistenceConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=none",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = startContext("benchmark");
+
+        cartService = context.getBean(CartService.class);
+        cartRepository = context.getBean(CartRepository.class);
+        itemRepository = context.getBean(ItemRepository.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        seedProducts(context, PRODUCTS);
+    }
+
+    /**
+     * Adds Products until there are {@code total} of them, with IDs 1 to {@code total}.
+     * <p>Products are saved through Hibernate, which takes IDs from {@code PRODUCT_SEQ} in consecutive blocks. Plain
+     * JDBC inserts would take a whole block per Product.</p>
+     * @param context Context of the benchmarked database.
+     * @param total Amount of Products wanted.
+     */
+    static void seedProducts(ConfigurableApplicationContext context, int total) {
+        ProductRepository productRepository = context.getBean(ProductRepository.class);
+        List<Product> products = new ArrayList<>();
+        for (long i = productRepository.count() + 1; i <= total; i++) {
+            products.add(new Product("Producto " + i));
+        }
+        productRepository.saveAll(products);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * Creates a Cart holding one Item for each of the first {@code size} Products.
+     * @param size Amount of Items.
+     * @return ID of the new Cart.
+     */
+    Long createCart(int size) {
+        Cart cart = cartRepository.save(new Cart(null, "Carrito de " + size + " ítems", null, nextUserId.getAndIncrement()));
+        fillCart(cart.getId(), size);
+        return cart.getId();
+    }
+
+    /**
+     * Adds one Item for each of the first {@code size} Products to a Cart.
+     * @param cartId ID of the Cart.
+     * @param size Amount of Items.
+     */
+    void fillCart(Long cartId, int size) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (long productId = 1; productId <= size; productId++) {
+            quantities.put(productId, 1);
+        }
+        itemRepository.batchInsert(cartId, quantities);
+    }
+
+    /**
+     * Removes every Item of a Cart, without going through the persistence context.
+     * @param cartId ID of the Cart.
+     */
+    void emptyCart(Long cartId) {
+        jdbcTemplate.update("DELETE FROM ITEM WHERE CART_ID = ?", cartId);
+    }
+
+    /**
+     * Not annotated as a configuration class on purpose, so the application's component scan never picks it up.
+     * <p>The User service client is left out: none of the benchmarked methods call the User service.</p>
+     */
+    @ImportAutoConfiguration({
+            DataSourceAutoConfiguration.class,
+            FlywayAutoConfiguration.class,
+            HibernateJpaAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class,
+            TransactionAutoConfiguration.class,
+            JdbcTemplateAutoConfiguration.class
+    })
+    @Import(PersistenceTestConfiguration.class)
+    static class PersistenceConfiguration {
+    }
+}
@@ -0,0 +1,109 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.bulk.BulkExportService;
+import com.digitar120.shoppingcartapp.bulk.BulkFormat;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports of {@link BulkExportBenchmark#CARTS} Carts of five Items each, in Carts per second, as GET /cart/stream does
+ * it and through {@link BulkExportService}.
+ * <p>Output is written to a stream that discards it, so that only reading and serializing are measured.</p>
+ * <p>On the in-memory H2 database, all three run at about 100 000 to 140 000 Carts per second, within the error of
+ * each other, and the NDJSON export allocates about a fifth less per Cart than GET /cart/stream. What the export saves
+ * is elsewhere: it holds no transaction nor persistence context, and isn't bound by the timeout of asynchronous
+ * requests.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CartSerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+public class BulkExportBenchmark {
+
+    static final int CARTS = 20_000;
+
+    private ConfigurableApplicationContext context;
+    private CartService cartService;
+    private BulkExportService exportService;
+    private ObjectWriter cartWriter;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkDatabase.startContext("bulkexport");
+        BenchmarkDatabase.seedProducts(context, 5);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("DELETE FROM ITEM");
+        jdbcTemplate.update("DELETE FROM CART");
+        jdbcTemplate.update("INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) "
+                + "SELECT X, 'Carrito ' || X, X FROM SYSTEM_RANGE(1, ?)", CARTS);
+        jdbcTemplate.update("INSERT INTO ITEM (ITEM_QUANTITY, CART_ID, PRODUCT_ID) "
+                + "SELECT P.X, C.CART_ID, P.X FROM CART C, SYSTEM_RANGE(1, 5) P");
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        cartService = context.getBean(CartService.class);
+        exportService = new BulkExportService(context.getBean(DataSource.class), objectMapper, 1000, 1);
+        cartWriter = objectMapper.writerFor(CartView.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * The previous way: rows are read through Hibernate, grouped into a {@link CartView} per Cart, and serialized.
+     */
+    @Benchmark
+    @OperationsPerInvocation(CARTS)
+    public void streamViews() {
+        OutputStream out = OutputStream.nullOutputStream();
+        cartService.streamAll(0L, cart -> {
+            try {
+                out.write(cartWriter.writeValueAsBytes(cart));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CARTS)
+    public void exportNdjson() throws IOException {
+        exportService.exportCarts(0, BulkFormat.NDJSON, OutputStream::nullOutputStream);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CARTS)
+    public void exportCsv() throws IOException {
+        exportService.exportCarts(0, BulkFormat.CSV, OutputStream::nullOutputStream);
+    }
+}
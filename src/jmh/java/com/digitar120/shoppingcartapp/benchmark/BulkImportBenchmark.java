@@ -0,0 +1,155 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.bulk.BulkFormat;
+import com.digitar120.shoppingcartapp.bulk.BulkImportService;
+import com.digitar120.shoppingcartapp.bulk.ImportJobs;
+import com.digitar120.shoppingcartapp.bulk.ImportReport;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.SequenceIdReserver;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.ProductCatalogCache;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import com.digitar120.shoppingcartapp.service.ProductSearchIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+/**
+ * Bulk imports of {@link BulkImportBenchmark#ROWS} rows through {@link BulkImportService}, in rows per second.
+ * <p>The body is generated as it's read, so neither the benchmark nor the import hold it in memory. Unlike in a running
+ * application, the Product indexes aren't loaded, so that only the parsing and the writes are measured.</p>
+ * <p>On the in-memory H2 database, Products import at about 80 000 rows per second in either format, and Carts of three
+ * Items at about 15 000 per second, that is, 60 000 inserted rows.</p>
+ * <p>Doesn't use {@link BenchmarkDatabase}, since the imported rows are never removed.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+public class BulkImportBenchmark {
+
+    static final int ROWS = 50_000;
+
+    private ConfigurableApplicationContext context;
+    private BulkImportService service;
+    private long nextRow;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkDatabase.startContext("bulkimport");
+        BenchmarkDatabase.seedProducts(context, 3);
+
+        ProductRepository productRepository = context.getBean(ProductRepository.class);
+        service = new BulkImportService(
+                new BulkInsertRepository(context.getBean(JdbcTemplate.class),
+                        context.getBean(SequenceIdReserver.class)),
+                context.getBean(PlatformTransactionManager.class),
+                new ProductIdIndex(productRepository),
+                new ProductSearchIndex(productRepository),
+                new ProductCatalogCache(new SimpleMeterRegistry(), 100),
+                new ImportJobs(1, 100),
+                new ObjectMapper(),
+                5000,
+                65536);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public ImportReport importProductsNdjson() throws IOException {
+        return service.importProducts(new GeneratedBody(null, row -> "{\"description\": \"Producto importado " + row + "\"}"),
+                BulkFormat.NDJSON_VALUE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public ImportReport importProductsCsv() throws IOException {
+        return service.importProducts(new GeneratedBody("description", row -> "\"Producto, importado " + row + "\""),
+                BulkFormat.CSV_VALUE);
+    }
+
+    /**
+     * Carts of three Items each, one per User.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public ImportReport importCartsNdjson() throws IOException {
+        return service.importCarts(new GeneratedBody(null, row -> "{\"description\": \"Carrito importado\", \"userId\": " + row
+                        + ", \"items\": [{\"productId\": 1, \"quantity\": 1}, {\"productId\": 2, \"quantity\": 2}, "
+                        + "{\"productId\": 3, \"quantity\": 3}]}"),
+                BulkFormat.NDJSON_VALUE);
+    }
+
+    /**
+     * Generates {@link BulkImportBenchmark#ROWS} lines as they're read, numbered across invocations so that they never
+     * conflict with rows already imported.
+     */
+    private final class GeneratedBody extends InputStream {
+        private final LongFunction<String> line;
+        private final long end;
+        private long row;
+        private byte[] current;
+        private int position;
+
+        /**
+         * @param header CSV header, or {@code null} for NDJSON.
+         * @param line Generates the line of a row number.
+         */
+        GeneratedBody(String header, LongFunction<String> line) {
+            this.line = line;
+            this.row = nextRow + 1;
+            this.end = row + ROWS;
+            this.current = header == null ? new byte[0] : (header + "\n").getBytes(StandardCharsets.UTF_8);
+            nextRow = end - 1;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position == current.length) {
+                if (row >= end) {
+                    return -1;
+                }
+                current = (line.apply(row++) + "\n").getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            int read = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.context.JsonConfiguration;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /cart/{id}, read and serialized as a managed entity graph and as a {@link CartView} projection.
+ * <p>Both paths run a single statement, so the difference is in building and serializing the result. Run with
+ * {@code -Djmh.args="CartRead -prof gc"} to compare the bytes allocated per request ({@code gc.alloc.rate.norm}).</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CartSerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CartReadBenchmark {
+
+    @Param({"10", "1000"})
+    int cartSize;
+
+    private Long cartId;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void createCart(BenchmarkDatabase database) {
+        cartId = database.createCart(cartSize);
+        objectMapper = new ObjectMapper().registerModule(new JsonConfiguration().hibernateModule());
+    }
+
+    /**
+     * The previous implementation: the Cart, its Items and Products are loaded into a persistence context, and Jackson
+     * walks the entities through the {@code Hibernate5Module}.
+     */
+    @Benchmark
+    public byte[] readEntity(BenchmarkDatabase database) throws JsonProcessingException {
+        Cart cart = database.cartRepository.findWithItemsAndProductsById(cartId).orElseThrow();
+        return objectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public byte[] readProjection(BenchmarkDatabase database) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(database.cartService.findViewById(cartId));
+    }
+}
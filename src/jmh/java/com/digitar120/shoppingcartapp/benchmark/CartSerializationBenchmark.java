@@ -0,0 +1,76 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.context.JsonConfiguration;
+import com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.entity.Item;
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of Cart graphs, with the {@code Hibernate5Module} registered by {@link JsonConfiguration} and
+ * the {@code @JsonIdentityInfo} of {@link Cart} and {@link Item}, compared with the same Cart as a {@link CartView}.
+ * Doesn't use the database.
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CartSerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int cartSize;
+
+    private ObjectMapper objectMapper;
+    private Cart cart;
+    private CartView cartView;
+
+    @Setup(Level.Trial)
+    public void buildCart() {
+        objectMapper = new ObjectMapper().registerModule(new JsonConfiguration().hibernateModule());
+
+        cart = new Cart(1L, "Carrito de " + cartSize + " ítems", new HashSet<>(), 1);
+        for (long i = 1; i <= cartSize; i++) {
+            cart.addItem(new Item(i, (int) i % 50 + 1, cart, new Product(i, "Producto " + i)));
+        }
+
+        List<CartItemRow> rows = new ArrayList<>(cartSize);
+        for (long i = 1; i <= cartSize; i++) {
+            rows.add(new CartItemRow(1L, cart.getDescription(), 1, 0L, i, (int) i % 50 + 1, i, "Producto " + i));
+        }
+        cartView = new CartRowsToCartViews().mapCart(rows);
+    }
+
+    @Benchmark
+    public byte[] writeCart() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public byte[] writeCartView() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cartView);
+    }
+}
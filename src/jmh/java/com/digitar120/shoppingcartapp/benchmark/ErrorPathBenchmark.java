@@ -0,0 +1,103 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.ErrorDTO;
+import com.digitar120.shoppingcartapp.exception.globalhandler.GlobalExceptionHandler;
+import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A 404 for an unknown Cart, from the {@code throw} to the response body, as {@link GlobalExceptionHandler} answered it
+ * before and after making the error path lightweight.
+ * <p>{@code legacy} throws an exception that captures its stack trace, and serializes an {@link ErrorDTO} holding
+ * {@code new Date().toString()} with Jackson. {@code lightweight} throws a stackless {@link NotFoundException}, and
+ * lets the handler write the body. The exception is thrown {@code depth} frames down, as deep as a Tomcat, Spring MVC
+ * and service call stack. Unwinding those frames costs the same on both paths, and is most of what remains of
+ * {@code lightweight} at {@code depth=120}. Doesn't use the database.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ErrorPathBenchmark {
+
+    @Param({"10", "120"})
+    int depth;
+
+    private ObjectMapper objectMapper;
+    private GlobalExceptionHandler handler;
+
+    @Setup(Level.Trial)
+    public void start() {
+        objectMapper = new ObjectMapper();
+        handler = new GlobalExceptionHandler(false);
+    }
+
+    private static String message() {
+        return "No se encontró el carrito N° " + ThreadLocalRandom.current().nextInt(1_000_000);
+    }
+
+    /**
+     * Creates the exception at the bottom of the stack, as a service would.
+     */
+    private static void throwNotFound(int depth, boolean legacy) {
+        if (depth > 0) {
+            throwNotFound(depth - 1, legacy);
+            return;
+        }
+        throw legacy ? new LegacyNotFoundException(message()) : new NotFoundException(message());
+    }
+
+    @Benchmark
+    public byte[] legacy() throws JsonProcessingException {
+        try {
+            throwNotFound(depth, true);
+            return null;
+        } catch (LegacyNotFoundException ex) {
+            ErrorDTO errorDTO = new ErrorDTO();
+            errorDTO.setMessage(ex.getMessage());
+            errorDTO.setStatus(String.valueOf(HttpStatus.NOT_FOUND.value()));
+            errorDTO.setTime(new Date().toString());
+            return objectMapper.writeValueAsBytes(errorDTO);
+        }
+    }
+
+    @Benchmark
+    public byte[] lightweight() {
+        try {
+            throwNotFound(depth, false);
+            return null;
+        } catch (NotFoundException ex) {
+            return handler.generateNotFoundException(ex).getBody();
+        }
+    }
+
+    /**
+     * {@link NotFoundException} as it was: a plain {@link RuntimeException}, which captures its stack trace.
+     */
+    private static class LegacyNotFoundException extends RuntimeException {
+        LegacyNotFoundException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.util.LocalUtilityMethods;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The existence checks of {@link LocalUtilityMethods}, for an existing Cart and for a missing one.
+ * <p>{@code verifyElementExistsAndReturn} loads the Cart and its Items, so it's measured over Carts of different
+ * sizes to compare it with the checks that don't load anything.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExistenceCheckBenchmark {
+
+    private static final Long MISSING_CART_ID = Long.MAX_VALUE;
+
+    @Param({"10", "1000"})
+    int cartSize;
+
+    private Long cartId;
+
+    @Setup(Level.Trial)
+    public void createCart(BenchmarkDatabase database) {
+        cartId = database.createCart(cartSize);
+    }
+
+    @Benchmark
+    public void verifyElementExists(BenchmarkDatabase database) {
+        LocalUtilityMethods.verifyElementExists(
+                database.cartRepository, cartId, "No se encontró el carrito", HttpStatus.NOT_FOUND);
+    }
+
+    @Benchmark
+    public Object verifyElementExists_missing(BenchmarkDatabase database) {
+        try {
+            LocalUtilityMethods.verifyElementExists(
+                    database.cartRepository, MISSING_CART_ID, "No se encontró el carrito", HttpStatus.NOT_FOUND);
+            return null;
+        } catch (NotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public void verifyElementNotExists(BenchmarkDatabase database) {
+        LocalUtilityMethods.verifyElementNotExists(
+                database.cartRepository, MISSING_CART_ID, "El carrito ya existe", HttpStatus.BAD_REQUEST);
+    }
+
+    @Benchmark
+    public Cart verifyElementExistsAndReturn(BenchmarkDatabase database) {
+        return LocalUtilityMethods.verifyElementExistsAndReturn(
+                database.cartRepository, cartId, "No se encontró el carrito", HttpStatus.NOT_FOUND);
+    }
+}
@@ -0,0 +1,73 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.jfr.CartOperationEvent;
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a {@link CartOperationEvent} going through all of its phases, outside of a transaction.
+ * <p>{@code recording} is the recording running meanwhile: {@code none}, the {@code continuous} one of
+ * {@link com.digitar120.shoppingcartapp.context.FlightRecording}, whose threshold discards an operation this fast, or
+ * a {@code profiling} one that keeps every operation. Only the app's events are enabled, so the JDK's own events don't
+ * add to the measurement.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FlightRecorderEventBenchmark {
+
+    @Param({"none", "continuous", "profiling"})
+    String recording;
+
+    private Recording activeRecording;
+    private long cartId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        if (!recording.equals("none")) {
+            String threshold = recording.equals("continuous") ? "10 ms" : "0 ms";
+            activeRecording = new Recording(Map.of(
+                    CartOperationEvent.NAME + "#enabled", "true",
+                    CartOperationEvent.NAME + "#threshold", threshold));
+            activeRecording.setToDisk(true);
+            activeRecording.setMaxAge(Duration.ofSeconds(10));
+            activeRecording.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (activeRecording != null) {
+            activeRecording.close();
+        }
+    }
+
+    @Benchmark
+    public CartOperationEvent cartOperation() {
+        CartOperationEvent event = CartOperationEvent.start(CartOperationEvent.ADD_ITEM);
+        event.loaded();
+        event.written();
+        event.cart(++cartId, 10, 1).finish();
+        return event;
+    }
+}
@@ -0,0 +1,121 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frequent lookups, against an H2 database seeded with {@link LookupBenchmark#ROWS} Carts, Products and Items.
+ * <p>{@code schemaVersion} is the last migration applied: {@code 2} stops before {@code V3__add_lookup_indexes.sql},
+ * {@code 3} includes it. Each lookup uses a random key, so no result is served from a cache.</p>
+ * <p>Doesn't use {@link BenchmarkDatabase}, as each schema version needs its own database. Seeding takes around
+ * half a minute per trial, and the fork gets a larger heap to hold the in-memory database.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LookupBenchmark {
+
+    public static final int ROWS = 1_000_000;
+    private static final int SEED_CHUNK = 10_000;
+
+    @Param({"2", "3"})
+    String schemaVersion;
+
+    private ConfigurableApplicationContext context;
+    private CartService cartService;
+    private CartRepository cartRepository;
+    private ProductRepository productRepository;
+
+    /**
+     * ID of the first seeded Cart. Seeded Cart {@code n} belongs to user {@code n}, and holds a single Item referencing
+     * the Product described as {@code "Producto n"}.
+     */
+    private long firstCartId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkDatabase.startContext("lookup" + schemaVersion, "spring.flyway.target=" + schemaVersion);
+        cartService = context.getBean(CartService.class);
+        cartRepository = context.getBean(CartRepository.class);
+        productRepository = context.getBean(ProductRepository.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        firstCartId = jdbcTemplate.queryForObject("SELECT MAX(CART_ID) FROM CART", Long.class) + 1;
+        long firstProductId = jdbcTemplate.queryForObject("SELECT MAX(PRODUCT_ID) FROM PRODUCT", Long.class) + 1;
+        long firstItemId = jdbcTemplate.queryForObject("SELECT MAX(ITEM_ID) FROM ITEM", Long.class) + 1;
+
+        // Los IDs se asignan en la consulta, y cada fragmento se confirma por separado: una sola transacción de un
+        // millón de filas es mucho más lenta en H2
+        for (int from = 1; from <= ROWS; from += SEED_CHUNK) {
+            int to = from + SEED_CHUNK - 1;
+            jdbcTemplate.update("INSERT INTO PRODUCT (PRODUCT_ID, PRODUCT_DESCRIPTION) "
+                    + "SELECT ? + X - 1, 'Producto ' || X FROM SYSTEM_RANGE(?, ?)", firstProductId, from, to);
+            jdbcTemplate.update("INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) "
+                    + "SELECT ? + X - 1, 'Carrito ' || X, X FROM SYSTEM_RANGE(?, ?)", firstCartId, from, to);
+            jdbcTemplate.update("INSERT INTO ITEM (ITEM_ID, ITEM_QUANTITY, CART_ID, PRODUCT_ID) "
+                    + "SELECT ? + X - 1, 1, ? + X - 1, ? + X - 1 FROM SYSTEM_RANGE(?, ?)",
+                    firstItemId, firstCartId, firstProductId, from, to);
+        }
+        for (String table : List.of("CART", "PRODUCT", "ITEM")) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + table + "_SEQ RESTART WITH (SELECT MAX(" + table + "_ID) + 1 FROM " + table + ")");
+        }
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    private static int randomKey() {
+        return ThreadLocalRandom.current().nextInt(1, ROWS + 1);
+    }
+
+    /**
+     * GET /cart/by-userid/{userId}, without the call to the User service.
+     */
+    @Benchmark
+    public List<CartItemRow> findCartByUserId() {
+        return cartRepository.findRowsByUserId(randomKey());
+    }
+
+    @Benchmark
+    public List<Product> findProductByDescription() {
+        return productRepository.findByDescription("Producto " + randomKey());
+    }
+
+    /**
+     * GET /cart/{id}/items. Items are looked up by {@code UK_ITEM_CART_PRODUCT} on both schema versions.
+     */
+    @Benchmark
+    public List<ItemView> findItemsOfCart() {
+        return cartService.getContent(firstCartId + randomKey() - 1);
+    }
+}
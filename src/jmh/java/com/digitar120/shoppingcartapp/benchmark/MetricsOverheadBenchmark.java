@@ -0,0 +1,103 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.context.MethodMetricsAspect;
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.service.ProductCatalogCache;
+import com.digitar120.shoppingcartapp.service.ProductService;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording latency on a Prometheus registry, with the timers of
+ * {@link com.digitar120.shoppingcartapp.context.MetricsConfiguration}.
+ * <p>{@code distribution} is what each timer keeps besides count, sum and maximum: {@code none}, histogram
+ * {@code buckets}, or buckets plus client-side {@code percentiles}, as configured for the latency timers.</p>
+ * <p>{@code recordLatency} records a single event. {@code timedServiceCall} calls
+ * {@link ProductService#findById(Long)} through {@link MethodMetricsAspect}, and {@code untimedServiceCall} calls it
+ * directly. The Product is cached, so the call itself does almost nothing and the difference is the cost of the
+ * proxy, the aspect and the recording. Doesn't use the database.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MetricsOverheadBenchmark {
+
+    @Param({"none", "buckets", "percentiles"})
+    String distribution;
+
+    private Timer timer;
+    private ProductService productService;
+    private ProductService timedProductService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        if (!distribution.equals("none")) {
+            DistributionStatisticConfig.Builder config = DistributionStatisticConfig.builder()
+                    .percentilesHistogram(true)
+                    .minimumExpectedValue((double) Duration.ofNanos(5_000).toNanos())
+                    .maximumExpectedValue((double) Duration.ofSeconds(10).toNanos());
+            if (distribution.equals("percentiles")) {
+                config.percentiles(0.5, 0.99, 0.999);
+            }
+
+            DistributionStatisticConfig distributionConfig = config.build();
+            meterRegistry.config().meterFilter(new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig current) {
+                    return distributionConfig.merge(current);
+                }
+            });
+        }
+        timer = Timer.builder(MethodMetricsAspect.SERVICE_TIMER).tag("class", "Benchmark").register(meterRegistry);
+
+        ProductCatalogCache catalogCache = new ProductCatalogCache(meterRegistry, 100);
+        catalogCache.getById(1L, id -> new Product(id, "Lápiz"));
+        productService = new ProductService(null, catalogCache, null, null);
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(productService);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new MethodMetricsAspect(meterRegistry));
+        timedProductService = proxyFactory.getProxy();
+    }
+
+    @Benchmark
+    public void recordLatency() {
+        timer.record(ThreadLocalRandom.current().nextLong(1_000, 10_000_000), TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public Product untimedServiceCall() {
+        return productService.findById(1L);
+    }
+
+    @Benchmark
+    public Product timedServiceCall() {
+        return timedProductService.findById(1L);
+    }
+}
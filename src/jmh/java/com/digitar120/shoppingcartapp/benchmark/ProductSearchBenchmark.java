@@ -0,0 +1,85 @@
+package com.digitar120.shoppingcartapp.benchmark;
+
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.ProductSearchIndex;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocompletion queries on {@link ProductSearchIndex}, over a catalog of {@link ProductSearchBenchmark#ROWS} Products.
+ * <p>Seeded descriptions combine a product, a color and a number, such as {@code "Lápiz azul N° 123"}, so each word
+ * matches a tenth to an eighth of the catalog. The queries cover a short prefix, several words, a typo, and a number
+ * prefix.</p>
+ * <p>The index is loaded during the setup, so only searches are measured. Seeding and loading take around half a
+ * minute per trial, and the fork gets a larger heap to hold both the database and the index.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProductSearchBenchmark {
+
+    public static final int ROWS = 1_000_000;
+    private static final int SEED_CHUNK = 10_000;
+    private static final int LIMIT = 10;
+
+    @Param({"lap", "lapiz azul", "cuadreno roj", "boligrafo verde n 4242"})
+    String query;
+
+    private ConfigurableApplicationContext context;
+    private ProductSearchIndex productSearchIndex;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkDatabase.startContext("search");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        long firstProductId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(PRODUCT_ID), 0) FROM PRODUCT", Long.class) + 1;
+        for (int from = 1; from <= ROWS; from += SEED_CHUNK) {
+            jdbcTemplate.update("INSERT INTO PRODUCT (PRODUCT_ID, PRODUCT_DESCRIPTION) "
+                    + "SELECT ? + X - 1, "
+                    + "CASEWHEN(MOD(X, 10) = 0, 'Lápiz', CASEWHEN(MOD(X, 10) = 1, 'Lapicera', CASEWHEN(MOD(X, 10) = 2, 'Cuaderno', "
+                    + "CASEWHEN(MOD(X, 10) = 3, 'Bolígrafo', CASEWHEN(MOD(X, 10) = 4, 'Goma', CASEWHEN(MOD(X, 10) = 5, 'Regla', "
+                    + "CASEWHEN(MOD(X, 10) = 6, 'Carpeta', CASEWHEN(MOD(X, 10) = 7, 'Marcador', CASEWHEN(MOD(X, 10) = 8, 'Tijera', "
+                    + "'Compás'))))))))) || ' ' "
+                    + "|| CASEWHEN(MOD(X / 10, 8) = 0, 'azul', CASEWHEN(MOD(X / 10, 8) = 1, 'rojo', CASEWHEN(MOD(X / 10, 8) = 2, 'verde', "
+                    + "CASEWHEN(MOD(X / 10, 8) = 3, 'negro', CASEWHEN(MOD(X / 10, 8) = 4, 'amarillo', CASEWHEN(MOD(X / 10, 8) = 5, 'violeta', "
+                    + "CASEWHEN(MOD(X / 10, 8) = 6, 'marrón', 'celeste'))))))) "
+                    + "|| ' N° ' || X FROM SYSTEM_RANGE(?, ?)", firstProductId, from, from + SEED_CHUNK - 1);
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE PRODUCT_SEQ RESTART WITH (SELECT MAX(PRODUCT_ID) + 1 FROM PRODUCT)");
+
+        productSearchIndex = new ProductSearchIndex(context.getBean(ProductRepository.class));
+        productSearchIndex.size();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ProductView> search() {
+        return productSearchIndex.search(query, LIMIT);
+    }
+}
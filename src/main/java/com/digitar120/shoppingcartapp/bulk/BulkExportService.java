@@ -0,0 +1,283 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.ServiceUnavailableException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Exports Carts along with their Items, and Products, as NDJSON or CSV, ordered by ID.
+ * <p>Rows are read from a JDBC cursor, {@code bulk.export.fetch-size} at a time, and written as they're read, so the
+ * memory used doesn't depend on the size of the export. The connection is taken straight from the pool, outside of any
+ * transaction or persistence context, and is read-only. On H2, readers don't lock rows, so exports don't block writers;
+ * each export sees the data as of its start.</p>
+ * <p>An export holds a pooled connection for as long as the client takes to read it, so at most
+ * {@code bulk.export.max-concurrent} run at once.</p>
+ * <p>Exports resume after a given ID. The output is flushed between Carts, but a client cut off mid-export may still
+ * get the last Cart incomplete: it should discard it, and resume after the one before.</p>
+ * <p>In NDJSON, each Cart and Product is written as the Cart and Product endpoints return them, so exported Carts can be
+ * imported by {@link BulkImportService}. In CSV, each Item of a Cart is a line, and so is each Cart without Items, with
+ * the columns {@code cartId}, {@code description}, {@code userId}, {@code version}, {@code itemId}, {@code productId},
+ * {@code productDescription} and {@code quantity}; the importer reads them as well.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see BulkFormat
+ */
+@Service
+public class BulkExportService {
+
+    /**
+     * Opens the output of an export, once its query has succeeded.
+     */
+    @FunctionalInterface
+    public interface ExportOutput {
+        OutputStream open() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RowsWriter {
+        void write(ResultSet rows, Writer out) throws SQLException, IOException;
+    }
+
+    static final String CART_ROWS = "SELECT C.CART_ID, C.CART_DESCRIPTION, C.USER_ID, C.CART_VERSION, "
+            + "I.ITEM_ID, I.ITEM_QUANTITY, P.PRODUCT_ID, P.PRODUCT_DESCRIPTION "
+            + "FROM CART C LEFT JOIN ITEM I ON I.CART_ID = C.CART_ID LEFT JOIN PRODUCT P ON P.PRODUCT_ID = I.PRODUCT_ID "
+            + "WHERE C.CART_ID > ? ORDER BY C.CART_ID, I.ITEM_ID";
+    static final String PRODUCT_ROWS = "SELECT PRODUCT_ID, PRODUCT_DESCRIPTION FROM PRODUCT "
+            + "WHERE PRODUCT_ID > ? ORDER BY PRODUCT_ID";
+
+    // Filas entre vaciados de la salida
+    static final int FLUSH_INTERVAL = 1000;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+    private final DataSource dataSource;
+    private final JsonFactory jsonFactory;
+    private final int fetchSize;
+    private final Semaphore permits;
+
+    public BulkExportService(DataSource dataSource, ObjectMapper objectMapper,
+                             @Value("${bulk.export.fetch-size:1000}") int fetchSize,
+                             @Value("${bulk.export.max-concurrent:2}") int maxConcurrent) {
+        this.dataSource = dataSource;
+        this.jsonFactory = objectMapper.getFactory();
+        this.fetchSize = fetchSize;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Exports Carts along with their Items.
+     * @param afterCartId Only Carts with a greater ID are exported.
+     * @param format Format of the output.
+     * @param output Opens the output.
+     * @throws BadRequestException If the ID is negative.
+     * @throws ServiceUnavailableException If too many exports are running.
+     * @throws IOException If writing fails, for example if the client disconnects.
+     */
+    public void exportCarts(long afterCartId, BulkFormat format, ExportOutput output) throws IOException {
+        export(CART_ROWS, afterCartId, output, format == BulkFormat.NDJSON ? this::writeCartsJson : BulkExportService::writeCartsCsv);
+    }
+
+    /**
+     * Exports Products.
+     * @param afterProductId Only Products with a greater ID are exported.
+     * @param format Format of the output.
+     * @param output Opens the output.
+     * @throws BadRequestException If the ID is negative.
+     * @throws ServiceUnavailableException If too many exports are running.
+     * @throws IOException If writing fails, for example if the client disconnects.
+     */
+    public void exportProducts(long afterProductId, BulkFormat format, ExportOutput output) throws IOException {
+        export(PRODUCT_ROWS, afterProductId, output, format == BulkFormat.NDJSON ? this::writeProductsJson : BulkExportService::writeProductsCsv);
+    }
+
+    private void export(String sql, long afterId, ExportOutput output, RowsWriter rowsWriter) throws IOException {
+        if (afterId < 0) {
+            throw new BadRequestException("El ID desde el cual exportar no puede ser negativo.");
+        }
+        if (!permits.tryAcquire()) {
+            throw new ServiceUnavailableException("Hay demasiadas exportaciones en curso. Intente más tarde.");
+        }
+
+        try (Connection connection = readOnlyConnection()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            jdbcTemplate.setFetchSize(fetchSize);
+
+            try {
+                jdbcTemplate.query(
+                        con -> {
+                            PreparedStatement statement = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                            statement.setLong(1, afterId);
+                            return statement;
+                        },
+                        (ResultSet rows) -> {
+                            // La salida se abre recién con la consulta ya ejecutada, para poder informar sus errores
+                            try (Writer out = new BufferedWriter(new OutputStreamWriter(output.open(), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)) {
+                                rowsWriter.write(rows, out);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return null;
+                        });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("No se pudo usar la conexión de la exportación.", e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Takes a connection from the pool, not bound to any transaction. Its state is reset by the pool when closed.
+     */
+    private Connection readOnlyConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private JsonGenerator jsonGenerator(Writer out) throws IOException {
+        return jsonFactory.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private void writeCartsJson(ResultSet rows, Writer out) throws SQLException, IOException {
+        try (JsonGenerator json = jsonGenerator(out)) {
+            long currentCartId = -1;
+            int userId = 0;
+            long version = 0;
+            int unflushed = 0;
+
+            while (rows.next()) {
+                long cartId = rows.getLong(1);
+                if (cartId != currentCartId) {
+                    if (currentCartId >= 0) {
+                        endCartJson(json, userId, version);
+                        if (unflushed >= FLUSH_INTERVAL) {
+                            json.flush();
+                            unflushed = 0;
+                        }
+                    }
+                    currentCartId = cartId;
+                    userId = rows.getInt(3);
+                    version = rows.getLong(4);
+
+                    // Mismo orden de campos que CartView
+                    json.writeStartObject();
+                    json.writeNumberField("id", cartId);
+                    json.writeStringField("description", rows.getString(2));
+                    json.writeArrayFieldStart("items");
+                }
+
+                long itemId = rows.getLong(5);
+                if (!rows.wasNull()) {
+                    json.writeStartObject();
+                    json.writeNumberField("id", itemId);
+                    json.writeNumberField("quantity", rows.getInt(6));
+                    json.writeObjectFieldStart("referencedProduct");
+                    json.writeNumberField("id", rows.getLong(7));
+                    json.writeStringField("description", rows.getString(8));
+                    json.writeEndObject();
+                    json.writeEndObject();
+                }
+                unflushed++;
+            }
+
+            if (currentCartId >= 0) {
+                endCartJson(json, userId, version);
+            }
+        }
+    }
+
+    private static void endCartJson(JsonGenerator json, int userId, long version) throws IOException {
+        json.writeEndArray();
+        json.writeNumberField("userId", userId);
+        json.writeNumberField("version", version);
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private static void writeCartsCsv(ResultSet rows, Writer out) throws SQLException, IOException {
+        Csv.writeLine(out, "cartId", "description", "userId", "version", "itemId", "productId", "productDescription", "quantity");
+        long currentCartId = -1;
+        int unflushed = 0;
+
+        while (rows.next()) {
+            long cartId = rows.getLong(1);
+            if (cartId != currentCartId) {
+                if (unflushed >= FLUSH_INTERVAL) {
+                    out.flush();
+                    unflushed = 0;
+                }
+                currentCartId = cartId;
+            }
+
+            long itemId = rows.getLong(5);
+            if (rows.wasNull()) {
+                Csv.writeLine(out, cartId, rows.getString(2), rows.getInt(3), rows.getLong(4), null, null, null, null);
+            } else {
+                Csv.writeLine(out, cartId, rows.getString(2), rows.getInt(3), rows.getLong(4),
+                        itemId, rows.getLong(7), rows.getString(8), rows.getInt(6));
+            }
+            unflushed++;
+        }
+    }
+
+    private void writeProductsJson(ResultSet rows, Writer out) throws SQLException, IOException {
+        try (JsonGenerator json = jsonGenerator(out)) {
+            int unflushed = 0;
+            while (rows.next()) {
+                json.writeStartObject();
+                json.writeNumberField("id", rows.getLong(1));
+                json.writeStringField("description", rows.getString(2));
+                json.writeEndObject();
+                json.writeRaw('\n');
+
+                if (++unflushed == FLUSH_INTERVAL) {
+                    json.flush();
+                    unflushed = 0;
+                }
+            }
+        }
+    }
+
+    private static void writeProductsCsv(ResultSet rows, Writer out) throws SQLException, IOException {
+        Csv.writeLine(out, "id", "description");
+        int unflushed = 0;
+        while (rows.next()) {
+            Csv.writeLine(out, rows.getLong(1), rows.getString(2));
+
+            if (++unflushed == FLUSH_INTERVAL) {
+                out.flush();
+                unflushed = 0;
+            }
+        }
+    }
+}
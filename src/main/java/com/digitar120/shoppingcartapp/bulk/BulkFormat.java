@@ -0,0 +1,105 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Formats of the bulk imports and exports, one record per line.
+ * @author Gabriel Pérez (digitar120)
+ * @see BulkImportService
+ * @see BulkExportService
+ */
+public enum BulkFormat {
+
+    /**
+     * Newline-delimited JSON, one object per line.
+     */
+    NDJSON(BulkFormat.NDJSON_VALUE),
+
+    /**
+     * Comma-separated values, with a header line naming the columns. Quoted values can't span several lines.
+     */
+    CSV(BulkFormat.CSV_VALUE);
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    BulkFormat(String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    /**
+     * @return Media type of the format.
+     */
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Finds the format of a request body.
+     * @param contentType {@code Content-Type} of the request.
+     * @return The matching format.
+     * @throws BadRequestException If the content type is missing, or isn't NDJSON nor CSV.
+     */
+    public static BulkFormat fromContentType(String contentType) {
+        if (contentType != null) {
+            try {
+                MediaType mediaType = MediaType.parseMediaType(contentType);
+                for (BulkFormat format : values()) {
+                    if (format.mediaType.includes(mediaType)) {
+                        return format;
+                    }
+                }
+            } catch (InvalidMediaTypeException ignored) {
+                // Se informa igual que un tipo no admitido
+            }
+        }
+        throw new BadRequestException("El formato debe ser " + NDJSON_VALUE + " o " + CSV_VALUE + ".");
+    }
+
+    /**
+     * Picks the format of a response, preferring the one accepted with the highest quality.
+     * @param accept {@code Accept} header of the request.
+     * @return The preferred format, or NDJSON if the request accepts any or doesn't say.
+     * @throws BadRequestException If the header is malformed.
+     */
+    public static BulkFormat fromAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return NDJSON;
+        }
+
+        List<MediaType> acceptedTypes;
+        try {
+            acceptedTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            throw new BadRequestException("El encabezado Accept es inválido.");
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+
+        for (MediaType acceptedType : acceptedTypes) {
+            for (BulkFormat format : values()) {
+                if (acceptedType.includes(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return NDJSON;
+    }
+
+    /**
+     * Finds the charset of a request body.
+     * @param contentType {@code Content-Type} of the request.
+     * @return The charset given in the content type, or UTF-8.
+     */
+    public static Charset charsetOf(String contentType) {
+        Charset charset = contentType == null ? null : MediaType.parseMediaType(contentType).getCharset();
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+}
@@ -0,0 +1,245 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.bulk.CartRowParser.CartRow;
+import com.digitar120.shoppingcartapp.bulk.ImportJob.RowError;
+import com.digitar120.shoppingcartapp.bulk.ProductRowParser.ProductRow;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository.NewCart;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository.NewItem;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository.NewProduct;
+import com.digitar120.shoppingcartapp.service.ProductCatalogCache;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import com.digitar120.shoppingcartapp.service.ProductSearchIndex;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.runAfterCommit;
+
+/**
+ * Imports Products, and Carts along with their Items, from NDJSON or CSV request bodies.
+ * <p>The body is parsed as it arrives, and rows are written in chunks of {@code bulk.import.chunk-size}, each in its own
+ * transaction, through the JDBC batches of {@link BulkInsertRepository}. So the memory used doesn't depend on the size
+ * of the import, and nothing goes through the persistence context.</p>
+ * <p>Invalid rows, and rows that conflict with existing ones, are rejected one by one without stopping the import. If a
+ * chunk fails as a whole, it's written again one row per transaction, so that only the failing rows are rejected. Chunks
+ * already committed stay imported even if the import fails later, for example if the client disconnects. Since
+ * Products with an existing description and Carts of a User that already has one are rejected, an import can be
+ * repeated to complete it.</p>
+ * <p>The progress of each import is available at {@code /actuator/imports} while it runs.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see RowParser
+ * @see ImportJobs
+ */
+@Service
+public class BulkImportService {
+
+    static final String PRODUCTS = "products";
+    static final String CARTS = "carts";
+
+    private final BulkInsertRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductIdIndex productIdIndex;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductCatalogCache catalogCache;
+    private final ImportJobs importJobs;
+    private final ObjectReader jsonReader;
+    private final int chunkSize;
+    private final int maxLineLength;
+
+    public BulkImportService(BulkInsertRepository repository, PlatformTransactionManager transactionManager,
+                             ProductIdIndex productIdIndex, ProductSearchIndex productSearchIndex,
+                             ProductCatalogCache catalogCache, ImportJobs importJobs, ObjectMapper objectMapper,
+                             @Value("${bulk.import.chunk-size:5000}") int chunkSize,
+                             @Value("${bulk.import.max-line-length:65536}") int maxLineLength) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.productIdIndex = productIdIndex;
+        this.productSearchIndex = productSearchIndex;
+        this.catalogCache = catalogCache;
+        this.importJobs = importJobs;
+        this.jsonReader = objectMapper.reader();
+        this.chunkSize = chunkSize;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Imports Products, as parsed by {@link ProductRowParser}. Products whose description already exists are rejected.
+     * @param body The request body.
+     * @param contentType {@code Content-Type} of the body: NDJSON or CSV, in UTF-8 unless it says otherwise.
+     * @return The final progress of the import.
+     * @throws BadRequestException If the format isn't supported, or the CSV header is invalid.
+     * @throws IOException If the body can't be read.
+     */
+    public ImportReport importProducts(InputStream body, String contentType) throws IOException {
+        return run(PRODUCTS, body, contentType, ProductRowParser::new, this::writeProducts, ProductRow::line);
+    }
+
+    /**
+     * Imports Carts along with their Items, as parsed by {@link CartRowParser}. Carts of a User that already has one,
+     * and Carts referencing a missing Product, are rejected. The User service isn't called.
+     * @param body The request body.
+     * @param contentType {@code Content-Type} of the body: NDJSON or CSV, in UTF-8 unless it says otherwise.
+     * @return The final progress of the import.
+     * @throws BadRequestException If the format isn't supported, or the CSV header is invalid.
+     * @throws IOException If the body can't be read.
+     */
+    public ImportReport importCarts(InputStream body, String contentType) throws IOException {
+        return run(CARTS, body, contentType, CartRowParser::new, this::writeCarts, CartRow::line);
+    }
+
+    private <T> ImportReport run(String type, InputStream body, String contentType,
+                                 BiFunction<BulkFormat, ObjectReader, RowParser<T>> parserFactory,
+                                 Function<List<T>, List<RowError>> writer, ToLongFunction<T> lineOf) throws IOException {
+        BulkFormat format = BulkFormat.fromContentType(contentType);
+        LineReader lines = new LineReader(new InputStreamReader(body, BulkFormat.charsetOf(contentType)), maxLineLength);
+
+        ImportJob job = importJobs.start(type, format);
+        List<T> chunk = new ArrayList<>(chunkSize);
+        try {
+            parserFactory.apply(format, jsonReader).parse(lines, maxLineLength, new RowParser.Handler<>() {
+                @Override
+                public void row(T row) {
+                    job.rowRead();
+                    chunk.add(row);
+                    if (chunk.size() >= chunkSize) {
+                        write(job, chunk, writer, lineOf);
+                    }
+                }
+
+                @Override
+                public void error(long line, String message) {
+                    job.rowRead();
+                    job.rejected(new RowError(line, message));
+                }
+            });
+            write(job, chunk, writer, lineOf);
+            job.completed();
+        } catch (IOException | RuntimeException e) {
+            job.failed(e.getMessage());
+            throw e;
+        } finally {
+            importJobs.finished(job);
+        }
+        return job.report();
+    }
+
+    /**
+     * Writes a chunk in a single transaction, or one row per transaction if that fails, and empties it.
+     */
+    private <T> void write(ImportJob job, List<T> chunk, Function<List<T>, List<RowError>> writer, ToLongFunction<T> lineOf) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            job.written(chunk.size(), transactionTemplate.execute(status -> writer.apply(chunk)));
+        } catch (DataAccessException | TransactionException chunkFailure) {
+            // Aislar las filas que fallan, sin perder el resto del bloque
+            for (T row : chunk) {
+                try {
+                    job.written(1, transactionTemplate.execute(status -> writer.apply(List.of(row))));
+                } catch (DataAccessException | TransactionException rowFailure) {
+                    job.written(1, List.of(new RowError(lineOf.applyAsLong(row), failureMessage(rowFailure))));
+                }
+            }
+        }
+        chunk.clear();
+    }
+
+    private static String failureMessage(NestedRuntimeException e) {
+        return "No se pudo guardar la fila: " + e.getMostSpecificCause().getMessage();
+    }
+
+    private List<RowError> writeProducts(List<ProductRow> rows) {
+        long[] ids = repository.reserveProductIds(rows.size());
+        List<NewProduct> products = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            products.add(new NewProduct(ids[i], rows.get(i).description()));
+        }
+
+        boolean[] inserted = repository.insertProductsIfAbsent(products);
+
+        List<RowError> rejected = new ArrayList<>();
+        List<Long> addedIds = new ArrayList<>(rows.size());
+        List<ProductView> added = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ProductRow row = rows.get(i);
+            if (inserted[i]) {
+                addedIds.add(ids[i]);
+                added.add(new ProductView(ids[i], row.description()));
+            } else {
+                rejected.add(new RowError(row.line(), "Ya existe un producto \"" + row.description() + "\"."));
+            }
+        }
+
+        if (!added.isEmpty()) {
+            productIdIndex.productsAdded(addedIds);
+            productSearchIndex.productsAdded(added);
+            runAfterCommit(catalogCache::invalidateAll);
+        }
+        return rejected;
+    }
+
+    private List<RowError> writeCarts(List<CartRow> rows) {
+        Set<Long> productIds = new LinkedHashSet<>();
+        rows.forEach(row -> productIds.addAll(row.quantitiesByProductId().keySet()));
+        Set<Long> missing = productIds.isEmpty() ? Set.of() : productIdIndex.findMissing(productIds);
+
+        List<RowError> rejected = new ArrayList<>();
+        List<CartRow> valid = new ArrayList<>(rows.size());
+        for (CartRow row : rows) {
+            Long missingProduct = row.quantitiesByProductId().keySet().stream()
+                    .filter(missing::contains)
+                    .findFirst()
+                    .orElse(null);
+
+            if (missingProduct == null) {
+                valid.add(row);
+            } else {
+                rejected.add(new RowError(row.line(), "No se encontró el producto N°" + missingProduct));
+            }
+        }
+
+        long[] ids = repository.reserveCartIds(valid.size());
+        List<NewCart> carts = new ArrayList<>(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            carts.add(new NewCart(ids[i], valid.get(i).description(), valid.get(i).userId()));
+        }
+
+        boolean[] inserted = carts.isEmpty() ? new boolean[0] : repository.insertCartsIfAbsent(carts);
+
+        List<NewItem> items = new ArrayList<>();
+        for (int i = 0; i < valid.size(); i++) {
+            CartRow row = valid.get(i);
+            if (inserted[i]) {
+                long cartId = ids[i];
+                row.quantitiesByProductId().forEach((productId, quantity) -> items.add(new NewItem(cartId, productId, quantity)));
+            } else {
+                rejected.add(new RowError(row.line(), "El usuario N° " + row.userId() + " ya tiene un carrito asignado."));
+            }
+        }
+
+        repository.insertItems(items);
+        return rejected;
+    }
+}
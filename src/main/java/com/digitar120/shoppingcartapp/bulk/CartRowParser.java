@@ -0,0 +1,164 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses Carts along with their Items.
+ * <p>In NDJSON, each line is a Cart:
+ * {@code {"description": "Compras", "userId": 7, "items": [{"productId": 1, "quantity": 2}]}}. The Product of an Item
+ * may also be given as {@code "referencedProduct": {"id": 1}}, so that Carts exported by {@link BulkExportService}, or
+ * read from the Cart endpoints, can be imported as they are.</p>
+ * <p>In CSV, each line is an Item, with the columns {@code cartId}, {@code description}, {@code userId},
+ * {@code productId} and {@code quantity}. Consecutive lines with the same {@code cartId} form a Cart, whose description
+ * and User are taken from its first line. {@code cartId} only groups the lines: the new Cart gets an ID of its own. A
+ * line with no {@code productId} nor {@code quantity} adds no Item, so that empty Carts can be imported.</p>
+ * <p>A Cart with any invalid line is rejected as a whole, with the error of its first invalid line. A line that can't
+ * be read at all, since its Cart is unknown, rejects the Cart being read.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+final class CartRowParser extends RowParser<CartRowParser.CartRow> {
+
+    static final String CART_ID = "cartId";
+    static final String DESCRIPTION = "description";
+    static final String USER_ID = "userId";
+    static final String ITEMS = "items";
+    static final String PRODUCT_ID = "productId";
+    static final String QUANTITY = "quantity";
+    static final String REFERENCED_PRODUCT = "referencedProduct";
+    static final String ID = "id";
+
+    /**
+     * A Cart to import.
+     * @param line First line it was read from.
+     * @param description Description of the new Cart.
+     * @param userId Referenced User.
+     * @param quantitiesByProductId Quantity of each Item, by referenced Product ID, in reading order.
+     */
+    record CartRow(long line, String description, int userId, Map<Long, Integer> quantitiesByProductId) {
+    }
+
+    private int cartIdColumn;
+    private int descriptionColumn;
+    private int userIdColumn;
+    private int productIdColumn;
+    private int quantityColumn;
+
+    // Carrito en lectura, en CSV
+    private String currentCartId;
+    private CartRow current;
+    private boolean currentRejected;
+
+    CartRowParser(BulkFormat format, ObjectReader jsonReader) {
+        super(format, jsonReader);
+    }
+
+    @Override
+    void columnsFound(Csv.Header header) {
+        cartIdColumn = header.column(CART_ID, true);
+        descriptionColumn = header.column(DESCRIPTION, true);
+        userIdColumn = header.column(USER_ID, true);
+        productIdColumn = header.column(PRODUCT_ID, true);
+        quantityColumn = header.column(QUANTITY, true);
+    }
+
+    @Override
+    void parseJson(long line, JsonNode node, Handler<CartRow> handler) {
+        CartRow cart = cart(line, text(node, DESCRIPTION), integer(node, USER_ID));
+
+        JsonNode items = node.path(ITEMS);
+        if (!items.isMissingNode() && !items.isNull() && !items.isArray()) {
+            throw new IllegalArgumentException("El campo \"" + ITEMS + "\" debe ser una lista.");
+        }
+        for (JsonNode item : items) {
+            // Las exportaciones y la API anidan el producto, como en la entidad
+            Long productId = item.path(REFERENCED_PRODUCT).isObject()
+                    ? integer(item.path(REFERENCED_PRODUCT), ID)
+                    : integer(item, PRODUCT_ID);
+            addItem(cart, productId, integer(item, QUANTITY));
+        }
+        handler.row(cart);
+    }
+
+    @Override
+    void parseCsv(long number, String line, Handler<CartRow> handler) {
+        List<String> values = Csv.split(line);
+        String cartId = Csv.value(values, cartIdColumn);
+        if (cartId.isEmpty()) {
+            throw new IllegalArgumentException("La columna \"" + CART_ID + "\" no puede estar vacía.");
+        }
+
+        if (!cartId.equals(currentCartId)) {
+            finish(handler);
+            currentCartId = cartId;
+        } else if (currentRejected) {
+            return;
+        }
+
+        try {
+            if (current == null) {
+                current = cart(number, Csv.value(values, descriptionColumn),
+                        integer(Csv.value(values, userIdColumn), USER_ID));
+            }
+
+            Long productId = integer(Csv.value(values, productIdColumn), PRODUCT_ID);
+            Long quantity = integer(Csv.value(values, quantityColumn), QUANTITY);
+            if (productId != null || quantity != null) {
+                addItem(current, productId, quantity);
+            }
+        } catch (IllegalArgumentException e) {
+            rejectCurrent(number, e.getMessage(), handler);
+        }
+    }
+
+    @Override
+    void rejected(long line, String message, Handler<CartRow> handler) {
+        if (currentCartId == null) {
+            handler.error(line, message);
+        } else if (!currentRejected) {
+            rejectCurrent(line, message, handler);
+        }
+    }
+
+    @Override
+    void finish(Handler<CartRow> handler) {
+        if (current != null && !currentRejected) {
+            handler.row(current);
+        }
+        currentCartId = null;
+        current = null;
+        currentRejected = false;
+    }
+
+    private void rejectCurrent(long line, String message, Handler<CartRow> handler) {
+        currentRejected = true;
+        current = null;
+        handler.error(line, message);
+    }
+
+    private static CartRow cart(long line, String description, Long userId) {
+        if (description.isEmpty()) {
+            throw new IllegalArgumentException("La descripción del carrito no puede estar vacía.");
+        }
+        if (userId == null) {
+            throw new IllegalArgumentException("Falta el usuario del carrito.");
+        }
+        return new CartRow(line, description, toInt(userId, USER_ID), new LinkedHashMap<>());
+    }
+
+    private static void addItem(CartRow cart, Long productId, Long quantity) {
+        if (productId == null) {
+            throw new IllegalArgumentException("Falta el producto de un ítem.");
+        }
+        if (quantity == null || quantity <= 0 || quantity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("La cantidad ingresada es inválida.");
+        }
+        if (cart.quantitiesByProductId().putIfAbsent(productId, quantity.intValue()) != null) {
+            throw new IllegalArgumentException("El producto N° " + productId + " aparece más de una vez en el carrito.");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splitting and writing of CSV lines, following RFC 4180 except for quoted values spanning several lines.
+ * @author Gabriel Pérez (digitar120)
+ */
+final class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * Splits a line into its values. Quoted values may contain commas, and quotes written twice.
+     * @param line The line.
+     * @return The values, unquoted.
+     * @throws IllegalArgumentException If a quoted value isn't closed, or is followed by something other than a comma.
+     */
+    static List<String> split(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+
+        while (true) {
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("Falta cerrar las comillas de la columna " + (values.size() + 1) + ".");
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        value.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("La columna " + (values.size() + 1) + " tiene texto después de las comillas.");
+                }
+            } else {
+                int end = line.indexOf(',', i);
+                value.append(line, i, end < 0 ? line.length() : end);
+                i = end < 0 ? line.length() : end;
+            }
+
+            values.add(value.toString());
+            value.setLength(0);
+            if (i >= line.length()) {
+                return values;
+            }
+            // Saltar la coma
+            i++;
+        }
+    }
+
+    /**
+     * Positions of the columns named by a header line.
+     */
+    static final class Header {
+        private final List<String> names;
+
+        Header(String line) {
+            this.names = new ArrayList<>();
+            // Algunas planillas de cálculo agregan la marca de orden de bytes al exportar en UTF-8
+            for (String name : split(line.startsWith("\uFEFF") ? line.substring(1) : line)) {
+                names.add(name.strip().toLowerCase(Locale.ROOT));
+            }
+        }
+
+        /**
+         * Finds a column, ignoring case.
+         * @param name Name of the column.
+         * @param required Whether the column must be present.
+         * @return Position of the column, or -1 if it isn't present.
+         * @throws BadRequestException If a required column isn't present.
+         */
+        int column(String name, boolean required) {
+            int column = names.indexOf(name.toLowerCase(Locale.ROOT));
+            if (column < 0 && required) {
+                throw new BadRequestException("Falta la columna \"" + name + "\" en la cabecera CSV.");
+            }
+            return column;
+        }
+    }
+
+    /**
+     * Returns a value of a split line.
+     * @param values The values of the line.
+     * @param column Position of the column, or -1 if it isn't present.
+     * @return The stripped value, or an empty string if the line is shorter or the column isn't present.
+     */
+    static String value(List<String> values, int column) {
+        return column < 0 || column >= values.size() ? "" : values.get(column).strip();
+    }
+
+    /**
+     * Writes a line, quoting the values that need it so that {@link Csv#split(String)} reads them back as they are.
+     * Line breaks within values are replaced by spaces, since quoted values can't span several lines.
+     * @param out Where to write the line.
+     * @param values The values. {@code null} values are written empty.
+     * @throws IOException If writing fails.
+     */
+    static void writeLine(Writer out, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            if (values[i] != null) {
+                writeValue(out, values[i].toString());
+            }
+        }
+        out.write('\n');
+    }
+
+    private static void writeValue(Writer out, String value) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write("\"\"");
+            } else {
+                out.write(c == '\n' || c == '\r' ? ' ' : c);
+            }
+        }
+        out.write('"');
+    }
+}
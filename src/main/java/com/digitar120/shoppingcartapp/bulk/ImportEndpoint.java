@@ -0,0 +1,48 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to follow the progress of bulk imports, at {@code /actuator/imports}.
+ * @author Gabriel Pérez (digitar120)
+ * @see ImportJobs
+ */
+@Component
+@Endpoint(id = "imports")
+public class ImportEndpoint {
+
+    private final ImportJobs importJobs;
+
+    public ImportEndpoint(ImportJobs importJobs) {
+        this.importJobs = importJobs;
+    }
+
+    /**
+     * @return Progress of the running imports, and of the last ones finished.
+     */
+    @ReadOperation
+    public Map<String, Object> imports() {
+        List<ImportReport> reports = importJobs.reports();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("running", reports.stream().filter(report -> report.state() == ImportJob.State.RUNNING).count());
+        response.put("imports", reports);
+        return response;
+    }
+
+    /**
+     * @param id ID of an import.
+     * @return Progress of the import, or {@code null} (HTTP 404) if it isn't running nor among the last ones finished.
+     */
+    @ReadOperation
+    public ImportReport report(@Selector long id) {
+        return importJobs.report(id).orElse(null);
+    }
+}
@@ -0,0 +1,113 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a bulk import.
+ * <p>Updated by the thread running the import, and read by any other, such as the {@link ImportEndpoint}. Rows count
+ * as imported or rejected once their transaction commits, so the rows read may be ahead of both.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see ImportJobs
+ */
+public final class ImportJob {
+
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    /**
+     * A row that wasn't imported.
+     * @param line Line of the row, starting at 1.
+     * @param message Why it wasn't imported.
+     */
+    public record RowError(long line, String message) {
+    }
+
+    private final long id;
+    private final String type;
+    private final BulkFormat format;
+    private final int maxErrors;
+    private final Instant started = Instant.now();
+    private final long startedNanos = System.nanoTime();
+
+    // Un solo hilo escribe cada campo, así que basta con que sean volatile
+    private volatile State state = State.RUNNING;
+    private volatile long rowsRead;
+    private volatile long imported;
+    private volatile long rejected;
+    private volatile long finishedNanos;
+    private volatile String failure;
+    private final List<RowError> errors = new ArrayList<>();
+
+    ImportJob(long id, String type, BulkFormat format, int maxErrors) {
+        this.id = id;
+        this.type = type;
+        this.format = format;
+        this.maxErrors = maxErrors;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    void rowRead() {
+        rowsRead++;
+    }
+
+    /**
+     * Counts rows whose transaction committed.
+     * @param rows Amount of rows written.
+     * @param rowErrors The ones among them that were rejected.
+     */
+    void written(int rows, List<RowError> rowErrors) {
+        imported += rows - rowErrors.size();
+        rowErrors.forEach(this::rejected);
+    }
+
+    void rejected(RowError error) {
+        rejected++;
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(error);
+            }
+        }
+    }
+
+    void completed() {
+        finish(State.COMPLETED, null);
+    }
+
+    void failed(String message) {
+        finish(State.FAILED, message);
+    }
+
+    private void finish(State finalState, String message) {
+        finishedNanos = System.nanoTime();
+        failure = message;
+        state = finalState;
+    }
+
+    /**
+     * @return A snapshot of the progress.
+     */
+    public ImportReport report() {
+        State currentState = state;
+        long elapsedNanos = (currentState == State.RUNNING ? System.nanoTime() : finishedNanos) - startedNanos;
+        long importedRows = imported;
+
+        List<RowError> firstErrors;
+        synchronized (errors) {
+            firstErrors = List.copyOf(errors);
+        }
+
+        return new ImportReport(id, type, format, currentState, started, Duration.ofNanos(elapsedNanos).toMillis(),
+                rowsRead, importedRows, rejected,
+                elapsedNanos == 0 ? 0 : importedRows * 1_000_000_000L / elapsedNanos,
+                failure, firstErrors);
+    }
+}
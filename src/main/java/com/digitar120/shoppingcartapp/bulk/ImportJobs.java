@@ -0,0 +1,88 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the running bulk imports, and of the last ones finished.
+ * @author Gabriel Pérez (digitar120)
+ * @see ImportEndpoint
+ */
+@Component
+public class ImportJobs {
+
+    private final AtomicLong lastId = new AtomicLong();
+    private final Map<Long, ImportJob> running = new ConcurrentHashMap<>();
+    private final Deque<ImportJob> finished = new ArrayDeque<>();
+    private final int history;
+    private final int maxErrors;
+
+    public ImportJobs(@Value("${bulk.import.history:20}") int history,
+                      @Value("${bulk.import.max-reported-errors:100}") int maxErrors) {
+        this.history = history;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Registers a new import.
+     * @param type What is imported.
+     * @param format Format of the imported rows.
+     * @return The import, running.
+     */
+    ImportJob start(String type, BulkFormat format) {
+        ImportJob job = new ImportJob(lastId.incrementAndGet(), type, format, maxErrors);
+        running.put(job.id(), job);
+        return job;
+    }
+
+    /**
+     * Moves a completed or failed import to the history, dropping the oldest one if it's full.
+     * @param job The import.
+     */
+    void finished(ImportJob job) {
+        synchronized (finished) {
+            finished.addFirst(job);
+            if (finished.size() > history) {
+                finished.removeLast();
+            }
+        }
+        running.remove(job.id());
+    }
+
+    /**
+     * @return Progress of the running imports, and of the last ones finished, newest first.
+     */
+    public List<ImportReport> reports() {
+        List<ImportReport> reports = new ArrayList<>();
+        running.values().stream()
+                .sorted((a, b) -> Long.compare(b.id(), a.id()))
+                .forEach(job -> reports.add(job.report()));
+        synchronized (finished) {
+            finished.forEach(job -> reports.add(job.report()));
+        }
+        return reports;
+    }
+
+    /**
+     * @param id ID of an import.
+     * @return Progress of the import, if it's running or among the last ones finished.
+     */
+    public Optional<ImportReport> report(long id) {
+        ImportJob job = running.get(id);
+        if (job == null) {
+            synchronized (finished) {
+                job = finished.stream().filter(candidate -> candidate.id() == id).findFirst().orElse(null);
+            }
+        }
+        return Optional.ofNullable(job).map(ImportJob::report);
+    }
+}
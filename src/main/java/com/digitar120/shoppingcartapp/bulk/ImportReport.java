@@ -0,0 +1,26 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Progress of a bulk import, as answered by the import endpoints and the {@link ImportEndpoint}.
+ * @param id ID of the import.
+ * @param type What is imported, such as {@code products}.
+ * @param format Format of the imported rows.
+ * @param state Whether the import is running, completed, or failed as a whole.
+ * @param started When the import started.
+ * @param elapsedMillis Time spent so far, or until the import finished.
+ * @param rowsRead Rows read so far, valid or not.
+ * @param imported Rows written and committed.
+ * @param rejected Rows not imported, because they're invalid or conflict with existing ones.
+ * @param rowsPerSecond Rows imported per second, on average.
+ * @param failure Why the import failed as a whole, if it did. Rows committed until then stay imported.
+ * @param errors The first rows rejected, with the reason.
+ * @author Gabriel Pérez (digitar120)
+ * @see ImportJob
+ */
+public record ImportReport(long id, String type, BulkFormat format, ImportJob.State state, Instant started,
+                           long elapsedMillis, long rowsRead, long imported, long rejected, long rowsPerSecond,
+                           String failure, List<ImportJob.RowError> errors) {
+}
@@ -0,0 +1,92 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads text one line at a time, like {@link java.io.BufferedReader#readLine()}, but with a maximum line length, so
+ * that a body without line breaks can't exhaust the memory.
+ * <p>Lines end with {@code \n}, {@code \r\n} or {@code \r}.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+final class LineReader {
+
+    private final Reader reader;
+    private final int maxLength;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder line = new StringBuilder();
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+    private long lineNumber;
+    private boolean tooLong;
+
+    LineReader(Reader reader, int maxLength) {
+        this.reader = reader;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Reads the next line. The characters of a line over the maximum length are skipped up to its end, and the line is
+     * returned empty, with {@link LineReader#tooLong()} set.
+     * @return The line without its terminator, or {@code null} at the end of the text.
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        tooLong = false;
+        boolean read = false;
+
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (!read) {
+                        return null;
+                    }
+                    break;
+                }
+            }
+
+            char c = buffer[position++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            read = true;
+
+            if (c == '\n' || c == '\r') {
+                skipLineFeed = c == '\r';
+                break;
+            }
+            if (line.length() < maxLength) {
+                line.append(c);
+            } else {
+                tooLong = true;
+            }
+        }
+
+        lineNumber++;
+        if (tooLong) {
+            line.setLength(0);
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return Number of the last line read, starting at 1.
+     */
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return {@code true} if the last line read was over the maximum length.
+     */
+    boolean tooLong() {
+        return tooLong;
+    }
+}
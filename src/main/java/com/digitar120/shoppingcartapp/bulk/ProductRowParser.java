@@ -0,0 +1,50 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Parses Products, one per line: {@code {"description": "Leche"}} in NDJSON, or a {@code description} column in CSV.
+ * Other fields and columns are ignored.
+ * @author Gabriel Pérez (digitar120)
+ */
+final class ProductRowParser extends RowParser<ProductRowParser.ProductRow> {
+
+    static final String DESCRIPTION = "description";
+
+    /**
+     * A Product to import.
+     * @param line Line it was read from.
+     * @param description Description of the new Product.
+     */
+    record ProductRow(long line, String description) {
+    }
+
+    private int descriptionColumn;
+
+    ProductRowParser(BulkFormat format, ObjectReader jsonReader) {
+        super(format, jsonReader);
+    }
+
+    @Override
+    void columnsFound(Csv.Header header) {
+        descriptionColumn = header.column(DESCRIPTION, true);
+    }
+
+    @Override
+    void parseJson(long line, JsonNode node, Handler<ProductRow> handler) {
+        handler.row(row(line, text(node, DESCRIPTION)));
+    }
+
+    @Override
+    void parseCsv(long number, String line, Handler<ProductRow> handler) {
+        handler.row(row(number, Csv.value(Csv.split(line), descriptionColumn)));
+    }
+
+    private static ProductRow row(long line, String description) {
+        if (description.isEmpty()) {
+            throw new IllegalArgumentException("La descripción del producto no puede estar vacía.");
+        }
+        return new ProductRow(line, description);
+    }
+}
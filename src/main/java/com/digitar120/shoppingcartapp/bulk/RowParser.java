@@ -0,0 +1,186 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+
+/**
+ * Parses the lines of an import into rows, handing each one over as soon as it's complete, so that only the current
+ * row is held in memory.
+ * <p>A line that can't be parsed is reported as an error of its own, and parsing goes on with the next one. Blank lines
+ * are skipped. In CSV, the first line that isn't blank is the header.</p>
+ * @param <T> Type of the rows.
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductRowParser
+ * @see CartRowParser
+ */
+abstract class RowParser<T> {
+
+    /**
+     * Receives the rows, and the errors of the lines that couldn't be parsed.
+     * @param <T> Type of the rows.
+     */
+    interface Handler<T> {
+        void row(T row);
+
+        void error(long line, String message);
+    }
+
+    private final BulkFormat format;
+    private final ObjectReader jsonReader;
+    private Csv.Header header;
+
+    RowParser(BulkFormat format, ObjectReader jsonReader) {
+        this.format = format;
+        this.jsonReader = jsonReader;
+    }
+
+    /**
+     * Parses every line.
+     * @param lines The lines of the import.
+     * @param maxLength Maximum length of a line, to report it.
+     * @param handler Receives the rows and errors, in line order.
+     * @throws BadRequestException If the CSV header is malformed or lacks a required column. Nothing has been handed
+     * over in that case.
+     * @throws IOException If the lines can't be read.
+     */
+    void parse(LineReader lines, int maxLength, Handler<T> handler) throws IOException {
+        String line;
+        while ((line = lines.readLine()) != null) {
+            long number = lines.lineNumber();
+            if (lines.tooLong()) {
+                rejected(number, "La línea supera los " + maxLength + " caracteres.", handler);
+                continue;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+
+            try {
+                if (format == BulkFormat.NDJSON) {
+                    parseJson(number, jsonReader.readTree(line), handler);
+                } else if (header == null) {
+                    header = parseHeader(line);
+                } else {
+                    parseCsv(number, line, handler);
+                }
+            } catch (JsonProcessingException e) {
+                rejected(number, "JSON inválido: " + e.getOriginalMessage(), handler);
+            } catch (IllegalArgumentException e) {
+                rejected(number, e.getMessage(), handler);
+            }
+        }
+        finish(handler);
+    }
+
+    private Csv.Header parseHeader(String line) {
+        try {
+            Csv.Header csvHeader = new Csv.Header(line);
+            columnsFound(csvHeader);
+            return csvHeader;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("La cabecera CSV es inválida. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Looks up the columns of the CSV header.
+     * @param header The header.
+     * @throws BadRequestException If a required column isn't present.
+     */
+    abstract void columnsFound(Csv.Header header);
+
+    /**
+     * Parses an NDJSON line.
+     * @throws IllegalArgumentException If the line isn't a valid row.
+     */
+    abstract void parseJson(long line, JsonNode node, Handler<T> handler);
+
+    /**
+     * Parses a CSV line, other than the header, with {@link Csv#split(String)}.
+     * @throws IllegalArgumentException If the line isn't a valid row.
+     */
+    abstract void parseCsv(long number, String line, Handler<T> handler);
+
+    /**
+     * Reports a line that couldn't be parsed.
+     */
+    void rejected(long line, String message, Handler<T> handler) {
+        handler.error(line, message);
+    }
+
+    /**
+     * Hands over a row still pending at the end of the lines, if any.
+     */
+    void finish(Handler<T> handler) {
+    }
+
+    /**
+     * Reads a text field of a JSON object.
+     * @return The stripped text, or an empty string if the field is missing or null.
+     * @throws IllegalArgumentException If the node isn't an object, or the field isn't a text.
+     */
+    static String text(JsonNode node, String field) {
+        JsonNode value = field(node, field);
+        if (value.isMissingNode() || value.isNull()) {
+            return "";
+        }
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException("El campo \"" + field + "\" debe ser un texto.");
+        }
+        return value.textValue().strip();
+    }
+
+    /**
+     * Reads an integer field of a JSON object.
+     * @return The value, or {@code null} if the field is missing or null.
+     * @throws IllegalArgumentException If the node isn't an object, or the field isn't an integer.
+     */
+    static Long integer(JsonNode node, String field) {
+        JsonNode value = field(node, field);
+        if (value.isMissingNode() || value.isNull()) {
+            return null;
+        }
+        if (!value.canConvertToLong() || !value.isIntegralNumber()) {
+            throw new IllegalArgumentException("El campo \"" + field + "\" debe ser un número entero.");
+        }
+        return value.longValue();
+    }
+
+    /**
+     * Parses an integer CSV value.
+     * @return The value, or {@code null} if it's empty.
+     * @throws IllegalArgumentException If the value isn't an integer.
+     */
+    static Long integer(String value, String column) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("La columna \"" + column + "\" debe ser un número entero.");
+        }
+    }
+
+    /**
+     * Narrows an integer to the range of an {@code int}.
+     * @throws IllegalArgumentException If it's out of range.
+     */
+    static int toInt(long value, String field) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("El valor de \"" + field + "\" está fuera de rango.");
+        }
+        return (int) value;
+    }
+
+    private static JsonNode field(JsonNode node, String field) {
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("Cada línea debe ser un objeto JSON.");
+        }
+        return node.path(field);
+    }
+}
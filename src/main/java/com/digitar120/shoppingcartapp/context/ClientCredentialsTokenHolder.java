@@ -0,0 +1,186 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the client credentials access token used on outgoing calls to the User service, and renews it in the
+ * background before it expires.
+ * <p>Outgoing calls only read a volatile field. The token endpoint is only called on the request path if there's no
+ * token yet, or if background renewals kept failing until the token expired. Concurrent renewals are coalesced with
+ * {@link SingleFlight}. Only one renewal is scheduled at a time: every renewal replaces the one pending, if any.</p>
+ * <p>Renewal latency is published as {@code oauth2.token.refresh}, and failed renewals as
+ * {@code oauth2.token.refresh.failures}.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see UserFeignClientConfiguration
+ */
+@Component
+public class ClientCredentialsTokenHolder {
+
+    private static final String PRINCIPAL = "principal";
+
+    /**
+     * Delay before retrying a failed background renewal.
+     */
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    /**
+     * Shortest delay between renewals, for tokens that live less than {@code refresh-before-expiry}.
+     */
+    private static final Duration MIN_RENEWAL_DELAY = Duration.ofSeconds(1);
+
+    private final OAuth2AuthorizedClientManager authorizedClientManager;
+    private final OAuth2AuthorizedClientService authorizedClientService;
+    private final String registrationId;
+    private final Duration refreshBeforeExpiry;
+
+    private final SingleFlight<String, OAuth2AccessToken> renewals = new SingleFlight<>();
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "oauth2-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The only renewal scheduled, either before expiry or a retry. Replaced on each scheduling.
+     */
+    private ScheduledFuture<?> pendingRenewal;
+
+    private final Timer refreshTimer;
+    private final Counter refreshFailures;
+
+    private volatile OAuth2AccessToken accessToken;
+
+    public ClientCredentialsTokenHolder(OAuth2AuthorizedClientManager authorizedClientManager,
+                                        OAuth2AuthorizedClientService authorizedClientService,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${user-client.oauth2.registration-id:keycloak}") String registrationId,
+                                        @Value("${user-client.oauth2.refresh-before-expiry:60s}") Duration refreshBeforeExpiry) {
+        this.authorizedClientManager = authorizedClientManager;
+        this.authorizedClientService = authorizedClientService;
+        this.registrationId = registrationId;
+        this.refreshBeforeExpiry = refreshBeforeExpiry;
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        this.refreshTimer = Timer.builder("oauth2.token.refresh")
+                .description("Time taken to obtain a new access token")
+                .tag("registration", registrationId)
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("oauth2.token.refresh.failures")
+                .description("Failed attempts to obtain a new access token")
+                .tag("registration", registrationId)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return A valid access token value, to be sent as a Bearer token.
+     */
+    public String getTokenValue() {
+        OAuth2AccessToken token = accessToken;
+
+        if (token == null || isExpired(token)) {
+            token = renew();
+        }
+
+        return token.getTokenValue();
+    }
+
+    /**
+     * Obtains a new token, or waits for the renewal already in progress.
+     * @return The new token.
+     */
+    OAuth2AccessToken renew() {
+        return renewals.execute(registrationId, () -> {
+            try {
+                return refreshTimer.record(this::requestToken);
+            } catch (RuntimeException e) {
+                refreshFailures.increment();
+                throw e;
+            }
+        });
+    }
+
+    private OAuth2AccessToken requestToken() {
+        // Sin esto, el manager devuelve el token guardado si todavía no venció
+        authorizedClientService.removeAuthorizedClient(registrationId, PRINCIPAL);
+
+        OAuth2AuthorizedClient client = authorizedClientManager.authorize(OAuth2AuthorizeRequest
+                .withClientRegistrationId(registrationId)
+                .principal(PRINCIPAL)
+                .build());
+
+        if (client == null) {
+            throw new IllegalStateException("No se pudo autorizar el cliente " + registrationId);
+        }
+
+        OAuth2AccessToken token = client.getAccessToken();
+        accessToken = token;
+        scheduleRenewal(token);
+
+        return token;
+    }
+
+    private void scheduleRenewal(OAuth2AccessToken token) {
+        if (token.getExpiresAt() == null) {
+            return;
+        }
+
+        Duration lifetime = Duration.between(Instant.now(), token.getExpiresAt());
+        Duration delay = lifetime.minus(refreshBeforeExpiry);
+
+        // Un token que dura menos que la anticipación se renovaría enseguida, una y otra vez
+        if (delay.isNegative() || delay.isZero()) {
+            delay = lifetime.dividedBy(2);
+        }
+        scheduleRenewal(delay.compareTo(MIN_RENEWAL_DELAY) < 0 ? MIN_RENEWAL_DELAY : delay);
+    }
+
+    private synchronized void scheduleRenewal(Duration delay) {
+        if (pendingRenewal != null) {
+            // No interrumpe la renovación en curso, si es la que está programando la siguiente
+            pendingRenewal.cancel(false);
+        }
+        pendingRenewal = scheduler.schedule(this::renewInBackground, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Amount of renewals waiting to run.
+     */
+    int scheduledRenewals() {
+        return scheduler.getQueue().size();
+    }
+
+    private void renewInBackground() {
+        try {
+            renew();
+        } catch (RuntimeException e) {
+            // El token actual sigue siendo válido hasta que venza
+            scheduleRenewal(RETRY_DELAY);
+        }
+    }
+
+    private static boolean isExpired(OAuth2AccessToken token) {
+        return token.getExpiresAt() != null && !Instant.now().isBefore(token.getExpiresAt());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
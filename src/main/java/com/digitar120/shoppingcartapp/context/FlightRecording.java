@@ -0,0 +1,105 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.jfr.CartOperationEvent;
+import com.digitar120.shoppingcartapp.jfr.SerializationEvent;
+import com.digitar120.shoppingcartapp.jfr.UserLookupEvent;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a continuous Flight Recorder recording of the app's events, on top of the JDK's {@code default}
+ * configuration, while {@code jfr.recording.enabled} is set.
+ * <p>The app's events are configured by {@code jfr/shopping-cart.jfc}, which only keeps operations slower than 10 ms.
+ * {@code jfr.recording.threshold} overrides that threshold, down to {@code 0ms} for a profiling session.</p>
+ * <p>The recording is kept on disk for {@code jfr.recording.max-age} or up to {@code jfr.recording.max-size}. It can be
+ * dumped at any time with {@code jcmd <pid> JFR.dump name=shopping-cart}, and on shutdown to
+ * {@code jfr.recording.destination}, if set.</p>
+ * <p>Without this recording, or one started with {@code -XX:StartFlightRecording}, the events stay disabled.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CartOperationEvent
+ * @see UserLookupEvent
+ * @see SerializationEvent
+ */
+@Component
+@ConditionalOnExpression("${jfr.recording.enabled:false}")
+public class FlightRecording {
+
+    public static final String RECORDING_NAME = "shopping-cart";
+    public static final String SETTINGS_RESOURCE = "/jfr/shopping-cart.jfc";
+
+    private static final List<String> EVENT_NAMES = List.of(
+            CartOperationEvent.NAME, UserLookupEvent.NAME, SerializationEvent.NAME);
+
+    private final Recording recording;
+
+    public FlightRecording(@Value("${jfr.recording.max-age:1h}") Duration maxAge,
+                           @Value("${jfr.recording.max-size:100MB}") DataSize maxSize,
+                           @Value("${jfr.recording.threshold:#{null}}") Duration threshold,
+                           @Value("${jfr.recording.destination:#{null}}") Path destination) throws IOException {
+        this.recording = new Recording(settings(threshold));
+        recording.setName(RECORDING_NAME);
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        if (destination != null) {
+            recording.setDestination(destination);
+        }
+        recording.start();
+    }
+
+    /**
+     * Combines the {@code default} configuration of the JDK with the app's events.
+     * @param threshold Threshold for the app's events, or {@code null} to keep the one in {@code shopping-cart.jfc}.
+     * @return Settings for a {@link Recording}.
+     */
+    static Map<String, String> settings(Duration threshold) {
+        Map<String, String> settings = new HashMap<>();
+
+        try (InputStream input = FlightRecording.class.getResourceAsStream(SETTINGS_RESOURCE);
+             Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(Configuration.create(reader).getSettings());
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("No se pudo leer la configuración de Flight Recorder.", e);
+        }
+
+        if (threshold != null) {
+            EVENT_NAMES.forEach(name -> settings.put(name + "#threshold", threshold.toNanos() + " ns"));
+        }
+        return settings;
+    }
+
+    /**
+     * @return The recording, while the app is running.
+     */
+    public Recording recording() {
+        return recording;
+    }
+
+    @PreDestroy
+    public void close() {
+        // Con un destino configurado, detener la grabación la vuelca en él
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        recording.close();
+    }
+}
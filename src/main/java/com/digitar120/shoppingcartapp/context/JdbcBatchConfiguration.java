@@ -0,0 +1,30 @@
+package com.digitar120.shoppingcartapp.context;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Has Hibernate send inserts and updates as JDBC batches, instead of one round trip per entity.
+ * <p>Statements are ordered by entity, so that the inserts of a Cart and its Items form one batch per table. Settings
+ * given through {@code spring.jpa.properties} take precedence over these.</p>
+ * <p>Batching inserts depends on the entities taking their IDs from sequences: Hibernate disables it for
+ * {@code IDENTITY} columns.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.persistence.entity.Cart
+ */
+@Configuration
+public class JdbcBatchConfiguration {
+
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchCustomizer(@Value("${persistence.jdbc.batch-size:50}") int batchSize) {
+        return properties -> {
+            properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize);
+            properties.putIfAbsent(AvailableSettings.ORDER_INSERTS, true);
+            properties.putIfAbsent(AvailableSettings.ORDER_UPDATES, true);
+            properties.putIfAbsent(AvailableSettings.BATCH_VERSIONED_DATA, true);
+        };
+    }
+}
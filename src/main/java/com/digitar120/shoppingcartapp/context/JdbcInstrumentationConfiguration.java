@@ -0,0 +1,98 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.persistence.jdbc.SlowQueryEndpoint;
+import com.digitar120.shoppingcartapp.persistence.jdbc.SlowQueryLog;
+import com.digitar120.shoppingcartapp.persistence.jdbc.StatementCountingDataSource;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Counts the JDBC statements executed by each request, and keeps the slow ones, so that N+1 selects show up before they
+ * hurt.
+ * <p>The {@link DataSource} is wrapped by a {@link StatementCountingDataSource}. Counts per request are published as
+ * {@code http.server.statements}, with buckets from 1 to 100 statements, and statements slower than
+ * {@code jdbc.slow-query.threshold} are kept at {@code /actuator/slowqueries}, up to {@code jdbc.slow-query.capacity}.</p>
+ * <p>Set {@code jdbc.instrumentation.enabled} to {@code false} to leave the {@code DataSource} as is.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see StatementCountInterceptor
+ * @see com.digitar120.shoppingcartapp.persistence.jdbc.StatementCounter
+ */
+@Configuration
+@ConditionalOnExpression("${jdbc.instrumentation.enabled:true}")
+public class JdbcInstrumentationConfiguration {
+
+    static final double[] STATEMENT_COUNT_BUCKETS = {1, 2, 3, 5, 10, 20, 50, 100};
+
+    @Bean
+    public SlowQueryLog slowQueryLog(@Value("${jdbc.slow-query.threshold:100ms}") Duration threshold,
+                                     @Value("${jdbc.slow-query.capacity:100}") int capacity) {
+        return new SlowQueryLog(threshold, capacity);
+    }
+
+    @Bean
+    public SlowQueryEndpoint slowQueryEndpoint(SlowQueryLog slowQueryLog) {
+        return new SlowQueryEndpoint(slowQueryLog);
+    }
+
+    /**
+     * Static, so that it doesn't initialize this configuration before the other post-processors.
+     */
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor(ObjectProvider<SlowQueryLog> slowQueryLog) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof StatementCountingDataSource)) {
+                    return new StatementCountingDataSource(dataSource, slowQueryLog.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public StatementCountInterceptor statementCountInterceptor(MeterRegistry meterRegistry) {
+        return new StatementCountInterceptor(meterRegistry);
+    }
+
+    @Bean
+    public WebMvcConfigurer statementCountConfigurer(StatementCountInterceptor statementCountInterceptor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(statementCountInterceptor);
+            }
+        };
+    }
+
+    @Bean
+    public MeterFilter statementCountHistogramFilter() {
+        DistributionStatisticConfig histogram = DistributionStatisticConfig.builder()
+                .percentiles(0.5, 0.99)
+                .serviceLevelObjectives(STATEMENT_COUNT_BUCKETS)
+                .build();
+
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getName().equals(StatementCountInterceptor.SUMMARY_NAME)) {
+                    return histogram.merge(config);
+                }
+                return config;
+            }
+        };
+    }
+}
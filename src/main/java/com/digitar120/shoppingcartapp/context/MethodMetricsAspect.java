@@ -0,0 +1,102 @@
+package com.digitar120.shoppingcartapp.context;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every public method of the services, as {@code service.method}, and every repository method, as
+ * {@code repository.method}. Timers are tagged with the class, the method, and whether it returned or threw.
+ * <p>Timers are looked up once per method, and kept, so recording a call only reads the clock twice and updates the
+ * histogram. Calls a service makes to its own methods aren't timed, as they don't go through the proxy.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see MetricsConfiguration
+ */
+@Aspect
+@Component
+public class MethodMetricsAspect {
+
+    public static final String SERVICE_TIMER = "service.method";
+    public static final String REPOSITORY_TIMER = "repository.method";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<TimedMethod, MethodTimers> timers = new ConcurrentHashMap<>();
+
+    public MethodMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * com.digitar120.shoppingcartapp.service.*Service.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return time(joinPoint, timers(SERVICE_TIMER, joinPoint.getTarget().getClass(), method));
+    }
+
+    /**
+     * Repository methods are mostly inherited from Spring Data interfaces, so the class tag is the repository
+     * interface that the proxy implements, such as {@code CartRepository}.
+     */
+    @Around("this(org.springframework.data.repository.Repository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return time(joinPoint, timers(REPOSITORY_TIMER, joinPoint.getThis().getClass(), method));
+    }
+
+    private static Object time(ProceedingJoinPoint joinPoint, MethodTimers methodTimers) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            methodTimers.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            methodTimers.error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private MethodTimers timers(String name, Class<?> type, Method method) {
+        return timers.computeIfAbsent(new TimedMethod(type, method), key -> {
+            String className = REPOSITORY_TIMER.equals(name) ? repositoryName(type) : type.getSimpleName();
+            return new MethodTimers(
+                    timer(name, className, method.getName(), "success"),
+                    timer(name, className, method.getName(), "error"));
+        });
+    }
+
+    private Timer timer(String name, String className, String methodName, String outcome) {
+        return Timer.builder(name)
+                .tag("class", className)
+                .tag("method", methodName)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String repositoryName(Class<?> proxyType) {
+        for (Class<?> type : proxyType.getInterfaces()) {
+            if (Repository.class.isAssignableFrom(type) && type.getPackageName().startsWith("com.digitar120")) {
+                return type.getSimpleName();
+            }
+        }
+        return proxyType.getSimpleName();
+    }
+
+    /**
+     * A method, as called on a given class. Inherited repository methods are the same {@link Method} for every
+     * repository.
+     */
+    private record TimedMethod(Class<?> type, Method method) {
+    }
+
+    private record MethodTimers(Timer success, Timer error) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.digitar120.shoppingcartapp.context;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Latency histograms for the request path, exported at {@code /actuator/prometheus}.
+ * <p>These timers publish the 50th, 99th and 99.9th percentiles and the maximum, plus histogram buckets, so that
+ * percentiles can also be aggregated across instances:</p>
+ * <ul>
+ *     <li>{@code http.server.requests}: each controller method, recorded by Spring Boot.</li>
+ *     <li>{@code service.method} and {@code repository.method}: see {@link MethodMetricsAspect}. Repository time is the
+ *     time spent in the database, including Hibernate.</li>
+ *     <li>{@code http.server.serialization}: writing response bodies, by type of the body. See
+ *     {@link SerializationTimer}.</li>
+ *     <li>{@code user.client.lookup}: User service lookups, by cache hit, remote call and fallback.</li>
+ * </ul>
+ * <p>Buckets range from {@code metrics.latency.minimum-expected} to {@code metrics.latency.maximum-expected}. Lower
+ * latencies fall in the first bucket, and higher ones in the last, but the maximum is always exact.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.feignclient.CachingUserClient
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    static final Set<String> LATENCY_TIMERS = Set.of(
+            "http.server.requests",
+            MethodMetricsAspect.SERVICE_TIMER,
+            MethodMetricsAspect.REPOSITORY_TIMER,
+            SerializationTimer.TIMER_NAME,
+            "user.client.lookup");
+
+    @Bean
+    public MeterFilter latencyHistogramFilter(@Value("${metrics.latency.minimum-expected:5us}") Duration minimumExpected,
+                                              @Value("${metrics.latency.maximum-expected:10s}") Duration maximumExpected) {
+        DistributionStatisticConfig histogram = DistributionStatisticConfig.builder()
+                .percentiles(0.5, 0.99, 0.999)
+                .percentilesHistogram(true)
+                .minimumExpectedValue((double) minimumExpected.toNanos())
+                .maximumExpectedValue((double) maximumExpected.toNanos())
+                .build();
+
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() == Meter.Type.TIMER && LATENCY_TIMERS.contains(id.getName())) {
+                    return histogram.merge(config);
+                }
+                return config;
+            }
+        };
+    }
+
+    @Bean
+    public WebMvcConfigurer serializationTimerConfigurer(SerializationTimer serializationTimer) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(serializationTimer);
+            }
+        };
+    }
+}
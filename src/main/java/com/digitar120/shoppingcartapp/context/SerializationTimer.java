@@ -0,0 +1,114 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.jfr.SerializationEvent;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.Hibernate;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Times writing response bodies, as {@code http.server.serialization}, tagged with the declared type of the body.
+ * <p>The time runs from the moment the controller returns the body, just before the message converter writes it, to the
+ * end of the request. It includes flushing the response buffer to the client, when the body exceeds it. It doesn't
+ * depend on which converter writes the body, so error bodies are timed too.</p>
+ * <p>The same span is recorded as a {@link SerializationEvent}, when a Flight Recorder recording enables it.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see MetricsConfiguration
+ */
+@ControllerAdvice
+public class SerializationTimer implements ResponseBodyAdvice<Object>, HandlerInterceptor {
+
+    public static final String TIMER_NAME = "http.server.serialization";
+
+    private static final String START_ATTRIBUTE = SerializationTimer.class.getName() + ".start";
+    private static final String TYPE_ATTRIBUTE = SerializationTimer.class.getName() + ".type";
+    private static final String EVENT_ATTRIBUTE = SerializationTimer.class.getName() + ".event";
+
+    /**
+     * Tags use simple names, with type arguments: {@code List<ProductView>}.
+     */
+    private static final Pattern PACKAGE_PREFIX = Pattern.compile("[\\w$]+\\.(?=[\\w$])");
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Type, Timer> timers = new ConcurrentHashMap<>();
+
+    public SerializationTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest servletRequest) {
+            HttpServletRequest httpRequest = servletRequest.getServletRequest();
+            httpRequest.setAttribute(TYPE_ATTRIBUTE, returnType.getGenericParameterType());
+
+            SerializationEvent event = SerializationEvent.start();
+            if (event.isEnabled()) {
+                describe(event.request(httpRequest.getRequestURI(), simpleName(returnType.getGenericParameterType())), body);
+                httpRequest.setAttribute(EVENT_ATTRIBUTE, event);
+            }
+
+            httpRequest.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return body;
+    }
+
+    private static void describe(SerializationEvent event, Object body) {
+        if (body instanceof CartView cart) {
+            event.cart(cart.id(), cart.items().size());
+        } else if (body instanceof Cart cart) {
+            // Contar los ítems no debe inicializar la colección
+            event.cart(cart.getId(), Hibernate.isInitialized(cart.getItems()) ? cart.getItems().size() : -1);
+        } else if (body instanceof Collection<?> elements) {
+            event.items(elements.size());
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        // Sin cuerpo escrito, no hay nada que medir
+        if (request.getAttribute(START_ATTRIBUTE) instanceof Long start) {
+            timer((Type) request.getAttribute(TYPE_ATTRIBUTE)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (request.getAttribute(EVENT_ATTRIBUTE) instanceof SerializationEvent event) {
+            event.finish(ex != null);
+        }
+    }
+
+    private Timer timer(Type bodyType) {
+        return timers.computeIfAbsent(bodyType, key -> Timer.builder(TIMER_NAME)
+                .description("Time taken to write a response body")
+                .tag("type", simpleName(key))
+                .register(meterRegistry));
+    }
+
+    private static String simpleName(Type bodyType) {
+        return PACKAGE_PREFIX.matcher(bodyType.getTypeName()).replaceAll("");
+    }
+}
@@ -0,0 +1,79 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.persistence.jdbc.StatementCounter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the JDBC statements executed by each request, and publishes them as {@code http.server.statements}, tagged
+ * with the {@code method} and the {@code uri} pattern, such as {@code GET /cart/{id}}.
+ * <p>The count runs from the moment the handler is found to the end of the request, so it includes lazy loading during
+ * serialization. Asynchronous requests, such as streamed responses, aren't published: their statements run on another
+ * thread.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see JdbcInstrumentationConfiguration
+ */
+public class StatementCountInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String SUMMARY_NAME = "http.server.statements";
+
+    private static final String SCOPE_ATTRIBUTE = StatementCountInterceptor.class.getName() + ".scope";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Endpoint, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public StatementCountInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // El despacho asíncrono vuelve a pasar por aquí, en otro hilo
+        if (request.getAttribute(SCOPE_ATTRIBUTE) == null) {
+            request.setAttribute(SCOPE_ATTRIBUTE, StatementCounter.open(request.getMethod() + " " + uriOf(request)));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(SCOPE_ATTRIBUTE) instanceof StatementCounter.Scope scope) {
+            scope.close();
+            request.setAttribute(SCOPE_ATTRIBUTE, Boolean.FALSE);
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(SCOPE_ATTRIBUTE) instanceof StatementCounter.Scope scope) {
+            scope.close();
+            request.removeAttribute(SCOPE_ATTRIBUTE);
+
+            summary(new Endpoint(request.getMethod(), uriOf(request))).record(scope.count());
+        }
+    }
+
+    private DistributionSummary summary(Endpoint endpoint) {
+        return summaries.computeIfAbsent(endpoint, key -> DistributionSummary.builder(SUMMARY_NAME)
+                .description("JDBC statements executed by a request")
+                .baseUnit("statements")
+                .tag("method", key.method())
+                .tag("uri", key.uri())
+                .register(meterRegistry));
+    }
+
+    private static String uriOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? "UNKNOWN" : pattern.toString();
+    }
+
+    private record Endpoint(String method, String uri) {
+    }
+}
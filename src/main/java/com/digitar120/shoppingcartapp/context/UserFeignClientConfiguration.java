@@ -14,54 +14,52 @@ import org.springframework.security.oauth2.client.*;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
-import org.springframework.security.oauth2.client.web.DefaultOAuth2AuthorizedClientManager;
-import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
 
 /**
  * Outgoing authorized FeignClient calls configuration. Defines call behavior for calls to the User service.
  * @author Gabriel Pérez (digitar120)
  * @see com.digitar120.shoppingcartapp.service.CartService#findByUserId(Integer) 
+ * @see ClientCredentialsTokenHolder
  */
 
 @Configuration
 public class UserFeignClientConfiguration {
 
+    /**
+     * Authorizes the outgoing calls. Unlike {@code DefaultOAuth2AuthorizedClientManager}, it doesn't need an incoming
+     * HTTP request, so {@link ClientCredentialsTokenHolder} can renew tokens from a background thread.
+     * @param clientRegistrationRepository Registered OAuth2 clients.
+     * @param authorizedClientService Storage of authorized clients.
+     * @return A client credentials capable manager.
+     */
     @Bean
     public OAuth2AuthorizedClientManager authorizedClientManager(
             ClientRegistrationRepository clientRegistrationRepository,
-            OAuth2AuthorizedClientRepository authorizedClientRepository) {
+            OAuth2AuthorizedClientService authorizedClientService) {
 
         OAuth2AuthorizedClientProvider authorizedClientProvider =
                 OAuth2AuthorizedClientProviderBuilder.builder()
-                        .authorizationCode()
                         .refreshToken()
                         .clientCredentials()
                         .build();
 
-        DefaultOAuth2AuthorizedClientManager authorizedClientManager =
-                new DefaultOAuth2AuthorizedClientManager(
-                        clientRegistrationRepository, authorizedClientRepository);
+        AuthorizedClientServiceOAuth2AuthorizedClientManager authorizedClientManager =
+                new AuthorizedClientServiceOAuth2AuthorizedClientManager(
+                        clientRegistrationRepository, authorizedClientService);
         authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
 
         return authorizedClientManager;
     }
 
     /**
-     * This bean adds a header containing an OAuth2 token to the HTTP request. The access token is preconfigured.
-     * @param manager
+     * This bean adds a header containing an OAuth2 token to the HTTP request. The access token is obtained and renewed
+     * by {@link ClientCredentialsTokenHolder}, so this only reads it.
+     * @param tokenHolder Holder of the current access token.
      * @return
      */
     @Bean
-    public RequestInterceptor oauth2FeignRequestInterceptor(OAuth2AuthorizedClientManager manager){
-        return requestTemplate -> {
-            OAuth2AuthorizeRequest auth2AuthorizeRequest = OAuth2AuthorizeRequest
-                    .withClientRegistrationId("keycloak")
-                    .principal("principal")
-                    .build();
-
-            OAuth2AuthorizedClient client = manager.authorize(auth2AuthorizeRequest);
-            requestTemplate.header("Authorization", "Bearer " + client.getAccessToken().getTokenValue());
-        };
+    public RequestInterceptor oauth2FeignRequestInterceptor(ClientCredentialsTokenHolder tokenHolder){
+        return requestTemplate -> requestTemplate.header("Authorization", "Bearer " + tokenHolder.getTokenValue());
     }
 
     /**
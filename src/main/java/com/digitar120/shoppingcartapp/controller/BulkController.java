@@ -0,0 +1,164 @@
+package com.digitar120.shoppingcartapp.controller;
+
+import com.digitar120.shoppingcartapp.bulk.BulkExportService;
+import com.digitar120.shoppingcartapp.bulk.BulkFormat;
+import com.digitar120.shoppingcartapp.bulk.BulkImportService;
+import com.digitar120.shoppingcartapp.bulk.ImportReport;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk endpoint configuration, for Products and Carts.
+ * <p>Request bodies are read as they arrive, so they can be of any size, and so are responses written.</p>
+ * <p>Exports are written straight to the response, on the request thread, rather than through a
+ * {@code StreamingResponseBody}, so that they aren't cut by the timeout of asynchronous requests however long they
+ * take. They're compressed with gzip when the client accepts it.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see BulkImportService
+ * @see BulkExportService
+ */
+@RestController
+@RefreshScope
+public class BulkController {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final BulkImportService importService;
+    private final BulkExportService exportService;
+
+    public BulkController(BulkImportService importService, BulkExportService exportService) {
+        this.importService = importService;
+        this.exportService = exportService;
+    }
+
+    // Create operations
+
+    /**
+     * Import products, one per line.
+     * @param contentType NDJSON, with a {@code description} per line, or CSV, with a {@code description} column.
+     * @param body The products.
+     * @return The amount of products imported, and the rows rejected.
+     */
+    @Operation(summary = "Importar productos", description = "Importar productos en formato NDJSON o CSV, uno por línea. Las filas inválidas o con una descripción existente se rechazan sin detener la importación.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Importación completada. Incluye las filas rechazadas."),
+            @ApiResponse(code = 400, message = "El formato o la cabecera CSV son inválidos."),
+            @ApiResponse(code = 500, message = "Algo salió mal")
+    })
+    @PostMapping(value = "/products/import", consumes = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE})
+    public ImportReport importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        return importService.importProducts(body, contentType);
+    }
+
+    /**
+     * Import carts along with their items.
+     * @param contentType NDJSON, with a cart and its items per line, or CSV, with an item per line.
+     * @param body The carts.
+     * @return The amount of carts imported, and the rows rejected.
+     */
+    @Operation(summary = "Importar carritos", description = "Importar carritos con sus ítems, en formato NDJSON (un carrito por línea) o CSV (un ítem por línea, agrupados por cartId). Los carritos inválidos, de un usuario que ya tiene uno o con productos inexistentes se rechazan sin detener la importación.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Importación completada. Incluye las filas rechazadas."),
+            @ApiResponse(code = 400, message = "El formato o la cabecera CSV son inválidos."),
+            @ApiResponse(code = 500, message = "Algo salió mal")
+    })
+    @PostMapping(value = "/cart/import", consumes = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE})
+    public ImportReport importCarts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        return importService.importCarts(body, contentType);
+    }
+
+    // Read operations
+
+    /**
+     * Export carts along with their items, ordered by ID.
+     * @param after Only carts with a greater ID are exported, to resume an export.
+     * @param accept NDJSON, with a cart per line, or CSV, with an item per line.
+     * @param acceptEncoding Whether to compress the export with gzip.
+     * @param response Where the export is written.
+     */
+    @Operation(summary = "Exportar carritos", description = "Exportar los carritos con sus ítems, ordenados por ID, en formato NDJSON (un carrito por línea) o CSV (un ítem por línea). Para reanudar una exportación interrumpida, descartar el último carrito recibido e indicar el ID del anterior en \"after\".")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Exportación en curso."),
+            @ApiResponse(code = 400, message = "El ID desde el cual exportar es inválido."),
+            @ApiResponse(code = 503, message = "Hay demasiadas exportaciones en curso."),
+            @ApiResponse(code = 500, message = "Algo salió mal")
+    })
+    @GetMapping(value = "/cart/export", produces = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE})
+    public void exportCarts(@RequestParam(defaultValue = "0") long after,
+                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                            HttpServletResponse response) throws IOException {
+        BulkFormat format = BulkFormat.fromAccept(accept);
+        exportService.exportCarts(after, format, () -> openExport(response, format, acceptEncoding));
+    }
+
+    /**
+     * Export products, ordered by ID.
+     * @param after Only products with a greater ID are exported, to resume an export.
+     * @param accept NDJSON or CSV, with a product per line.
+     * @param acceptEncoding Whether to compress the export with gzip.
+     * @param response Where the export is written.
+     */
+    @Operation(summary = "Exportar productos", description = "Exportar los productos, ordenados por ID, en formato NDJSON o CSV, uno por línea. Para reanudar una exportación interrumpida, indicar en \"after\" el ID del último producto recibido completo.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Exportación en curso."),
+            @ApiResponse(code = 400, message = "El ID desde el cual exportar es inválido."),
+            @ApiResponse(code = 503, message = "Hay demasiadas exportaciones en curso."),
+            @ApiResponse(code = 500, message = "Algo salió mal")
+    })
+    @GetMapping(value = "/products/export", produces = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE})
+    public void exportProducts(@RequestParam(defaultValue = "0") long after,
+                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                               @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                               HttpServletResponse response) throws IOException {
+        BulkFormat format = BulkFormat.fromAccept(accept);
+        exportService.exportProducts(after, format, () -> openExport(response, format, acceptEncoding));
+    }
+
+    private static OutputStream openExport(HttpServletResponse response, BulkFormat format, String acceptEncoding) throws IOException {
+        response.setContentType(format.mediaType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        if (!acceptsGzip(acceptEncoding)) {
+            return response.getOutputStream();
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        // Con vaciado sincronizado, lo ya escrito llega al cliente sin esperar a que el bloque se complete
+        return new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE, true);
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!parts[0].strip().toLowerCase(Locale.ROOT).equals("gzip")) {
+                continue;
+            }
+            // "gzip;q=0" lo rechaza explícitamente
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].strip().toLowerCase(Locale.ROOT);
+                if (parameter.startsWith("q=") && parameter.substring(2).strip().matches("0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
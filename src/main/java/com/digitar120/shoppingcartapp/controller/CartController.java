@@ -3,18 +3,33 @@ package com.digitar120.shoppingcartapp.controller;
 import com.digitar120.shoppingcartapp.persistence.entity.Cart;
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
 import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.dto.CartPageDTO;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import com.digitar120.shoppingcartapp.service.dto.NewCartDTO;
+import com.digitar120.shoppingcartapp.service.dto.QuantityMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.v3.oas.annotations.Operation;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Set;
 
 /**
  * Cart endpoint configuration.
+ * <p>The version of a Cart is exposed as a strong ETag. Reads of a single Cart answer {@code If-None-Match} with
+ * HTTP 304, and changes to a Cart only apply if its version matches {@code If-Match}, failing with HTTP 412 otherwise.</p>
  * @author Gabriel Pérez (digitar120)
  */
 @RestController
@@ -23,9 +38,16 @@ import java.util.Set;
 @SuppressWarnings("never used")
 public class CartController {
 
+    /**
+     * Newline-delimited JSON, one Cart per line.
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
     private final CartService service;
-    public CartController(CartService service) {
+    private final ObjectWriter cartWriter;
+    public CartController(CartService service, ObjectMapper objectMapper) {
         this.service = service;
+        this.cartWriter = objectMapper.writerFor(CartView.class);
     }
 
     // Read operations
@@ -43,55 +65,134 @@ public class CartController {
             @ApiResponse(code = 500, message = "Algo salió mal.")
     })
     @GetMapping
-    public List<Cart> findAll(){
+    public List<CartView> findAll(){
         return this.service.findAll();
     }
 
+    /**
+     * List entries one page at a time, using the last ID of the previous page as a cursor.
+     * @param after {@code nextCursor} of the previous page. Omit it to get the first page.
+     * @param size Amount of entries per page.
+     * @return A page of carts, and the cursor to request the next one.
+     */
+    @Operation(summary = "Listar carritos por páginas", description = "Devuelve una página de carritos ordenados por ID, y el cursor para pedir la siguiente.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Completado correctamente"),
+            @ApiResponse(code = 400, message = "Los parámetros de paginación son inválidos."),
+            @ApiResponse(code = 500, message = "Algo salió mal.")
+    })
+    @GetMapping("/page")
+    public CartPageDTO findPage(@RequestParam(defaultValue = "0") Long after, @RequestParam(defaultValue = "50") Integer size){
+        return service.findPage(after, size);
+    }
+
+    /**
+     * Stream all entries as NDJSON, writing each cart as soon as it is read from the database.
+     * @param after Only carts with a greater ID are written. Allows resuming an interrupted stream.
+     * @return A streamed response, one cart per line.
+     */
+    @Operation(summary = "Transmitir todos los carritos", description = "Devuelve todos los carritos en formato NDJSON, uno por línea, a medida que se leen.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Completado correctamente"),
+            @ApiResponse(code = 500, message = "Algo salió mal.")
+    })
+    @GetMapping(value = "/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam(defaultValue = "0") Long after){
+        StreamingResponseBody body = outputStream -> {
+            try {
+                service.streamAll(after, cart -> {
+                    try {
+                        outputStream.write(cartWriter.writeValueAsBytes(cart));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
     /**
      * Find an entry by ID.
+     * <p>If the request carries {@code If-None-Match}, only the version of the cart is read first, so an unchanged cart
+     * is answered with HTTP 304 without reading its items.</p>
      * @param id ID to match the cart with.
+     * @param request Used to evaluate {@code If-None-Match}.
      * @return If the search is positive, a matching cart.
      */
     @Operation(summary = "Encontrar un carrito mediante ID.", description = "Devuelve un carrito junto con su lista de ítems y sus productos referenciados..")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Completado correctamente"),
+            @ApiResponse(code = 304, message = "El carrito no cambió desde la versión indicada en If-None-Match"),
             @ApiResponse(code = 404, message = "No se encontró el carrito"),
             @ApiResponse(code = 500, message = "Algo salió mal.")
     })
     @GetMapping("/{id}")
-    public Cart findById(@PathVariable Long id){
-        return service.findById(id);
+    public ResponseEntity<CartView> findById(@PathVariable Long id, WebRequest request){
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(CartETags.of(service.findVersion(id)))) {
+            return null;
+        }
+
+        CartView cart = service.findViewById(id);
+        return ResponseEntity.ok().eTag(CartETags.of(cart.version())).body(cart);
     }
 
     /**
      * Find an entry matching its referenced user ID.
+     * <p>The cart is read before {@code If-None-Match} is evaluated, since the user has to be checked anyway; an
+     * unchanged cart is answered with HTTP 304 and no body.</p>
      * @param userId Referenced user ID to match the cart with.
+     * @param request Used to evaluate {@code If-None-Match}.
      * @return A matching cart, if the search is positive.
      */
     @Operation(summary = "Encontrar mediante ID de usuario", description = "Devuelve un objeto carrito mediante ID de usuario.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Completado correctamente."),
+            @ApiResponse(code = 304, message = "El carrito no cambió desde la versión indicada en If-None-Match"),
             @ApiResponse(code=404, message = "No se encontró al usuario o al carrito.")
     })
     @GetMapping("/by-userid/{userId}")
-    public Cart findByUserId(@PathVariable Integer userId){
-        return service.findByUserId(userId);
+    public ResponseEntity<CartView> findByUserId(@PathVariable Integer userId, WebRequest request){
+        CartView cart = service.findByUserId(userId);
+        if (request.checkNotModified(CartETags.of(cart.version()))) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(CartETags.of(cart.version())).body(cart);
     }
 
     /**
      * List the contents of a cart's item set, matching the cart by ID.
+     * <p>The version of the cart is read first, so an unchanged cart is answered with HTTP 304 without reading its
+     * items.</p>
      * @param id ID to match the cart with.
+     * @param request Used to evaluate {@code If-None-Match}.
      * @return A matching cart's item set.
      */
     @Operation(summary = "Contenidos de un carrito.", description = "Listar contenidos de un carrito, mediante ID.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Completado correctamente"),
+            @ApiResponse(code = 304, message = "El carrito no cambió desde la versión indicada en If-None-Match"),
             @ApiResponse(code = 404, message = "No se encontró el carrito"),
             @ApiResponse(code = 500, message = "Algo salió mal.")
     })
     @GetMapping("/{id}/items")
-    public Set<Item> getCartItems (@PathVariable Long id){
-        return service.getContent(id);
+    public ResponseEntity<List<ItemView>> getCartItems (@PathVariable Long id, WebRequest request){
+        // Los ítems se leen después de la versión, así que nunca son más antiguos que la ETag
+        String etag = CartETags.of(service.findVersion(id));
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        return ResponseEntity.ok().eTag(etag).body(service.getContent(id));
     }
 
     // Create opeartions
@@ -118,6 +219,7 @@ public class CartController {
      * @param cart_id ID of the cart to affect.
      * @param product_id ID of the product to add to the set.
      * @param quantity Quantity of the product to add to the set.
+     * @param ifMatch Optional ETag of the version the change applies to.
      * @return An updated cart entry.
      */
     @Operation(summary = "Agregar elemento", description = "Agregar un único elemento al carrito, utilizando una URL.")
@@ -125,28 +227,59 @@ public class CartController {
             @ApiResponse(code = 200, message = "Elemento agregado"),
             @ApiResponse(code = 400, message = "La cantidad de producto ingresada es inválida."),
             @ApiResponse(code = 404, message = "No se encontró el producto referenciado."),
+            @ApiResponse(code = 409, message = "El carrito fue modificado por otra operación al mismo tiempo."),
+            @ApiResponse(code = 412, message = "El carrito no está en la versión indicada en If-Match."),
             @ApiResponse(code = 500, message = "Algo salió mal")
     })
     @PostMapping("/{cart_id}/product/{product_id}/quantity/{quantity}")
-    public Cart addItemToCart(@PathVariable Long cart_id, @PathVariable Long product_id, @PathVariable Integer quantity)    {
-        return service.addItemToCart(cart_id, product_id, quantity);
+    public ResponseEntity<Cart> addItemToCart(@PathVariable Long cart_id, @PathVariable Long product_id, @PathVariable Integer quantity,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)    {
+        Cart cart = service.addItemToCart(cart_id, product_id, quantity, CartETags.parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(CartETags.of(cart.getVersion())).body(cart);
+    }
+
+    /**
+     * Set or increment the quantity of a product in a cart, without loading the cart.
+     * @param cart_id ID of the cart to affect.
+     * @param product_id ID of the product to add to the set.
+     * @param quantity Quantity to set, or to add to the current one.
+     * @param mode {@code SET} to replace the current quantity, {@code INCREMENT} to add to it.
+     * @param ifMatch Optional ETag of the version the change applies to.
+     */
+    @Operation(summary = "Fijar o incrementar la cantidad de un elemento", description = "Crea el ítem o modifica su cantidad con una única sentencia, sin cargar el carrito. Con mode=INCREMENT, la cantidad se suma a la actual.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Elemento actualizado"),
+            @ApiResponse(code = 400, message = "La cantidad de producto ingresada es inválida."),
+            @ApiResponse(code = 404, message = "No se encontró el carrito o el producto referenciado."),
+            @ApiResponse(code = 412, message = "El carrito no está en la versión indicada en If-Match."),
+            @ApiResponse(code = 500, message = "Algo salió mal")
+    })
+    @PatchMapping("/{cart_id}/product/{product_id}/quantity/{quantity}")
+    public void upsertItem(@PathVariable Long cart_id, @PathVariable Long product_id, @PathVariable Integer quantity,
+                           @RequestParam(defaultValue = "SET") QuantityMode mode,
+                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        service.upsertItem(cart_id, product_id, quantity, mode, CartETags.parseIfMatch(ifMatch));
     }
 
     /**
      * Add several items to a cart's item set.
      * @param cartId ID of the cart to affect.
      * @param itemSet Item set to add to the cart. Read from JSON.
+     * @param ifMatch Optional ETag of the version the change applies to.
      */
     @Operation(summary = "Agregar varios elementos", description = "Agregar varios elementos, mediante JSON.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Elementos agregados"),
             @ApiResponse(code = 404, message = "No se encontró el producto referenciado en uno de los ítems."),
             @ApiResponse(code = 400, message = "La cantidad ingresada en uno de los ítems es inválida"),
+            @ApiResponse(code = 409, message = "El carrito fue modificado por otra operación al mismo tiempo."),
+            @ApiResponse(code = 412, message = "El carrito no está en la versión indicada en If-Match."),
             @ApiResponse(code = 500, message = "Algo salió mal")
     })
     @PostMapping("/{cartId}")
-    public void addMultipleItemsToCart(@PathVariable Long cartId, @RequestBody Set<Item> itemSet){
-        service.addMultipleItemsToCart(cartId, itemSet);
+    public void addMultipleItemsToCart(@PathVariable Long cartId, @RequestBody Set<Item> itemSet,
+                                       @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        service.addMultipleItemsToCart(cartId, itemSet, CartETags.parseIfMatch(ifMatch));
     }
 
     // Delete operations
@@ -155,31 +288,39 @@ public class CartController {
      * Delete an item from a cart.
      * @param cartId ID of the cart to affect.
      * @param itemId ID of the item to delete.
+     * @param ifMatch Optional ETag of the version the change applies to.
      * @return A copy of the updated cart entry.
      */
     @Operation(summary = "Eliminar elemento", description = "Eliminar un elemento de un carrito, mediante ID del carrito e ID del elemento.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Ítem eliminado"),
             @ApiResponse(code = 404, message = "No se encontró el carrito o el elemento."),
+            @ApiResponse(code = 409, message = "El carrito fue modificado por otra operación al mismo tiempo."),
+            @ApiResponse(code = 412, message = "El carrito no está en la versión indicada en If-Match."),
             @ApiResponse(code = 500, message = "Algo salió mal")
     })
     @DeleteMapping("/{cartId}/item/{itemId}")
-    public Cart deleteItemFromCart(@PathVariable Long cartId, @PathVariable Long itemId){
-        return service.deleteItemFromCart(cartId, itemId);
+    public ResponseEntity<Cart> deleteItemFromCart(@PathVariable Long cartId, @PathVariable Long itemId,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        Cart cart = service.deleteItemFromCart(cartId, itemId, CartETags.parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(CartETags.of(cart.getVersion())).body(cart);
     }
 
     /**
      * Delete a cart.
      * @param cartId ID of the cart to delete.
+     * @param ifMatch Optional ETag of the version the deletion applies to.
      */
     @Operation(summary = "Eliminar carrito", description = "Eliminar un carrito, mediante ID.")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Carrito eliminado"),
             @ApiResponse(code = 404, message = "No se encontró el carrito."),
+            @ApiResponse(code = 412, message = "El carrito no está en la versión indicada en If-Match."),
             @ApiResponse(code = 500, message = "Algo salió mal")
     })
     @DeleteMapping("/{cartId}")
-    public void deleteCart(@PathVariable Long cartId){
-        service.deleteCart(cartId);
+    public void deleteCart(@PathVariable Long cartId,
+                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        service.deleteCart(cartId, CartETags.parseIfMatch(ifMatch));
     }
 }
@@ -0,0 +1,49 @@
+package com.digitar120.shoppingcartapp.controller;
+
+/**
+ * Conversion between Cart versions and the strong ETags that represent them, such as {@code "3"}.
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.persistence.entity.Cart#getVersion()
+ */
+final class CartETags {
+
+    /**
+     * Stands for an {@code If-Match} value that can't match any version.
+     */
+    static final long NO_VERSION = -1L;
+
+    private CartETags() {
+    }
+
+    /**
+     * @param version Version of a Cart.
+     * @return The ETag of that version, quoted.
+     */
+    static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Reads the version a client expects from an {@code If-Match} header.
+     * <p>Only a single strong ETag is recognized. Weak ETags, lists and foreign values match no version, so the
+     * request fails its precondition.</p>
+     * @param ifMatch Value of the header, if present.
+     * @return The expected version, {@code null} if the request is unconditional ({@code *} or no header), or
+     * {@link CartETags#NO_VERSION}.
+     */
+    static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String etag = ifMatch.trim();
+        if (etag.length() > 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+            try {
+                return Long.valueOf(etag.substring(1, etag.length() - 1));
+            } catch (NumberFormatException e) {
+                return NO_VERSION;
+            }
+        }
+        return NO_VERSION;
+    }
+}
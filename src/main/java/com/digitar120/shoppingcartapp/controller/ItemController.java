@@ -3,6 +3,7 @@ package com.digitar120.shoppingcartapp.controller;
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
 import com.digitar120.shoppingcartapp.service.ItemService;
 import com.digitar120.shoppingcartapp.service.dto.EditedItemDTO;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.web.bind.annotation.*;
 
@@ -31,7 +32,7 @@ public class ItemController {
      * @return A list of entries in the database
      */
     @GetMapping
-    public List<Item> findAll(){
+    public List<ItemView> findAll(){
         return this.itemService.findAll();
     }
 
@@ -41,7 +42,7 @@ public class ItemController {
      * @return A matching item, if the search is positive
      */
     @GetMapping("/{id}")
-    public Item findById(@PathVariable Long id){ return itemService.findById(id);}
+    public ItemView findById(@PathVariable Long id){ return itemService.findById(id);}
 
     // Create operations
     /**
@@ -2,6 +2,7 @@ package com.digitar120.shoppingcartapp.controller;
 
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
 import com.digitar120.shoppingcartapp.service.ProductService;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import io.swagger.v3.oas.annotations.Operation;
@@ -30,7 +31,7 @@ public class ProductController {
     // Read operations
 
     /**
-     * List all entries in the database.
+     * List all entries in the database. Served from a snapshot of the catalog, rebuilt only after it changes.
      * @return A list of all products registered.
      */
     @GetMapping
@@ -43,6 +44,24 @@ public class ProductController {
         return productService.listAllProducts();
     }
 
+    /**
+     * Search products by the words of their descriptions, ignoring case and accents. Meant for autocompletion: the
+     * last word may be incomplete.
+     * @param q Words to search.
+     * @param limit Maximum amount of results.
+     * @return Matching products, best matches first.
+     */
+    @Operation(summary = "Buscar productos", description = "Buscar productos por palabras de su descripción, sin distinguir mayúsculas ni acentos.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Solicitud correcta"),
+            @ApiResponse(code = 400, message = "Búsqueda vacía o cantidad de resultados fuera de rango"),
+            @ApiResponse(code = 500, message = "Algo salió mal")
+    })
+    @GetMapping("/search")
+    public List<ProductView> search(@RequestParam String q, @RequestParam(defaultValue = "10") Integer limit){
+        return productService.search(q, limit);
+    }
+
     /**
      * Find a product, matching its ID.
      * @param productId ID to match the product with.
@@ -21,7 +21,7 @@ public class CustomErrorDecoder implements ErrorDecoder {
      *        {@code IAM#getUser()}
      * @param response HTTP response where {@link Response#status() status} is greater than or equal
      *        to {@code 300}.
-     * @return Returns {@link BadRequestException} for 4xx errors and {@link ResponseStatusException} with code 500 for 5xx errors.
+     * @return Returns {@link RemoteClientErrorException}, a {@link BadRequestException}, for 4xx errors and {@link ResponseStatusException} with code 500 for 5xx errors.
      */
     @Override
     public Exception decode(String methodKey, Response response) {
@@ -35,7 +35,7 @@ public class CustomErrorDecoder implements ErrorDecoder {
         }
 
         else if (responseStatus.is4xxClientError()) {
-            return new BadRequestException("Request error");
+            return new RemoteClientErrorException("Request error", responseStatus);
         }
 
         else {
@@ -0,0 +1,27 @@
+package com.digitar120.shoppingcartapp.exception;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import org.springframework.http.HttpStatus;
+
+/**
+ * A 4xx response of the User service, decoded by {@link CustomErrorDecoder}.
+ * <p>It's still a {@link BadRequestException} to the service layer, but keeps the status of the response, so callers
+ * can tell a rejected query from a missing endpoint.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public class RemoteClientErrorException extends BadRequestException {
+
+    private final HttpStatus remoteStatus;
+
+    public RemoteClientErrorException(String message, HttpStatus remoteStatus){
+        super(message);
+        this.remoteStatus = remoteStatus;
+    }
+
+    /**
+     * @return Status of the User service response.
+     */
+    public HttpStatus getRemoteStatus(){
+        return remoteStatus;
+    }
+}
@@ -0,0 +1,18 @@
+package com.digitar120.shoppingcartapp.exception.globalhandler;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * HTTP 409 exception subclass. Thrown when a change can't be applied because another one was committed first.
+ * @author Gabriel Pérez (digitar120)
+ * @see CustomHttpStatusException
+ */
+public class ConflictException extends CustomHttpStatusException{
+    public ConflictException(String message){
+        super(message);
+    }
+
+    public HttpStatus getStatus(){
+        return HttpStatus.CONFLICT;
+    }
+}
@@ -4,11 +4,24 @@ import org.springframework.http.HttpStatus;
 
 /**
  * Superclass for HTTP error exceptions.
+ * <p>These exceptions are expected outcomes, such as an unknown ID, answered by {@link GlobalExceptionHandler} without
+ * logging them. They don't capture a stack trace by default, which is most of the cost of creating one. Set
+ * {@code errors.stack-traces=true} to capture them while debugging.</p>
  * @author Gabriel Pérez (digitar120)
  */
 public class CustomHttpStatusException extends RuntimeException{
 
-    public CustomHttpStatusException(String message){ super(message);}
+    private static volatile boolean stackTracesEnabled = false;
+
+    public CustomHttpStatusException(String message){ super(message, null, false, stackTracesEnabled);}
+
+    /**
+     * Enables or disables capturing stack traces in the exceptions created from now on.
+     * @param enabled {@code true} to capture stack traces.
+     */
+    public static void setStackTracesEnabled(boolean enabled){
+        stackTracesEnabled = enabled;
+    }
 
     /**
      * This method is meant to be overriden.
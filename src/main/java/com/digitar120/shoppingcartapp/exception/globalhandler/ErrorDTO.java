@@ -4,7 +4,8 @@ import lombok.Getter;
 import lombok.Setter;
 
 /**
- * Exception building DTO for the {@link GlobalExceptionHandler} class.
+ * Exception building DTO for the {@link GlobalExceptionHandler} class. The handler writes bodies with this shape
+ * directly as bytes, so this class documents the error format and reads it back.
  * @author Gabriel Pérez (digitar120)
  */
 @Getter
@@ -1,37 +1,106 @@
 package com.digitar120.shoppingcartapp.exception.globalhandler;
 
+import com.digitar120.shoppingcartapp.util.CachedTimestamp;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
-import java.util.Date;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * Exception handler involved in the FC fallback behavior.
+ * <p>Error bodies have the shape of {@link ErrorDTO}, but are written as bytes, from fragments prepared in advance: the
+ * opening for each status, and the timestamp, formatted once per second. Only the message is encoded per error.</p>
  * @author Gabriel Pérez (digitar120)
  */
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
-    private ResponseEntity<ErrorDTO> buildErrorDTO(CustomHttpStatusException ex){
-        ErrorDTO errorDTO = new ErrorDTO();
-        errorDTO.setMessage(ex.getMessage());
-        errorDTO.setStatus(String.valueOf(ex.getStatus().value()));
-        errorDTO.setTime(new Date().toString());
+    private static final byte[] MESSAGE_SEPARATOR = "\",\"message\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TIME_SEPARATOR = "\",\"time\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSING = "\"}".getBytes(StandardCharsets.UTF_8);
 
-        return new ResponseEntity<ErrorDTO>(errorDTO, ex.getStatus());
+    private static final byte[] CONFLICT_MESSAGE = encode("El carrito fue modificado por otra operación. Vuelva a consultarlo e intente nuevamente.");
+
+    private final CachedTimestamp timestamp;
+    /**
+     * Filled in the constructor and only read afterwards, so it's safe to share between requests.
+     */
+    private final Map<HttpStatus, byte[]> openings = new EnumMap<>(HttpStatus.class);
+
+    @Autowired
+    public GlobalExceptionHandler(@Value("${errors.stack-traces:false}") boolean stackTraces){
+        this(stackTraces, Clock.systemDefaultZone());
+    }
+
+    GlobalExceptionHandler(boolean stackTraces, Clock clock){
+        CustomHttpStatusException.setStackTracesEnabled(stackTraces);
+        this.timestamp = new CachedTimestamp(clock);
+
+        for (HttpStatus status : HttpStatus.values()) {
+            openings.put(status, ("{\"status\":\"" + status.value()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] encode(String message){
+        return message == null ? new byte[0] : JsonStringEncoder.getInstance().quoteAsUTF8(message);
+    }
+
+    private ResponseEntity<byte[]> buildErrorDTO(CustomHttpStatusException ex){
+        return buildErrorDTO(ex.getStatus(), encode(ex.getMessage()));
+    }
+
+    private ResponseEntity<byte[]> buildErrorDTO(HttpStatus status, byte[] message){
+        byte[] opening = openings.get(status);
+        byte[] time = timestamp.now().getBytes(StandardCharsets.UTF_8);
+
+        byte[] body = new byte[opening.length + MESSAGE_SEPARATOR.length + message.length + TIME_SEPARATOR.length + time.length + CLOSING.length];
+        int position = 0;
+        for (byte[] fragment : new byte[][]{opening, MESSAGE_SEPARATOR, message, TIME_SEPARATOR, time, CLOSING}) {
+            System.arraycopy(fragment, 0, body, position, fragment.length);
+            position += fragment.length;
+        }
+
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
     @ExceptionHandler(NotFoundException.class)
-    public ResponseEntity<ErrorDTO> generateNotFoundException(NotFoundException ex){
+    public ResponseEntity<byte[]> generateNotFoundException(NotFoundException ex){
         return buildErrorDTO(ex);
     }
 
     @ExceptionHandler(BadRequestException.class)
-    public ResponseEntity<ErrorDTO> generateBadRequestException(BadRequestException ex){
+    public ResponseEntity<byte[]> generateBadRequestException(BadRequestException ex){
         return buildErrorDTO(ex);
     }
 
     @ExceptionHandler(ServiceUnavailableException.class)
-    public ResponseEntity<ErrorDTO> generateServiceUnavailableException(ServiceUnavailableException ex){ return buildErrorDTO(ex);}
+    public ResponseEntity<byte[]> generateServiceUnavailableException(ServiceUnavailableException ex){ return buildErrorDTO(ex);}
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<byte[]> generatePreconditionFailedException(PreconditionFailedException ex){
+        return buildErrorDTO(ex);
+    }
+
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<byte[]> generateConflictException(ConflictException ex){
+        return buildErrorDTO(ex);
+    }
+
+    /**
+     * A concurrent change to the same Cart was committed first. The client should read the Cart again and retry.
+     */
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<byte[]> generateConflictException(ObjectOptimisticLockingFailureException ex){
+        return buildErrorDTO(HttpStatus.CONFLICT, CONFLICT_MESSAGE);
+    }
 }
@@ -0,0 +1,18 @@
+package com.digitar120.shoppingcartapp.exception.globalhandler;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * HTTP 412 exception subclass. Thrown when the {@code If-Match} version of a request doesn't match the current one.
+ * @author Gabriel Pérez (digitar120)
+ * @see CustomHttpStatusException
+ */
+public class PreconditionFailedException extends CustomHttpStatusException{
+    public PreconditionFailedException(String message){
+        super(message);
+    }
+
+    public HttpStatus getStatus(){
+        return HttpStatus.PRECONDITION_FAILED;
+    }
+}
@@ -0,0 +1,444 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.digitar120.shoppingcartapp.exception.RemoteClientErrorException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import com.digitar120.shoppingcartapp.jfr.UserLookupEvent;
+import com.digitar120.shoppingcartapp.util.SingleFlight;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Caching decorator for the {@link UserClient} FeignClient client. Being the primary {@code UserClient} bean, it's the
+ * one injected in the service layer.
+ * <p>User lookups are kept in a bounded cache. Users that exist and users that the User service didn't find are kept
+ * for different amounts of time. Other rejections, such as 401 or 429, say nothing about the user and aren't kept. The {@link UserFeignClientFallback} response is never cached, so the next lookup tries
+ * the User service again.</p>
+ * <p>Concurrent lookups of a user that isn't cached share a single call to the User service, through
+ * {@link SingleFlight}, including the non-blocking lookups of {@link ReactiveUserClient}. If
+ * {@code user-client.batch.enabled} is set, that call joins a {@link UserBatchLoader} batch instead of being sent on its
+ * own. Bulk lookups always go through the {@code UserBatchLoader}.</p>
+ * <p>Hit, miss and eviction counts are published as {@code cache.*} metrics, with the tag {@code cache=userClient}. The
+ * amount of lookups that shared another lookup's call is published as {@code user.client.coalesced}. Lookup latency is
+ * published as {@code user.client.lookup}, tagged with the {@code operation} ({@code single} or {@code bulk}) and its
+ * {@code result}: {@code hit} if served entirely from the cache, {@code remote} if the User service answered,
+ * {@code fallback} if it didn't, or {@code error}. Each lookup is also recorded as a {@link UserLookupEvent}, when a
+ * Flight Recorder recording enables it.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see UserClient
+ * @see UserCacheEndpoint
+ * @see ReactiveUserClient
+ */
+@Component
+@Primary
+public class CachingUserClient implements UserClient {
+
+    public static final String CACHE_NAME = "userClient";
+
+    // Operaciones y resultados de las consultas, en las métricas y los eventos
+    private static final String SINGLE = "single";
+    private static final String BULK = "bulk";
+    private static final String HIT = "hit";
+    private static final String REMOTE = "remote";
+    private static final String FALLBACK = "fallback";
+    private static final String ERROR = "error";
+
+    private final UserClient remoteUserClient;
+    private final UserBatchLoader batchLoader;
+    private final boolean batchingEnabled;
+    private final Cache<Integer, CachedUser> cache;
+    private final SingleFlight<Integer, CachedUser> remoteCalls = new SingleFlight<>();
+    private final LookupTimers singleLookups;
+    private final LookupTimers bulkLookups;
+
+    public CachingUserClient(@Qualifier(UserClient.REMOTE_QUALIFIER) UserClient remoteUserClient,
+                             UserBatchLoader batchLoader,
+                             MeterRegistry meterRegistry,
+                             @Value("${user-client.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${user-client.cache.positive-ttl:10m}") Duration positiveTtl,
+                             @Value("${user-client.cache.negative-ttl:30s}") Duration negativeTtl,
+                             @Value("${user-client.batch.enabled:false}") boolean batchingEnabled) {
+        this.remoteUserClient = remoteUserClient;
+        this.batchLoader = batchLoader;
+        this.batchingEnabled = batchingEnabled;
+        this.cache = CaffeineCacheMetrics.monitor(
+                meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfter(new CachedUserExpiry(positiveTtl.toNanos(), negativeTtl.toNanos()))
+                        .recordStats()
+                        .build(),
+                CACHE_NAME);
+
+        FunctionCounter.builder("user.client.coalesced", remoteCalls, SingleFlight::coalescedCalls)
+                .description("User lookups that shared a call already in progress")
+                .register(meterRegistry);
+
+        this.singleLookups = new LookupTimers(meterRegistry, SINGLE);
+        this.bulkLookups = new LookupTimers(meterRegistry, BULK);
+    }
+
+    /**
+     * Not cached: this is a full dump of the User service.
+     * @return A list of users registered in the Users endpoint.
+     */
+    @Override
+    public List<UserResponse> getAllUsers() {
+        return remoteUserClient.getAllUsers();
+    }
+
+    /**
+     * Query the cache, and the User service if the user isn't cached.
+     * @param userId ID to perform the query with in the Users endpoint.
+     * @return A matching user, or the {@link UserFeignClientFallback} response if the User service is unavailable.
+     * @throws BadRequestException If the User service rejected the query. Only users it didn't find are cached.
+     */
+    @Override
+    public UserResponse getUserByUserId(Integer userId) {
+        long start = System.nanoTime();
+        UserLookupEvent event = UserLookupEvent.start(SINGLE);
+        String result = ERROR;
+
+        try {
+            CachedUser cachedUser = cache.getIfPresent(userId);
+            event.cacheLookedUp(1, cachedUser == null ? 1 : 0);
+
+            if (cachedUser == null) {
+                cachedUser = remoteCalls.execute(userId, () -> fetch(userId));
+                event.remoteCalled();
+                result = cachedUser.isPositive() && isFallback(cachedUser.user) ? FALLBACK : REMOTE;
+            } else {
+                result = HIT;
+            }
+
+            return cachedUser.unwrap();
+        } finally {
+            singleLookups.timer(result).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.finish(userId, result);
+        }
+    }
+
+    /**
+     * Queries the User service and caches the result, unless it's the fallback response.
+     * @param userId ID to perform the query with in the Users endpoint.
+     * @return The result of the query, cached or not.
+     */
+    private CachedUser fetch(Integer userId) {
+        // Otra consulta pudo haber terminado entre la búsqueda en caché y ésta. No cuenta como acierto ni fallo.
+        CachedUser cachedUser = cache.asMap().get(userId);
+        if (cachedUser != null) {
+            return cachedUser;
+        }
+
+        try {
+            UserResponse user = batchingEnabled
+                    ? batchLoader.load(userId)
+                    : remoteUserClient.getUserByUserId(userId);
+            return store(userId, new CachedUser(user, null));
+        } catch (BadRequestException e) {
+            if (!isNotFound(e)) {
+                throw e;
+            }
+            return store(userId, new CachedUser(null, e.getMessage()));
+        }
+    }
+
+    /**
+     * Caches the result of a query to the User service, unless it's the fallback response.
+     * @param userId ID of the user.
+     * @param cachedUser The result of the query.
+     * @return The result of the query.
+     */
+    private CachedUser store(Integer userId, CachedUser cachedUser) {
+        // La respuesta de fallback no es una respuesta real
+        if (!cachedUser.isPositive() || !isFallback(cachedUser.user)) {
+            cache.put(userId, cachedUser);
+        }
+        return cachedUser;
+    }
+
+    /**
+     * Query the cache, and the User service for the users that aren't cached, with as few bulk calls as possible.
+     * @param userIds IDs to perform the query with in the Users endpoint.
+     * @return The matching users, in the order of {@code userIds}. Users that the User service rejected are left out.
+     * If the User service is unavailable, a list with the {@link UserFeignClientFallback} response.
+     */
+    @Override
+    public List<UserResponse> getUsersByUserIds(Collection<Integer> userIds) {
+        long start = System.nanoTime();
+        UserLookupEvent event = UserLookupEvent.start(BULK);
+        String result = ERROR;
+
+        try {
+            Collection<Integer> distinctIds = new LinkedHashSet<>(userIds);
+            Map<Integer, CachedUser> cachedUsers = cache.getAllPresent(distinctIds);
+
+            List<Integer> missingIds = new ArrayList<>();
+            for (Integer userId : distinctIds) {
+                if (!cachedUsers.containsKey(userId)) {
+                    missingIds.add(userId);
+                }
+            }
+            event.cacheLookedUp(distinctIds.size(), missingIds.size());
+
+            Map<Integer, UserResponse> fetchedUsers = missingIds.isEmpty() ? Map.of() : batchLoader.loadMany(missingIds);
+            event.remoteCalled();
+            result = missingIds.isEmpty() ? HIT : REMOTE;
+
+            List<UserResponse> users = new ArrayList<>();
+            for (Integer userId : distinctIds) {
+                CachedUser cachedUser = cachedUsers.get(userId);
+
+                if (cachedUser == null) {
+                    UserResponse user = fetchedUsers.get(userId);
+
+                    if (user != null && isFallback(user)) {
+                        result = FALLBACK;
+                        return List.of(user);
+                    }
+
+                    cachedUser = user != null
+                            ? new CachedUser(user, null)
+                            : new CachedUser(null, "No se encontró el usuario N°" + userId);
+                    cache.put(userId, cachedUser);
+                }
+
+                if (cachedUser.isPositive()) {
+                    users.add(cachedUser.user);
+                }
+            }
+
+            return users;
+        } finally {
+            bulkLookups.timer(result).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            event.finish(0, result);
+        }
+    }
+
+    /**
+     * Non-blocking lookup for {@link ReactiveUserClient}: queries the cache, and the User service if the user isn't
+     * cached. Lookups of a user that isn't cached share the call in progress, whether they're blocking or not. Latency
+     * is published as {@code user.client.lookup}, and each lookup recorded as a {@link UserLookupEvent}, as they are
+     * for blocking lookups.
+     * @param userId ID to perform the query with in the Users endpoint.
+     * @param remoteCall Queries the User service, ending with a {@link BadRequestException} if it rejects the query.
+     * @return A matching user, or the {@link UserFeignClientFallback} response if the User service is unavailable.
+     * Ends with a {@link BadRequestException} if the User service rejected the query.
+     */
+    Mono<UserResponse> getUserByUserId(Integer userId, Function<Integer, Mono<UserResponse>> remoteCall) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            UserLookupEvent event = UserLookupEvent.start(SINGLE);
+            // Si la consulta se cancela o falla antes de resolverse, se registra como error
+            AtomicReference<String> result = new AtomicReference<>(ERROR);
+
+            Mono<CachedUser> lookup;
+            CachedUser cachedUser = cache.getIfPresent(userId);
+            event.cacheLookedUp(1, cachedUser == null ? 1 : 0);
+            if (cachedUser != null) {
+                result.set(HIT);
+                lookup = Mono.just(cachedUser);
+            } else {
+                lookup = Mono.fromFuture(remoteCalls.executeAsync(userId, () -> fetchAsync(userId, remoteCall)))
+                        .doOnNext(fetched -> {
+                            event.remoteCalled();
+                            result.set(fetched.isPositive() && isFallback(fetched.user) ? FALLBACK : REMOTE);
+                        });
+            }
+
+            return lookup
+                    .map(CachedUser::unwrap)
+                    .doFinally(signal -> {
+                        singleLookups.timer(result.get()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        event.finish(userId, result.get());
+                    });
+        });
+    }
+
+    /**
+     * Non-blocking version of {@link CachingUserClient#fetch(Integer)}.
+     * @param userId ID to perform the query with in the Users endpoint.
+     * @param remoteCall Queries the User service, unless batching is enabled.
+     * @return The result of the query, cached or not.
+     */
+    private CompletableFuture<CachedUser> fetchAsync(Integer userId, Function<Integer, Mono<UserResponse>> remoteCall) {
+        CachedUser cachedUser = cache.asMap().get(userId);
+        if (cachedUser != null) {
+            return CompletableFuture.completedFuture(cachedUser);
+        }
+
+        // El lote se espera bloqueando, así que no ocupa el hilo que suscribe
+        Mono<UserResponse> call = batchingEnabled
+                ? Mono.fromCallable(() -> batchLoader.load(userId)).subscribeOn(Schedulers.boundedElastic())
+                : remoteCall.apply(userId);
+
+        return call
+                .map(user -> store(userId, new CachedUser(user, null)))
+                .onErrorResume(CachingUserClient::isNotFound, e -> Mono.just(store(userId, new CachedUser(null, e.getMessage()))))
+                .toFuture();
+    }
+
+    /**
+     * Removes a user from the cache, so the next lookup queries the User service.
+     * @param userId ID of the user to remove.
+     */
+    public void invalidate(Integer userId) {
+        cache.invalidate(userId);
+    }
+
+    /**
+     * Removes all users from the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return Hit, miss and eviction counts since startup.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return Amount of lookups that shared a call already in progress, since startup.
+     */
+    public long coalescedCalls() {
+        return remoteCalls.coalescedCalls();
+    }
+
+    /**
+     * @return Approximate amount of cached users.
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Checks if a response is the signalling response built by {@link UserFeignClientFallback}.
+     * @param user A response from the User service.
+     * @return {@code true} if the response doesn't come from the User service.
+     */
+    public static boolean isFallback(UserResponse user) {
+        return user == null || user.getId() == null || user.getId() == -1;
+    }
+
+    /**
+     * Checks if a lookup failed because the User service didn't find the user. Only then is the rejection cached.
+     * @param e The failure of a lookup.
+     * @return {@code true} if the User service answered 404.
+     */
+    private static boolean isNotFound(Throwable e) {
+        return e instanceof RemoteClientErrorException rejection && rejection.getRemoteStatus() == HttpStatus.NOT_FOUND;
+    }
+
+    /**
+     * A cached lookup: either a user, or the message of the User service rejection.
+     */
+    private static final class CachedUser {
+        private final UserResponse user;
+        private final String rejectionMessage;
+
+        private CachedUser(UserResponse user, String rejectionMessage) {
+            this.user = user;
+            this.rejectionMessage = rejectionMessage;
+        }
+
+        private boolean isPositive() {
+            return rejectionMessage == null;
+        }
+
+        private UserResponse unwrap() {
+            if (!isPositive()) {
+                throw new BadRequestException(rejectionMessage);
+            }
+            return user;
+        }
+    }
+
+    /**
+     * Lookup timers of one operation, one per result.
+     */
+    private static final class LookupTimers {
+        private final Timer hit;
+        private final Timer remote;
+        private final Timer fallback;
+        private final Timer error;
+
+        private LookupTimers(MeterRegistry meterRegistry, String operation) {
+            this.hit = timer(meterRegistry, operation, HIT);
+            this.remote = timer(meterRegistry, operation, REMOTE);
+            this.fallback = timer(meterRegistry, operation, FALLBACK);
+            this.error = timer(meterRegistry, operation, ERROR);
+        }
+
+        private Timer timer(String result) {
+            return switch (result) {
+                case HIT -> hit;
+                case REMOTE -> remote;
+                case FALLBACK -> fallback;
+                default -> error;
+            };
+        }
+
+        private static Timer timer(MeterRegistry meterRegistry, String operation, String result) {
+            return Timer.builder("user.client.lookup")
+                    .description("Time taken to look up users, from the cache or the User service")
+                    .tag("operation", operation)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Gives positive and negative lookups their own time to live. Reading an entry doesn't extend it.
+     */
+    private static final class CachedUserExpiry implements Expiry<Integer, CachedUser> {
+        private final long positiveTtlNanos;
+        private final long negativeTtlNanos;
+
+        private CachedUserExpiry(long positiveTtlNanos, long negativeTtlNanos) {
+            this.positiveTtlNanos = positiveTtlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(Integer key, CachedUser value, long currentTime) {
+            return value.isPositive() ? positiveTtlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer key, CachedUser value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer key, CachedUser value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.digitar120.shoppingcartapp.context.CircuitBreakerConfig;
+import com.digitar120.shoppingcartapp.context.ClientCredentialsTokenHolder;
+import com.digitar120.shoppingcartapp.exception.RemoteClientErrorException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking version of {@link UserClient#getUserByUserId(Integer)}, so the calling thread can do other work while
+ * the User service answers.
+ * <p>Calls go through the {@code userClient} {@link ReactiveCircuitBreaker}, and are cut short after
+ * {@code user-client.reactive.timeout}. If the call fails, times out or the circuit is open, the result is the same
+ * signalling response built by {@link UserFeignClientFallback}. 4xx responses are rejections of the query, and end
+ * with a {@link RemoteClientErrorException} holding their status instead, as they do through
+ * {@link com.digitar120.shoppingcartapp.exception.CustomErrorDecoder}.</p>
+ * <p>Lookups go through {@link CachingUserClient}: they share its cache, and a lookup of a user that isn't cached joins
+ * the call already in progress for that user, if any.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CircuitBreakerConfig
+ * @see com.digitar120.shoppingcartapp.service.CartService#findByUserId(Integer)
+ */
+@Component
+public class ReactiveUserClient {
+
+    private final WebClient webClient;
+    private final ReactiveCircuitBreaker circuitBreaker;
+    private final ClientCredentialsTokenHolder tokenHolder;
+    private final CachingUserClient cache;
+    private final Duration timeout;
+
+    public ReactiveUserClient(WebClient.Builder webClientBuilder,
+                              ReactiveCircuitBreaker circuitBreaker,
+                              ClientCredentialsTokenHolder tokenHolder,
+                              CachingUserClient cache,
+                              @Value("${user-client.url:http://host.docker.internal:9001}") String baseUrl,
+                              @Value("${user-client.reactive.timeout:1s}") Duration timeout) {
+        this.webClient = webClientBuilder.baseUrl(baseUrl + "/user").build();
+        this.circuitBreaker = circuitBreaker;
+        this.tokenHolder = tokenHolder;
+        this.cache = cache;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Query the cache, and the User service if the user isn't cached. Nothing is done until the result is subscribed
+     * to.
+     * @param userId ID to perform the query with in the Users endpoint.
+     * @return A matching user, or the {@link UserFeignClientFallback} response if the User service is unavailable.
+     * Ends with a {@link BadRequestException} if the User service rejected the query.
+     */
+    public Mono<UserResponse> getUserByUserId(Integer userId) {
+        return cache.getUserByUserId(userId, this::fetch);
+    }
+
+    private Mono<UserResponse> fetch(Integer userId) {
+        // Diferido, para que un error al obtener el token también pase por el circuit breaker
+        Mono<UserResponse> call = Mono.defer(() -> webClient.get()
+                .uri("/{userId}", userId)
+                .headers(headers -> headers.setBearerAuth(tokenHolder.getTokenValue()))
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, response -> Mono.error(new RemoteClientErrorException("Request error", response.statusCode())))
+                .bodyToMono(UserResponse.class))
+                .timeout(timeout);
+
+        return circuitBreaker.run(call, throwable -> throwable instanceof BadRequestException
+                ? Mono.error(throwable)
+                : Mono.just(new UserResponse(-1)));
+    }
+}
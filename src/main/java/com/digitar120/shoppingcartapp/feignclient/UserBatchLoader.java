@@ -0,0 +1,258 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.digitar120.shoppingcartapp.exception.RemoteClientErrorException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Groups user lookups into bulk calls to the User service, in the manner of a DataLoader.
+ * <p>{@link UserBatchLoader#load(Integer)} collects lookups for a short window, or until a batch is full, and resolves
+ * them with a single {@link UserClient#getUsersByUserIds(Collection)} call. The first caller of a window waits for it
+ * and sends the call from its own thread, so the call keeps that request's context (the OAuth2 interceptor needs
+ * it).</p>
+ * <p>{@link UserBatchLoader#loadMany(Collection)} skips the window, for callers that already have all the IDs.</p>
+ * <p>If the User service answers the bulk call with 404 or 405, it doesn't have the bulk endpoint: the loader switches
+ * to {@link UserClient#getAllUsers()}, filtering the result locally, and tries the bulk endpoint again after
+ * {@code user-client.batch.bulk-endpoint-retry}. Other rejections, such as 401, 403 or 429, are failures of the call
+ * rather than answers about its users: every lookup of that call gets the {@link UserFeignClientFallback} response,
+ * which isn't cached.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CachingUserClient
+ */
+@Component
+public class UserBatchLoader {
+
+    private final UserClient remoteUserClient;
+    private final int maxBatchSize;
+    private final long windowNanos;
+
+    private final Object lock = new Object();
+    private Batch openBatch;
+
+    private final long bulkEndpointRetryNanos;
+
+    /**
+     * Becomes {@code false} when the User service answers that it doesn't have the bulk endpoint, until
+     * {@code bulkEndpointRetryAt}.
+     */
+    private volatile boolean bulkEndpointAvailable = true;
+    private volatile long bulkEndpointRetryAt;
+
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder batchedLookups = new LongAdder();
+
+    public UserBatchLoader(@Qualifier(UserClient.REMOTE_QUALIFIER) UserClient remoteUserClient,
+                           MeterRegistry meterRegistry,
+                           @Value("${user-client.batch.max-size:100}") int maxBatchSize,
+                           @Value("${user-client.batch.window:5ms}") Duration window,
+                           @Value("${user-client.batch.bulk-endpoint-retry:10m}") Duration bulkEndpointRetry) {
+        this.remoteUserClient = remoteUserClient;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = window.toNanos();
+        this.bulkEndpointRetryNanos = bulkEndpointRetry.toNanos();
+
+        FunctionCounter.builder("user.client.batch.calls", remoteCalls, LongAdder::sum)
+                .description("Bulk calls made to the User service")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.client.batch.lookups", batchedLookups, LongAdder::sum)
+                .description("User lookups resolved through bulk calls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Looks up a user as part of the current batch.
+     * @param userId ID to perform the query with in the Users endpoint.
+     * @return A matching user, or the {@link UserFeignClientFallback} response if the User service is unavailable.
+     * @throws BadRequestException If the user doesn't exist.
+     */
+    public UserResponse load(Integer userId) {
+        Batch batch;
+        boolean leader;
+        CompletableFuture<UserResponse> lookup;
+
+        synchronized (lock) {
+            leader = openBatch == null;
+            if (leader) {
+                openBatch = new Batch();
+            }
+
+            batch = openBatch;
+            lookup = batch.add(userId);
+
+            if (batch.size() >= maxBatchSize) {
+                openBatch = null;
+                batch.full.countDown();
+            }
+        }
+
+        if (leader) {
+            batch.awaitFullOrWindow(windowNanos);
+
+            synchronized (lock) {
+                if (openBatch == batch) {
+                    openBatch = null;
+                }
+            }
+
+            batch.complete(this::fetch);
+        }
+
+        return await(lookup);
+    }
+
+    /**
+     * Looks up several users, in as few bulk calls as {@code user-client.batch.max-size} allows.
+     * @param userIds IDs to perform the query with in the Users endpoint.
+     * @return The matching users, by ID. IDs that match no user are left out. If the User service is unavailable or
+     * rejects a call, the IDs of that call are mapped to the {@link UserFeignClientFallback} response.
+     */
+    public Map<Integer, UserResponse> loadMany(Collection<Integer> userIds) {
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<Integer, UserResponse> users = new HashMap<>();
+
+        for (int from = 0; from < distinctIds.size(); from += maxBatchSize) {
+            List<Integer> chunk = distinctIds.subList(from, Math.min(from + maxBatchSize, distinctIds.size()));
+            users.putAll(fetch(chunk));
+        }
+
+        return users;
+    }
+
+    /**
+     * Executes a single bulk call.
+     * @param userIds IDs to look up. At most {@code user-client.batch.max-size} of them.
+     * @return The matching users, by ID. If the User service is unavailable or rejects the call, every ID is mapped to
+     * the fallback response.
+     */
+    private Map<Integer, UserResponse> fetch(Collection<Integer> userIds) {
+        remoteCalls.increment();
+        batchedLookups.add(userIds.size());
+
+        List<UserResponse> response = null;
+
+        if (bulkEndpointAvailable || System.nanoTime() - bulkEndpointRetryAt >= 0) {
+            try {
+                response = remoteUserClient.getUsersByUserIds(userIds);
+                bulkEndpointAvailable = true;
+            } catch (RemoteClientErrorException e) {
+                if (!isMissingEndpoint(e.getRemoteStatus())) {
+                    // Un rechazo de la llamada no dice nada de sus usuarios
+                    return fallback(userIds);
+                }
+                // El servicio de usuarios no tiene el endpoint de consultas múltiples
+                bulkEndpointRetryAt = System.nanoTime() + bulkEndpointRetryNanos;
+                bulkEndpointAvailable = false;
+            }
+        }
+
+        if (response == null) {
+            response = remoteUserClient.getAllUsers();
+        }
+
+        Map<Integer, UserResponse> users = new HashMap<>();
+
+        for (UserResponse user : response) {
+            if (CachingUserClient.isFallback(user)) {
+                return fallback(userIds);
+            }
+            if (userIds.contains(user.getId())) {
+                users.put(user.getId(), user);
+            }
+        }
+
+        return users;
+    }
+
+    private static Map<Integer, UserResponse> fallback(Collection<Integer> userIds) {
+        UserResponse fallback = new UserResponse(-1);
+        Map<Integer, UserResponse> users = new HashMap<>();
+        userIds.forEach(userId -> users.put(userId, fallback));
+        return users;
+    }
+
+    private static boolean isMissingEndpoint(HttpStatus status) {
+        return status == HttpStatus.NOT_FOUND || status == HttpStatus.METHOD_NOT_ALLOWED;
+    }
+
+    private static UserResponse await(CompletableFuture<UserResponse> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lookups collected during one window.
+     */
+    private static final class Batch {
+        private final Map<Integer, CompletableFuture<UserResponse>> lookups = new LinkedHashMap<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+
+        /**
+         * Only called while holding the loader's lock.
+         */
+        private CompletableFuture<UserResponse> add(Integer userId) {
+            return lookups.computeIfAbsent(userId, key -> new CompletableFuture<>());
+        }
+
+        private int size() {
+            return lookups.size();
+        }
+
+        private void awaitFullOrWindow(long windowNanos) {
+            try {
+                full.await(windowNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Only called once the batch is closed, so {@code lookups} no longer changes.
+         */
+        private void complete(Function<Collection<Integer>, Map<Integer, UserResponse>> fetcher) {
+            try {
+                Set<Integer> userIds = lookups.keySet();
+                Map<Integer, UserResponse> users = fetcher.apply(userIds);
+
+                lookups.forEach((userId, lookup) -> {
+                    UserResponse user = users.get(userId);
+                    if (user != null) {
+                        lookup.complete(user);
+                    } else {
+                        lookup.completeExceptionally(
+                                new RemoteClientErrorException("No se encontró el usuario N°" + userId, HttpStatus.NOT_FOUND));
+                    }
+                });
+            } catch (RuntimeException e) {
+                lookups.values().forEach(lookup -> lookup.completeExceptionally(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to inspect and invalidate the user lookup cache, at {@code /actuator/usercache}.
+ * @author Gabriel Pérez (digitar120)
+ * @see CachingUserClient
+ */
+@Component
+@Endpoint(id = "usercache")
+public class UserCacheEndpoint {
+
+    private final CachingUserClient cachingUserClient;
+
+    public UserCacheEndpoint(CachingUserClient cachingUserClient) {
+        this.cachingUserClient = cachingUserClient;
+    }
+
+    /**
+     * @return Size and statistics of the cache.
+     */
+    @ReadOperation
+    public Map<String, Object> stats() {
+        CacheStats stats = cachingUserClient.stats();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("size", cachingUserClient.size());
+        response.put("hits", stats.hitCount());
+        response.put("misses", stats.missCount());
+        response.put("evictions", stats.evictionCount());
+        response.put("coalesced", cachingUserClient.coalescedCalls());
+        return response;
+    }
+
+    /**
+     * Empty the cache.
+     */
+    @DeleteOperation
+    public void invalidateAll() {
+        cachingUserClient.invalidateAll();
+    }
+
+    /**
+     * Remove a single user from the cache.
+     * @param userId ID of the user to remove.
+     */
+    @DeleteOperation
+    public void invalidate(@Selector Integer userId) {
+        cachingUserClient.invalidate(userId);
+    }
+}
@@ -5,7 +5,9 @@ import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -14,6 +16,7 @@ import java.util.List;
  * @see UserResponse
  * @see UserFeignClientFallback
  * @see UserFeignClientConfiguration
+ * @see CachingUserClient
  */
 @FeignClient(
         name = "userclient"
@@ -21,9 +24,16 @@ import java.util.List;
         , path = "/user"
         , configuration = UserFeignClientConfiguration.class
         , fallback = UserFeignClientFallback.class
+        , primary = false
+        , qualifiers = UserClient.REMOTE_QUALIFIER
 )
 public interface UserClient {
 
+    /**
+     * Qualifier of the FeignClient bean itself. Unqualified injections get {@link CachingUserClient} instead.
+     */
+    String REMOTE_QUALIFIER = "remoteUserClient";
+
     /**
      * Query the Users service for all registered users.
      * @return A list of users registered in the Users endpoint.
@@ -38,6 +48,16 @@ public interface UserClient {
      */
     @GetMapping("/{userId}")
     public UserResponse getUserByUserId(@PathVariable Integer userId);
+
+    /**
+     * Query the Users service for several user IDs at once.
+     * <p>Older versions of the Users service don't have this endpoint. {@link UserBatchLoader} falls back to
+     * {@link UserClient#getAllUsers()} in that case.</p>
+     * @param userIds IDs to perform the query with in the Users endpoint.
+     * @return The matching users. IDs that match no user are left out.
+     */
+    @GetMapping("/by-ids")
+    public List<UserResponse> getUsersByUserIds(@RequestParam("ids") Collection<Integer> userIds);
 }
 
 
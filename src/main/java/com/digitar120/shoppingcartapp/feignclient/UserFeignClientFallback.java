@@ -5,6 +5,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.PathVariable;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -36,4 +37,14 @@ public class UserFeignClientFallback implements UserClient {
     public UserResponse getUserByUserId(@PathVariable("id") Integer userId){
         return new UserResponse(-1);
     }
+
+    /**
+     * Build a signalling response for upper layers to notice that the call failed.
+     * @param userIds IDs to perform the query with in the Users endpoint.
+     * @return An {@code ArrayList}, containing a single {@code UserResponse} with ID {@code -1}.
+     */
+    @Override
+    public List<UserResponse> getUsersByUserIds(Collection<Integer> userIds){
+        return getAllUsers();
+    }
 }
@@ -0,0 +1,201 @@
+package com.digitar120.shoppingcartapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Flight Recorder event for a {@link com.digitar120.shoppingcartapp.service.CartService} operation, with the time taken
+ * by each of its phases.
+ * <p>Phases are measured one after the other: each one runs from the end of the previous one, so the service's own
+ * work between them is counted in the next phase. Phases an operation doesn't go through are left at zero.</p>
+ * <p>Inside a transaction, the event is committed once the transaction completes, so it also covers the flush of the
+ * changes and the commit itself, in {@code commitTime}. Outside of one, it's committed by
+ * {@link CartOperationEvent#finish()}.</p>
+ * <p>Disabled by default: until a recording enables it, {@link CartOperationEvent#start(String)} returns an event that
+ * ignores every call, without reading the clock.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.context.FlightRecording
+ */
+@Name(CartOperationEvent.NAME)
+@Label("Cart Operation")
+@Category({"Shopping Cart App", "Cart"})
+@Description("An operation on a Cart, with the time taken by each phase")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("0 ms")
+public final class CartOperationEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "com.digitar120.shoppingcartapp.CartOperation";
+
+    public static final String ADD_ITEM = "addItem";
+    public static final String ADD_ITEMS = "addItems";
+    public static final String DELETE_ITEM = "deleteItem";
+    public static final String FIND_BY_USER_ID = "findByUserId";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Cart ID")
+    long cartId;
+
+    @Label("User ID")
+    int userId;
+
+    @Label("Item Count")
+    @Description("Items in the Cart after the operation")
+    int itemCount;
+
+    @Label("Changed Items")
+    @Description("Items added, updated or removed by the operation")
+    int changedItems;
+
+    @Label("User Lookup")
+    @Description("Time spent waiting for the User service, after the Cart was loaded")
+    @Timespan
+    long userLookupTime;
+
+    @Label("Load")
+    @Description("Time spent verifying the request and loading the Cart")
+    @Timespan
+    long loadTime;
+
+    @Label("Write")
+    @Description("Time spent applying the changes to the persistence context, or sending them as JDBC batches")
+    @Timespan
+    long writeTime;
+
+    @Label("Commit")
+    @Description("Time spent flushing the changes and committing the transaction")
+    @Timespan
+    long commitTime;
+
+    @Label("Rolled Back")
+    boolean rolledBack;
+
+    /**
+     * End of the last phase.
+     */
+    private transient long lap;
+    private transient boolean awaitingCompletion;
+    private transient boolean finished;
+
+    /**
+     * Begins an event, if enabled.
+     * @param operation One of the operation constants of this class.
+     * @return An event to record the phases on.
+     */
+    public static CartOperationEvent start(String operation) {
+        CartOperationEvent event = new CartOperationEvent();
+
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.begin();
+            event.lap = System.nanoTime();
+
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                event.awaitingCompletion = true;
+                TransactionSynchronizationManager.registerSynchronization(event.new Completion());
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Sets the Cart the operation works on.
+     * @param cartId ID of the Cart.
+     * @param itemCount Items in the Cart after the operation.
+     * @param changedItems Items added, updated or removed by the operation.
+     * @return This event.
+     */
+    public CartOperationEvent cart(Long cartId, int itemCount, int changedItems) {
+        if (isEnabled() && cartId != null) {
+            this.cartId = cartId;
+            this.itemCount = itemCount;
+            this.changedItems = changedItems;
+        }
+        return this;
+    }
+
+    /**
+     * Sets the User whose Cart is looked up.
+     * @param userId ID of the User.
+     * @return This event.
+     */
+    public CartOperationEvent user(Integer userId) {
+        if (isEnabled() && userId != null) {
+            this.userId = userId;
+        }
+        return this;
+    }
+
+    /**
+     * Ends the user lookup phase.
+     */
+    public void userLookedUp() {
+        if (isEnabled()) {
+            userLookupTime = nextLap();
+        }
+    }
+
+    /**
+     * Ends the load phase.
+     */
+    public void loaded() {
+        if (isEnabled()) {
+            loadTime = nextLap();
+        }
+    }
+
+    /**
+     * Ends the write phase.
+     */
+    public void written() {
+        if (isEnabled()) {
+            writeTime = nextLap();
+        }
+    }
+
+    /**
+     * Ends the operation. The event is committed now, or once the transaction completes.
+     */
+    public void finish() {
+        if (isEnabled()) {
+            if (awaitingCompletion) {
+                finished = true;
+                lap = System.nanoTime();
+            } else {
+                commit();
+            }
+        }
+    }
+
+    private long nextLap() {
+        long previous = lap;
+        lap = System.nanoTime();
+        return lap - previous;
+    }
+
+    /**
+     * Commits the event once the transaction completes, with the time taken since the operation finished. If the
+     * operation failed, {@code commitTime} is left at zero.
+     */
+    private final class Completion implements TransactionSynchronization {
+
+        @Override
+        public void afterCompletion(int status) {
+            rolledBack = status != STATUS_COMMITTED;
+            if (finished) {
+                commitTime = nextLap();
+            }
+            commit();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.digitar120.shoppingcartapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for writing a response body, over the same span as the {@code http.server.serialization}
+ * metric.
+ * <p>Bodies holding a Cart carry its ID and its amount of Items. Bodies holding a list carry its size as the item
+ * count.</p>
+ * <p>Disabled by default: until a recording enables it, {@link SerializationEvent#start()} returns an event that
+ * ignores every call.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.context.SerializationTimer
+ * @see com.digitar120.shoppingcartapp.context.FlightRecording
+ */
+@Name(SerializationEvent.NAME)
+@Label("Response Serialization")
+@Category({"Shopping Cart App", "HTTP"})
+@Description("Writing a response body, from the moment the controller returns it to the end of the request")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("0 ms")
+public final class SerializationEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "com.digitar120.shoppingcartapp.Serialization";
+
+    @Label("Request URI")
+    String uri;
+
+    @Label("Body Type")
+    String bodyType;
+
+    @Label("Cart ID")
+    long cartId;
+
+    @Label("Item Count")
+    @Description("Items of the Cart, or elements of the list. -1 if the Items of a Cart entity weren't loaded")
+    int itemCount;
+
+    @Label("Failed")
+    boolean failed;
+
+    /**
+     * Begins an event, if enabled.
+     * @return An event to describe the body on, and commit once the body is written.
+     */
+    public static SerializationEvent start() {
+        SerializationEvent event = new SerializationEvent();
+
+        if (event.isEnabled()) {
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Sets the request and the type of its body.
+     * @param uri URI of the request.
+     * @param bodyType Declared type of the body.
+     * @return This event.
+     */
+    public SerializationEvent request(String uri, String bodyType) {
+        this.uri = uri;
+        this.bodyType = bodyType;
+        return this;
+    }
+
+    /**
+     * Sets the Cart held by the body.
+     * @param cartId ID of the Cart.
+     * @param itemCount Items of the Cart.
+     * @return This event.
+     */
+    public SerializationEvent cart(long cartId, int itemCount) {
+        this.cartId = cartId;
+        this.itemCount = itemCount;
+        return this;
+    }
+
+    /**
+     * Sets the size of the list held by the body.
+     * @param itemCount Elements of the list.
+     * @return This event.
+     */
+    public SerializationEvent items(int itemCount) {
+        this.itemCount = itemCount;
+        return this;
+    }
+
+    /**
+     * Commits the event.
+     * @param failed Whether the request ended with an exception.
+     */
+    public void finish(boolean failed) {
+        if (isEnabled()) {
+            this.failed = failed;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.digitar120.shoppingcartapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a lookup through {@link com.digitar120.shoppingcartapp.feignclient.CachingUserClient},
+ * split into the cache lookup and the call to the User service.
+ * <p>The result takes the same values as the {@code result} tag of the {@code user.client.lookup} metric. A lookup
+ * that waited for another lookup's call counts that wait as its own call.</p>
+ * <p>Non-blocking lookups of {@link com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient} are recorded too.
+ * Their event is committed by the thread that completes the lookup, which may not be the one that began it.</p>
+ * <p>Disabled by default: until a recording enables it, {@link UserLookupEvent#start(String)} returns an event that
+ * ignores every call, without reading the clock.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.context.FlightRecording
+ */
+@Name(UserLookupEvent.NAME)
+@Label("User Lookup")
+@Category({"Shopping Cart App", "User Client"})
+@Description("A lookup of users, from the cache or the User service")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("0 ms")
+public final class UserLookupEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "com.digitar120.shoppingcartapp.UserLookup";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("User ID")
+    @Description("ID of the User, on single lookups")
+    int userId;
+
+    @Label("User Count")
+    @Description("Distinct users asked for")
+    int userCount;
+
+    @Label("Missing Users")
+    @Description("Users that weren't cached, and were asked to the User service")
+    int missingUsers;
+
+    @Label("Result")
+    String result;
+
+    @Label("Cache Lookup")
+    @Timespan
+    long cacheLookupTime;
+
+    @Label("Remote Call")
+    @Description("Time spent waiting for the User service, directly or through a batch")
+    @Timespan
+    long remoteCallTime;
+
+    /**
+     * End of the last phase.
+     */
+    private transient long lap;
+
+    /**
+     * Begins an event, if enabled.
+     * @param operation {@code single} or {@code bulk}.
+     * @return An event to record the phases on.
+     */
+    public static UserLookupEvent start(String operation) {
+        UserLookupEvent event = new UserLookupEvent();
+
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.begin();
+            event.lap = System.nanoTime();
+        }
+        return event;
+    }
+
+    /**
+     * Ends the cache lookup phase.
+     * @param userCount Distinct users asked for.
+     * @param missingUsers Users that weren't cached.
+     */
+    public void cacheLookedUp(int userCount, int missingUsers) {
+        if (isEnabled()) {
+            this.userCount = userCount;
+            this.missingUsers = missingUsers;
+            cacheLookupTime = nextLap();
+        }
+    }
+
+    /**
+     * Ends the remote call phase.
+     */
+    public void remoteCalled() {
+        if (isEnabled()) {
+            remoteCallTime = nextLap();
+        }
+    }
+
+    /**
+     * Commits the event.
+     * @param userId ID of the User, or {@code 0} on bulk lookups.
+     * @param result {@code hit}, {@code remote}, {@code fallback} or {@code error}.
+     */
+    public void finish(int userId, String result) {
+        if (isEnabled()) {
+            this.userId = userId;
+            this.result = result;
+            commit();
+        }
+    }
+
+    private long nextLap() {
+        long previous = lap;
+        lap = System.nanoTime();
+        return lap - previous;
+    }
+}
@@ -0,0 +1,64 @@
+package com.digitar120.shoppingcartapp.mapper;
+
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A mapper that groups flat Cart rows into Cart views.
+ * <p>Rows must be ordered by Cart ID, so that the rows of a Cart are contiguous. The order of the rows of each Cart is
+ * kept for its Items.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CartItemRow
+ * @see CartView
+ * @see IMapper
+ */
+@Component
+public class CartRowsToCartViews implements IMapper<List<CartItemRow>, List<CartView>> {
+
+    /**
+     * Groups the rows of several Carts.
+     * @param in Rows of zero or more Carts, ordered by Cart ID.
+     * @return One view per Cart, in the same order.
+     */
+    @Override
+    public List<CartView> map(List<CartItemRow> in) {
+        List<CartView> carts = new ArrayList<>();
+        int start = 0;
+
+        for (int i = 1; i <= in.size(); i++) {
+            // Cerrar el carrito actual al cambiar de ID o al llegar al final
+            if (i == in.size() || !in.get(i).cartId().equals(in.get(start).cartId())) {
+                carts.add(mapCart(in.subList(start, i)));
+                start = i;
+            }
+        }
+
+        return carts;
+    }
+
+    /**
+     * Builds the view of a single Cart.
+     * @param rows Every row of the Cart. Must not be empty.
+     * @return The Cart view.
+     */
+    public CartView mapCart(List<CartItemRow> rows) {
+        CartItemRow header = rows.get(0);
+        List<ItemView> items = new ArrayList<>(rows.size());
+
+        for (CartItemRow row : rows) {
+            // Un carrito vacío tiene una única fila, sin ítem
+            if (row.itemId() != null) {
+                items.add(new ItemView(row.itemId(), row.quantity(), row.productId(), row.productDescription()));
+            }
+        }
+
+        return new CartView(header.cartId(), header.cartDescription(), Collections.unmodifiableList(items),
+                header.userId(), header.cartVersion());
+    }
+}
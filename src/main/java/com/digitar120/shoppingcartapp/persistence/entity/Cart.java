@@ -6,9 +6,16 @@ import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.OptimisticLock;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -17,6 +24,10 @@ import java.util.Set;
  * There was a problem when querying for the full object of a Cart. At first, the query would simply fail, and when
  * tested without safeties, it would print an infinite loop between the two objects.</p>
  * <p>The JSON tools and relation rules used below solve this issue, and allow queries to behave normally.</p>
+ * <p>Items are also indexed by Product ID and by Item ID, so a Cart with thousands of Items can be searched without
+ * iterating over its Item Set. Use {@link Cart#addItem(Item)} and {@link Cart#removeItem(Item)} to modify the Item
+ * Set, so that the indexes are kept up to date.</p>
+ * <p>A User holds a single Cart.</p>
  * @author Gabriel Pérez (digitar120)
  * @see Item
  * @see Product
@@ -24,18 +35,45 @@ import java.util.Set;
  */
 
 @Entity
-@Table(name = "cart")
+@Table(name = "cart", uniqueConstraints = @UniqueConstraint(
+        name = "UK_CART_USER",
+        columnNames = "USER_ID"))
+@NamedEntityGraph(
+        name = Cart.WITH_ITEMS,
+        attributeNodes = @NamedAttributeNode("items"))
+@NamedEntityGraph(
+        name = Cart.WITH_ITEMS_AND_PRODUCTS,
+        attributeNodes = @NamedAttributeNode(value = "items", subgraph = "items"),
+        subgraphs = @NamedSubgraph(name = "items", attributeNodes = @NamedAttributeNode("referencedProduct")))
 @Getter
 @Setter
 @ToString
-@AllArgsConstructor
 @NoArgsConstructor
 @JsonIdentityInfo(
         generator = ObjectIdGenerators.PropertyGenerator.class,
         property = "id")
 public class Cart {
+
+    /**
+     * Fetch plan for the Cart and its Items. Referenced Products are left as proxies, so only their IDs are available.
+     */
+    public static final String WITH_ITEMS = "Cart.withItems";
+
+    /**
+     * Fetch plan for the Cart, its Items and their referenced Products. Needed whenever the Cart is serialized.
+     */
+    public static final String WITH_ITEMS_AND_PRODUCTS = "Cart.withItemsAndProducts";
+
+    /**
+     * Taken from {@code CART_SEQ} in blocks of 50, so new Carts don't need a round trip each and their inserts can be
+     * sent as JDBC batches.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "CART_SEQ")
+    @GenericGenerator(name = "CART_SEQ", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "CART_SEQ"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")})
     @Column(name = "CART_ID")
     private Long id;
 
@@ -46,16 +84,179 @@ public class Cart {
      * I chose to use a HashSet so unique listings would be easier to manage. My idea is that a shopping cart should not
      * have multiple instances of one Product.
      * <p>orphanRemoval is included to propagate an Item deletion from the Cart side to the Item database.</p>
+     * <p>Items are loaded lazily, so a plain lookup only reads the Cart header. Queries that need the Items pick one of
+     * the {@link Cart#WITH_ITEMS} and {@link Cart#WITH_ITEMS_AND_PRODUCTS} fetch plans instead.</p>
+     * <p>Excluded from the automatic version increment, since {@link Cart#version} is incremented explicitly.</p>
      * @see Item
      */
     @JsonManagedReference
-    @OneToMany(mappedBy = "owningCart", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    @OptimisticLock(excluded = true)
+    @OneToMany(mappedBy = "owningCart", fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Item> items = new HashSet<>();
 
     @Column(name="USER_ID")
     private Integer userId;
 
+    /**
+     * Incremented every time the Item Set changes, including the quantity of an Item. Exposed as the ETag of the Cart.
+     * <p>Since Item changes don't modify the Cart row itself, the increment is requested explicitly: by loading the
+     * Cart with {@link javax.persistence.LockModeType#OPTIMISTIC_FORCE_INCREMENT}, or through
+     * {@link com.digitar120.shoppingcartapp.persistence.repository.CartRepository#incrementVersion(Long)} when the
+     * Cart isn't loaded.</p>
+     */
+    @Version
+    @Column(name = "CART_VERSION")
+    private Long version;
+
+    /**
+     * Items of {@link Cart#items}, by referenced Product ID. Built on first use.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private Map<Long, Item> itemsByProductId;
+
+    /**
+     * Items of {@link Cart#items}, by Item ID. Items that were added before having an ID are indexed once the index
+     * is rebuilt.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private Map<Long, Item> itemsById;
+
+    /**
+     * Amount of indexed Items that had no ID at the time, and are missing from {@link Cart#itemsById}.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private int unidentifiedItems;
+
+    /**
+     * Size of {@link Cart#items} the last time the indexes were updated.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private int indexedSize;
+
+    public Cart(Long id, String description, Set<Item> items, Integer userId) {
+        this.id = id;
+        this.description = description;
+        this.items = items;
+        this.userId = userId;
+    }
+
     public Cart(Long id){
         this.id = id;
     }
+
+    public void setItems(Set<Item> items) {
+        this.items = items;
+        invalidateIndexes();
+    }
+
+    /**
+     * Finds the Item that references a Product.
+     * @param productId ID of the referenced Product.
+     * @return The matching Item, if the Cart has one.
+     */
+    public Optional<Item> findItemByProductId(Long productId) {
+        ensureIndexes();
+        return Optional.ofNullable(itemsByProductId.get(productId));
+    }
+
+    /**
+     * Finds an Item by its ID.
+     * @param itemId ID of the Item.
+     * @return The matching Item, if the Cart has one.
+     */
+    public Optional<Item> findItemById(Long itemId) {
+        ensureIndexes();
+
+        Item item = itemsById.get(itemId);
+        if (item == null && unidentifiedItems > 0) {
+            // Ítems agregados antes del flush ya pueden tener ID
+            buildIndexes();
+            item = itemsById.get(itemId);
+        }
+
+        return Optional.ofNullable(item);
+    }
+
+    /**
+     * Adds an Item to the Item Set, and to the indexes.
+     * @param item Item to add. It should belong to this Cart.
+     */
+    public void addItem(Item item) {
+        ensureIndexes();
+        if (items.add(item)) {
+            index(item);
+        }
+        indexedSize = items.size();
+    }
+
+    /**
+     * Removes an Item from the Item Set, and from the indexes.
+     * @param item Item to remove.
+     * @return {@code true} if the Item was part of the Item Set.
+     */
+    public boolean removeItem(Item item) {
+        ensureIndexes();
+
+        if (item.getReferencedProduct() != null) {
+            itemsByProductId.remove(item.getReferencedProduct().getId(), item);
+        }
+        if (item.getId() != null) {
+            itemsById.remove(item.getId(), item);
+        }
+
+        boolean removed = items.remove(item);
+        indexedSize = items.size();
+        return removed;
+    }
+
+    /**
+     * Builds the indexes if they don't exist, or if the Item Set was modified without going through this class.
+     */
+    private void ensureIndexes() {
+        if (itemsByProductId == null || indexedSize != items.size()) {
+            buildIndexes();
+        }
+    }
+
+    private void buildIndexes() {
+        itemsByProductId = new HashMap<>();
+        itemsById = new HashMap<>();
+        unidentifiedItems = 0;
+
+        for (Item item : items) {
+            index(item);
+        }
+        indexedSize = items.size();
+    }
+
+    private void index(Item item) {
+        if (item.getReferencedProduct() != null) {
+            itemsByProductId.put(item.getReferencedProduct().getId(), item);
+        }
+
+        if (item.getId() != null) {
+            itemsById.put(item.getId(), item);
+        } else {
+            unidentifiedItems++;
+        }
+    }
+
+    @PostLoad
+    private void invalidateIndexes() {
+        itemsByProductId = null;
+        itemsById = null;
+        unidentifiedItems = 0;
+    }
 }
@@ -5,6 +5,9 @@ import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 
@@ -19,7 +22,10 @@ import javax.persistence.*;
  */
 
 @Entity
-@Table(name = "item")
+@Table(name = "item", uniqueConstraints = @UniqueConstraint(
+        name = "UK_ITEM_CART_PRODUCT",
+        columnNames = {"CART_ID", "PRODUCT_ID"}),
+        indexes = @Index(name = "IX_ITEM_PRODUCT", columnList = "PRODUCT_ID"))
 @Getter
 @Setter
 @ToString
@@ -29,8 +35,16 @@ import javax.persistence.*;
         generator = ObjectIdGenerators.PropertyGenerator.class,
         property = "id")
 public class Item {
+    /**
+     * Taken from {@code ITEM_SEQ} in blocks of 50, so new Items don't need a round trip each and their inserts can be
+     * sent as JDBC batches.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ITEM_SEQ")
+    @GenericGenerator(name = "ITEM_SEQ", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "ITEM_SEQ"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")})
     @Column(name = "ITEM_ID")
     private Long id;
 
@@ -38,15 +52,16 @@ public class Item {
     private Integer quantity;
 
     @JsonBackReference
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "CART_ID", nullable = false)
     private Cart owningCart;
 
     /**
-     * This field should be unique amongst the Items in the set of a Cart.
+     * This field is unique amongst the Items in the set of a Cart, as enforced by {@code UK_ITEM_CART_PRODUCT}.
+     * <p>Loaded lazily. Reading its ID doesn't load it.</p>
      * @see Cart#getItems()
      */
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "PRODUCT_ID")
     private Product referencedProduct;
 
@@ -1,6 +1,9 @@
 package com.digitar120.shoppingcartapp.persistence.entity;
 
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 
@@ -10,7 +13,7 @@ import javax.persistence.*;
  * @author Gabriel Pérez (digitar120)
  */
 @Entity
-@Table(name = "PRODUCT")
+@Table(name = "PRODUCT", indexes = @Index(name = "IX_PRODUCT_DESCRIPTION", columnList = "PRODUCT_DESCRIPTION"))
 @Setter
 @Getter
 @ToString
@@ -18,8 +21,16 @@ import javax.persistence.*;
 @AllArgsConstructor // Testing
 public class Product {
 
+    /**
+     * Taken from {@code PRODUCT_SEQ} in blocks of 50, so new Products don't need a round trip each and their inserts can be
+     * sent as JDBC batches.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "PRODUCT_SEQ")
+    @GenericGenerator(name = "PRODUCT_SEQ", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "PRODUCT_SEQ"),
+            @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50"),
+            @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")})
     @Column(name = "PRODUCT_ID")
     private Long id;
     @Column(name="PRODUCT_DESCRIPTION")
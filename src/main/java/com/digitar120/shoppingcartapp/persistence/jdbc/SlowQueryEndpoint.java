@@ -0,0 +1,55 @@
+package com.digitar120.shoppingcartapp.persistence.jdbc;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to inspect and clear the slow statement log, at {@code /actuator/slowqueries}.
+ * <p>Statement counts per request are published as the {@code http.server.statements} metric instead, at
+ * {@code /actuator/metrics} and {@code /actuator/prometheus}.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see SlowQueryLog
+ */
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public SlowQueryEndpoint(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * @return The threshold, the amount of slow statements since startup, and the latest ones.
+     */
+    @ReadOperation
+    public Map<String, Object> queries() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("threshold", slowQueryLog.threshold().toString());
+        response.put("total", slowQueryLog.total());
+        response.put("recent", slowQueryLog.recent().stream().map(SlowQueryEndpoint::queryOf).toList());
+        return response;
+    }
+
+    private static Map<String, Object> queryOf(SlowQueryLog.SlowQuery query) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("time", query.time().toString());
+        response.put("durationMs", query.duration().toNanos() / 1_000_000.0);
+        response.put("sql", query.sql());
+        response.put("batchSize", query.batchSize());
+        response.put("scope", query.scope());
+        return response;
+    }
+
+    /**
+     * Discard the latest slow statements. The total isn't reset.
+     */
+    @DeleteOperation
+    public void clear() {
+        slowQueryLog.clear();
+    }
+}
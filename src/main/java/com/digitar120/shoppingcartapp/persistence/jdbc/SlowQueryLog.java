@@ -0,0 +1,114 @@
+package com.digitar120.shoppingcartapp.persistence.jdbc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the latest statements that took longer than a threshold, as reported by {@link StatementCountingDataSource}.
+ * <p>Bind parameters are never read, so prepared statements are kept with their {@code ?} placeholders. String and
+ * numeric literals written into the SQL are replaced by {@code ?} too, so no values reach the log.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see SlowQueryEndpoint
+ */
+public class SlowQueryLog {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+    private final long thresholdNanos;
+    private final int capacity;
+    private final Deque<SlowQuery> queries = new ArrayDeque<>();
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * @param threshold Minimum duration of a statement to be kept.
+     * @param capacity Amount of statements kept. Older ones are discarded first.
+     */
+    public SlowQueryLog(Duration threshold, int capacity) {
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Keeps a statement, if it took longer than the threshold.
+     * @param sql SQL of the statement. Only kept with its literals redacted.
+     * @param batchSize Amount of rows sent as a batch, or {@code 0} if it wasn't a batch.
+     * @param nanos Execution time.
+     */
+    void statementExecuted(String sql, int batchSize, long nanos) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+
+        total.increment();
+        SlowQuery query = new SlowQuery(Instant.now(), Duration.ofNanos(nanos), redact(sql), batchSize,
+                StatementCounter.currentName());
+        synchronized (queries) {
+            if (queries.size() == capacity) {
+                queries.removeLast();
+            }
+            queries.addFirst(query);
+        }
+    }
+
+    /**
+     * @return The kept statements, newest first.
+     */
+    public List<SlowQuery> recent() {
+        synchronized (queries) {
+            return new ArrayList<>(queries);
+        }
+    }
+
+    /**
+     * @return Amount of statements that took longer than the threshold since startup, kept or not.
+     */
+    public long total() {
+        return total.sum();
+    }
+
+    /**
+     * @return Minimum duration of a statement to be kept.
+     */
+    public Duration threshold() {
+        return Duration.ofNanos(thresholdNanos);
+    }
+
+    /**
+     * Discards the kept statements.
+     */
+    public void clear() {
+        synchronized (queries) {
+            queries.clear();
+        }
+    }
+
+    /**
+     * Replaces the literals written into a statement by {@code ?}.
+     * @param sql SQL of a statement.
+     * @return The same SQL, without values.
+     */
+    static String redact(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        return NUMERIC_LITERAL.matcher(STRING_LITERAL.matcher(sql).replaceAll("?")).replaceAll("?");
+    }
+
+    /**
+     * A statement that took longer than the threshold.
+     * @param time When it finished.
+     * @param duration Execution time.
+     * @param sql SQL of the statement, without values.
+     * @param batchSize Amount of rows sent as a batch, or {@code 0} if it wasn't a batch.
+     * @param scope Scope it ran in, such as {@code GET /cart/{id}}, or {@code null} outside of a request.
+     */
+    public record SlowQuery(Instant time, Duration duration, String sql, int batchSize, String scope) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.digitar120.shoppingcartapp.persistence.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the JDBC statements executed by the current thread, between opening and closing a {@link Scope}.
+ * <p>Statements are counted by {@link StatementCountingDataSource} once per round trip to the database: a JDBC batch
+ * counts as one statement, however many rows it carries. Calls to the ID sequences are counted too.</p>
+ * <p>Scopes can be nested, and a statement counts in every open scope of its thread. Statements run by other threads,
+ * such as those of a streamed response, aren't counted.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.context.StatementCountInterceptor
+ */
+public final class StatementCounter {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private StatementCounter() {
+    }
+
+    /**
+     * Opens a scope on the current thread, that only counts statements.
+     * @param name What the scope covers, such as {@code GET /cart/{id}}.
+     * @return The scope, to be closed by the same thread.
+     */
+    public static Scope open(String name) {
+        return open(name, 0);
+    }
+
+    /**
+     * Opens a scope on the current thread, that also keeps the SQL of the first statements.
+     * @param name What the scope covers, such as {@code GET /cart/{id}}.
+     * @param keptStatements Amount of statements whose SQL is kept.
+     * @return The scope, to be closed by the same thread.
+     */
+    public static Scope open(String name, int keptStatements) {
+        Scope scope = new Scope(name, keptStatements, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return Name of the innermost open scope of the current thread, or {@code null} if there is none.
+     */
+    static String currentName() {
+        Scope scope = CURRENT.get();
+        return scope == null ? null : scope.name;
+    }
+
+    /**
+     * Counts a statement in every open scope of the current thread.
+     * @param sql SQL of the statement. Only kept with its literals redacted.
+     */
+    static void count(String sql) {
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.parent) {
+            scope.count++;
+            if (scope.statements.size() < scope.keptStatements) {
+                scope.statements.add(SlowQueryLog.redact(sql));
+            }
+        }
+    }
+
+    /**
+     * Statements counted since the scope was opened.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final String name;
+        private final int keptStatements;
+        private final Scope parent;
+        private final List<String> statements;
+        private long count;
+        private boolean closed;
+
+        private Scope(String name, int keptStatements, Scope parent) {
+            this.name = name;
+            this.keptStatements = keptStatements;
+            this.parent = parent;
+            this.statements = keptStatements == 0 ? Collections.emptyList() : new ArrayList<>();
+        }
+
+        /**
+         * @return What the scope covers.
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return Amount of statements counted so far.
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return SQL of the first statements counted, up to the amount given when opening the scope, with their
+         * literals redacted.
+         */
+        public List<String> statements() {
+            return Collections.unmodifiableList(statements);
+        }
+
+        /**
+         * Stops counting, and reopens the enclosing scope. Closing a scope twice has no effect.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                // Un alcance interno que no se cerró tampoco debe seguir contando
+                if (parent == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(parent);
+                }
+            }
+        }
+    }
+}
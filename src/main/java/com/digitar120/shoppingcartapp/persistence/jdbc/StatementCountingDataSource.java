@@ -0,0 +1,159 @@
+package com.digitar120.shoppingcartapp.persistence.jdbc;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps a {@link DataSource} so that every statement executed through its connections is counted by
+ * {@link StatementCounter}, and reported to the {@link SlowQueryLog} along with its execution time.
+ * <p>It works at the JDBC level, so it covers Hibernate, Spring Data queries and {@code JdbcTemplate} batches alike.
+ * Connections and statements are wrapped with dynamic proxies; every other call goes straight to the pool.</p>
+ * <p>Bind parameters aren't intercepted, so their values are never read.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.context.JdbcInstrumentationConfiguration
+ */
+public class StatementCountingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public StatementCountingDataSource(DataSource targetDataSource, SlowQueryLog slowQueryLog) {
+        super(targetDataSource);
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    /**
+     * Closes the wrapped {@code DataSource}, if it's a pool. Being the {@code DataSource} bean, this is the method
+     * called on shutdown.
+     */
+    @Override
+    public void close() throws Exception {
+        if (getTargetDataSource() instanceof AutoCloseable pool) {
+            pool.close();
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object proxy, Object target, Method method, Object[] args) throws Throwable {
+        // Los proxies se comparan por identidad, como las conexiones y sentencias del pool
+        if (method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        if (method.getName().equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps the statements created by a connection.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = StatementCountingDataSource.invoke(proxy, connection, method, args);
+
+            return switch (method.getName()) {
+                case "createStatement" -> wrap(Statement.class, result, null);
+                case "prepareStatement" -> wrap(PreparedStatement.class, result, (String) args[0]);
+                case "prepareCall" -> wrap(CallableStatement.class, result, (String) args[0]);
+                default -> result;
+            };
+        }
+
+        private Object wrap(Class<? extends Statement> type, Object statement, String sql) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    new StatementHandler((Statement) statement, sql));
+        }
+    }
+
+    /**
+     * Counts and times the executions of a statement.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        private String batchSql;
+        private int batchSize;
+
+        private StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("addBatch")) {
+                batchSize++;
+                // Un lote de sentencias sin preparar se registra con la primera
+                if (batchSql == null && args != null) {
+                    batchSql = (String) args[0];
+                }
+                return StatementCountingDataSource.invoke(proxy, statement, method, args);
+            }
+            if (name.equals("clearBatch")) {
+                batchSize = 0;
+                batchSql = null;
+                return StatementCountingDataSource.invoke(proxy, statement, method, args);
+            }
+            if (!name.startsWith("execute")) {
+                return StatementCountingDataSource.invoke(proxy, statement, method, args);
+            }
+
+            boolean batch = name.startsWith("executeBatch") || name.startsWith("executeLargeBatch");
+            String sql = args != null && args.length > 0 && args[0] instanceof String executed
+                    ? executed
+                    : batch && preparedSql == null ? batchSql : preparedSql;
+            int executedBatchSize = batch ? batchSize : 0;
+
+            long start = System.nanoTime();
+            try {
+                return StatementCountingDataSource.invoke(proxy, statement, method, args);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                if (batch) {
+                    batchSize = 0;
+                    batchSql = null;
+                }
+                StatementCounter.count(sql);
+                slowQueryLog.statementExecuted(sql, executedBatchSize, nanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.digitar120.shoppingcartapp.persistence.projection;
+
+/**
+ * One row of a Cart read query: a Cart joined with one of its Items and the Item's referenced Product.
+ * <p>Built by JPQL constructor expressions, so reading it doesn't create managed entities. A Cart without Items yields
+ * a single row whose Item and Product columns are {@code null}.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.persistence.repository.CartRepository
+ * @see com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews
+ */
+public record CartItemRow(
+        Long cartId,
+        String cartDescription,
+        Integer userId,
+        Long cartVersion,
+        Long itemId,
+        Integer quantity,
+        Long productId,
+        String productDescription) {
+}
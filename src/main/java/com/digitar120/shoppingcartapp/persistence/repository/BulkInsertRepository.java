@@ -0,0 +1,137 @@
+package com.digitar120.shoppingcartapp.persistence.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Inserts of new Products, Carts and Items, executed as JDBC batches instead of one statement per row. Used by bulk
+ * imports.
+ * <p>Products, Carts and Items take their IDs from blocks reserved on their sequences through
+ * {@link SequenceIdReserver}, so the caller knows the IDs of Products and Carts without reading them back.</p>
+ * <p>These operations bypass the persistence context, and the in-memory indexes of the Products.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.bulk.BulkImportService
+ */
+@Repository
+public class BulkInsertRepository {
+
+    /**
+     * Skips Products whose description already exists, like {@link ProductRepository#findByDescription(String)} would.
+     */
+    private static final String INSERT_PRODUCT = "INSERT INTO PRODUCT (PRODUCT_ID, PRODUCT_DESCRIPTION) SELECT ?, ? "
+            + "WHERE NOT EXISTS (SELECT 1 FROM PRODUCT WHERE PRODUCT_DESCRIPTION = ?)";
+
+    /**
+     * Skips Carts whose User already has one, instead of failing the batch on {@code UK_CART_USER}.
+     */
+    private static final String INSERT_CART = "INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) SELECT ?, ?, ? "
+            + "WHERE NOT EXISTS (SELECT 1 FROM CART WHERE USER_ID = ?)";
+
+    private static final String INSERT_ITEM = "INSERT INTO ITEM (ITEM_ID, ITEM_QUANTITY, CART_ID, PRODUCT_ID) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIdReserver idReserver;
+
+    public BulkInsertRepository(JdbcTemplate jdbcTemplate, SequenceIdReserver idReserver) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idReserver = idReserver;
+    }
+
+    /**
+     * Reserves new Product IDs, with a single statement.
+     * @param count Amount of IDs.
+     * @return The reserved IDs, in ascending order.
+     */
+    public long[] reserveProductIds(int count) {
+        return idReserver.reserve("PRODUCT_SEQ", count);
+    }
+
+    /**
+     * Reserves new Cart IDs, with a single statement.
+     * @param count Amount of IDs.
+     * @return The reserved IDs, in ascending order.
+     */
+    public long[] reserveCartIds(int count) {
+        return idReserver.reserve("CART_SEQ", count);
+    }
+
+    /**
+     * Inserts Products whose description doesn't exist yet.
+     * @param products New Products, with IDs from {@link BulkInsertRepository#reserveProductIds(int)}.
+     * @return Whether each Product was inserted, in the same order. A Product is skipped if another one, inserted
+     * earlier or within the same call, has the same description.
+     */
+    public boolean[] insertProductsIfAbsent(List<NewProduct> products) {
+        return inserted(jdbcTemplate.batchUpdate(INSERT_PRODUCT, products, ItemBatchRepositoryImpl.BATCH_SIZE,
+                (statement, product) -> {
+                    statement.setLong(1, product.id());
+                    statement.setString(2, product.description());
+                    statement.setString(3, product.description());
+                }), products.size());
+    }
+
+    /**
+     * Inserts Carts whose User doesn't have one yet.
+     * @param carts New Carts, with IDs from {@link BulkInsertRepository#reserveCartIds(int)}.
+     * @return Whether each Cart was inserted, in the same order.
+     */
+    public boolean[] insertCartsIfAbsent(List<NewCart> carts) {
+        return inserted(jdbcTemplate.batchUpdate(INSERT_CART, carts, ItemBatchRepositoryImpl.BATCH_SIZE,
+                (statement, cart) -> {
+                    statement.setLong(1, cart.id());
+                    statement.setString(2, cart.description());
+                    statement.setInt(3, cart.userId());
+                    statement.setInt(4, cart.userId());
+                }), carts.size());
+    }
+
+    /**
+     * Inserts Items into any amount of Carts, with IDs reserved for them with a single statement.
+     * @param items New Items.
+     */
+    public void insertItems(List<NewItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        long[] ids = idReserver.reserve(ItemBatchRepositoryImpl.ITEM_SEQUENCE, items.size());
+        int[] next = {0};
+        jdbcTemplate.batchUpdate(INSERT_ITEM, items, ItemBatchRepositoryImpl.BATCH_SIZE, (statement, item) -> {
+            statement.setLong(1, ids[next[0]++]);
+            statement.setInt(2, item.quantity());
+            statement.setLong(3, item.cartId());
+            statement.setLong(4, item.productId());
+        });
+    }
+
+    private static boolean[] inserted(int[][] updateCounts, int size) {
+        boolean[] inserted = new boolean[size];
+        int i = 0;
+        for (int[] batch : updateCounts) {
+            for (int count : batch) {
+                inserted[i++] = count != 0;
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * A Product to insert.
+     */
+    public record NewProduct(long id, String description) {
+    }
+
+    /**
+     * A Cart to insert, without its Items.
+     */
+    public record NewCart(long id, String description, int userId) {
+    }
+
+    /**
+     * An Item to insert.
+     */
+    public record NewItem(long cartId, long productId, int quantity) {
+    }
+}
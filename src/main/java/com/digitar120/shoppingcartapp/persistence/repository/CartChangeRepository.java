@@ -0,0 +1,30 @@
+package com.digitar120.shoppingcartapp.persistence.repository;
+
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+
+import java.util.Optional;
+
+/**
+ * Loads a Cart to change its Items, incrementing its version.
+ * <p>The version of the Cart is incremented when the transaction commits, and the commit fails if the Cart was changed
+ * concurrently. Both methods must be called inside a transaction.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see CartChangeRepositoryImpl
+ */
+public interface CartChangeRepository {
+
+    /**
+     * Finds a Cart along with its Items and their referenced Products, to change its Items.
+     * @param id ID of the Cart.
+     * @return The matching Cart, if any.
+     */
+    Optional<Cart> findWithItemsAndProductsForChangeById(Long id);
+
+    /**
+     * Finds a Cart along with its Items, to change its Items. Referenced Products are not loaded, only their IDs are
+     * available.
+     * @param id ID of the Cart.
+     * @return The matching Cart, if any.
+     */
+    Optional<Cart> findWithItemsForChangeById(Long id);
+}
@@ -0,0 +1,44 @@
+package com.digitar120.shoppingcartapp.persistence.repository;
+
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCHGRAPH;
+
+/**
+ * {@link EntityManager} implementation of {@link CartChangeRepository}, picked up by Spring Data as a fragment of
+ * {@link CartRepository}.
+ * <p>The lock is taken on the Cart alone. A {@code @Lock} on a repository query would apply to the fetched Items and
+ * Products as well, and they aren't versioned.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public class CartChangeRepositoryImpl implements CartChangeRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<Cart> findWithItemsAndProductsForChangeById(Long id) {
+        return findForChange(id, Cart.WITH_ITEMS_AND_PRODUCTS);
+    }
+
+    @Override
+    public Optional<Cart> findWithItemsForChangeById(Long id) {
+        return findForChange(id, Cart.WITH_ITEMS);
+    }
+
+    private Optional<Cart> findForChange(Long id, String graphName) {
+        Cart cart = entityManager.find(Cart.class, id, Map.of(HINT_FETCHGRAPH, entityManager.getEntityGraph(graphName)));
+        if (cart == null) {
+            return Optional.empty();
+        }
+
+        entityManager.lock(cart, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        return Optional.of(cart);
+    }
+}
@@ -1,10 +1,160 @@
 package com.digitar120.shoppingcartapp.persistence.repository;
 
 import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface CartRepository extends JpaRepository<Cart, Long> {
-    Optional<Cart> findByUserId(Integer userId);
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/**
+ * Cart queries. Since the Items of a Cart are loaded lazily, each query states its fetch plan:
+ * <ul>
+ *     <li>Cart header only: {@link CartRepository#findById(Object)}, {@link CartRepository#existsById(Object)} and
+ *     the ID queries.</li>
+ *     <li>Cart with Items ({@link Cart#WITH_ITEMS}): {@link CartRepository#findWithItemsForChangeById(Long)}.</li>
+ *     <li>Cart with Items and Products ({@link Cart#WITH_ITEMS_AND_PRODUCTS}):
+ *     {@link CartRepository#findWithItemsAndProductsForChangeById(Long)}, for the updates that return the Cart.</li>
+ *     <li>Read-only rows ({@link CartItemRow}): every read endpoint. Rows are built by JPQL constructor expressions,
+ *     so no entities are loaded into the persistence context. Each of them runs a single statement.</li>
+ * </ul>
+ * <p>The {@code ForChange} queries, from {@link CartChangeRepository}, are meant for updates: the version of the Cart
+ * they return is incremented when the transaction commits.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see Cart
+ */
+public interface CartRepository extends JpaRepository<Cart, Long>, CartChangeRepository {
+
+    /**
+     * Selects one {@link CartItemRow} per Item, or a single one for a Cart without Items.
+     */
+    String SELECT_ROWS = "select new com.digitar120.shoppingcartapp.persistence.projection.CartItemRow("
+            + "c.id, c.description, c.userId, c.version, i.id, i.quantity, p.id, p.description) "
+            + "from Cart c left join c.items i left join i.referencedProduct p ";
+
+    /**
+     * Reads every Cart.
+     * @return The rows of all Carts, ordered by Cart ID and Item ID.
+     */
+    @Query(SELECT_ROWS + "order by c.id, i.id")
+    List<CartItemRow> findAllRows();
+
+    /**
+     * Reads a Cart.
+     * @param id ID of the Cart.
+     * @return The rows of the Cart ordered by Item ID, or an empty list if it doesn't exist.
+     */
+    @Query(SELECT_ROWS + "where c.id = :id order by i.id")
+    List<CartItemRow> findRowsById(@Param("id") Long id);
+
+    /**
+     * Reads the Cart assigned to a user.
+     * @param userId Referenced user ID.
+     * @return The rows of the Cart ordered by Item ID, or an empty list if it doesn't exist.
+     */
+    @Query(SELECT_ROWS + "where c.userId = :userId order by c.id, i.id")
+    List<CartItemRow> findRowsByUserId(@Param("userId") Integer userId);
+
+    /**
+     * Reads several Carts.
+     * @param ids IDs of the Carts.
+     * @return The rows of the matching Carts, ordered by Cart ID and Item ID.
+     */
+    @Query(SELECT_ROWS + "where c.id in :ids order by c.id, i.id")
+    List<CartItemRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Forward-only cursor over the rows of the Carts that come after a given ID.
+     * <p>Must be consumed inside a transaction and closed afterwards.</p>
+     * @param id The last Cart ID already read. Use 0 to start from the beginning.
+     * @return A lazily populated Stream of rows, ordered by Cart ID and Item ID.
+     */
+    @Query(SELECT_ROWS + "where c.id > :id order by c.id, i.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "100"))
+    Stream<CartItemRow> streamRowsAfter(@Param("id") Long id);
+
+    /**
+     * Finds a Cart along with its Items and their referenced Products.
+     * @param id ID of the Cart.
+     * @return The matching Cart, if any.
+     */
+    @EntityGraph(Cart.WITH_ITEMS_AND_PRODUCTS)
+    Optional<Cart> findWithItemsAndProductsById(Long id);
+
+    /**
+     * Reads the version of a Cart, without loading it.
+     * @param id ID of the Cart.
+     * @return The current version, if the Cart exists.
+     */
+    @Query("select c.version from Cart c where c.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * Increments the version of a Cart whose Items are changed without loading it. The Cart row stays locked until the
+     * transaction ends, so concurrent changes to the same Cart run one after the other.
+     * @param id ID of the Cart.
+     * @return Amount of updated rows: 0 if the Cart doesn't exist.
+     */
+    @Modifying
+    @Query("update Cart c set c.version = c.version + 1 where c.id = :id")
+    int incrementVersion(@Param("id") Long id);
+
+    /**
+     * Same as {@link CartRepository#incrementVersion(Long)}, only if the Cart is still at a given version.
+     * @param id ID of the Cart.
+     * @param version The version the caller expects.
+     * @return Amount of updated rows: 0 if the Cart doesn't exist, or is at another version.
+     */
+    @Modifying
+    @Query("update Cart c set c.version = c.version + 1 where c.id = :id and c.version = :version")
+    int incrementVersion(@Param("id") Long id, @Param("version") Long version);
+
+    /**
+     * Same as {@link CartRepository#incrementVersion(Long)}, for the Cart that owns an Item.
+     * @param itemId ID of the Item.
+     * @return Amount of updated rows: 0 if the Item doesn't exist.
+     */
+    @Modifying
+    @Query("update Cart c set c.version = c.version + 1 where c.id = (select i.owningCart.id from Item i where i.id = :itemId)")
+    int incrementVersionByItemId(@Param("itemId") Long itemId);
+
+    /**
+     * Finds the ID of the Cart assigned to a user, without loading the Cart.
+     * @param userId Referenced user ID.
+     * @return The matching Cart ID, if any.
+     */
+    @Query("select c.id from Cart c where c.userId = :userId")
+    Optional<Long> findIdByUserId(@Param("userId") Integer userId);
+
+    /**
+     * Deletes a Cart with a single statement, without loading it. Its Items must be deleted beforehand.
+     * @param id ID of the Cart to delete.
+     * @return Amount of deleted rows.
+     * @see ItemRepository#deleteByCartId(Long)
+     */
+    @Modifying
+    @Query("delete from Cart c where c.id = :id")
+    int deleteCartById(@Param("id") Long id);
+
+    /**
+     * Keyset page: the IDs of the Carts that come after a given ID, in ID order. No count query is issued.
+     * <p>Only IDs are paged, since a limit can't be applied in the database to a query that returns one row per Item.</p>
+     * @param id The last ID of the previous page. Use 0 to start from the beginning.
+     * @param pageable Only its size is relevant; the page number should always be 0.
+     * @return Up to {@code pageable.getPageSize()} Cart IDs.
+     * @see CartRepository#findRowsByIdIn(Collection)
+     */
+    @Query("select c.id from Cart c where c.id > :id order by c.id")
+    List<Long> findIdsAfter(@Param("id") Long id, Pageable pageable);
 }
@@ -0,0 +1,46 @@
+package com.digitar120.shoppingcartapp.persistence.repository;
+
+import java.util.Map;
+
+/**
+ * Set-based Item writes, executed as JDBC batches or upserts instead of one statement per entity.
+ * <p>These operations bypass the persistence context: Items already loaded in it are not updated.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see ItemBatchRepositoryImpl
+ * @see com.digitar120.shoppingcartapp.service.CartService#addMultipleItemsToCart(Long, java.util.Set)
+ */
+public interface ItemBatchRepository {
+
+    /**
+     * Sets the quantity of several existing Items.
+     * @param quantitiesByItemId New quantity of each Item, by Item ID.
+     */
+    void batchUpdateQuantities(Map<Long, Integer> quantitiesByItemId);
+
+    /**
+     * Creates several Items in a Cart.
+     * @param cartId ID of the owning Cart.
+     * @param quantitiesByProductId Quantity of each new Item, by referenced Product ID.
+     */
+    void batchInsert(Long cartId, Map<Long, Integer> quantitiesByProductId);
+
+    /**
+     * Sets the quantity of the Item referencing a Product in a Cart, creating the Item if there is none. Runs a single
+     * statement, keyed on the {@code (CART_ID, PRODUCT_ID)} unique constraint.
+     * <p>Two concurrent upserts of a new Item may both try to insert it, so the Cart row should be locked beforehand,
+     * as {@link CartRepository#incrementVersion(Long)} does.</p>
+     * @param cartId ID of the owning Cart.
+     * @param productId ID of the referenced Product.
+     * @param quantity New quantity.
+     */
+    void upsertQuantity(Long cartId, Long productId, int quantity);
+
+    /**
+     * Adds to the quantity of the Item referencing a Product in a Cart, creating the Item if there is none. The sum is
+     * computed by the database, so concurrent increments are never lost.
+     * @param cartId ID of the owning Cart.
+     * @param productId ID of the referenced Product.
+     * @param quantity Quantity to add, or the quantity of the new Item.
+     */
+    void incrementQuantity(Long cartId, Long productId, int quantity);
+}
@@ -0,0 +1,83 @@
+package com.digitar120.shoppingcartapp.persistence.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+
+/**
+ * {@link JdbcTemplate} implementation of {@link ItemBatchRepository}, picked up by Spring Data as a fragment of
+ * {@link ItemRepository}.
+ * <p>New Items take their IDs from {@link SequenceIdReserver} rather than from the column default, which would use up a
+ * whole block of {@code ITEM_SEQ} per Item. An upsert that updates an existing Item loses the ID reserved for it.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public class ItemBatchRepositoryImpl implements ItemBatchRepository {
+
+    /**
+     * Amount of statements sent to the database per round trip.
+     */
+    static final int BATCH_SIZE = 500;
+
+    static final String ITEM_SEQUENCE = "ITEM_SEQ";
+
+    private static final String UPDATE_QUANTITY = "UPDATE ITEM SET ITEM_QUANTITY = ? WHERE ITEM_ID = ?";
+    private static final String INSERT_ITEM = "INSERT INTO ITEM (ITEM_ID, ITEM_QUANTITY, CART_ID, PRODUCT_ID) VALUES (?, ?, ?, ?)";
+
+    /**
+     * Upsert keyed on {@code UK_ITEM_CART_PRODUCT}. The placeholder is the new quantity of an existing Item.
+     */
+    private static final String MERGE_ITEM = "MERGE INTO ITEM I USING (SELECT CAST(? AS BIGINT) CART_ID, "
+            + "CAST(? AS BIGINT) PRODUCT_ID, CAST(? AS INT) QUANTITY, CAST(? AS BIGINT) ITEM_ID) S "
+            + "ON (I.CART_ID = S.CART_ID AND I.PRODUCT_ID = S.PRODUCT_ID) "
+            + "WHEN MATCHED THEN UPDATE SET I.ITEM_QUANTITY = %s "
+            + "WHEN NOT MATCHED THEN INSERT (ITEM_ID, ITEM_QUANTITY, CART_ID, PRODUCT_ID) "
+            + "VALUES (S.ITEM_ID, S.QUANTITY, S.CART_ID, S.PRODUCT_ID)";
+    private static final String MERGE_SET_QUANTITY = String.format(MERGE_ITEM, "S.QUANTITY");
+    private static final String MERGE_INCREMENT_QUANTITY = String.format(MERGE_ITEM, "I.ITEM_QUANTITY + S.QUANTITY");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIdReserver idReserver;
+
+    public ItemBatchRepositoryImpl(JdbcTemplate jdbcTemplate, SequenceIdReserver idReserver) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idReserver = idReserver;
+    }
+
+    @Override
+    public void batchUpdateQuantities(Map<Long, Integer> quantitiesByItemId) {
+        if (quantitiesByItemId.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_QUANTITY, quantitiesByItemId.entrySet(), BATCH_SIZE, (statement, entry) -> {
+            statement.setInt(1, entry.getValue());
+            statement.setLong(2, entry.getKey());
+        });
+    }
+
+    @Override
+    public void batchInsert(Long cartId, Map<Long, Integer> quantitiesByProductId) {
+        if (quantitiesByProductId.isEmpty()) {
+            return;
+        }
+
+        long[] ids = idReserver.reserve(ITEM_SEQUENCE, quantitiesByProductId.size());
+        int[] next = {0};
+        jdbcTemplate.batchUpdate(INSERT_ITEM, quantitiesByProductId.entrySet(), BATCH_SIZE, (statement, entry) -> {
+            statement.setLong(1, ids[next[0]++]);
+            statement.setInt(2, entry.getValue());
+            statement.setLong(3, cartId);
+            statement.setLong(4, entry.getKey());
+        });
+    }
+
+    @Override
+    public void upsertQuantity(Long cartId, Long productId, int quantity) {
+        jdbcTemplate.update(MERGE_SET_QUANTITY, cartId, productId, quantity, idReserver.reserve(ITEM_SEQUENCE));
+    }
+
+    @Override
+    public void incrementQuantity(Long cartId, Long productId, int quantity) {
+        jdbcTemplate.update(MERGE_INCREMENT_QUANTITY, cartId, productId, quantity, idReserver.reserve(ITEM_SEQUENCE));
+    }
+}
\ No newline at end of file
@@ -1,11 +1,54 @@
 package com.digitar120.shoppingcartapp.persistence.repository;
 
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
+public interface ItemRepository extends JpaRepository<Item, Long>, ItemBatchRepository {
 
-public interface ItemRepository extends JpaRepository<Item, Long> {
-    
+    /**
+     * Selects one {@link ItemView} per Item, without loading the Item nor its Product into the persistence context.
+     */
+    String SELECT_VIEWS = "select new com.digitar120.shoppingcartapp.service.dto.ItemView("
+            + "i.id, i.quantity, p.id, p.description) from Item i join i.referencedProduct p ";
+
+    /**
+     * Reads all Items along with their referenced Products, in a single statement.
+     * @return All Items, in ID order.
+     */
+    @Query(SELECT_VIEWS + "order by i.id")
+    List<ItemView> findAllViews();
+
+    /**
+     * Reads an Item along with its referenced Product, in a single statement.
+     * @param id ID of the Item.
+     * @return The matching Item, if any.
+     */
+    @Query(SELECT_VIEWS + "where i.id = :id")
+    Optional<ItemView> findViewById(@Param("id") Long id);
+
+    /**
+     * Deletes an Item with a single statement. Unlike {@link JpaRepository#deleteById(Object)}, it doesn't load the
+     * Item, nor its owning Cart.
+     * @param id ID of the Item to delete.
+     * @return Amount of deleted rows.
+     */
+    @Modifying
+    @Query("delete from Item i where i.id = :id")
+    int deleteItemById(@Param("id") Long id);
+
+    /**
+     * Deletes all the Items of a Cart with a single statement.
+     * @param cartId ID of the owning Cart.
+     * @return Amount of deleted rows.
+     */
+    @Modifying
+    @Query("delete from Item i where i.owningCart.id = :cartId")
+    int deleteByCartId(@Param("cartId") Long cartId);
 }
@@ -1,10 +1,36 @@
 package com.digitar120.shoppingcartapp.persistence.repository;
 
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByDescription(String description);
+
+    /**
+     * Reads the IDs of all Products, without loading the Products.
+     * @return All Product IDs.
+     */
+    @Query("select p.id from Product p")
+    List<Long> findAllIds();
+
+    /**
+     * Reads all Products as {@link ProductView}s, without loading them into the persistence context.
+     * @return All Products.
+     */
+    @Query("select new com.digitar120.shoppingcartapp.service.dto.ProductView(p.id, p.description) from Product p")
+    List<ProductView> findAllViews();
+
+    /**
+     * Checks which of the given Product IDs exist, with a single statement.
+     * @param ids IDs to check.
+     * @return The IDs that belong to a Product.
+     */
+    @Query("select p.id from Product p where p.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,97 @@
+package com.digitar120.shoppingcartapp.persistence.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reserves IDs on the sequences of the entities, for rows inserted through JDBC instead of Hibernate.
+ * <p>IDs are reserved in blocks of {@link SequenceIdReserver#ID_BLOCK_SIZE}, the same way Hibernate's pooled-lo
+ * optimizer does: each value of the sequence reserves the block that starts at it. So the blocks never overlap the ones
+ * Hibernate reserves. The rest of the last block reserved on each sequence is kept for the next call, so inserting
+ * one row at a time only reaches the sequence once every block.</p>
+ * <p>Taking IDs from the column default instead would use up a whole block per row, since the sequences have
+ * {@code INCREMENT BY 50}. IDs of rows that are rolled back, or never inserted, are lost, as they are in Hibernate.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see BulkInsertRepository
+ * @see ItemBatchRepositoryImpl
+ */
+@Component
+public class SequenceIdReserver {
+
+    /**
+     * IDs reserved by each call to a sequence. Must match its {@code INCREMENT BY}, and the allocation size of the
+     * entities.
+     */
+    static final int ID_BLOCK_SIZE = 50;
+
+    private static final String RESERVE_BLOCKS = "SELECT NEXT VALUE FOR %s FROM SYSTEM_RANGE(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    public SequenceIdReserver(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Reserves new IDs, reaching the sequence at most once.
+     * @param sequence Name of the sequence.
+     * @param count Amount of IDs.
+     * @return The reserved IDs, in ascending order.
+     */
+    public long[] reserve(String sequence, int count) {
+        return pools.computeIfAbsent(sequence, Pool::new).reserve(count);
+    }
+
+    /**
+     * Reserves a single new ID.
+     * @param sequence Name of the sequence.
+     * @return The reserved ID.
+     */
+    public long reserve(String sequence) {
+        return reserve(sequence, 1)[0];
+    }
+
+    /**
+     * IDs already reserved on a sequence and not handed out yet: those from {@code next} up to {@code limit}.
+     */
+    private final class Pool {
+        private final String sequence;
+        private long next;
+        private long limit;
+
+        private Pool(String sequence) {
+            this.sequence = sequence;
+        }
+
+        private synchronized long[] reserve(int count) {
+            long[] ids = new long[count];
+            int i = 0;
+            while (i < count && next < limit) {
+                ids[i++] = next++;
+            }
+            if (i == count) {
+                return ids;
+            }
+
+            int blocks = (count - i + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE;
+            List<Long> blockStarts = new ArrayList<>(
+                    jdbcTemplate.queryForList(String.format(RESERVE_BLOCKS, sequence), Long.class, blocks));
+            blockStarts.sort(null);
+
+            for (long blockStart : blockStarts) {
+                next = blockStart;
+                limit = blockStart + ID_BLOCK_SIZE;
+                while (i < count && next < limit) {
+                    ids[i++] = next++;
+                }
+            }
+            return ids;
+        }
+    }
+}
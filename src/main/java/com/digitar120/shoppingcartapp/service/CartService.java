@@ -2,96 +2,308 @@ package com.digitar120.shoppingcartapp.service;
 
 import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
 import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.PreconditionFailedException;
 import com.digitar120.shoppingcartapp.exception.globalhandler.ServiceUnavailableException;
-import com.digitar120.shoppingcartapp.feignclient.UserClient;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import com.digitar120.shoppingcartapp.jfr.CartOperationEvent;
 import com.digitar120.shoppingcartapp.mapper.CartDTOtoCart;
+import com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews;
 import com.digitar120.shoppingcartapp.persistence.entity.Cart;
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
 import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ItemBatchRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
+import com.digitar120.shoppingcartapp.service.dto.CartPageDTO;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import com.digitar120.shoppingcartapp.service.dto.NewCartDTO;
+import com.digitar120.shoppingcartapp.service.dto.QuantityMode;
 import com.digitar120.shoppingcartapp.util.LocalUtilityMethods;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.*;
 
 /**
  * Business logic for the Cart endpoint.
+ * <p>Adding Items, one by one or in bulk, deleting an Item and looking up a Cart by its User are recorded as
+ * {@link CartOperationEvent}s, when a Flight Recorder recording enables them.</p>
  * @author Gabriel Pérez (digitar120)
  * @see Cart
  * @see CartRepository
- * @see UserClient
+ * @see ItemRepository
+ * @see ReactiveUserClient
+ * @see ProductIdIndex
  */
 @Service
 public class CartService {
 
+    /**
+     * Upper bound for {@link CartService#findPage(Long, Integer)}, so a single request can't ask for the whole table.
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final CartRepository repository;
+    private final ItemRepository itemRepository;
     private final CartDTOtoCart mapper;
-    private final UserClient userServiceConnection;
+    private final CartRowsToCartViews viewMapper;
+    private final ReactiveUserClient userServiceConnection;
+    private final ProductIdIndex productIdIndex;
 
-    public CartService(CartRepository repository, CartDTOtoCart mapper, UserClient userServiceConnection) {
+    public CartService(CartRepository repository, ItemRepository itemRepository, CartDTOtoCart mapper, CartRowsToCartViews viewMapper, ReactiveUserClient userServiceConnection, ProductIdIndex productIdIndex) {
         this.repository = repository;
+        this.itemRepository = itemRepository;
         this.mapper = mapper;
+        this.viewMapper = viewMapper;
         this.userServiceConnection = userServiceConnection;
+        this.productIdIndex = productIdIndex;
     }
 
     // Read methods
 
     /**
      * Returns all the Carts in the database.
+     * <p>Like every read method, it returns {@link CartView}s built from {@link CartItemRow}s, so no entities are
+     * loaded.</p>
      * @return A List of Carts containing all elements.
      */
-    public List<Cart> findAll() {
-        return repository.findAll();
+    public List<CartView> findAll() {
+        return viewMapper.map(repository.findAllRows());
+    }
+
+    /**
+     * Returns a keyset page of Carts, ordered by ID.
+     * <p>Unlike offset pagination, the cost of a page doesn't grow with its position, and Carts created or deleted
+     * between two requests don't shift the following pages.</p>
+     * <p>The page of IDs is read first, and then the rows of its Carts, so a page always takes two statements.</p>
+     * @param afterId The {@code nextCursor} of the previous page, or 0 for the first page.
+     * @param size Amount of Carts per page. Capped to {@link CartService#MAX_PAGE_SIZE}.
+     * @return A page of Carts, and the cursor to request the next one.
+     * @throws BadRequestException If {@code afterId} is negative or {@code size} equals or is below 0.
+     */
+    public CartPageDTO findPage(Long afterId, Integer size){
+        if (afterId < 0 || size <= 0){
+            throw new BadRequestException("Los parámetros de paginación son inválidos.");
+        }
+
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        List<Long> ids = repository.findIdsAfter(afterId, PageRequest.of(0, pageSize));
+        List<CartView> carts = ids.isEmpty() ? List.of() : viewMapper.map(repository.findRowsByIdIn(ids));
+
+        Long nextCursor = ids.size() < pageSize ? null : ids.get(ids.size() - 1);
+        return new CartPageDTO(carts, nextCursor);
+    }
+
+    /**
+     * Reads every Cart after a given ID through a forward-only database cursor, handing each one to a consumer.
+     * <p>The cursor returns one row per Item, ordered by Cart ID. Rows are grouped as they arrive, so only the Cart
+     * being read is held in memory. Since the rows aren't entities, nothing accumulates in the persistence context.</p>
+     * @param afterId The last ID already read, or 0 to read everything.
+     * @param consumer Action to execute on each Cart, in ID order.
+     */
+    @Transactional
+    public void streamAll(Long afterId, Consumer<CartView> consumer){
+        try (Stream<CartItemRow> rows = repository.streamRowsAfter(afterId)) {
+            List<CartItemRow> cartRows = new ArrayList<>();
+
+            for (Iterator<CartItemRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+                CartItemRow row = iterator.next();
+
+                // Entregar el carrito anterior al empezar uno nuevo
+                if (!cartRows.isEmpty() && !cartRows.get(0).cartId().equals(row.cartId())) {
+                    consumer.accept(viewMapper.mapCart(cartRows));
+                    cartRows.clear();
+                }
+                cartRows.add(row);
+            }
+
+            if (!cartRows.isEmpty()) {
+                consumer.accept(viewMapper.mapCart(cartRows));
+            }
+        }
+    }
+
+    /**
+     * Returns a single Cart that matches an ID, along with its Items and their referenced Products.
+     * @param id ID to execute the search with.
+     * @return A read-only view of the Cart with a matching ID.
+     * @throws NotFoundException If no element matches.
+     */
+    public CartView findViewById(Long id){
+        List<CartItemRow> rows = repository.findRowsById(id);
+        if (rows.isEmpty()){
+            throw new NotFoundException("No se encontró el carrito de ID " + id);
+        }
+
+        return viewMapper.mapCart(rows);
     }
 
     /**
-     * Returns a single Cart that matches and ID.
+     * Returns a single managed Cart that matches an ID, along with its Items and their referenced Products. Meant for
+     * updates that return the Cart: its version is incremented when the transaction commits.
      * @param id ID to execute the search with.
      * @return Cart object with a matching ID.
-     * @throws BadRequestException If no element matches.
+     * @throws NotFoundException If no element matches.
      */
     public Cart findById(Long id){
-        return verifyElementExistsAndReturn(repository, id, "No se encontró el carrito de ID " + id, HttpStatus.NOT_FOUND);
+        return repository.findWithItemsAndProductsForChangeById(id)
+                .orElseThrow(() -> new NotFoundException("No se encontró el carrito de ID " + id));
+    }
+
+    /**
+     * Returns a single Cart that matches an ID, along with its Items. Referenced Products aren't loaded, so only their
+     * IDs are available. Meant for updates that don't return the Cart: its version is incremented when the
+     * transaction commits.
+     * @param id ID to execute the search with.
+     * @return Cart object with a matching ID.
+     * @throws NotFoundException If no element matches.
+     */
+    public Cart findWithItems(Long id){
+        return repository.findWithItemsForChangeById(id)
+                .orElseThrow(() -> new NotFoundException("No se encontró el carrito de ID " + id));
+    }
+
+    /**
+     * Returns the current version of a Cart, without reading its Items. Allows answering conditional requests
+     * without building the Cart.
+     * @param id ID to execute the search with.
+     * @return The version of the Cart.
+     * @throws NotFoundException If no element matches.
+     */
+    public Long findVersion(Long id){
+        return repository.findVersionById(id)
+                .orElseThrow(() -> new NotFoundException("No se encontró el carrito de ID " + id));
+    }
+
+    /**
+     * Verifies that a loaded Cart is at the version a client expects.
+     * @param cart The Cart to verify.
+     * @param expectedVersion The expected version, or {@code null} to skip the verification.
+     * @throws PreconditionFailedException If the versions don't match.
+     */
+    private static void verifyVersion(Cart cart, Long expectedVersion){
+        if (expectedVersion != null && !expectedVersion.equals(cart.getVersion())){
+            throw new PreconditionFailedException("El carrito N° " + cart.getId() + " fue modificado. Versión actual: " + cart.getVersion());
+        }
+    }
+
+    /**
+     * Increments the version of a Cart that isn't loaded, verifying it against the version a client expects.
+     * @param cartId ID of the Cart.
+     * @param expectedVersion The expected version, or {@code null} to skip the verification.
+     * @throws NotFoundException If the Cart doesn't exist.
+     * @throws PreconditionFailedException If the versions don't match.
+     */
+    private void incrementVersion(Long cartId, Long expectedVersion){
+        int updated = expectedVersion == null
+                ? repository.incrementVersion(cartId)
+                : repository.incrementVersion(cartId, expectedVersion);
+
+        if (updated == 0) {
+            // Si el carrito existe, la versión no coincidía
+            if (expectedVersion != null && repository.existsById(cartId)) {
+                throw new PreconditionFailedException("El carrito N° " + cartId + " fue modificado.");
+            }
+            throw new NotFoundException("No se encontró el carrito N° " + cartId);
+        }
+    }
+
+    /**
+     * Verifies that a Product exists before writing an Item referencing it.
+     * @param productId ID of the Product.
+     * @throws NotFoundException If the Product doesn't exist.
+     */
+    private void verifyProductExists(Long productId){
+        if (!productIdIndex.exists(productId)) {
+            throw new NotFoundException("No se encontró el producto N°" + productId);
+        }
+    }
+
+    private static String joinIds(Set<Long> ids){
+        StringJoiner joiner = new StringJoiner(", ");
+        ids.forEach(id -> joiner.add(String.valueOf(id)));
+        return joiner.toString();
     }
 
     /**
      * Calls the User service to verify that an user exists, then searches and returns a Cart object matching by its {@code userId}.
+     * <p>The User service call is non-blocking, so it runs while the Cart is being searched.</p>
      * @param userId {@code userId} userId to execute the search with.
      * @return A Cart with a matching {@code userId}.
-     * @throws ServiceUnavailableException If the {@code FeignClient} call fails.
-     * @throws NotFoundException If the {@code FeignClient} call succeeds but the User doesn't exist.
+     * @throws ServiceUnavailableException If the User service call fails.
+     * @throws NotFoundException If the User service call succeeds but the User doesn't exist.
      */
-    public Cart findByUserId(Integer userId){
-        Optional<Cart> optionalCart = repository.findByUserId(userId);
+    public CartView findByUserId(Integer userId){
+        CartOperationEvent event = CartOperationEvent.start(CartOperationEvent.FIND_BY_USER_ID).user(userId);
+
+        try {
+            CompletableFuture<UserResponse> user = userServiceConnection.getUserByUserId(userId).toFuture();
+            List<CartItemRow> rows = repository.findRowsByUserId(userId);
+            event.loaded();
 
-        if (userServiceConnection
-                .getUserByUserId(userId)
-                .getId() == -1){
-            throw new ServiceUnavailableException("Error interno. No se pudo verificar que el usuario existe. Intente más tarde.");
+            UserResponse userResponse = await(user);
+            event.userLookedUp();
 
-        } else if (optionalCart.isEmpty()) {
-            throw new NotFoundException("No existe un carrito asignado a ése usuario.");
+            if (userResponse.getId() == -1){
+                throw new ServiceUnavailableException("Error interno. No se pudo verificar que el usuario existe. Intente más tarde.");
+
+            } else if (rows.isEmpty()) {
+                throw new NotFoundException("No existe un carrito asignado a ése usuario.");
+            }
+
+            CartView cart = viewMapper.mapCart(rows);
+            event.cart(cart.id(), cart.items().size(), 0);
+            return cart;
+        } finally {
+            event.finish();
         }
+    }
 
-        return optionalCart.get();
+    /**
+     * Waits for the result of a User service call.
+     * @param user The pending call.
+     * @return The result of the call.
+     */
+    private static UserResponse await(CompletableFuture<UserResponse> user){
+        try {
+            return user.join();
+        } catch (CompletionException e) {
+            // Las excepciones de negocio, como el rechazo de la consulta, se propagan tal cual
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     /**
      * Retrieves the Item Set of a Cart, matching by ID.
-     * <p>It reuses the {@link CartService#findById(Long)} method, so it's subject to its behavior.</p>
+     * <p>It reuses the {@link CartService#findViewById(Long)} method, so it's subject to its behavior.</p>
      * @param id ID to execute the search with.
-     * @return A matching Cart's Item Set.
+     * @return A matching Cart's Items, in ID order.
      */
-    public Set<Item> getContent(Long id){
-        return findById(id).getItems();
+    public List<ItemView> getContent(Long id){
+        return findViewById(id).items();
     }
 
     // Create methods
@@ -99,11 +311,17 @@ public class CartService {
     /**
      * Creates a new Cart with a given {@link NewCartDTO}.
      * <p>Uses a {@link CartDTOtoCart} mapper.</p>
+     * <p>A User holds a single Cart, as enforced by the {@code UK_CART_USER} constraint.</p>
      * @param cartDTO A {@code NewCartDTO} object to provide basic information.
      * @return A newly created Cart object.
+     * @throws BadRequestException If the User already holds a Cart.
      */
     public Cart newCart(NewCartDTO cartDTO){
-        return repository.save(mapper.map(cartDTO));
+        try {
+            return repository.save(mapper.map(cartDTO));
+        } catch (DataIntegrityViolationException e) {
+            throw new BadRequestException("El usuario N° " + cartDTO.getUserId() + " ya tiene un carrito asignado.");
+        }
     }
 
     // Update methods
@@ -113,10 +331,12 @@ public class CartService {
      * <p>This method is a bit complex in behavior. It will check for the following:</p>
      * <p><ul>
      *     <li>If the quantity value is valid</li>
+     *     <li>If {@code productId} matches any Product, through the {@link ProductIdIndex}</li>
      *     <li>If {@code cartId} matches any Cart (reusing {@link CartService#findById(Long)} and thus inheriting its
      *     behavior)</li>
-     *     <li>If {@code productId} matches any referenced Products already listed in the Cart's Item Set. If positive, updates
-     *     the quantity instead. If negative, creates a new one</li>
+     *     <li>If {@code productId} matches any referenced Products already listed in the Cart's Item Set, through
+     *     {@link Cart#findItemByProductId(Long)}. If positive, updates the quantity instead. If negative, creates a new
+     *     one</li>
      * </ul></p>
      * @param cartId The ID to match a Cart with
      * @param productId The ID of the Product to work with
@@ -127,80 +347,194 @@ public class CartService {
      */
     @Transactional
     public Cart addItemToCart(Long cartId, Long productId, Integer quantity){
+        return addItemToCart(cartId, productId, quantity, null);
+    }
+
+    /**
+     * A conditional version of {@link CartService#addItemToCart(Long, Long, Integer)}, that only applies if the Cart
+     * is still at the version the client expects.
+     * @param cartId The ID to match a Cart with
+     * @param productId The ID of the Product to work with
+     * @param quantity Desired quantity for the referenced Product
+     * @param expectedVersion Version read from {@code If-Match}, or {@code null} to apply unconditionally.
+     * @return An updated Cart object, containing the newly created or edited Item in its Item Set.
+     * @throws PreconditionFailedException If the Cart is at another version.
+     */
+    @Transactional
+    public Cart addItemToCart(Long cartId, Long productId, Integer quantity, Long expectedVersion){
+        CartOperationEvent event = CartOperationEvent.start(CartOperationEvent.ADD_ITEM);
 
         // Verificar que el valor de cantidad sea válido
         if(quantity <= 0){
             throw new BadRequestException("La cantidad ingresada es inválida.");
         }
 
+        verifyProductExists(productId);
+
         // Adquirir el carrito, verificando que existe mediante findById()
         Cart cart = this.findById(cartId);
-
-        Item matchedItem = new Item();
-        Product matchedProduct = new Product();
+        verifyVersion(cart, expectedVersion);
+        event.loaded();
 
         // Existe un ítem con el mismo referencedProduct?
-        for (Item element : cart.getItems()) {
-            if (element.getReferencedProduct().getId().equals(productId)) {
-                matchedItem = element;
-                matchedProduct = element.getReferencedProduct();
-            }
-        }
+        Optional<Item> matchedItem = cart.findItemByProductId(productId);
 
         // Si existe, igualar su cantidad a la ingresada
-        if (matchedProduct.getId() != null) {
-            // Eliminar el ítem encontrado
-            cart.getItems().remove(matchedItem);
+        if (matchedItem.isPresent()) {
+            matchedItem.get().setQuantity(quantity);
+        } else {
+            // Si no existe, construir el ítem y agregarlo. El producto ya fue verificado.
+            cart.addItem(new Item(
+                    quantity,
+                    cart,
+                    new Product(productId)
+            ));
+        }
 
-            // Editar y agregar nuevamente el ítem.
-            matchedItem.setQuantity(quantity);
-            cart.getItems().add(matchedItem);
+        // La clave foránea cubre un producto eliminado después de la verificación
+        Cart savedCart;
+        try {
+            savedCart = repository.save(cart);
+            repository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw new NotFoundException("No se encontró el producto N°" + productId);
+        }
+        event.written();
+        event.cart(cartId, cart.getItems().size(), 1).finish();
+        return savedCart;
+    }
 
-            return repository.save(cart);
-        } else {
-            // Si no existe, construir el ítem y agregarlo
-
-            // Cómo verificar si un producto existe o no? Debería agregar el servicio o el repositorio de
-            // Product? En el mientras tanto, pruebo una solución más ambigua.
-            try {
-                cart.getItems().add(new Item(
-                        quantity,
-                        cart,
-                        new Product(productId)
-                ));
-                return repository.save(cart);
-            } catch (Exception e) {
-                throw new NotFoundException("No se encontró el producto N°" + productId);
+    /**
+     * An alternative to {@link CartService#addItemToCart(Long, Long, Integer)} that doesn't load the Cart.
+     * <p>The Item referencing the Product is created, or its quantity is set or incremented, with a single upsert keyed
+     * on the {@code (CART_ID, PRODUCT_ID)} unique constraint. Concurrent calls for the same Cart don't overwrite each
+     * other, since the database resolves them row by row.</p>
+     * <p>The Product is verified first, through the {@link ProductIdIndex}. Then the version of the Cart is incremented,
+     * which also keeps concurrent calls for the same Cart from inserting the same Item twice.</p>
+     * @param cartId The ID to match a Cart with.
+     * @param productId The ID of the Product to work with.
+     * @param quantity Quantity to set, or to add to the current one.
+     * @param mode Whether the quantity of an existing Item is replaced or incremented.
+     * @throws BadRequestException If the {@code quantity} equals or is below 0.
+     * @throws NotFoundException If the Cart or the Product don't exist.
+     */
+    @Transactional
+    public void upsertItem(Long cartId, Long productId, Integer quantity, QuantityMode mode){
+        upsertItem(cartId, productId, quantity, mode, null);
+    }
+
+    /**
+     * A conditional version of {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)}, that only applies if
+     * the Cart is still at the version the client expects.
+     * @param cartId The ID to match a Cart with.
+     * @param productId The ID of the Product to work with.
+     * @param quantity Quantity to set, or to add to the current one.
+     * @param mode Whether the quantity of an existing Item is replaced or incremented.
+     * @param expectedVersion Version read from {@code If-Match}, or {@code null} to apply unconditionally.
+     * @throws PreconditionFailedException If the Cart is at another version.
+     */
+    @Transactional
+    public void upsertItem(Long cartId, Long productId, Integer quantity, QuantityMode mode, Long expectedVersion){
+        if (quantity <= 0){
+            throw new BadRequestException("La cantidad ingresada es inválida.");
+        }
+
+        verifyProductExists(productId);
+        incrementVersion(cartId, expectedVersion);
+
+        // La clave foránea cubre un producto eliminado después de la verificación
+        try {
+            if (mode == QuantityMode.INCREMENT) {
+                itemRepository.incrementQuantity(cartId, productId, quantity);
+            } else {
+                itemRepository.upsertQuantity(cartId, productId, quantity);
             }
+        } catch (DataIntegrityViolationException e) {
+            throw new NotFoundException("No se encontró el producto N°" + productId);
         }
     }
 
     /**
-     *  A repeating version of {@link CartService#addItemToCart(Long, Long, Integer)}.
+     *  A batch version of {@link CartService#addItemToCart(Long, Long, Integer)}.
      *  <p>Adds the contents of an Item Set to a Cart's Item Set, while verifying that none of the Items received
-     *  have an ID so they can be properly initialize them with {@code addItemToCart()}.</p>
+     *  have an ID and that all quantities are valid.</p>
      *  <p>This is because Items with non-null IDs will not be properly loaded into the database, while the API will
      *  still respond with HTTP 200.</p>
+     *  <p>Items referencing the same Product are merged first, adding up their quantities, and all referenced Products
+     *  are verified at once through {@link ProductIdIndex#findMissing(java.util.Collection)}. Then the Cart is loaded
+     *  once through {@link CartService#findWithItems(Long)}, and all updates and inserts are sent as JDBC batches through
+     *  {@link ItemBatchRepository}, so the cost in round trips doesn't grow with the size of the Item Set.</p>
      * @param cartId The ID to match a Cart with.
      * @param itemSet An Item Set containing new Items.
-     * @throws BadRequestException If an Item on the receiveing Item Set contains an ID.
+     * @throws BadRequestException If an Item on the receiveing Item Set contains an ID, or an invalid quantity.
+     * @throws NotFoundException If the Cart or one of the referenced Products doesn't exist. The message lists the missing
+     * Products.
      */
     @Transactional
     public void addMultipleItemsToCart(Long cartId, Set<Item> itemSet) {
+        addMultipleItemsToCart(cartId, itemSet, null);
+    }
+
+    /**
+     * A conditional version of {@link CartService#addMultipleItemsToCart(Long, Set)}, that only applies if the Cart is
+     * still at the version the client expects.
+     * @param cartId The ID to match a Cart with.
+     * @param itemSet An Item Set containing new Items.
+     * @param expectedVersion Version read from {@code If-Match}, or {@code null} to apply unconditionally.
+     * @throws PreconditionFailedException If the Cart is at another version.
+     */
+    @Transactional
+    public void addMultipleItemsToCart(Long cartId, Set<Item> itemSet, Long expectedVersion) {
+        CartOperationEvent event = CartOperationEvent.start(CartOperationEvent.ADD_ITEMS);
 
         for (Item element: itemSet){
             if (element.getId() != null){
                 throw new BadRequestException("Uno o más elementos ingresados incluyen un ID de ítem que no corresponde.");
             }
+            if (element.getQuantity() == null || element.getQuantity() <= 0){
+                throw new BadRequestException("La cantidad ingresada es inválida.");
+            }
         }
 
-        // Como se confirma que está todo en orden, añadir los elementos al carrito.
+        // Unificar los ítems que referencian al mismo producto
+        Map<Long, Integer> quantitiesByProductId = new LinkedHashMap<>();
         for (Item element: itemSet){
-            this.addItemToCart(
-                    cartId,
-                    element.getReferencedProduct().getId(),
-                    element.getQuantity());
+            quantitiesByProductId.merge(element.getReferencedProduct().getId(), element.getQuantity(), Integer::sum);
         }
+
+        Set<Long> missingProductIds = productIdIndex.findMissing(quantitiesByProductId.keySet());
+        if (!missingProductIds.isEmpty()) {
+            throw new NotFoundException("No se encontraron los productos N° " + joinIds(missingProductIds) + ".");
+        }
+
+        // Sólo hacen falta los IDs de los productos, no los productos
+        Cart cart = this.findWithItems(cartId);
+        verifyVersion(cart, expectedVersion);
+        event.loaded();
+
+        // Separar ítems existentes de ítems nuevos
+        Map<Long, Integer> updatedQuantities = new LinkedHashMap<>();
+        Map<Long, Integer> newQuantities = new LinkedHashMap<>();
+
+        quantitiesByProductId.forEach((productId, quantity) -> {
+            Optional<Item> matchedItem = cart.findItemByProductId(productId);
+
+            if (matchedItem.isPresent()) {
+                updatedQuantities.put(matchedItem.get().getId(), quantity);
+            } else {
+                newQuantities.put(productId, quantity);
+            }
+        });
+
+        // La clave foránea cubre un producto eliminado después de la verificación
+        try {
+            itemRepository.batchUpdateQuantities(updatedQuantities);
+            itemRepository.batchInsert(cartId, newQuantities);
+        } catch (DataIntegrityViolationException e) {
+            throw new NotFoundException("No se encontró uno de los productos referenciados.");
+        }
+        event.written();
+        event.cart(cartId, cart.getItems().size() + newQuantities.size(), quantitiesByProductId.size()).finish();
     }
 
     // Delete methods
@@ -208,7 +542,7 @@ public class CartService {
     /**
      * Deletes an Item from a Cart's Item Set
      *<p>This method will verify that the Cart exists through {@link CartService#findById(Long)} (inheriting its
-     * behavior), after which it will search the itemId in the matched Cart's Item Set.</p>
+     * behavior), after which it will search the itemId in the matched Cart's Item index.</p>
      * @param cartId The {@code cartId} to match with.
      * @param itemId The {@code itemId} to match with.
      * @return A copy of the updated Cart object.
@@ -216,51 +550,88 @@ public class CartService {
      */
     @Transactional
     public Cart deleteItemFromCart(Long cartId, Long itemId){
+        return deleteItemFromCart(cartId, itemId, null);
+    }
+
+    /**
+     * A conditional version of {@link CartService#deleteItemFromCart(Long, Long)}, that only applies if the Cart is
+     * still at the version the client expects.
+     * @param cartId The {@code cartId} to match with.
+     * @param itemId The {@code itemId} to match with.
+     * @param expectedVersion Version read from {@code If-Match}, or {@code null} to apply unconditionally.
+     * @return A copy of the updated Cart object.
+     * @throws PreconditionFailedException If the Cart is at another version.
+     */
+    @Transactional
+    public Cart deleteItemFromCart(Long cartId, Long itemId, Long expectedVersion){
+        CartOperationEvent event = CartOperationEvent.start(CartOperationEvent.DELETE_ITEM);
 
        Cart cart = findById(cartId);
+       verifyVersion(cart, expectedVersion);
+       event.loaded();
 
         // Verificar que el ítem ingresado existe
-        Item matchedItem = new Item();
-
-        for (Item element: cart.getItems()){
-            if (element.getId().equals(itemId)){
-                matchedItem = element;
-            }
-        }
+        Optional<Item> matchedItem = cart.findItemById(itemId);
 
-        if (matchedItem.getId() == null){
+        if (matchedItem.isEmpty()){
             throw new NotFoundException("No se encontró el ítem N°" + itemId);
         } else {
-            cart.getItems().remove(matchedItem);
-            return repository.save(cart);
+            cart.removeItem(matchedItem.get());
+            Cart savedCart = repository.save(cart);
+            event.written();
+            event.cart(cartId, cart.getItems().size(), 1).finish();
+            return savedCart;
         }
-
-
     }
 
     /**
      * Deletes a cart
      * <p>Executes {@link LocalUtilityMethods#verifyElementExists(JpaRepository, Object, String, HttpStatus)} to verify
-     * that the Cart exists. If the method does not fail, executes a deletion by ID.</p>
+     * that the Cart exists. If the method does not fail, deletes its Items and then the Cart itself, without loading
+     * either of them.</p>
      * @param id ID of the Cart to delete.
      */
     @Transactional
     public void deleteCart(Long id){
         verifyElementExists(repository, id, "No se encontró el carrito N° " + id, HttpStatus.NOT_FOUND);
-        repository.deleteById(id);
+        itemRepository.deleteByCartId(id);
+        repository.deleteCartById(id);
+    }
+
+    /**
+     * A conditional version of {@link CartService#deleteCart(Long)}, that only applies if the Cart is still at the
+     * version the client expects. The version is verified by incrementing it, so a concurrent change can't slip in
+     * before the deletion.
+     * @param id ID of the Cart to delete.
+     * @param expectedVersion Version read from {@code If-Match}, or {@code null} to apply unconditionally.
+     * @throws NotFoundException If the Cart doesn't exist.
+     * @throws PreconditionFailedException If the Cart is at another version.
+     */
+    @Transactional
+    public void deleteCart(Long id, Long expectedVersion){
+        if (expectedVersion == null){
+            deleteCart(id);
+            return;
+        }
+
+        incrementVersion(id, expectedVersion);
+        itemRepository.deleteByCartId(id);
+        repository.deleteCartById(id);
     }
 
     /**
      * Deletes a Cart by matching its {@code userId}.
+     * <p>Only the Cart ID is read, after which the Cart is deleted as in {@link CartService#deleteCart(Long)}.</p>
      * @param userId The ID to match a Cart with.
      * @throws NotFoundException If {@code userId} matches no Carts.
      */
     @Transactional
     public void deleteCartByUserId(Integer userId){
-        Optional<Cart> optionalCart = repository.findByUserId(userId);
-        if (optionalCart.isEmpty()){
+        Optional<Long> optionalCartId = repository.findIdByUserId(userId);
+        if (optionalCartId.isEmpty()){
             throw new NotFoundException("No se encontró un carrito con ése ID de usuario.");
         }
-        repository.deleteById(optionalCart.get().getId());
+        itemRepository.deleteByCartId(optionalCartId.get());
+        repository.deleteCartById(optionalCartId.get());
     }
 }
@@ -1,18 +1,23 @@
 package com.digitar120.shoppingcartapp.service;
 
+import com.digitar120.shoppingcartapp.exception.globalhandler.ConflictException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
 import com.digitar120.shoppingcartapp.mapper.ItemToEditedItem;
-import com.digitar120.shoppingcartapp.persistence.entity.Cart;
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
 import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
 import com.digitar120.shoppingcartapp.service.dto.EditedItemDTO;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import java.util.List;
+import java.util.Locale;
 
 import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.*;
 
@@ -27,11 +32,18 @@ import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.*;
 @Service
 public class ItemService {
 
+    /**
+     * Unique constraint of an Item per Cart and Product.
+     */
+    private static final String UK_ITEM_CART_PRODUCT = "UK_ITEM_CART_PRODUCT";
+
     @Autowired
     private final ItemRepository repository;
+    private final CartRepository cartRepository;
     private final ItemToEditedItem mapper;
-    public ItemService(ItemRepository repository, ItemToEditedItem mapper) {
+    public ItemService(ItemRepository repository, CartRepository cartRepository, ItemToEditedItem mapper) {
         this.repository = repository;
+        this.cartRepository = cartRepository;
         this.mapper = mapper;
     }
 
@@ -39,22 +51,22 @@ public class ItemService {
 
     /**
      * Lists all Items in the database, from all Carts.
+     * <p>Items are read as {@link ItemView}s, so no entities are loaded.</p>
      * @return The contents of the repository.
      */
-    public List<Item> findAll(){
-        return this.repository.findAll();
+    public List<ItemView> findAll(){
+        return this.repository.findAllViews();
     }
 
     /**
      * Finds an Item by its ID.
-     * <p>Executes {@link com.digitar120.shoppingcartapp.util.LocalUtilityMethods#verifyElementExistsAndReturn(JpaRepository, Object, String, HttpStatus)}
-     * and returns its contents.</p>
      * @param id The Item ID to match.
-     * @return An matching Item object, if the search is positive.
-     * @throws com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException If no matching Item is found.
+     * @return A read-only view of the matching Item, if the search is positive.
+     * @throws NotFoundException If no matching Item is found.
      */
-    public Item findById(Long id){
-        return verifyElementExistsAndReturn(repository, id, "No se encontró un ítem de N° " + id, HttpStatus.NOT_FOUND);
+    public ItemView findById(Long id){
+        return repository.findViewById(id)
+                .orElseThrow(() -> new NotFoundException("No se encontró un ítem de N° " + id));
     }
 
     // Create operations
@@ -71,18 +83,36 @@ public class ItemService {
     }
 
     /**
-     * Creates a new, full Item.
+     * Creates a new, full Item, and increments the version of its Cart.
+     * <p>The Cart is referenced without loading it.</p>
      * @param cartId A Cart ID to associate the Item with.
      * @param productId A Product ID to associate the Item with.
      * @param quantity A quantity associated to the Product.
      * @return A copy of the saved Item.
+     * @throws NotFoundException If the Cart or the Product don't exist.
+     * @throws ConflictException If the Cart already has an Item referencing the Product.
      */
+    @Transactional
     public Item newItem(Long cartId, Long productId, Integer quantity){
-        return repository.save(new Item(
-                quantity,
-                new Cart(cartId),
-                new Product(productId)
-        ));
+        if (cartRepository.incrementVersion(cartId) == 0) {
+            throw new NotFoundException("No se encontró el carrito N° " + cartId);
+        }
+
+        try {
+            Item item = repository.save(new Item(
+                    quantity,
+                    cartRepository.getById(cartId),
+                    new Product(productId)
+            ));
+            // Se inserta ya, para traducir aquí las violaciones de restricciones
+            repository.flush();
+            return item;
+        } catch (DataIntegrityViolationException e) {
+            if (String.valueOf(e.getMostSpecificCause().getMessage()).toUpperCase(Locale.ROOT).contains(UK_ITEM_CART_PRODUCT)) {
+                throw new ConflictException("El carrito N° " + cartId + " ya tiene un ítem del producto N° " + productId + ".");
+            }
+            throw new NotFoundException("No se encontró el producto N°" + productId);
+        }
     }
 
     // Update operations
@@ -91,6 +121,7 @@ public class ItemService {
      * Edits an Item in the database.
      * <p>Executes {@link com.digitar120.shoppingcartapp.util.LocalUtilityMethods#verifyElementExists(JpaRepository, Object, String, HttpStatus)},
      * after which it will build a new Item based on the </p>
+     * <p>The version of the owning Cart is incremented.</p>
      * @param editedItemDTO A DTO containing the edited information of an Item.
      * @param id ID of the Item to edit.
      * @return A copy of the edited Item.
@@ -98,6 +129,7 @@ public class ItemService {
     @Transactional
     public Item editItem(EditedItemDTO editedItemDTO, Long id){
         verifyElementExists(repository, id, "No se encontró un ítem de N°" + id, HttpStatus.NOT_FOUND);
+        cartRepository.incrementVersionByItemId(id);
 
         Item item = mapper.map(editedItemDTO);
         item.setId(id);
@@ -110,13 +142,15 @@ public class ItemService {
     /**
      * Deletes an Item matching its ID.
      * Executes {@link com.digitar120.shoppingcartapp.util.LocalUtilityMethods#verifyElementExists(JpaRepository, Object, String, HttpStatus)},
-     * and then it executes a deletion with the provided ID.
+     * and then it executes a deletion with the provided ID, through {@link ItemRepository#deleteItemById(Long)} so
+     * that neither the Item nor its owning Cart are loaded. The version of the owning Cart is incremented.
      * @param id The ID to execute the deletion with.
      */
     @Transactional
     public void deleteById(Long id) {
         verifyElementExists(repository, id, "No se encontró un ítem de N°" + id, HttpStatus.NOT_FOUND);
-        repository.deleteById(id);
+        cartRepository.incrementVersionByItemId(id);
+        repository.deleteItemById(id);
     }
 
 }
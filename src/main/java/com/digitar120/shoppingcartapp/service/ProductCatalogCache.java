@@ -0,0 +1,174 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.runAfterCommit;
+
+/**
+ * Read-through cache of the Product catalog, used by {@link ProductService}.
+ * <p>Products by ID and Product lists by description are kept in two bounded caches. The full catalog is kept as an
+ * immutable snapshot, built on the first listing after a change.</p>
+ * <p>Adding or deleting a Product invalidates the entries it affects, and the snapshot. Inside a transaction, the
+ * invalidation waits for the commit, so a concurrent lookup can't cache the catalog as it was before the change.</p>
+ * <p>Hit, miss and eviction counts are published as {@code cache.*} metrics, with the tags {@code cache=productById} and
+ * {@code cache=productByDescription}. Snapshot builds are published as {@code product.catalog.snapshot.builds}.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductCatalogEndpoint
+ */
+@Component
+public class ProductCatalogCache {
+
+    public static final String BY_ID_CACHE_NAME = "productById";
+    public static final String BY_DESCRIPTION_CACHE_NAME = "productByDescription";
+
+    private final Cache<Long, Product> productsById;
+    private final Cache<String, List<Product>> productsByDescription;
+
+    private final Object snapshotLock = new Object();
+    private volatile List<Product> snapshot;
+    private final AtomicLong snapshotBuilds = new AtomicLong();
+
+    public ProductCatalogCache(MeterRegistry meterRegistry,
+                               @Value("${product-catalog.cache.maximum-size:10000}") long maximumSize) {
+        this.productsById = CaffeineCacheMetrics.monitor(
+                meterRegistry,
+                Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build(),
+                BY_ID_CACHE_NAME);
+        this.productsByDescription = CaffeineCacheMetrics.monitor(
+                meterRegistry,
+                Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build(),
+                BY_DESCRIPTION_CACHE_NAME);
+
+        FunctionCounter.builder("product.catalog.snapshot.builds", snapshotBuilds, AtomicLong::get)
+                .description("Builds of the Product catalog snapshot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Query the cache, and the loader if the Product isn't cached.
+     * @param id ID of the Product.
+     * @param loader Database lookup. Exceptions it throws are propagated, and nothing is cached.
+     * @return The matching Product.
+     */
+    public Product getById(Long id, Function<Long, Product> loader) {
+        return productsById.get(id, loader);
+    }
+
+    /**
+     * Query the cache, and the loader if the description isn't cached. Empty results are cached too.
+     * @param description Description of the Products.
+     * @param loader Database lookup.
+     * @return An immutable list of matching Products.
+     */
+    public List<Product> getByDescription(String description, Function<String, List<Product>> loader) {
+        return productsByDescription.get(description, key -> List.copyOf(loader.apply(key)));
+    }
+
+    /**
+     * Return the catalog snapshot, building it first if the catalog changed since the last one.
+     * <p>Concurrent listings share a single build.</p>
+     * @param loader Database lookup of all Products.
+     * @return An immutable list of all Products.
+     */
+    public List<Product> getAll(Supplier<List<Product>> loader) {
+        List<Product> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (snapshotLock) {
+            if (snapshot == null) {
+                snapshot = List.copyOf(loader.get());
+                snapshotBuilds.incrementAndGet();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Invalidate the entries affected by a new Product: lookups of its description, and the snapshot.
+     * @param description Description of the new Product.
+     */
+    public void productAdded(String description) {
+        runAfterCommit(() -> {
+            productsByDescription.invalidate(description);
+            invalidateSnapshot();
+        });
+    }
+
+    /**
+     * Invalidate the entries affected by a deleted Product: its ID, lookups of its description, and the snapshot.
+     * @param id ID of the deleted Product.
+     */
+    public void productDeleted(Long id) {
+        runAfterCommit(() -> {
+            Product product = productsById.asMap().remove(id);
+
+            // Sin el producto en caché no se conoce su descripción
+            if (product != null) {
+                productsByDescription.invalidate(product.getDescription());
+            } else {
+                productsByDescription.invalidateAll();
+            }
+            invalidateSnapshot();
+        });
+    }
+
+    /**
+     * Empty both caches and the snapshot, for changes made to the catalog outside of {@link ProductService}.
+     */
+    public void invalidateAll() {
+        productsById.invalidateAll();
+        productsByDescription.invalidateAll();
+        invalidateSnapshot();
+    }
+
+    private void invalidateSnapshot() {
+        // Espera a que termine una construcción en curso, que puede haber leído el catálogo anterior
+        synchronized (snapshotLock) {
+            snapshot = null;
+        }
+    }
+
+    /**
+     * @return Hit, miss and eviction counts of the Products by ID cache, since startup.
+     */
+    public CacheStats byIdStats() {
+        return productsById.stats();
+    }
+
+    /**
+     * @return Hit, miss and eviction counts of the Products by description cache, since startup.
+     */
+    public CacheStats byDescriptionStats() {
+        return productsByDescription.stats();
+    }
+
+    /**
+     * @return Amount of snapshot builds, since startup.
+     */
+    public long snapshotBuilds() {
+        return snapshotBuilds.get();
+    }
+
+    /**
+     * @return Amount of Products in the snapshot, or {@code -1} if there is no snapshot.
+     */
+    public int snapshotSize() {
+        List<Product> current = snapshot;
+        return current == null ? -1 : current.size();
+    }
+}
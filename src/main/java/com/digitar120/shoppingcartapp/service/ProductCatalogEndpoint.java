@@ -0,0 +1,55 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to inspect and invalidate the Product catalog cache, at {@code /actuator/productcache}.
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductCatalogCache
+ */
+@Component
+@Endpoint(id = "productcache")
+public class ProductCatalogEndpoint {
+
+    private final ProductCatalogCache catalogCache;
+
+    public ProductCatalogEndpoint(ProductCatalogCache catalogCache) {
+        this.catalogCache = catalogCache;
+    }
+
+    /**
+     * @return Statistics of both caches, and of the snapshot.
+     */
+    @ReadOperation
+    public Map<String, Object> stats() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("byId", statsOf(catalogCache.byIdStats()));
+        response.put("byDescription", statsOf(catalogCache.byDescriptionStats()));
+        response.put("snapshotSize", catalogCache.snapshotSize());
+        response.put("snapshotBuilds", catalogCache.snapshotBuilds());
+        return response;
+    }
+
+    private static Map<String, Object> statsOf(CacheStats stats) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("hits", stats.hitCount());
+        response.put("misses", stats.missCount());
+        response.put("evictions", stats.evictionCount());
+        return response;
+    }
+
+    /**
+     * Empty the caches and the snapshot.
+     */
+    @DeleteOperation
+    public void invalidateAll() {
+        catalogCache.invalidateAll();
+    }
+}
@@ -0,0 +1,150 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.util.ConcurrentBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.runAfterCommit;
+
+/**
+ * In-memory index of existing Product IDs, used by {@link CartService} to reject Items referencing missing Products
+ * before writing them.
+ * <p>IDs are kept in a {@link ConcurrentBitmap}, loaded from the database on first use, and updated by
+ * {@link ProductService} once its changes are committed.</p>
+ * <p>An ID that isn't in the index is confirmed with a primary key lookup before it's rejected, and added to the index
+ * if it exists after all. So Products inserted without going through {@code ProductService} (by a migration, for
+ * example) are never rejected; they only cost that lookup the first time. The foreign key on {@code ITEM.PRODUCT_ID}
+ * still covers a Product deleted while an Item referencing it is being written.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductRepository#findAllIds()
+ */
+@Component
+public class ProductIdIndex {
+
+    private final ProductRepository productRepository;
+
+    private final Object loadLock = new Object();
+    private volatile ConcurrentBitmap productIds;
+
+    public ProductIdIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    /**
+     * Checks if a Product exists.
+     * @param productId ID of the Product.
+     * @return {@code true} if the Product exists.
+     */
+    public boolean exists(Long productId) {
+        if (productId == null) {
+            return false;
+        }
+        return findMissing(List.of(productId)).isEmpty();
+    }
+
+    /**
+     * Checks a batch of Product IDs in one pass over the index, and a single lookup for the IDs not in it.
+     * @param productIds IDs of the Products.
+     * @return The IDs that don't belong to a Product, in their original order. {@code null} IDs are always missing.
+     */
+    public Set<Long> findMissing(Collection<Long> productIds) {
+        ConcurrentBitmap index = loaded();
+
+        Set<Long> missing = new LinkedHashSet<>();
+        List<Long> unindexed = new ArrayList<>();
+        for (Long productId : productIds) {
+            if (productId == null) {
+                missing.add(null);
+            } else if (!index.get(productId)) {
+                unindexed.add(productId);
+            }
+        }
+
+        if (!unindexed.isEmpty()) {
+            Set<Long> existing = new HashSet<>(productRepository.findExistingIds(unindexed));
+            existing.forEach(index::set);
+
+            for (Long productId : unindexed) {
+                if (!existing.contains(productId)) {
+                    missing.add(productId);
+                }
+            }
+        }
+
+        return missing;
+    }
+
+    /**
+     * Adds a Product to the index, once the current transaction commits.
+     * @param productId ID of the new Product.
+     */
+    public void productAdded(Long productId) {
+        if (productId != null) {
+            afterCommit(index -> index.set(productId));
+        }
+    }
+
+    /**
+     * Adds several Products to the index at once, once the current transaction commits.
+     * @param productIds IDs of the new Products.
+     */
+    public void productsAdded(Collection<Long> productIds) {
+        afterCommit(index -> productIds.forEach(index::set));
+    }
+
+    /**
+     * Removes a Product from the index, once the current transaction commits.
+     * @param productId ID of the deleted Product.
+     */
+    public void productDeleted(Long productId) {
+        if (productId != null) {
+            afterCommit(index -> index.clear(productId));
+        }
+    }
+
+    private ConcurrentBitmap loaded() {
+        ConcurrentBitmap index = productIds;
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (loadLock) {
+            if (productIds == null) {
+                List<Long> ids = productRepository.findAllIds();
+
+                ConcurrentBitmap loadedIndex = new ConcurrentBitmap(ids.stream().mapToLong(Long::longValue).max().orElse(0));
+                ids.forEach(loadedIndex::set);
+                productIds = loadedIndex;
+            }
+            return productIds;
+        }
+    }
+
+    /**
+     * Applies a change to the index after the current transaction commits.
+     * <p>A change made while the index is being loaded waits for the load to finish, since the load may have read the
+     * IDs before the change. Changes made before the first load are dropped; the load reads them from the database.</p>
+     * @param change Change to apply.
+     */
+    private void afterCommit(Consumer<ConcurrentBitmap> change) {
+        runAfterCommit(() -> {
+            ConcurrentBitmap index = productIds;
+            if (index == null) {
+                synchronized (loadLock) {
+                    index = productIds;
+                }
+            }
+            if (index != null) {
+                change.accept(index);
+            }
+        });
+    }
+}
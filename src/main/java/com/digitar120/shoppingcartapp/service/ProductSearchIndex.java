@@ -0,0 +1,570 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.runAfterCommit;
+
+/**
+ * In-memory inverted index over Product descriptions, for prefix and approximate searches.
+ * <p>Descriptions are split into words, which are lowercased and stripped of accents: {@code "lapiz"} finds
+ * {@code "Lápiz"}. Each word keeps the Products that contain it, ordered by rank: shorter descriptions first, then
+ * lower IDs. Searches walk those lists in rank order and stop once they have enough results, so their cost depends on
+ * the amount of results asked for, not on the size of the catalog.</p>
+ * <p>Every word of a query must match a word of the description. Products where every word matches a whole word rank
+ * first; then Products where query words are prefixes of description words ({@code "lap az"} finds
+ * {@code "Lápiz azul"}). A query word of at least {@value #FUZZY_MIN_LENGTH} characters, with letters, that isn't a
+ * prefix of any word matches words a few edits away from it instead ({@code "lapis"} finds {@code "Lápiz"}). Those
+ * words are found through an index of their trigrams.</p>
+ * <p>The index is loaded from the database on first use, and updated by {@link ProductService} once its changes are
+ * committed. Searches share a read lock; updates take the write lock.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductRepository#findAllViews()
+ */
+@Component
+public class ProductSearchIndex {
+
+    static final int FUZZY_MIN_LENGTH = 3;
+
+    /**
+     * Above this amount of matching words, a query word is checked while walking the whole catalog in rank order,
+     * instead of merging the lists of each word.
+     */
+    private static final int MAX_MERGED_TERMS = 1024;
+
+    private static final int ID_BITS = 40;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final int MAX_RANKED_LENGTH = (1 << (Long.SIZE - 1 - ID_BITS)) - 1;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ProductRepository productRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean loaded;
+
+    private final Map<Long, IndexedProduct> products = new HashMap<>();
+    private final NavigableMap<String, RankedIds> terms = new TreeMap<>();
+    private final Map<String, Set<String>> termsByTrigram = new HashMap<>();
+    private final RankedIds allProducts = new RankedIds(null);
+
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    /**
+     * Searches Products by description.
+     * @param query Words to search, in any case and with or without accents. The last one is usually incomplete.
+     * @param limit Maximum amount of results.
+     * @return Up to {@code limit} matching Products, best ranked first.
+     */
+    public List<ProductView> search(String query, int limit) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            List<ProductView> results = new ArrayList<>(limit);
+            Set<Long> found = new HashSet<>();
+
+            // Primero los productos donde cada palabra coincide completa
+            List<TokenMatcher> exactMatchers = new ArrayList<>();
+            for (String token : queryTokens) {
+                exactMatchers.add(exactMatcher(token));
+            }
+            collect(exactMatchers, limit, results, found);
+
+            if (results.size() < limit) {
+                List<TokenMatcher> prefixMatchers = new ArrayList<>();
+                for (String token : queryTokens) {
+                    TokenMatcher matcher = prefixMatcher(token);
+                    prefixMatchers.add(matcher.isEmpty() && isFuzzy(token) ? fuzzyMatcher(token) : matcher);
+                }
+                collect(prefixMatchers, limit, results, found);
+            }
+
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a Product to the index, once the current transaction commits.
+     * @param product The new Product.
+     */
+    public void productAdded(ProductView product) {
+        runAfterCommit(() -> update(() -> add(product)));
+    }
+
+    /**
+     * Adds several Products to the index at once, once the current transaction commits.
+     * @param products The new Products.
+     */
+    public void productsAdded(Collection<ProductView> products) {
+        runAfterCommit(() -> update(() -> products.forEach(this::add)));
+    }
+
+    /**
+     * Removes a Product from the index, once the current transaction commits.
+     * @param productId ID of the deleted Product.
+     */
+    public void productDeleted(Long productId) {
+        runAfterCommit(() -> update(() -> remove(productId)));
+    }
+
+    /**
+     * @return Amount of indexed Products, loading the index if needed.
+     */
+    public int size() {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            return products.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits a text into lowercase words without accents. Repeated words are kept once.
+     * @param text Text to split.
+     * @return The words of the text, in order.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    // Carga y actualización
+
+    private void ensureLoaded() {
+        lock.readLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                for (ProductView product : productRepository.findAllViews()) {
+                    addUnsorted(product);
+                }
+                terms.values().forEach(RankedIds::sort);
+                allProducts.sort();
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies an update under the write lock. Updates made before the first load are dropped, since the load reads the
+     * committed state of the catalog; an update made during the load waits for it to finish.
+     */
+    private void update(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(ProductView product) {
+        if (product.id() == null || products.containsKey(product.id())) {
+            return;
+        }
+
+        IndexedProduct indexed = index(product);
+        for (RankedIds ids : indexed.terms) {
+            ids.add(indexed.rank);
+        }
+        allProducts.add(indexed.rank);
+    }
+
+    /**
+     * Indexes a Product during the first load. Lists are sorted once the whole catalog is read.
+     */
+    private void addUnsorted(ProductView product) {
+        if (product.id() == null || products.containsKey(product.id())) {
+            return;
+        }
+
+        IndexedProduct indexed = index(product);
+        for (RankedIds ids : indexed.terms) {
+            ids.append(indexed.rank);
+        }
+        allProducts.append(indexed.rank);
+    }
+
+    private IndexedProduct index(ProductView product) {
+        if (product.id() < 0 || product.id() > ID_MASK) {
+            throw new IllegalArgumentException("ID de producto fuera de rango: " + product.id());
+        }
+
+        List<String> tokens = tokenize(product.description());
+        RankedIds[] productTerms = new RankedIds[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            productTerms[i] = terms.computeIfAbsent(tokens.get(i), this::newTerm);
+        }
+
+        int length = product.description() == null ? 0 : Math.min(product.description().length(), MAX_RANKED_LENGTH);
+        IndexedProduct indexed = new IndexedProduct(product, productTerms, ((long) length << ID_BITS) | product.id());
+        products.put(product.id(), indexed);
+        return indexed;
+    }
+
+    private RankedIds newTerm(String term) {
+        if (isFuzzy(term)) {
+            for (String trigram : trigrams(term)) {
+                termsByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(term);
+            }
+        }
+        return new RankedIds(term);
+    }
+
+    /**
+     * Numbers, such as codes or sizes, are only matched by prefix: a typo in them is a different number.
+     */
+    private static boolean isFuzzy(String term) {
+        return term.length() >= FUZZY_MIN_LENGTH && term.chars().anyMatch(Character::isLetter);
+    }
+
+    private void remove(Long productId) {
+        IndexedProduct indexed = products.remove(productId);
+        if (indexed == null) {
+            return;
+        }
+
+        for (RankedIds ids : indexed.terms) {
+            ids.remove(indexed.rank);
+            if (ids.size == 0) {
+                terms.remove(ids.term);
+                for (String trigram : isFuzzy(ids.term) ? trigrams(ids.term) : Set.<String>of()) {
+                    Set<String> trigramTerms = termsByTrigram.get(trigram);
+                    trigramTerms.remove(ids.term);
+                    if (trigramTerms.isEmpty()) {
+                        termsByTrigram.remove(trigram);
+                    }
+                }
+            }
+        }
+        allProducts.remove(indexed.rank);
+    }
+
+    // Búsqueda
+
+    private TokenMatcher exactMatcher(String token) {
+        RankedIds ids = terms.get(token);
+        return new TokenMatcher(ids == null ? List.of() : List.of(ids), term -> term.equals(token));
+    }
+
+    private TokenMatcher prefixMatcher(String token) {
+        Collection<RankedIds> range = terms.subMap(token, true, token + Character.MAX_VALUE, false).values();
+        return new TokenMatcher(firstTerms(range), term -> term.startsWith(token));
+    }
+
+    /**
+     * Matches the words a few edits away from a token: one edit for up to 5 letters, two for longer tokens.
+     * <p>Two words {@code k} edits apart differ in at most {@code 3k} trigrams, so only words sharing enough trigrams
+     * with the token are compared.</p>
+     */
+    private TokenMatcher fuzzyMatcher(String token) {
+        int maxEdits = token.length() <= 5 ? 1 : 2;
+        Set<String> tokenTrigrams = trigrams(token);
+        int minShared = tokenTrigrams.size() - 3 * maxEdits;
+
+        Map<String, Integer> sharedTrigrams = new HashMap<>();
+        for (String trigram : tokenTrigrams) {
+            for (String term : termsByTrigram.getOrDefault(trigram, Set.of())) {
+                sharedTrigrams.merge(term, 1, Integer::sum);
+            }
+        }
+
+        Set<String> similarTerms = new HashSet<>();
+        List<RankedIds> similarIds = new ArrayList<>();
+        sharedTrigrams.forEach((term, shared) -> {
+            if (shared >= minShared && withinEdits(token, term, maxEdits)) {
+                similarTerms.add(term);
+                similarIds.add(terms.get(term));
+            }
+        });
+
+        return new TokenMatcher(firstTerms(similarIds), similarTerms::contains);
+    }
+
+    /**
+     * @return Up to {@link #MAX_MERGED_TERMS} lists, or {@code null} if there are more.
+     */
+    private static List<RankedIds> firstTerms(Collection<RankedIds> matchingTerms) {
+        List<RankedIds> lists = new ArrayList<>();
+        for (RankedIds ids : matchingTerms) {
+            if (lists.size() == MAX_MERGED_TERMS) {
+                return null;
+            }
+            lists.add(ids);
+        }
+        return lists;
+    }
+
+    /**
+     * Adds the Products matched by every matcher to the results, in rank order, until there are {@code limit} results.
+     * <p>Products are taken from the matcher with the shortest lists, and checked against the rest. If every matcher
+     * has too many lists, the whole catalog is walked instead.</p>
+     */
+    private void collect(List<TokenMatcher> matchers, int limit, List<ProductView> results, Set<Long> found) {
+        TokenMatcher driver = null;
+        for (TokenMatcher matcher : matchers) {
+            if (matcher.isEmpty()) {
+                return;
+            }
+            if (matcher.lists != null && (driver == null || matcher.size() < driver.size())) {
+                driver = matcher;
+            }
+        }
+
+        TokenMatcher source = driver;
+        LongPredicate visitor = rank -> {
+            IndexedProduct product = products.get(rank & ID_MASK);
+
+            if (!found.contains(product.view.id()) && matchesAll(product, matchers, source)) {
+                results.add(product.view);
+                found.add(product.view.id());
+            }
+            return results.size() < limit;
+        };
+
+        if (driver == null) {
+            allProducts.forEach(visitor);
+        } else {
+            forEachInRankOrder(driver.lists, visitor);
+        }
+    }
+
+    private static boolean matchesAll(IndexedProduct product, List<TokenMatcher> matchers, TokenMatcher skipped) {
+        for (TokenMatcher matcher : matchers) {
+            if (matcher != skipped && !matcher.matches(product)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges sorted lists, visiting each rank once, in ascending order.
+     * @param visitor Returns {@code false} to stop.
+     */
+    private static void forEachInRankOrder(List<RankedIds> lists, LongPredicate visitor) {
+        if (lists.size() == 1) {
+            lists.get(0).forEach(visitor);
+            return;
+        }
+
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Comparator.comparingLong(cursor -> lists.get(cursor[0]).keys[cursor[1]]));
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).size > 0) {
+                cursors.add(new int[]{i, 0});
+            }
+        }
+
+        long previous = -1;
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            RankedIds ids = lists.get(cursor[0]);
+            long rank = ids.keys[cursor[1]];
+
+            // Un producto puede contener varias de las palabras
+            if (rank != previous) {
+                if (!visitor.test(rank)) {
+                    return;
+                }
+                previous = rank;
+            }
+
+            if (++cursor[1] < ids.size) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    private static Set<String> trigrams(String term) {
+        String padded = "^" + term + "$";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Levenshtein distance, abandoned as soon as it exceeds {@code maxEdits}.
+     */
+    static boolean withinEdits(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return false;
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+
+    /**
+     * An indexed Product: its view, the lists of its words, and its rank.
+     */
+    private record IndexedProduct(ProductView view, RankedIds[] terms, long rank) {
+    }
+
+    /**
+     * The lists of words a query word matches, and how to check one word.
+     * <p>{@code lists} is {@code null} when the query word matches too many words to merge their lists.</p>
+     */
+    private record TokenMatcher(List<RankedIds> lists, Predicate<String> matchesTerm) {
+
+        boolean isEmpty() {
+            return lists != null && lists.isEmpty();
+        }
+
+        long size() {
+            long size = 0;
+            for (RankedIds ids : lists) {
+                size += ids.size;
+            }
+            return size;
+        }
+
+        boolean matches(IndexedProduct product) {
+            for (RankedIds ids : product.terms) {
+                if (matchesTerm.test(ids.term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Sorted, growable list of ranks: the description length in the upper bits, and the Product ID in the lower
+     * {@value #ID_BITS} bits.
+     */
+    private static final class RankedIds {
+        private final String term;
+        private long[] keys = new long[1];
+        private int size;
+
+        private RankedIds(String term) {
+            this.term = term;
+        }
+
+        private void add(long key) {
+            int position = Arrays.binarySearch(keys, 0, size, key);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+
+            ensureCapacity();
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            keys[position] = key;
+            size++;
+        }
+
+        private void append(long key) {
+            ensureCapacity();
+            keys[size++] = key;
+        }
+
+        private void sort() {
+            Arrays.sort(keys, 0, size);
+        }
+
+        private void remove(long key) {
+            int position = Arrays.binarySearch(keys, 0, size, key);
+            if (position >= 0) {
+                System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+                size--;
+            }
+        }
+
+        private void ensureCapacity() {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+        }
+
+        private void forEach(LongPredicate visitor) {
+            for (int i = 0; i < size; i++) {
+                if (!visitor.test(keys[i])) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.digitar120.shoppingcartapp.service;
 import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
 import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -15,35 +16,47 @@ import static com.digitar120.shoppingcartapp.util.LocalUtilityMethods.verifyElem
 
 /**
  * Business logic for the Product endpoint.
+ * <p>Read operations go through the {@link ProductCatalogCache}, and write operations invalidate it. Write operations
+ * also keep the {@link ProductIdIndex} and the {@link ProductSearchIndex} up to date.</p>
  * @author Gabriel Pérez (digitar120)
  * @see Product
+ * @see ProductCatalogCache
  */
 @Service
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final ProductCatalogCache catalogCache;
+    private final ProductIdIndex productIdIndex;
+    private final ProductSearchIndex productSearchIndex;
 
-    public ProductService(ProductRepository productRepository) {
+    static final int MAX_SEARCH_RESULTS = 50;
+
+    public ProductService(ProductRepository productRepository, ProductCatalogCache catalogCache,
+                          ProductIdIndex productIdIndex, ProductSearchIndex productSearchIndex) {
         this.productRepository = productRepository;
+        this.catalogCache = catalogCache;
+        this.productIdIndex = productIdIndex;
+        this.productSearchIndex = productSearchIndex;
     }
 
     // Read Operations
 
     /**
-     * Get the full contents of the repository.
-     * @return A list of the contents of the repository.
+     * Get the full contents of the repository, from the catalog snapshot.
+     * @return An immutable list of the contents of the repository.
      */
     public List<Product> listAllProducts(){
-        return productRepository.findAll();
+        return catalogCache.getAll(productRepository::findAll);
     }
 
     /**
      * Get a list of products that match a description.
      * @param description String to match products with.
-     * @return A list of matching products.
+     * @return An immutable list of matching products.
      */
     public List<Product> findByDescription(String description){
-        return productRepository.findByDescription(description);
+        return catalogCache.getByDescription(description, productRepository::findByDescription);
     }
 
     /**
@@ -54,7 +67,28 @@ public class ProductService {
      * @throws com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException If the search is negative.
      */
     public Product findById(Long id){
-        return verifyElementExistsAndReturn(productRepository, id, "No se encontró el producto de ID " + id, HttpStatus.NOT_FOUND);
+        return catalogCache.getById(id,
+                key -> verifyElementExistsAndReturn(productRepository, key, "No se encontró el producto de ID " + key, HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Search products by the words of their descriptions, for autocompletion.
+     * <p>Matching ignores case and accents. The last word may be incomplete, and longer words may have a typo.</p>
+     * @param query Words to search.
+     * @param limit Maximum amount of results, up to {@value #MAX_SEARCH_RESULTS}.
+     * @return Matching products, best matches first.
+     * @throws BadRequestException If the query is blank, or the limit is out of range.
+     * @see ProductSearchIndex
+     */
+    public List<ProductView> search(String query, Integer limit){
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("La búsqueda no puede estar vacía.");
+        }
+        if (limit == null || limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new BadRequestException("La cantidad de resultados debe estar entre 1 y " + MAX_SEARCH_RESULTS + ".");
+        }
+
+        return productSearchIndex.search(query, limit);
     }
 
     // Create operations
@@ -67,7 +101,11 @@ public class ProductService {
      */
     public Product newProduct(String description){
         if(this.findByDescription(description).isEmpty()){
-            return productRepository.save(new Product(description));
+            Product product = productRepository.save(new Product(description));
+            catalogCache.productAdded(description);
+            productIdIndex.productAdded(product.getId());
+            productSearchIndex.productAdded(new ProductView(product.getId(), product.getDescription()));
+            return product;
         } else {
             throw new BadRequestException("Ya existe un producto \"" + description + "\".");
         }
@@ -84,5 +122,8 @@ public class ProductService {
     public void deleteProduct(Long id){
         verifyElementExists(productRepository, id, "No se encontró el producto N°" + id, HttpStatus.NOT_FOUND);
         productRepository.deleteById(id);
+        catalogCache.productDeleted(id);
+        productIdIndex.productDeleted(id);
+        productSearchIndex.productDeleted(id);
     }
 }
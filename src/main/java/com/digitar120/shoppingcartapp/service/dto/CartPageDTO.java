@@ -0,0 +1,24 @@
+package com.digitar120.shoppingcartapp.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * A keyset page of Carts.
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.service.CartService#findPage(Long, Integer)
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class CartPageDTO {
+    private List<CartView> content;
+
+    /**
+     * Value to send as {@code after} to get the next page. {@code null} if this is the last page.
+     */
+    private Long nextCursor;
+}
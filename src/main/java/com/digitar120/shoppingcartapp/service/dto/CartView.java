@@ -0,0 +1,15 @@
+package com.digitar120.shoppingcartapp.service.dto;
+
+import java.util.List;
+
+/**
+ * Read-only view of a Cart, its Items and their referenced Products. Serializes to the same JSON as a
+ * {@link com.digitar120.shoppingcartapp.persistence.entity.Cart} entity, with its Items in ID order. Its version is
+ * exposed as the ETag of the Cart endpoints.
+ * <p>Unlike the entity, it holds no reference cycles nor Hibernate proxies, so it needs neither
+ * {@code @JsonIdentityInfo} nor the {@code Hibernate5Module} to be serialized.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews
+ */
+public record CartView(Long id, String description, List<ItemView> items, Integer userId, Long version) {
+}
@@ -0,0 +1,21 @@
+package com.digitar120.shoppingcartapp.service.dto;
+
+/**
+ * Read-only view of an Item and its referenced Product. Serializes to the same JSON as an
+ * {@link com.digitar120.shoppingcartapp.persistence.entity.Item} entity.
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.persistence.repository.ItemRepository
+ */
+public record ItemView(Long id, Integer quantity, ProductView referencedProduct) {
+
+    /**
+     * Flat constructor, meant for JPQL constructor expressions.
+     * @param id Item ID.
+     * @param quantity Item quantity.
+     * @param productId ID of the referenced Product.
+     * @param productDescription Description of the referenced Product.
+     */
+    public ItemView(Long id, Integer quantity, Long productId, String productDescription) {
+        this(id, quantity, new ProductView(productId, productDescription));
+    }
+}
@@ -0,0 +1,9 @@
+package com.digitar120.shoppingcartapp.service.dto;
+
+/**
+ * Read-only view of a Product, as referenced by an Item.
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.persistence.entity.Product
+ */
+public record ProductView(Long id, String description) {
+}
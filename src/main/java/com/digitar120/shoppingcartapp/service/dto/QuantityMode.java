@@ -0,0 +1,18 @@
+package com.digitar120.shoppingcartapp.service.dto;
+
+/**
+ * How an upsert treats the quantity of an Item that already exists.
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.service.CartService#upsertItem(Long, Long, Integer, QuantityMode)
+ */
+public enum QuantityMode {
+    /**
+     * The quantity received replaces the current one.
+     */
+    SET,
+
+    /**
+     * The quantity received is added to the current one.
+     */
+    INCREMENT
+}
@@ -0,0 +1,42 @@
+package com.digitar120.shoppingcartapp.util;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Current time as text, in the format of {@link java.util.Date#toString()}, formatted at most once per second.
+ * <p>Meant for frequent timestamps with second precision, such as those of error responses: within a second, every
+ * caller gets the same instance.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public final class CachedTimestamp {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+
+    private final Clock clock;
+    private volatile Formatted current = new Formatted(Long.MIN_VALUE, null);
+
+    public CachedTimestamp(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return The current time, truncated to the second.
+     */
+    public String now() {
+        long second = Math.floorDiv(clock.millis(), 1000);
+
+        // Dos hilos pueden formatear el mismo segundo a la vez; ambos obtienen el mismo texto
+        Formatted formatted = current;
+        if (formatted.second != second) {
+            formatted = new Formatted(second, DATE_FORMAT.format(Instant.ofEpochSecond(second).atZone(clock.getZone())));
+            current = formatted;
+        }
+        return formatted.text;
+    }
+
+    private record Formatted(long second, String text) {
+    }
+}
@@ -0,0 +1,126 @@
+package com.digitar120.shoppingcartapp.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A growable bitmap of non-negative {@code long} indexes, one bit per index.
+ * <p>Reads never block. Writes to different words don't block each other either; they only wait while the bitmap grows,
+ * which copies it into a larger array.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public final class ConcurrentBitmap {
+
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private volatile AtomicLongArray words;
+
+    /**
+     * Writers share the read lock, since each bit is set with a compare-and-set on its word. Growing takes the write
+     * lock, so no bit set on the old array is left out of the copy.
+     */
+    private final ReadWriteLock growLock = new ReentrantReadWriteLock();
+
+    /**
+     * @param expectedMaxIndex Largest index expected. The bitmap grows past it if needed.
+     */
+    public ConcurrentBitmap(long expectedMaxIndex) {
+        this.words = new AtomicLongArray(wordsFor(Math.max(expectedMaxIndex, 0)));
+    }
+
+    /**
+     * @param index Index to check.
+     * @return {@code true} if the bit at {@code index} is set. Negative indexes are never set.
+     */
+    public boolean get(long index) {
+        if (index < 0) {
+            return false;
+        }
+
+        AtomicLongArray current = words;
+        long word = index >>> 6;
+        return word < current.length() && (current.get((int) word) & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the bit at {@code index}, growing the bitmap if needed.
+     * @param index Index to set.
+     * @throws IllegalArgumentException If {@code index} is negative, or too large for the bitmap.
+     */
+    public void set(long index) {
+        int word = wordIndex(index);
+        long mask = 1L << index;
+
+        growLock.readLock().lock();
+        try {
+            AtomicLongArray current = words;
+            if (word >= current.length()) {
+                growLock.readLock().unlock();
+                try {
+                    grow(word);
+                } finally {
+                    growLock.readLock().lock();
+                }
+                current = words;
+            }
+            current.getAndUpdate(word, bits -> bits | mask);
+        } finally {
+            growLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Clears the bit at {@code index}. Doesn't shrink the bitmap.
+     * @param index Index to clear.
+     */
+    public void clear(long index) {
+        if (index < 0) {
+            return;
+        }
+
+        long mask = ~(1L << index);
+        long word = index >>> 6;
+
+        growLock.readLock().lock();
+        try {
+            AtomicLongArray current = words;
+            if (word < current.length()) {
+                current.getAndUpdate((int) word, bits -> bits & mask);
+            }
+        } finally {
+            growLock.readLock().unlock();
+        }
+    }
+
+    private void grow(int word) {
+        growLock.writeLock().lock();
+        try {
+            AtomicLongArray current = words;
+            if (word < current.length()) {
+                return;
+            }
+
+            // Crecer al doble, para que agregar índices consecutivos no copie el arreglo cada vez
+            int length = (int) Math.min(Math.max((long) current.length() * 2, word + 1L), MAX_WORDS);
+            AtomicLongArray grown = new AtomicLongArray(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            words = grown;
+        } finally {
+            growLock.writeLock().unlock();
+        }
+    }
+
+    private static int wordIndex(long index) {
+        if (index < 0 || (index >>> 6) >= MAX_WORDS) {
+            throw new IllegalArgumentException("Índice fuera de rango: " + index);
+        }
+        return (int) (index >>> 6);
+    }
+
+    private static int wordsFor(long maxIndex) {
+        return wordIndex(maxIndex) + 1;
+    }
+}
@@ -4,6 +4,8 @@ import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestExceptio
 import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.Arrays;
 import java.util.List;
@@ -27,6 +29,8 @@ public final class LocalUtilityMethods {
      * <p>This method is meant to be executed in a standalone manner. It throws an exception and it stops the execution
      * of a method if an element <i>doesn't</i>
      * exist.</p>
+     * <p>It uses {@link JpaRepository#existsById(Object)}, a single indexed probe on the primary key, so the element
+     * and its relations are never loaded.</p>
      * @param repository The actual repository object to execute the search in.
      * @param id The ID to search.
      * @param exceptionMessage The exception message to display in case the result is <b>negative</b>.
@@ -37,9 +41,9 @@ public final class LocalUtilityMethods {
      */
     public static <T,S extends JpaRepository<T,U>, U> void verifyElementExists(S repository, U id, String exceptionMessage, HttpStatus httpStatusCode){
 
-        Optional<T> optionalElement = repository.findById(id);
+        boolean elementExists = repository.existsById(id);
 
-        if(optionalElement.isEmpty() && httpStatusCode.equals(HttpStatus.NOT_FOUND)) {
+        if(!elementExists && httpStatusCode.equals(HttpStatus.NOT_FOUND)) {
 
             throw new NotFoundException(exceptionMessage);
         }
@@ -74,7 +78,7 @@ public final class LocalUtilityMethods {
      * Another variation of {@link LocalUtilityMethods#verifyElementExists(JpaRepository, Object, String, HttpStatus)},
      * but it fails if a search is <b>positive</b>.
      * <p>This method is meant to be used when there's a need to verify if an element exists before creating entries in
-     * a repository.</p>
+     * a repository. Like its counterpart, it doesn't load the element.</p>
      * @param repository The actual repository object to execute the search in.
      * @param id The ID to search.
      * @param exceptionMessage The exception message to display in case the result is <b>positive</b>.
@@ -84,13 +88,32 @@ public final class LocalUtilityMethods {
      * @param <U> ID type of the repository (Integer, Long, etc.).
      */
     public static <T,S extends JpaRepository<T,U>, U> void verifyElementNotExists(S repository, U id, String exceptionMessage, HttpStatus httpStatusCode){
-        Optional<T> optionalElement = repository.findById(id);
+        boolean elementExists = repository.existsById(id);
 
-        if(optionalElement.isPresent() && httpStatusCode.equals(HttpStatus.BAD_REQUEST)) {
+        if(elementExists && httpStatusCode.equals(HttpStatus.BAD_REQUEST)) {
             throw new BadRequestException(exceptionMessage);
         }
     }
 
+    /**
+     * Runs an action after the current transaction commits, or right away if there is no transaction.
+     * <p>Meant for keeping in-memory copies of the database up to date: a change applied before the commit could be
+     * overwritten by a concurrent read of the previous state, or survive a rollback.</p>
+     * @param action The action to run. It's not run if the transaction rolls back.
+     */
+    public static void runAfterCommit(Runnable action){
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     /**
      * Returns a random line. Thought out as a quick and funny way to test if a part of the program gets to a certain
      * point by printing to stdout.
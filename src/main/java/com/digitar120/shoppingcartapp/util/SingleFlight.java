@@ -0,0 +1,110 @@
+package com.digitar120.shoppingcartapp.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent executions of the same call: while a call for a key is in progress, other callers asking for
+ * that key wait for it and share its result, instead of executing it again.
+ * <p>Only calls that overlap in time are coalesced. Results are not kept once the call finishes; that's up to a cache
+ * in front of this class.</p>
+ * @param <K> Key type that identifies a call (a user ID, for example).
+ * @param <V> Result type of the call.
+ * @author Gabriel Pérez (digitar120)
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    /**
+     * Executes a call, or waits for the call already in progress for the same key.
+     * @param key Identifies the call.
+     * @param call The actual call. Only executed if no call for {@code key} is in progress.
+     * @return The result of the call, shared by every caller that waited for it.
+     * @throws RuntimeException The exception thrown by the call, rethrown to every caller that waited for it.
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> ownCall = new CompletableFuture<>();
+        CompletableFuture<V> existingCall = inFlight.putIfAbsent(key, ownCall);
+
+        if (existingCall != null) {
+            coalescedCalls.increment();
+            return await(existingCall);
+        }
+
+        try {
+            V result = call.get();
+            ownCall.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            ownCall.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, ownCall);
+        }
+    }
+
+    /**
+     * Starts a call without waiting for it, or joins the call already in progress for the same key. Calls started this
+     * way and through {@link SingleFlight#execute(Object, Supplier)} are coalesced with each other.
+     * @param key Identifies the call.
+     * @param call Starts the actual call. Only executed if no call for {@code key} is in progress.
+     * @return The result of the call. Each caller gets its own future, so cancelling it doesn't cancel the call.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> ownCall = new CompletableFuture<>();
+        CompletableFuture<V> existingCall = inFlight.putIfAbsent(key, ownCall);
+
+        if (existingCall != null) {
+            coalescedCalls.increment();
+            return existingCall.copy();
+        }
+
+        try {
+            call.get().whenComplete((result, failure) -> {
+                inFlight.remove(key, ownCall);
+                if (failure == null) {
+                    ownCall.complete(result);
+                } else {
+                    ownCall.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, ownCall);
+            ownCall.completeExceptionally(e);
+        }
+        return ownCall.copy();
+    }
+
+    /**
+     * @return Amount of callers that shared another caller's call, since startup.
+     */
+    public long coalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+    /**
+     * @return Amount of calls in progress.
+     */
+    public int inFlightCalls() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -1,17 +1,16 @@
-DROP TABLE IF EXISTS CART;
 CREATE TABLE CART (
     CART_ID BIGINT AUTO_INCREMENT PRIMARY KEY,
     CART_DESCRIPTION VARCHAR NOT NULL,
-    USER_ID INT NOT NULL
+    USER_ID INT NOT NULL,
+    -- Se incrementa con cada cambio en los ítems del carrito
+    CART_VERSION BIGINT NOT NULL DEFAULT 0
 );
 
-DROP TABLE IF EXISTS PRODUCT;
 CREATE TABLE PRODUCT(
     PRODUCT_ID BIGINT AUTO_INCREMENT PRIMARY KEY,
     PRODUCT_DESCRIPTION VARCHAR NOT NULL
 );
 
-DROP TABLE IF EXISTS ITEM;
 CREATE TABLE ITEM (
     ITEM_ID BIGINT AUTO_INCREMENT PRIMARY KEY,
     ITEM_QUANTITY INT NOT NULL DEFAULT 0,
@@ -20,6 +19,8 @@ CREATE TABLE ITEM (
     foreign key(CART_ID) references CART(CART_ID),
 
     PRODUCT_ID BIGINT NOT NULL,
-    foreign key(PRODUCT_ID) references PRODUCT(PRODUCT_ID)
-);
+    foreign key(PRODUCT_ID) references PRODUCT(PRODUCT_ID),
 
+    -- Un carrito referencia cada producto una sola vez. Permite las escrituras con MERGE sobre (CART_ID, PRODUCT_ID)
+    CONSTRAINT UK_ITEM_CART_PRODUCT UNIQUE (CART_ID, PRODUCT_ID)
+);
@@ -1,5 +1,4 @@
--- CART_ID, CART_DESCRIPTION, USER_ID
-INSERT INTO CART VALUES (1, 'Carrito 1', 36693120);
+INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) VALUES (1, 'Carrito 1', 36693120);
 
 insert into product values (1, 'Lápiz');
 insert into product values (2, 'Lapicera');
@@ -0,0 +1,11 @@
+-- Índices para las búsquedas frecuentes, que de otro modo recorren la tabla completa
+
+-- Cada usuario tiene un solo carrito. También indexa la búsqueda por usuario
+ALTER TABLE CART ADD CONSTRAINT UK_CART_USER UNIQUE (USER_ID);
+
+-- Búsqueda de productos por descripción
+CREATE INDEX IX_PRODUCT_DESCRIPTION ON PRODUCT (PRODUCT_DESCRIPTION);
+
+-- Los ítems de un carrito se buscan por UK_ITEM_CART_PRODUCT, que empieza por CART_ID.
+-- Los ítems que referencian un producto, por ejemplo al borrarlo, necesitan su propio índice
+CREATE INDEX IX_ITEM_PRODUCT ON ITEM (PRODUCT_ID);
@@ -0,0 +1,15 @@
+-- Los IDs se generan con secuencias en lugar de columnas de identidad, para que Hibernate pueda agrupar las inserciones
+-- en lotes. Hibernate reserva bloques de 50 IDs por llamada (optimizador pooled-lo), así que INCREMENT BY debe coincidir
+-- con el allocation size de las entidades. Las inserciones por JDBC usan el valor por defecto de la columna
+
+CREATE SEQUENCE CART_SEQ INCREMENT BY 50;
+ALTER SEQUENCE CART_SEQ RESTART WITH (SELECT COALESCE(MAX(CART_ID), 0) + 1 FROM CART);
+ALTER TABLE CART ALTER COLUMN CART_ID SET DEFAULT NEXT VALUE FOR CART_SEQ;
+
+CREATE SEQUENCE PRODUCT_SEQ INCREMENT BY 50;
+ALTER SEQUENCE PRODUCT_SEQ RESTART WITH (SELECT COALESCE(MAX(PRODUCT_ID), 0) + 1 FROM PRODUCT);
+ALTER TABLE PRODUCT ALTER COLUMN PRODUCT_ID SET DEFAULT NEXT VALUE FOR PRODUCT_SEQ;
+
+CREATE SEQUENCE ITEM_SEQ INCREMENT BY 50;
+ALTER SEQUENCE ITEM_SEQ RESTART WITH (SELECT COALESCE(MAX(ITEM_ID), 0) + 1 FROM ITEM);
+ALTER TABLE ITEM ALTER COLUMN ITEM_ID SET DEFAULT NEXT VALUE FOR ITEM_SEQ;
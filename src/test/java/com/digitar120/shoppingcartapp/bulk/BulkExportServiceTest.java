@@ -0,0 +1,209 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.controller.BulkController;
+import com.digitar120.shoppingcartapp.exception.globalhandler.ServiceUnavailableException;
+import com.digitar120.shoppingcartapp.persistence.PersistenceTestConfiguration;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.ProductCatalogCache;
+import com.digitar120.shoppingcartapp.service.ProductSearchIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Runs {@link BulkExportService} against the H2 database initialized by the Flyway migrations, where Cart 1 holds
+ * Products 1 and 2.
+ * <p>At most one export may run at once. Tests don't run inside a transaction, since exports use a connection of their
+ * own, and the rows they add are deleted afterwards.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {"spring.jpa.hibernate.ddl-auto=none", "bulk.export.fetch-size=2", "bulk.export.max-concurrent=1"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BulkExportServiceTest {
+
+    @SpringBootConfiguration
+    @Import({PersistenceTestConfiguration.class, BulkExportService.class, BulkImportService.class, BulkInsertRepository.class, ImportJobs.class,
+            ProductCatalogCache.class})
+    static class PersistenceConfiguration {
+        @Bean
+        public ProductSearchIndex productSearchIndex(ProductRepository productRepository) {
+            return new ProductSearchIndex(productRepository);
+        }
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @Autowired
+    private BulkExportService service;
+
+    @Autowired
+    private BulkImportService importService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @After
+    public void restoreData(){
+        jdbcTemplate.update("DELETE FROM ITEM WHERE CART_ID > 1");
+        jdbcTemplate.update("DELETE FROM CART WHERE CART_ID > 1");
+    }
+
+    private void insertCarts() {
+        jdbcTemplate.update("INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) VALUES (2, 'Compras, \"semana\" 1', 10)");
+        jdbcTemplate.update("INSERT INTO ITEM (ITEM_QUANTITY, CART_ID, PRODUCT_ID) VALUES (4, 2, 3)");
+        jdbcTemplate.update("INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) VALUES (3, 'Vacío', 11)");
+    }
+
+    private String exportCarts(long after, BulkFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.exportCarts(after, format, () -> out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Export Carts as NDJSON. Assert that each Cart is a line shaped as the Cart endpoints return it, with its Items
+     * in order, and that the export resumes after the given Cart.
+     */
+    @Test
+    @DisplayName("La exportación de carritos en NDJSON escribe un carrito por línea, desde el ID indicado")
+    public void test_when_exportCartsNdjson_then_oneCartPerLine() throws IOException {
+        insertCarts();
+
+        List<String> lines = exportCarts(0, BulkFormat.NDJSON).lines().toList();
+
+        assertEquals(3, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        assertEquals(1, first.get("id").asLong());
+        assertEquals("Carrito 1", first.get("description").asText());
+        assertEquals(36693120, first.get("userId").asInt());
+        assertEquals(2, first.get("items").size());
+        assertEquals(3, first.get("items").get(0).get("quantity").asInt());
+        assertEquals("Lápiz", first.get("items").get(0).get("referencedProduct").get("description").asText());
+        assertEquals(0, objectMapper.readTree(lines.get(2)).get("items").size());
+
+        List<String> resumed = exportCarts(2, BulkFormat.NDJSON).lines().toList();
+        assertEquals(List.of(3L), resumed.stream().map(line -> readId(line)).toList());
+    }
+
+    private long readId(String line) {
+        try {
+            return objectMapper.readTree(line).get("id").asLong();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Export Carts as CSV, then delete them and import the export. Assert that values are quoted where needed, that a
+     * Cart without Items still gets a line, and that the import restores the same Carts.
+     */
+    @Test
+    @DisplayName("La exportación de carritos en CSV se puede volver a importar")
+    public void test_when_exportCartsCsv_then_exportCanBeImported() throws IOException {
+        insertCarts();
+
+        String csv = exportCarts(1, BulkFormat.CSV);
+
+        assertEquals(List.of(
+                "cartId,description,userId,version,itemId,productId,productDescription,quantity",
+                "2,\"Compras, \"\"semana\"\" 1\",10,0," + jdbcTemplate.queryForObject("SELECT ITEM_ID FROM ITEM WHERE CART_ID = 2", Long.class) + ",3,Voligoma,4",
+                "3,Vacío,11,0,,,,"), csv.lines().toList());
+
+        restoreData();
+        ImportReport report = importService.importCarts(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BulkFormat.CSV_VALUE);
+
+        assertEquals(2, report.imported());
+        assertEquals("Compras, \"semana\" 1",
+                jdbcTemplate.queryForObject("SELECT CART_DESCRIPTION FROM CART WHERE USER_ID = 10", String.class));
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT I.ITEM_QUANTITY FROM ITEM I JOIN CART C ON C.CART_ID = I.CART_ID "
+                + "WHERE C.USER_ID = 10 AND I.PRODUCT_ID = 3", Integer.class));
+    }
+
+    /**
+     * Start an export while a transaction has inserted a Cart it hasn't committed yet, and another export while the
+     * first one runs. Assert that the export doesn't see the uncommitted Cart, since it doesn't use the connection of
+     * the transaction, and that the second export is refused.
+     */
+    @Test
+    @DisplayName("La exportación usa su propia conexión y se limita la cantidad de exportaciones simultáneas")
+    public void test_when_export_then_ownConnectionAndLimitedConcurrency() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO CART (CART_ID, CART_DESCRIPTION, USER_ID) VALUES (5, 'Sin confirmar', 12)");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                service.exportCarts(0, BulkFormat.NDJSON, () -> {
+                    assertThrows(ServiceUnavailableException.class,
+                            () -> service.exportProducts(0, BulkFormat.NDJSON, ByteArrayOutputStream::new));
+                    return out;
+                });
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+
+            assertEquals(List.of(1L), out.toString(StandardCharsets.UTF_8).lines().map(this::readId).toList());
+            status.setRollbackOnly();
+        });
+    }
+
+    /**
+     * Request a CSV export of Products through {@link BulkController}, accepting gzip. Assert that the response is
+     * compressed, and holds the Products after the given one.
+     */
+    @Test
+    @DisplayName("La exportación de productos se comprime con gzip si el cliente lo acepta")
+    public void test_when_exportProductsAcceptingGzip_then_responseCompressed() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new BulkController(importService, service)).build();
+
+        MockHttpServletResponse response = mockMvc.perform(get("/products/export").param("after", "1")
+                        .header(HttpHeaders.ACCEPT, "application/json;q=0.5, text/csv")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip"))
+                .andReturn().getResponse();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(response.getContentType().startsWith(BulkFormat.CSV_VALUE), response.getContentType());
+        try (GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(List.of("id,description", "2,Lapicera", "3,Voligoma"),
+                    new String(body.readAllBytes(), StandardCharsets.UTF_8).lines().toList());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.digitar120.shoppingcartapp.bulk;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.persistence.PersistenceTestConfiguration;
+import com.digitar120.shoppingcartapp.persistence.repository.BulkInsertRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.ProductCatalogCache;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import com.digitar120.shoppingcartapp.service.ProductSearchIndex;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link BulkImportService} against the H2 database initialized by the Flyway migrations, where Products 1 to 3
+ * exist and User 36693120 already has a Cart.
+ * <p>Chunks hold two rows, so that every import spans several transactions. Tests don't run inside a transaction, so
+ * that each chunk commits on its own as in production, and the imported rows are deleted afterwards.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {"spring.jpa.hibernate.ddl-auto=none", "bulk.import.chunk-size=2", "bulk.import.max-line-length=100"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BulkImportServiceTest {
+
+    private static final int EXISTING_USER_ID = 36693120;
+
+    @SpringBootConfiguration
+    @Import({PersistenceTestConfiguration.class, BulkImportService.class, BulkInsertRepository.class, ImportJobs.class, ProductCatalogCache.class})
+    static class PersistenceConfiguration {
+        @Bean
+        public ProductSearchIndex productSearchIndex(ProductRepository productRepository) {
+            return new ProductSearchIndex(productRepository);
+        }
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @Autowired
+    private BulkImportService service;
+
+    @Autowired
+    private ImportJobs importJobs;
+
+    @Autowired
+    private ProductIdIndex productIdIndex;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void restoreData(){
+        jdbcTemplate.update("DELETE FROM ITEM WHERE CART_ID > 1");
+        jdbcTemplate.update("DELETE FROM CART WHERE CART_ID > 1");
+        jdbcTemplate.update("DELETE FROM PRODUCT WHERE PRODUCT_ID > 3");
+    }
+
+    private static ByteArrayInputStream body(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Long productIdOf(String description) {
+        return jdbcTemplate.queryForObject("SELECT PRODUCT_ID FROM PRODUCT WHERE PRODUCT_DESCRIPTION = ?", Long.class, description);
+    }
+
+    private List<Integer> quantitiesOfUser(int userId) {
+        return jdbcTemplate.queryForList("SELECT I.ITEM_QUANTITY FROM ITEM I JOIN CART C ON C.CART_ID = I.CART_ID "
+                + "WHERE C.USER_ID = ? ORDER BY I.PRODUCT_ID", Integer.class, userId);
+    }
+
+    private static List<Long> rejectedLines(ImportReport report) {
+        return report.errors().stream().map(ImportJob.RowError::line).sorted().toList();
+    }
+
+    /**
+     * Import Products as NDJSON, among invalid lines and existing descriptions. Assert that only the valid, new ones
+     * are imported, that every other line is reported, and that the Product indexes know the new ones.
+     */
+    @Test
+    @DisplayName("La importación de productos rechaza las líneas inválidas y las descripciones existentes")
+    public void test_when_importProducts_then_invalidAndExistingRowsRejected() throws IOException {
+        // Los índices solo reciben productos nuevos una vez cargados
+        productSearchIndex.search("lápiz", 1);
+        productIdIndex.exists(1L);
+
+        ImportReport report = service.importProducts(body(
+                "{\"description\": \"Goma\"}",
+                "{\"description\": \"  \"}",
+                "{\"description\": ",
+                "",
+                "{\"description\": \"Lápiz\"}",
+                "{\"description\": \"Goma\"}",
+                "{\"description\": \"" + "x".repeat(100) + "\"}",
+                "[\"Regla\"]",
+                "{\"description\": \"Regla\", \"color\": \"azul\"}"), BulkFormat.NDJSON_VALUE + ";charset=UTF-8");
+
+        assertEquals(ImportJob.State.COMPLETED, report.state());
+        assertEquals(8, report.rowsRead());
+        assertEquals(2, report.imported());
+        assertEquals(6, report.rejected());
+        assertEquals(List.of(2L, 3L, 5L, 6L, 7L, 8L), rejectedLines(report));
+
+        Long reglaId = productIdOf("Regla");
+        assertTrue(productIdIndex.exists(reglaId));
+        assertEquals(List.of(new ProductView(reglaId, "Regla")), productSearchIndex.search("regla", 5));
+        assertEquals(report, importJobs.report(report.id()).orElseThrow());
+    }
+
+    /**
+     * Import Carts as CSV, one Item per line. Assert that lines are grouped by cartId, and that Carts of a User that
+     * already has one, referencing a missing Product, or with any invalid line, are rejected as a whole. The Items of a
+     * Cart get consecutive IDs.
+     */
+    @Test
+    @DisplayName("La importación de carritos agrupa los ítems por cartId y rechaza los carritos inválidos")
+    public void test_when_importCarts_then_itemsGroupedAndInvalidCartsRejected() throws IOException {
+        ImportReport report = service.importCarts(body(
+                "\uFEFFcartId,description,userId,productId,quantity",
+                "a,\"Compras, semana 1\",10,1,2",
+                "a,,,2,4",
+                "b,Repetido," + EXISTING_USER_ID + ",1,1",
+                "c,Sin producto,11,999,1",
+                "d,Cantidad inválida,12,1,1",
+                "d,,,2,0",
+                "d,,,3,1",
+                "e,Vacío,13,,"), BulkFormat.CSV_VALUE);
+
+        assertEquals(5, report.rowsRead());
+        assertEquals(2, report.imported());
+        assertEquals(List.of(4L, 5L, 7L), rejectedLines(report));
+
+        assertEquals(List.of(2, 4), quantitiesOfUser(10));
+        // Los IDs de los ítems salen de un mismo bloque reservado, no de uno por fila
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT MAX(I.ITEM_ID) - MIN(I.ITEM_ID) FROM ITEM I "
+                + "JOIN CART C ON C.CART_ID = I.CART_ID WHERE C.USER_ID = 10", Long.class));
+        assertEquals("Compras, semana 1",
+                jdbcTemplate.queryForObject("SELECT CART_DESCRIPTION FROM CART WHERE USER_ID = 10", String.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CART WHERE USER_ID = 13", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CART WHERE USER_ID IN (11, 12)", Integer.class));
+    }
+
+    /**
+     * Import a chunk of Carts where one of them fails to be written, since the Product index believes a missing
+     * Product exists. Assert that the chunk is written again row by row, so that only that Cart is rejected.
+     */
+    @Test
+    @DisplayName("Si un bloque falla, se reintenta fila por fila y solo se rechazan las que fallan")
+    public void test_when_chunkFails_then_rowsRetriedOneByOne() throws IOException {
+        productIdIndex.exists(1L);
+        productIdIndex.productAdded(777L);
+
+        ImportReport report = service.importCarts(body(
+                "{\"description\": \"Bueno\", \"userId\": 20, \"items\": [{\"productId\": 1, \"quantity\": 1}]}",
+                "{\"description\": \"Roto\", \"userId\": 21, \"items\": [{\"productId\": 777, \"quantity\": 1}]}",
+                "{\"description\": \"También bueno\", \"userId\": 22}"), BulkFormat.NDJSON_VALUE);
+
+        assertEquals(2, report.imported());
+        assertEquals(List.of(2L), rejectedLines(report));
+        assertTrue(report.errors().get(0).message().startsWith("No se pudo guardar la fila"), report.errors().get(0).message());
+        assertEquals(List.of(1), quantitiesOfUser(20));
+    }
+
+    /**
+     * Assert that a CSV header lacking a required column fails the import before writing anything, and that the
+     * failure is recorded.
+     */
+    @Test
+    @DisplayName("Una cabecera CSV sin las columnas requeridas hace fallar la importación")
+    public void test_when_csvHeaderLacksColumn_then_importFails() {
+        BadRequestException exception = assertThrows(BadRequestException.class,
+                () -> service.importProducts(body("name", "Goma"), BulkFormat.CSV_VALUE));
+
+        assertEquals("Falta la columna \"description\" en la cabecera CSV.", exception.getMessage());
+        ImportReport report = importJobs.reports().get(0);
+        assertEquals(ImportJob.State.FAILED, report.state());
+        assertEquals(exception.getMessage(), report.failure());
+    }
+}
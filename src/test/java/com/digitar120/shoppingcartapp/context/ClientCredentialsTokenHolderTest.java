@@ -0,0 +1,159 @@
+package com.digitar120.shoppingcartapp.context;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit testing for {@link ClientCredentialsTokenHolder}.
+ * @author Gabriel Pérez (digitar120)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ClientCredentialsTokenHolderTest {
+
+    private static final ClientRegistration REGISTRATION = ClientRegistration.withRegistrationId("keycloak")
+            .clientId("shopping-cart")
+            .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+            .tokenUri("http://localhost/token")
+            .build();
+
+    @Mock
+    private OAuth2AuthorizedClientManager authorizedClientManager;
+
+    @Mock
+    private OAuth2AuthorizedClientService authorizedClientService;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ClientCredentialsTokenHolder tokenHolder;
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    @Before
+    public void setUp(){
+        tokenHolder = new ClientCredentialsTokenHolder(authorizedClientManager, authorizedClientService,
+                meterRegistry, "keycloak", Duration.ofSeconds(60));
+    }
+
+    @After
+    public void tearDown(){
+        tokenHolder.shutdown();
+    }
+
+    /**
+     * Assert that a valid token is reused by later calls, without asking for a new one.
+     */
+    @Test
+    @DisplayName("getTokenValue reutiliza el token mientras sea válido")
+    public void test_when_tokenIsValid_then_tokenIsReused(){
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(clientWithToken("token-1", Duration.ofHours(1)));
+
+        assertEquals("token-1", tokenHolder.getTokenValue());
+        assertEquals("token-1", tokenHolder.getTokenValue());
+
+        verify(authorizedClientManager, times(1)).authorize(any(OAuth2AuthorizeRequest.class));
+        assertEquals(1, meterRegistry.get("oauth2.token.refresh").timer().count());
+    }
+
+    /**
+     * Assert that a token about to expire is renewed in the background, and that calls then get the new token.
+     */
+    @Test
+    @DisplayName("El token se renueva en segundo plano antes de vencer")
+    public void test_when_tokenAboutToExpire_then_tokenRenewedInBackground(){
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(clientWithToken("token-1", Duration.ofSeconds(61)))
+                .thenReturn(clientWithToken("token-2", Duration.ofHours(1)));
+
+        assertEquals("token-1", tokenHolder.getTokenValue());
+
+        verify(authorizedClientManager, timeout(5000).times(2)).authorize(any(OAuth2AuthorizeRequest.class));
+        verify(authorizedClientService, times(2)).removeAuthorizedClient("keycloak", "principal");
+        assertEquals("token-2", tokenHolder.getTokenValue());
+    }
+
+    /**
+     * Given a token that lives less than {@code refresh-before-expiry}, assert that it isn't renewed right away over and
+     * over, but halfway through its life.
+     */
+    @Test
+    @DisplayName("Un token de vida más corta que la anticipación no se renueva en un bucle")
+    public void test_when_tokenLivesLessThanRefreshWindow_then_renewedHalfwayThrough() throws InterruptedException {
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(clientWithToken("token-1", Duration.ofSeconds(4)))
+                .thenReturn(clientWithToken("token-2", Duration.ofHours(1)));
+
+        assertEquals("token-1", tokenHolder.getTokenValue());
+        Thread.sleep(500);
+
+        verify(authorizedClientManager, times(1)).authorize(any(OAuth2AuthorizeRequest.class));
+        verify(authorizedClientManager, timeout(5000).times(2)).authorize(any(OAuth2AuthorizeRequest.class));
+        assertEquals("token-2", tokenHolder.getTokenValue());
+    }
+
+    /**
+     * Assert that renewals made on the request path replace the scheduled renewal instead of adding another one.
+     */
+    @Test
+    @DisplayName("Cada renovación reemplaza la renovación programada")
+    public void test_when_renewedSeveralTimes_then_singleRenewalScheduled(){
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenReturn(clientWithToken("token-1", Duration.ofHours(1)));
+
+        tokenHolder.getTokenValue();
+        tokenHolder.renew();
+        tokenHolder.renew();
+
+        assertEquals(1, tokenHolder.scheduledRenewals());
+    }
+
+    /**
+     * Assert that a failure to obtain a token is counted and reaches the caller.
+     */
+    @Test
+    @DisplayName("Un error al obtener el token se cuenta y se propaga")
+    public void test_when_authorizationFails_then_failureCountedAndThrown(){
+        when(authorizedClientManager.authorize(any(OAuth2AuthorizeRequest.class)))
+                .thenThrow(new IllegalStateException("Servidor de autorización no disponible"));
+
+        exceptionRule.expect(IllegalStateException.class);
+
+        try {
+            tokenHolder.getTokenValue();
+        } finally {
+            assertEquals(1.0, meterRegistry.get("oauth2.token.refresh.failures").counter().count());
+        }
+    }
+
+    private static OAuth2AuthorizedClient clientWithToken(String value, Duration validity) {
+        Instant now = Instant.now();
+        OAuth2AccessToken token = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, value,
+                now, now.plus(validity));
+
+        return new OAuth2AuthorizedClient(REGISTRATION, "principal", token);
+    }
+}
@@ -0,0 +1,144 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
+import com.digitar120.shoppingcartapp.jfr.CartOperationEvent;
+import com.digitar120.shoppingcartapp.mapper.CartDTOtoCart;
+import com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit testing for the settings of {@link FlightRecording}, and for the {@link CartOperationEvent}s recorded with them.
+ * @author Gabriel Pérez (digitar120)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class FlightRecordingTest {
+
+    private static final Long CART_ID = 1L;
+
+    @Mock
+    private CartRepository repository;
+    @Mock
+    private ItemRepository itemRepository;
+    @Mock
+    private CartDTOtoCart mapper;
+    @Mock
+    private ReactiveUserClient userServiceConnection;
+    @Mock
+    private ProductIdIndex productIdIndex;
+
+    /**
+     * Assert that the settings enable the app's events on top of the {@code default} configuration, and that the
+     * threshold can be overridden.
+     */
+    @Test
+    @DisplayName("settings habilita los eventos de la aplicación sobre la configuración default")
+    public void test_when_settings_then_appEventsEnabledOnTopOfDefault(){
+        Map<String, String> settings = FlightRecording.settings(null);
+
+        assertEquals("true", settings.get(CartOperationEvent.NAME + "#enabled"));
+        assertEquals("10 ms", settings.get(CartOperationEvent.NAME + "#threshold"));
+        assertEquals("true", settings.get("jdk.GarbageCollection#enabled"));
+
+        assertEquals("500000 ns", FlightRecording.settings(Duration.ofNanos(500_000)).get(CartOperationEvent.NAME + "#threshold"));
+    }
+
+    /**
+     * Assert that events are disabled without a recording, and that within a recording they're committed once the
+     * transaction completes, whether it's committed or rolled back.
+     */
+    @Test
+    @DisplayName("CartOperationEvent se registra al completarse la transacción")
+    public void test_when_recording_then_cartOperationEventsCommittedAfterTransaction() throws IOException {
+        assertFalse(CartOperationEvent.start(CartOperationEvent.ADD_ITEM).isEnabled());
+
+        CartService service = new CartService(repository, itemRepository, mapper, new CartRowsToCartViews(),
+                userServiceConnection, productIdIndex);
+        when(productIdIndex.exists(5L)).thenReturn(true);
+        when(repository.findWithItemsAndProductsForChangeById(CART_ID))
+                .thenAnswer(invocation -> Optional.of(new Cart(CART_ID, "Cart", new HashSet<>(), 1)));
+        when(repository.save(any(Cart.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording(FlightRecording.settings(Duration.ZERO))) {
+            recording.start();
+
+            inTransaction(() -> service.addItemToCart(CART_ID, 5L, 2), TransactionSynchronization.STATUS_COMMITTED);
+            inTransaction(() -> assertThrows(NotFoundException.class, () -> service.deleteItemFromCart(CART_ID, 99L)),
+                    TransactionSynchronization.STATUS_ROLLED_BACK);
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        assertEquals(2, events.size());
+
+        RecordedEvent addItem = events.get(0);
+        assertEquals(CartOperationEvent.ADD_ITEM, addItem.getString("operation"));
+        assertEquals(CART_ID, addItem.getLong("cartId"));
+        assertEquals(1, addItem.getInt("itemCount"));
+        assertEquals(1, addItem.getInt("changedItems"));
+        assertFalse(addItem.getBoolean("rolledBack"));
+        assertTrue(addItem.getDuration("commitTime").toNanos() > 0);
+
+        RecordedEvent deleteItem = events.get(1);
+        assertEquals(CartOperationEvent.DELETE_ITEM, deleteItem.getString("operation"));
+        assertTrue(deleteItem.getBoolean("rolledBack"));
+        assertEquals(Duration.ZERO, deleteItem.getDuration("commitTime"));
+    }
+
+    /**
+     * Runs an action the way a transaction would, completing the synchronizations it registered with a given status.
+     */
+    private static void inTransaction(Runnable action, int status) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            action.run();
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                    synchronization.afterCompletion(status));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws IOException {
+        Path file = Files.createTempFile("cart-operations", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(CartOperationEvent.NAME))
+                    .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.digitar120.shoppingcartapp.context;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.ProductCatalogCache;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import com.digitar120.shoppingcartapp.service.ProductSearchIndex;
+import com.digitar120.shoppingcartapp.service.ProductService;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit testing for the latency timers of {@link MetricsConfiguration}, {@link MethodMetricsAspect} and
+ * {@link SerializationTimer}.
+ * @author Gabriel Pérez (digitar120)
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class MetricsConfigurationTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductSearchIndex productSearchIndex;
+
+    private final PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    @Before
+    public void setup(){
+        meterRegistry.config().meterFilter(
+                new MetricsConfiguration().latencyHistogramFilter(Duration.ofNanos(5_000), Duration.ofSeconds(10)));
+    }
+
+    private ProductService timedProductService(){
+        ProductService productService = new ProductService(productRepository, new ProductCatalogCache(meterRegistry, 100),
+                new ProductIdIndex(productRepository), productSearchIndex);
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(productService);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new MethodMetricsAspect(meterRegistry));
+        return proxyFactory.getProxy();
+    }
+
+    /**
+     * Assert that service calls are timed by method and outcome, and exported with the percentiles and histogram
+     * buckets of the latency timers.
+     */
+    @Test
+    @DisplayName("Las llamadas a los servicios se miden por método y resultado, con percentiles e histograma")
+    public void test_when_serviceMethodCalled_then_timedWithPercentiles(){
+        ProductService productService = timedProductService();
+        when(productSearchIndex.search("lap", 10)).thenReturn(List.of());
+
+        productService.search("lap", 10);
+        productService.search("lap", 10);
+        assertThrows(BadRequestException.class, () -> productService.search(" ", 10));
+
+        Timer success = meterRegistry.get(MethodMetricsAspect.SERVICE_TIMER)
+                .tags("class", "ProductService", "method", "search", "outcome", "success").timer();
+        Timer error = meterRegistry.get(MethodMetricsAspect.SERVICE_TIMER)
+                .tags("class", "ProductService", "method", "search", "outcome", "error").timer();
+
+        assertEquals(2, success.count());
+        assertEquals(1, error.count());
+        String scrape = meterRegistry.scrape();
+        assertTrue(scrape.contains("service_method_seconds{class=\"ProductService\",method=\"search\",outcome=\"success\",quantile=\"0.999\",}"));
+        assertTrue(scrape.contains("service_method_seconds_bucket{class=\"ProductService\",method=\"search\",outcome=\"success\",le=\"+Inf\",} 2.0"));
+        assertTrue(scrape.contains("service_method_seconds_max{class=\"ProductService\",method=\"search\",outcome=\"success\",}"));
+    }
+
+    /**
+     * Assert that writing a body is timed until the request completes, tagged with the declared type of the body.
+     */
+    @Test
+    @DisplayName("La escritura de las respuestas se mide según el tipo del cuerpo")
+    public void test_when_bodyWritten_then_serializationTimed() throws Exception {
+        SerializationTimer serializationTimer = new SerializationTimer(meterRegistry);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        serializationTimer.beforeBodyWrite(productViews(), new MethodParameter(getClass().getDeclaredMethod("productViews"), -1),
+                MediaType.APPLICATION_JSON, MappingJackson2HttpMessageConverter.class,
+                new ServletServerHttpRequest(request), new ServletServerHttpResponse(response));
+        serializationTimer.afterCompletion(request, response, null, null);
+        serializationTimer.afterCompletion(new MockHttpServletRequest(), response, null, null);
+
+        assertEquals(1, meterRegistry.get(SerializationTimer.TIMER_NAME).tag("type", "List<ProductView>").timer().count());
+    }
+
+    /**
+     * Declares a body type the way a controller method does.
+     */
+    private List<ProductView> productViews(){
+        return List.of(new ProductView(1L, "Lápiz"));
+    }
+}
@@ -0,0 +1,190 @@
+package com.digitar120.shoppingcartapp.controller;
+
+import com.digitar120.shoppingcartapp.context.JdbcInstrumentationConfiguration;
+import com.digitar120.shoppingcartapp.context.JsonConfiguration;
+import com.digitar120.shoppingcartapp.context.StatementCountInterceptor;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import com.digitar120.shoppingcartapp.persistence.PersistenceTestConfiguration;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.entity.Item;
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.jdbc.StatementBudget;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.opentest4j.AssertionFailedError;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.publisher.Mono;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statement budgets of the Cart endpoints, checked through {@link StatementBudget} against the H2 database initialized
+ * by the Flyway migrations in {@code db/migration}.
+ * <p>Requests go through the {@link CartController} and the JSON serialization, with the statements counted by the
+ * instrumented {@code DataSource} of {@link JdbcInstrumentationConfiguration}. Unlike Hibernate statistics, that also
+ * covers the JDBC batches of {@link com.digitar120.shoppingcartapp.persistence.repository.ItemBatchRepository}.</p>
+ * <p>The Cart has {@link CartControllerStatementBudgetTest#BIG_CART_SIZE} Items, so loading Items or Products one by
+ * one would go over budget.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.service.CartServiceStatementCountTest
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=none")
+public class CartControllerStatementBudgetTest {
+
+    private static final int BIG_CART_SIZE = 20;
+    private static final Integer BIG_CART_USER_ID = 2;
+
+    @SpringBootConfiguration
+    @Import({PersistenceTestConfiguration.class, JdbcInstrumentationConfiguration.class})
+    static class PersistenceConfiguration {
+    }
+
+    @Autowired
+    private CartService service;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ProductIdIndex productIdIndex;
+
+    @MockBean
+    private ReactiveUserClient userClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JsonConfiguration().hibernateModule());
+
+    private MockMvc mockMvc;
+    private Long bigCartId;
+    private List<Product> products;
+
+    @Before
+    public void setup(){
+        products = new ArrayList<>();
+        for (int i = 1; i <= BIG_CART_SIZE + 1; i++) {
+            Product product = new Product("Producto " + i);
+            entityManager.persist(product);
+            products.add(product);
+        }
+
+        Cart bigCart = new Cart(null, "Carrito grande", new HashSet<>(), BIG_CART_USER_ID);
+        entityManager.persist(bigCart);
+        for (Product product : products.subList(0, BIG_CART_SIZE)) {
+            entityManager.persist(new Item(1, bigCart, product));
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+        bigCartId = bigCart.getId();
+
+        // Los productos no se crearon mediante ProductService: el índice los confirma antes de contar
+        productIdIndex.findMissing(products.stream().map(Product::getId).toList());
+
+        // El registro se comparte entre las pruebas del contexto; el interceptor guarda los medidores que registra
+        meterRegistry.clear();
+        mockMvc = MockMvcBuilders.standaloneSetup(new CartController(service, objectMapper))
+                .addInterceptors(new StatementCountInterceptor(meterRegistry))
+                .build();
+    }
+
+    /**
+     * Runs a request within its budget, with an empty persistence context so that nothing is served from it.
+     */
+    private ResultActions request(String endpoint, int budget, ThrowingRequest request) throws Throwable {
+        entityManager.clear();
+        return StatementBudget.assertWithinBudget(endpoint, budget, request::perform);
+    }
+
+    private interface ThrowingRequest {
+        ResultActions perform() throws Exception;
+    }
+
+    /**
+     * Assert that the read endpoints run a single statement, besides the version lookup of the Item listing, and that
+     * the count is published for the endpoint. The Cart of the user is then requested again with its ETag, and is
+     * answered with HTTP 304.
+     */
+    @Test
+    @DisplayName("Las lecturas de carritos se mantienen dentro de su presupuesto de sentencias")
+    public void test_when_readEndpoints_then_withinBudget() throws Throwable {
+        when(userClient.getUserByUserId(anyInt())).thenReturn(Mono.just(new UserResponse(BIG_CART_USER_ID)));
+
+        request("GET /cart", 1, () -> mockMvc.perform(get("/cart"))).andExpect(status().isOk());
+        request("GET /cart/{id}", 1, () -> mockMvc.perform(get("/cart/{id}", bigCartId))).andExpect(status().isOk());
+        String etag = request("GET /cart/by-userid/{userId}", 1, () -> mockMvc.perform(get("/cart/by-userid/{userId}", BIG_CART_USER_ID)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/cart/by-userid/{userId}", BIG_CART_USER_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        // La versión se lee antes que los ítems, para responder a If-None-Match
+        request("GET /cart/{id}/items", 2, () -> mockMvc.perform(get("/cart/{id}/items", bigCartId)))
+                .andExpect(status().isOk());
+
+        DistributionSummary summary = meterRegistry.get(StatementCountInterceptor.SUMMARY_NAME)
+                .tag("method", "GET")
+                .tag("uri", "/cart/{id}")
+                .summary();
+        assertEquals(1, summary.count());
+        assertEquals(1.0, summary.totalAmount());
+    }
+
+    /**
+     * Assert that adding Items in bulk loads the Cart once, reserves the IDs of the new Items once, and sends the
+     * updates and the inserts as one batch each.
+     */
+    @Test
+    @DisplayName("POST /cart/{cartId} ejecuta una consulta, una reserva de IDs y un lote por tipo de escritura")
+    public void test_when_addMultipleItemsToCart_then_withinBudget() throws Throwable {
+        String items = "[{\"quantity\": 3, \"referencedProduct\": {\"id\": " + products.get(0).getId() + "}},"
+                + "{\"quantity\": 3, \"referencedProduct\": {\"id\": " + products.get(BIG_CART_SIZE).getId() + "}}]";
+
+        request("POST /cart/{cartId}", 4, () -> mockMvc.perform(post("/cart/{cartId}", bigCartId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(items))).andExpect(status().isOk());
+    }
+
+    /**
+     * Assert that going over budget fails, listing the statements executed.
+     */
+    @Test
+    @DisplayName("Exceder el presupuesto falla, y lista las sentencias ejecutadas")
+    public void test_when_overBudget_then_failsListingStatements(){
+        AssertionFailedError error = assertThrows(AssertionFailedError.class,
+                () -> request("GET /cart/{id}", 0, () -> mockMvc.perform(get("/cart/{id}", bigCartId))));
+
+        assertTrue(error.getMessage().startsWith("GET /cart/{id} ejecutó 1 sentencias, con un presupuesto de 0:"),
+                error.getMessage());
+        assertTrue(error.getMessage().contains("from cart"), error.getMessage());
+    }
+}
@@ -0,0 +1,81 @@
+package com.digitar120.shoppingcartapp.exception.globalhandler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit testing for {@link GlobalExceptionHandler}, and the stack traces of {@link CustomHttpStatusException}.
+ * @author Gabriel Pérez (digitar120)
+ */
+public class GlobalExceptionHandlerTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-05T14:07:09.250Z");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @After
+    public void tearDown(){
+        CustomHttpStatusException.setStackTracesEnabled(false);
+    }
+
+    private GlobalExceptionHandler handler(boolean stackTraces){
+        return new GlobalExceptionHandler(stackTraces, Clock.fixed(NOW, ZoneId.systemDefault()));
+    }
+
+    /**
+     * Assert that the body written by the handler reads back as an {@link ErrorDTO}, with the message escaped and the
+     * time in the format of {@link Date#toString()}.
+     */
+    @Test
+    @DisplayName("El cuerpo del error se lee como un ErrorDTO, con el mensaje escapado y la hora de Date.toString()")
+    public void test_when_notFoundException_then_bodyReadsBackAsErrorDTO() throws Exception {
+        String message = "No se encontró el producto \"Lápiz\"\n\\ N° 5";
+
+        ResponseEntity<byte[]> response = handler(false).generateNotFoundException(new NotFoundException(message));
+        ErrorDTO errorDTO = objectMapper.readValue(response.getBody(), ErrorDTO.class);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals("404", errorDTO.getStatus());
+        assertEquals(message, errorDTO.getMessage());
+        assertEquals(new Date(NOW.toEpochMilli()).toString(), errorDTO.getTime());
+    }
+
+    /**
+     * Assert that optimistic locking failures are answered with HTTP 409.
+     */
+    @Test
+    @DisplayName("Un fallo de bloqueo optimista se responde con HTTP 409")
+    public void test_when_optimisticLockingFailure_then_conflict() throws Exception {
+        ResponseEntity<byte[]> response = handler(false).generateConflictException(new ObjectOptimisticLockingFailureException("Cart", 1L));
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals("409", objectMapper.readValue(response.getBody(), ErrorDTO.class).getStatus());
+    }
+
+    /**
+     * Assert that exceptions don't capture stack traces, unless the handler enables them.
+     */
+    @Test
+    @DisplayName("Las excepciones no capturan la pila de llamadas, salvo que se habilite")
+    public void test_when_stackTracesEnabled_then_onlyThenCaptured(){
+        handler(false);
+        assertEquals(0, new BadRequestException("Cantidad inválida").getStackTrace().length);
+
+        handler(true);
+        assertTrue(new BadRequestException("Cantidad inválida").getStackTrace().length > 0);
+    }
+}
@@ -0,0 +1,198 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.digitar120.shoppingcartapp.exception.RemoteClientErrorException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit testing for the user lookup cache.
+ * @author Gabriel Pérez (digitar120)
+ * @see CachingUserClient
+ * @see UserFeignClientFallback
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CachingUserClientTest {
+
+    private static final Integer USER_ID = 1;
+
+    @Mock
+    private UserClient remoteUserClient;
+
+    @Mock
+    private UserBatchLoader batchLoader;
+
+    private CachingUserClient cachingUserClient;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Before
+    public void setup(){
+        cachingUserClient = new CachingUserClient(
+                remoteUserClient, batchLoader, meterRegistry, 100, Duration.ofMinutes(10), Duration.ofSeconds(30), false);
+    }
+
+    /**
+     * Assert that a second lookup of the same user is answered by the cache.
+     */
+    @Test
+    @DisplayName("getUserByUserId consulta al servicio de usuarios una sola vez")
+    public void test_when_getUserByUserIdTwice_then_remoteCallMadeOnce(){
+        UserResponse user = new UserResponse(USER_ID);
+        when(remoteUserClient.getUserByUserId(USER_ID)).thenReturn(user);
+
+        cachingUserClient.getUserByUserId(USER_ID);
+
+        assertEquals(user, cachingUserClient.getUserByUserId(USER_ID));
+        verify(remoteUserClient, times(1)).getUserByUserId(USER_ID);
+        assertEquals(1, cachingUserClient.stats().hitCount());
+    }
+
+    /**
+     * Given the User service answering with the {@link UserFeignClientFallback} response, assert that the response is
+     * returned but not cached.
+     */
+    @Test
+    @DisplayName("getUserByUserId no guarda la respuesta de fallback")
+    public void test_when_getUserByUserId_and_fallbackResponse_then_notCached(){
+        when(remoteUserClient.getUserByUserId(USER_ID)).thenReturn(new UserResponse(-1));
+
+        assertEquals(-1, cachingUserClient.getUserByUserId(USER_ID).getId());
+        cachingUserClient.getUserByUserId(USER_ID);
+
+        verify(remoteUserClient, times(2)).getUserByUserId(USER_ID);
+    }
+
+    /**
+     * Assert that lookups are timed by result: remote call, cache hit, and fallback response.
+     */
+    @Test
+    @DisplayName("getUserByUserId mide las consultas según su resultado")
+    public void test_when_getUserByUserId_then_timedByResult(){
+        when(remoteUserClient.getUserByUserId(USER_ID)).thenReturn(new UserResponse(USER_ID));
+        when(remoteUserClient.getUserByUserId(2)).thenReturn(new UserResponse(-1));
+
+        cachingUserClient.getUserByUserId(USER_ID);
+        cachingUserClient.getUserByUserId(USER_ID);
+        cachingUserClient.getUserByUserId(USER_ID);
+        cachingUserClient.getUserByUserId(2);
+
+        assertEquals(1, lookups("remote"));
+        assertEquals(2, lookups("hit"));
+        assertEquals(1, lookups("fallback"));
+        assertEquals(0, lookups("error"));
+    }
+
+    private long lookups(String result) {
+        return meterRegistry.get("user.client.lookup").tags("operation", "single", "result", result).timer().count();
+    }
+
+    /**
+     * Given the User service not finding a user, assert that the rejection is cached and thrown again.
+     */
+    @Test
+    @DisplayName("getUserByUserId guarda los usuarios que el servicio de usuarios no encontró")
+    public void test_when_getUserByUserId_and_rejected_then_rejectionCached(){
+        when(remoteUserClient.getUserByUserId(USER_ID)).thenThrow(new RemoteClientErrorException("Request error", HttpStatus.NOT_FOUND));
+
+        assertThrows(BadRequestException.class, () -> cachingUserClient.getUserByUserId(USER_ID));
+        assertThrows(BadRequestException.class, () -> cachingUserClient.getUserByUserId(USER_ID));
+
+        verify(remoteUserClient, times(1)).getUserByUserId(USER_ID);
+    }
+
+    /**
+     * Given the User service rejecting a lookup with 401, and then answering it, assert that the rejection is thrown
+     * but not cached, so the next lookup gets the user.
+     */
+    @Test
+    @DisplayName("getUserByUserId no guarda otros rechazos del servicio de usuarios")
+    public void test_when_getUserByUserId_and_unauthorized_then_rejectionNotCached(){
+        UserResponse user = new UserResponse(USER_ID);
+        when(remoteUserClient.getUserByUserId(USER_ID))
+                .thenThrow(new RemoteClientErrorException("Request error", HttpStatus.UNAUTHORIZED))
+                .thenReturn(user);
+
+        assertThrows(RemoteClientErrorException.class, () -> cachingUserClient.getUserByUserId(USER_ID));
+
+        assertEquals(user, cachingUserClient.getUserByUserId(USER_ID));
+        verify(remoteUserClient, times(2)).getUserByUserId(USER_ID);
+    }
+
+    /**
+     * Given batching enabled, and the User service answering the bulk call with 401, assert that single and bulk
+     * lookups get the {@link UserFeignClientFallback} response, and that none of their users is cached.
+     */
+    @Test
+    @DisplayName("Un rechazo de la llamada de consultas múltiples no se guarda para sus usuarios")
+    public void test_when_bulkCallUnauthorized_then_cacheLeftEmpty(){
+        when(remoteUserClient.getUsersByUserIds(anyCollection()))
+                .thenThrow(new RemoteClientErrorException("Request error", HttpStatus.UNAUTHORIZED));
+        UserBatchLoader realBatchLoader = new UserBatchLoader(
+                remoteUserClient, meterRegistry, 10, Duration.ZERO, Duration.ofMinutes(10));
+        CachingUserClient batchingClient = new CachingUserClient(
+                remoteUserClient, realBatchLoader, meterRegistry, 100, Duration.ofMinutes(10), Duration.ofSeconds(30), true);
+
+        assertEquals(-1, batchingClient.getUserByUserId(USER_ID).getId());
+        assertEquals(-1, batchingClient.getUsersByUserIds(List.of(USER_ID, 2)).get(0).getId());
+
+        assertEquals(0, batchingClient.size());
+        verify(remoteUserClient, never()).getAllUsers();
+    }
+
+    /**
+     * Assert that {@link CachingUserClient#invalidate(Integer)} forces the next lookup to query the User service.
+     */
+    @Test
+    @DisplayName("invalidate descarta el usuario guardado")
+    public void test_when_invalidate_then_remoteCallMadeAgain(){
+        when(remoteUserClient.getUserByUserId(USER_ID)).thenReturn(new UserResponse(USER_ID));
+
+        cachingUserClient.getUserByUserId(USER_ID);
+        cachingUserClient.invalidate(USER_ID);
+        cachingUserClient.getUserByUserId(USER_ID);
+
+        verify(remoteUserClient, times(2)).getUserByUserId(USER_ID);
+    }
+
+    /**
+     * Given one cached user, assert that {@link CachingUserClient#getUsersByUserIds(java.util.Collection)} only asks
+     * the {@link UserBatchLoader} for the other ones, and caches them.
+     */
+    @Test
+    @DisplayName("getUsersByUserIds solo consulta los usuarios que no están guardados")
+    public void test_when_getUsersByUserIds_then_onlyMissingUsersLoaded(){
+        when(remoteUserClient.getUserByUserId(1)).thenReturn(new UserResponse(1));
+        when(batchLoader.loadMany(List.of(2, 3))).thenReturn(Map.of(2, new UserResponse(2)));
+
+        cachingUserClient.getUserByUserId(1);
+        List<UserResponse> users = cachingUserClient.getUsersByUserIds(List.of(1, 2, 3));
+
+        assertEquals(2, users.size());
+        assertEquals(1, users.get(0).getId());
+        assertEquals(2, users.get(1).getId());
+
+        // El usuario 3 no existe: el rechazo también se guarda
+        assertThrows(BadRequestException.class, () -> cachingUserClient.getUserByUserId(3));
+        verify(remoteUserClient, never()).getUserByUserId(3);
+    }
+}
@@ -0,0 +1,322 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.digitar120.shoppingcartapp.context.ClientCredentialsTokenHolder;
+import com.digitar120.shoppingcartapp.exception.RemoteClientErrorException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import com.digitar120.shoppingcartapp.jfr.UserLookupEvent;
+import com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews;
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit testing for the non-blocking user lookup client.
+ * <p>The User service is replaced by an {@link ExchangeFunction} that answers every request with a fixed response.</p>
+ * @see CartService#findByUserId(Integer)
+ * @author Gabriel Pérez (digitar120)
+ * @see ReactiveUserClient
+ * @see UserFeignClientFallback
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ReactiveUserClientTest {
+
+    private static final Integer USER_ID = 1;
+    private static final int CONCURRENT_CALLERS = 4;
+
+    @Mock
+    private UserClient remoteUserClient;
+
+    @Mock
+    private UserBatchLoader batchLoader;
+
+    @Mock
+    private ClientCredentialsTokenHolder tokenHolder;
+
+    @Mock
+    private CartRepository cartRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CachingUserClient cachingUserClient;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    @Before
+    public void setup(){
+        lenient().when(tokenHolder.getTokenValue()).thenReturn("token");
+        meterRegistry = new SimpleMeterRegistry();
+        cachingUserClient = new CachingUserClient(
+                remoteUserClient, batchLoader, meterRegistry, 100, Duration.ofMinutes(10), Duration.ofSeconds(30), false);
+    }
+
+    private ReactiveUserClient clientAnswering(Mono<ClientResponse> response) {
+        return clientAnswering(response, Duration.ofMillis(200));
+    }
+
+    private ReactiveUserClient clientAnswering(Mono<ClientResponse> response, Duration timeout) {
+        ExchangeFunction exchangeFunction = request -> {
+            requests.incrementAndGet();
+            return response;
+        };
+
+        return new ReactiveUserClient(
+                WebClient.builder().exchangeFunction(exchangeFunction),
+                new ReactiveResilience4JCircuitBreakerFactory(
+                        CircuitBreakerRegistry.ofDefaults(), TimeLimiterRegistry.ofDefaults()).create("userClient"),
+                tokenHolder,
+                cachingUserClient,
+                "http://localhost:9001",
+                timeout);
+    }
+
+    private long lookups(String result) {
+        return meterRegistry.get("user.client.lookup").tags("operation", "single", "result", result).timer().count();
+    }
+
+    private static Mono<ClientResponse> respond(HttpStatus status, String body) {
+        return Mono.just(ClientResponse.create(status)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+    }
+
+    /**
+     * Assert that a found user is returned, and that a second lookup is answered by the shared cache.
+     */
+    @Test
+    @DisplayName("getUserByUserId devuelve el usuario y lo guarda en caché")
+    public void test_when_getUserByUserId_then_userReturnedAndCached(){
+        ReactiveUserClient client = clientAnswering(respond(HttpStatus.OK, "{\"id\":1,\"name\":\"Juan\"}"));
+
+        assertEquals(USER_ID, client.getUserByUserId(USER_ID).block().getId());
+        assertEquals("Juan", client.getUserByUserId(USER_ID).block().getName());
+
+        assertEquals(1, requests.get());
+        assertEquals(USER_ID, cachingUserClient.getUserByUserId(USER_ID).getId());
+        verifyNoInteractions(remoteUserClient);
+    }
+
+    /**
+     * Look up a user twice, and another user while the User service fails. Assert that each lookup is timed as
+     * {@code user.client.lookup}, tagged with its result, as blocking lookups are.
+     */
+    @Test
+    @DisplayName("getUserByUserId registra la latencia de cada consulta, según su resultado")
+    public void test_when_getUserByUserId_then_lookupsTimed(){
+        ReactiveUserClient client = clientAnswering(respond(HttpStatus.OK, "{\"id\":1,\"name\":\"Juan\"}"));
+        client.getUserByUserId(USER_ID).block();
+        client.getUserByUserId(USER_ID).block();
+
+        clientAnswering(respond(HttpStatus.INTERNAL_SERVER_ERROR, "{}")).getUserByUserId(2).block();
+
+        assertEquals(1, lookups("remote"));
+        assertEquals(1, lookups("hit"));
+        assertEquals(1, lookups("fallback"));
+        assertEquals(0, lookups("error"));
+    }
+
+    /**
+     * Look up a user twice within a recording that enables {@link UserLookupEvent}. Assert that both lookups are
+     * recorded, the first one as a call to the User service and the second one as served from the cache.
+     */
+    @Test
+    @DisplayName("getUserByUserId registra un UserLookupEvent por consulta")
+    public void test_when_getUserByUserId_and_recording_then_lookupEventsRecorded() throws IOException {
+        // Iniciar la grabación puede demorar la primera consulta más que el tiempo de espera habitual
+        ReactiveUserClient client = clientAnswering(
+                respond(HttpStatus.OK, "{\"id\":1,\"name\":\"Juan\"}"), Duration.ofSeconds(5));
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(UserLookupEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+
+            client.getUserByUserId(USER_ID).block();
+            client.getUserByUserId(USER_ID).block();
+
+            recording.stop();
+            events = read(recording);
+        }
+
+        assertEquals(2, events.size());
+        assertEquals(List.of("remote", "hit"), events.stream().map(event -> event.getString("result")).toList());
+        assertTrue(events.stream().allMatch(event -> event.getInt("userId") == USER_ID
+                && "single".equals(event.getString("operation"))));
+        assertEquals(1, events.get(0).getInt("missingUsers"));
+        assertEquals(0, events.get(1).getInt("missingUsers"));
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws IOException {
+        Path file = Files.createTempFile("user-lookups", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().equals(UserLookupEvent.NAME))
+                    .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                    .toList();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Assert that a server error results in the {@link UserFeignClientFallback} response, which is not cached.
+     */
+    @Test
+    @DisplayName("getUserByUserId devuelve la respuesta de fallback ante un error del servidor")
+    public void test_when_getUserByUserId_and_serverError_then_fallbackResponse(){
+        ReactiveUserClient client = clientAnswering(respond(HttpStatus.INTERNAL_SERVER_ERROR, "{}"));
+
+        assertEquals(-1, client.getUserByUserId(USER_ID).block().getId());
+        client.getUserByUserId(USER_ID).block();
+
+        assertEquals(2, requests.get());
+    }
+
+    /**
+     * Assert that a User service that doesn't answer in time results in the {@link UserFeignClientFallback} response.
+     */
+    @Test
+    @DisplayName("getUserByUserId devuelve la respuesta de fallback al agotarse el tiempo de espera")
+    public void test_when_getUserByUserId_and_timeout_then_fallbackResponse(){
+        ReactiveUserClient client = clientAnswering(Mono.never());
+
+        assertEquals(-1, client.getUserByUserId(USER_ID).block(Duration.ofSeconds(5)).getId());
+    }
+
+    /**
+     * Assert that a query the User service answers with 429 ends with an exception that keeps the status, and that it
+     * isn't cached: the next lookup queries the User service again.
+     */
+    @Test
+    @DisplayName("getUserByUserId no guarda en caché los rechazos que no indican un usuario inexistente")
+    public void test_when_getUserByUserId_and_tooManyRequests_then_exceptionThrownAndNotCached(){
+        ReactiveUserClient client = clientAnswering(respond(HttpStatus.TOO_MANY_REQUESTS, "{}"));
+
+        RemoteClientErrorException exception = assertThrows(RemoteClientErrorException.class,
+                () -> client.getUserByUserId(USER_ID).block());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getRemoteStatus());
+        assertThrows(RemoteClientErrorException.class, () -> client.getUserByUserId(USER_ID).block());
+
+        assertEquals(2, requests.get());
+        assertEquals(0, cachingUserClient.size());
+    }
+
+    /**
+     * Assert that a rejected query ends with an exception, and that the rejection is cached.
+     */
+    @Test
+    @DisplayName("getUserByUserId arroja excepción y la guarda en caché cuando el usuario no existe")
+    public void test_when_getUserByUserId_and_userNotFound_then_exceptionThrownAndCached(){
+        ReactiveUserClient client = clientAnswering(respond(HttpStatus.NOT_FOUND, "{}"));
+
+        assertThrows(BadRequestException.class, () -> client.getUserByUserId(USER_ID).block());
+
+        expectedException.expect(BadRequestException.class);
+        try {
+            client.getUserByUserId(USER_ID).block();
+        } finally {
+            assertEquals(1, requests.get());
+        }
+    }
+
+    /**
+     * Given batching enabled, assert that a lookup of a user that isn't cached joins a {@link UserBatchLoader} batch
+     * instead of calling the User service on its own.
+     */
+    @Test
+    @DisplayName("getUserByUserId usa los lotes de consultas si están habilitados")
+    public void test_when_getUserByUserId_and_batchingEnabled_then_batchLoaderUsed(){
+        meterRegistry = new SimpleMeterRegistry();
+        cachingUserClient = new CachingUserClient(
+                remoteUserClient, batchLoader, meterRegistry, 100, Duration.ofMinutes(10), Duration.ofSeconds(30), true);
+        when(batchLoader.load(USER_ID)).thenReturn(new UserResponse(USER_ID));
+        ReactiveUserClient client = clientAnswering(respond(HttpStatus.OK, "{}"));
+
+        assertEquals(USER_ID, client.getUserByUserId(USER_ID).block(Duration.ofSeconds(5)).getId());
+
+        assertEquals(0, requests.get());
+        verify(batchLoader, times(1)).load(USER_ID);
+    }
+
+    /**
+     * Given a User service that holds its answer until every caller is waiting, look up the Cart of the same uncached
+     * user from several threads through {@link CartService#findByUserId(Integer)}. Assert that a single call reaches
+     * the User service, and that every caller gets the Cart.
+     */
+    @Test
+    @DisplayName("findByUserId concurrentes de un mismo usuario comparten una sola llamada al servicio de usuarios")
+    public void test_when_findByUserIdConcurrently_then_singleRemoteCall() throws Exception {
+        CompletableFuture<ClientResponse> answer = new CompletableFuture<>();
+        ReactiveUserClient client = clientAnswering(Mono.fromFuture(answer), Duration.ofSeconds(5));
+        when(cartRepository.findRowsByUserId(USER_ID)).thenReturn(List.of(
+                new CartItemRow(1L, "Carrito", USER_ID, 0L, 1L, 2, 1L, "Producto 1")));
+        CartService cartService = new CartService(cartRepository, null, null, new CartRowsToCartViews(), client, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+        try {
+            List<Future<CartView>> carts = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+                carts.add(executor.submit(() -> cartService.findByUserId(USER_ID)));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (cachingUserClient.coalescedCalls() < CONCURRENT_CALLERS - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            answer.complete(respond(HttpStatus.OK, "{\"id\":1,\"name\":\"Juan\"}").block());
+
+            for (Future<CartView> cart : carts) {
+                assertEquals(1L, cart.get(5, TimeUnit.SECONDS).id());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(CONCURRENT_CALLERS - 1, cachingUserClient.coalescedCalls());
+    }
+}
@@ -0,0 +1,165 @@
+package com.digitar120.shoppingcartapp.feignclient;
+
+import com.digitar120.shoppingcartapp.exception.RemoteClientErrorException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit testing for the user lookup batching.
+ * @author Gabriel Pérez (digitar120)
+ * @see UserBatchLoader
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class UserBatchLoaderTest {
+
+    @Mock
+    private UserClient remoteUserClient;
+
+    private UserBatchLoader loaderWithWindow(Duration window, int maxBatchSize) {
+        return new UserBatchLoader(remoteUserClient, new SimpleMeterRegistry(), maxBatchSize, window, Duration.ofMinutes(10));
+    }
+
+    private void bulkCallReturnsRequestedUsers() {
+        when(remoteUserClient.getUsersByUserIds(anyCollection())).thenAnswer(invocation -> {
+            List<UserResponse> users = new ArrayList<>();
+            for (Object userId : (Collection<?>) invocation.getArgument(0)) {
+                users.add(new UserResponse((Integer) userId));
+            }
+            return users;
+        });
+    }
+
+    /**
+     * Given a batch size of 4, assert that four concurrent lookups are resolved with a single bulk call.
+     */
+    @Test
+    @DisplayName("load agrupa consultas concurrentes en una sola llamada")
+    public void test_when_loadConcurrently_then_singleBulkCall() throws Exception {
+        bulkCallReturnsRequestedUsers();
+        UserBatchLoader loader = loaderWithWindow(Duration.ofSeconds(5), 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<UserResponse>> results = new ArrayList<>();
+            for (int userId = 1; userId <= 4; userId++) {
+                int id = userId;
+                results.add(executor.submit(() -> loader.load(id)));
+            }
+
+            for (int userId = 1; userId <= 4; userId++) {
+                assertEquals(userId, results.get(userId - 1).get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(remoteUserClient, times(1)).getUsersByUserIds(anyCollection());
+    }
+
+    /**
+     * Assert that a lookup of a user missing from the bulk response fails as a rejected single lookup would.
+     */
+    @Test
+    @DisplayName("load arroja excepción si el usuario no existe")
+    public void test_when_load_and_userMissing_then_throwException(){
+        when(remoteUserClient.getUsersByUserIds(anyCollection())).thenReturn(List.of());
+
+        assertThrows(BadRequestException.class, () -> loaderWithWindow(Duration.ZERO, 10).load(1));
+    }
+
+    /**
+     * Given the User service answering the bulk call with 404, assert that {@link UserBatchLoader#loadMany(Collection)}
+     * filters {@link UserClient#getAllUsers()} instead, and doesn't try the bulk call again until the retry delay.
+     */
+    @Test
+    @DisplayName("loadMany usa getAllUsers si no existe el endpoint de consultas múltiples")
+    public void test_when_loadMany_and_bulkEndpointMissing_then_getAllUsersFiltered(){
+        when(remoteUserClient.getUsersByUserIds(anyCollection()))
+                .thenThrow(new RemoteClientErrorException("Request error", HttpStatus.NOT_FOUND));
+        when(remoteUserClient.getAllUsers()).thenReturn(List.of(new UserResponse(1), new UserResponse(2), new UserResponse(3)));
+        UserBatchLoader loader = loaderWithWindow(Duration.ZERO, 10);
+
+        Map<Integer, UserResponse> users = loader.loadMany(List.of(1, 3));
+        loader.loadMany(List.of(2));
+
+        assertEquals(Map.of(1, users.get(1), 3, users.get(3)), users);
+        verify(remoteUserClient, times(1)).getUsersByUserIds(anyCollection());
+        verify(remoteUserClient, times(2)).getAllUsers();
+    }
+
+    /**
+     * Given a retry delay of zero, assert that the bulk endpoint is tried again after answering 405, and used once it
+     * answers.
+     */
+    @Test
+    @DisplayName("loadMany vuelve a intentar el endpoint de consultas múltiples pasado el plazo")
+    public void test_when_loadMany_and_retryDelayElapsed_then_bulkEndpointTriedAgain(){
+        when(remoteUserClient.getUsersByUserIds(anyCollection()))
+                .thenThrow(new RemoteClientErrorException("Request error", HttpStatus.METHOD_NOT_ALLOWED))
+                .thenReturn(List.of(new UserResponse(2)));
+        when(remoteUserClient.getAllUsers()).thenReturn(List.of(new UserResponse(1)));
+        UserBatchLoader loader = new UserBatchLoader(remoteUserClient, new SimpleMeterRegistry(), 10, Duration.ZERO, Duration.ZERO);
+
+        assertEquals(1, loader.loadMany(List.of(1)).get(1).getId());
+        assertEquals(2, loader.loadMany(List.of(2)).get(2).getId());
+
+        verify(remoteUserClient, times(2)).getUsersByUserIds(anyCollection());
+        verify(remoteUserClient, times(1)).getAllUsers();
+    }
+
+    /**
+     * Given the User service answering the bulk call with 401, assert that every user of the call gets the fallback
+     * response, that the whole directory isn't downloaded, and that the next call uses the bulk endpoint again.
+     */
+    @Test
+    @DisplayName("loadMany no abandona el endpoint de consultas múltiples ante otros rechazos")
+    public void test_when_loadMany_and_unauthorized_then_fallbackResponse(){
+        when(remoteUserClient.getUsersByUserIds(anyCollection()))
+                .thenThrow(new RemoteClientErrorException("Request error", HttpStatus.UNAUTHORIZED))
+                .thenReturn(List.of(new UserResponse(1)));
+        UserBatchLoader loader = loaderWithWindow(Duration.ZERO, 10);
+
+        Map<Integer, UserResponse> users = loader.loadMany(List.of(1, 2));
+        assertEquals(2, users.size());
+        assertTrue(users.values().stream().allMatch(CachingUserClient::isFallback));
+        assertEquals(1, loader.loadMany(List.of(1)).get(1).getId());
+
+        verify(remoteUserClient, times(2)).getUsersByUserIds(anyCollection());
+        verify(remoteUserClient, never()).getAllUsers();
+    }
+
+    /**
+     * Given a batch size of 2, assert that {@link UserBatchLoader#loadMany(Collection)} splits five IDs into three
+     * bulk calls.
+     */
+    @Test
+    @DisplayName("loadMany divide las consultas según el tamaño de lote")
+    public void test_when_loadMany_then_splitByBatchSize(){
+        bulkCallReturnsRequestedUsers();
+
+        assertEquals(5, loaderWithWindow(Duration.ZERO, 2).loadMany(List.of(1, 2, 3, 4, 5)).size());
+
+        verify(remoteUserClient, times(3)).getUsersByUserIds(anyCollection());
+    }
+}
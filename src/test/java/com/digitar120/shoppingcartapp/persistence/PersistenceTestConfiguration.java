@@ -0,0 +1,52 @@
+package com.digitar120.shoppingcartapp.persistence;
+
+import com.digitar120.shoppingcartapp.context.JdbcBatchConfiguration;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
+import com.digitar120.shoppingcartapp.mapper.CartDTOtoCart;
+import com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.SequenceIdReserver;
+import com.digitar120.shoppingcartapp.service.CartService;
+import com.digitar120.shoppingcartapp.service.ProductIdIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Entities, repositories and {@link CartService} over the database of a {@code @DataJpaTest}, for tests that run
+ * against the schema built by the Flyway migrations.
+ * <p>Tests import it from their own {@code @SpringBootConfiguration}, along with whatever else they need. The
+ * {@link ReactiveUserClient} is optional: tests that look up users provide it, usually as a {@code @MockBean}.</p>
+ * <p>Being a {@code @TestConfiguration}, the component scan of the application never picks it up.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+@TestConfiguration
+@EntityScan(basePackageClasses = Cart.class)
+@EnableJpaRepositories(basePackageClasses = CartRepository.class)
+@Import({JdbcBatchConfiguration.class, SequenceIdReserver.class})
+public class PersistenceTestConfiguration {
+
+    @Bean
+    public CartService cartService(CartRepository cartRepository, ItemRepository itemRepository,
+                                   ObjectProvider<ReactiveUserClient> userClient, ProductIdIndex productIdIndex) {
+        return new CartService(cartRepository, itemRepository, new CartDTOtoCart(), new CartRowsToCartViews(),
+                userClient.getIfAvailable(), productIdIndex);
+    }
+
+    @Bean
+    public ProductIdIndex productIdIndex(ProductRepository productRepository) {
+        return new ProductIdIndex(productRepository);
+    }
+
+    @Bean
+    public SimpleMeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+}
@@ -0,0 +1,88 @@
+package com.digitar120.shoppingcartapp.persistence;
+
+import org.flywaydb.core.Flyway;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies the schema built by the Flyway migrations in {@code db/migration}, which run when the application starts.
+ * @author Gabriel Pérez (digitar120)
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+public class SchemaMigrationTest {
+
+    @SpringBootConfiguration
+    @Import(PersistenceTestConfiguration.class)
+    static class PersistenceConfiguration {
+    }
+
+    @Autowired
+    private Flyway flyway;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<String> indexesOf(String table){
+        return jdbcTemplate.queryForList(
+                "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = ?", String.class, table);
+    }
+
+    /**
+     * Assert that every migration was applied, and that the entities match the resulting schema.
+     */
+    @Test
+    @DisplayName("Todas las migraciones se aplican y el esquema coincide con las entidades")
+    public void test_when_started_then_allMigrationsApplied(){
+        assertEquals(0, flyway.info().pending().length);
+        assertEquals("4", flyway.info().current().getVersion().getVersion());
+    }
+
+    /**
+     * Assert that the lookups by user, by Product description and by referenced Product are indexed.
+     */
+    @Test
+    @DisplayName("Las búsquedas frecuentes tienen índice")
+    public void test_when_started_then_lookupIndexesExist(){
+        assertTrue(indexesOf("CART").stream().anyMatch(index -> index.startsWith("UK_CART_USER")));
+        assertTrue(indexesOf("PRODUCT").contains("IX_PRODUCT_DESCRIPTION"));
+        assertTrue(indexesOf("ITEM").contains("IX_ITEM_PRODUCT"));
+    }
+
+    /**
+     * Assert that a Product inserted without an ID, as the JDBC writes do, takes it from the same sequence Hibernate
+     * uses.
+     */
+    @Test
+    @DisplayName("Las inserciones sin ID toman el ID de la secuencia")
+    public void test_when_productInsertedWithoutId_then_idTakenFromSequence(){
+        jdbcTemplate.update("INSERT INTO PRODUCT (PRODUCT_DESCRIPTION) VALUES ('Producto nuevo')");
+
+        Long id = jdbcTemplate.queryForObject(
+                "SELECT PRODUCT_ID FROM PRODUCT WHERE PRODUCT_DESCRIPTION = 'Producto nuevo'", Long.class);
+        assertEquals(jdbcTemplate.queryForObject(
+                "SELECT CURRENT_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'PRODUCT_SEQ'", Long.class), id);
+    }
+
+    /**
+     * Assert that the unique constraint rejects a second Cart for the same user.
+     */
+    @Test
+    @DisplayName("La restricción única impide dos carritos para un usuario")
+    public void test_when_cartInsertedTwiceForUser_then_uniqueConstraintViolated(){
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "INSERT INTO CART (CART_DESCRIPTION, USER_ID) VALUES ('Carrito 2', 36693120)"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.digitar120.shoppingcartapp.persistence.jdbc;
+
+import org.junit.jupiter.api.function.ThrowingSupplier;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test assertion that an endpoint stays within a declared amount of JDBC statements, as counted by
+ * {@link StatementCounter}.
+ * <p>The failure message lists the statements executed, so that an N+1 select shows up as a repeated one.</p>
+ * <p>The instrumented {@code DataSource} must be in place: import
+ * {@link com.digitar120.shoppingcartapp.context.JdbcInstrumentationConfiguration} into the test context.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public final class StatementBudget {
+
+    /**
+     * Statements listed in the failure message, besides those within the budget.
+     */
+    private static final int EXTRA_LISTED_STATEMENTS = 20;
+
+    private StatementBudget() {
+    }
+
+    /**
+     * Runs a request, and fails if it executes more statements than its budget.
+     * @param endpoint Name of the endpoint, such as {@code GET /cart/{id}}.
+     * @param budget Maximum amount of statements.
+     * @param request The request. Statements run by other threads aren't counted.
+     * @param <T> Result type of the request.
+     * @return The result of the request.
+     */
+    public static <T> T assertWithinBudget(String endpoint, int budget, ThrowingSupplier<T> request) throws Throwable {
+        T result;
+        long count;
+        List<String> statements;
+
+        try (StatementCounter.Scope scope = StatementCounter.open(endpoint, budget + EXTRA_LISTED_STATEMENTS)) {
+            result = request.get();
+            count = scope.count();
+            statements = scope.statements();
+        }
+
+        if (count > budget) {
+            fail(endpoint + " ejecutó " + count + " sentencias, con un presupuesto de " + budget + ":\n"
+                    + statements.stream().map(sql -> "  " + sql).collect(Collectors.joining("\n")));
+        }
+        return result;
+    }
+}
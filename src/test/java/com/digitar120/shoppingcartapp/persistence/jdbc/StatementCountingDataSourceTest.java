@@ -0,0 +1,115 @@
+package com.digitar120.shoppingcartapp.persistence.jdbc;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit testing for the statement counting of {@link StatementCountingDataSource}, {@link StatementCounter} and
+ * {@link SlowQueryLog}, over an in-memory H2 database.
+ * @author Gabriel Pérez (digitar120)
+ */
+public class StatementCountingDataSourceTest {
+
+    private Connection keepAlive;
+
+    private StatementCountingDataSource dataSource(SlowQueryLog slowQueryLog) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:statementcount;DB_CLOSE_DELAY=-1");
+        return new StatementCountingDataSource(h2, slowQueryLog);
+    }
+
+    @Before
+    public void setup() throws SQLException {
+        keepAlive = dataSource(new SlowQueryLog(Duration.ofHours(1), 10)).getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS NOTE (ID INT, TEXT VARCHAR(50))");
+        }
+    }
+
+    @After
+    public void cleanup() throws SQLException {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP TABLE NOTE");
+        }
+        keepAlive.close();
+    }
+
+    /**
+     * Assert that each round trip counts once, a batch included, that nested scopes both count, and that statements
+     * outside of a scope aren't counted.
+     */
+    @Test
+    @DisplayName("Cada ida y vuelta a la base de datos cuenta una vez, en todos los alcances abiertos")
+    public void test_when_statementsExecuted_then_countedOncePerRoundTrip() throws SQLException {
+        StatementCountingDataSource dataSource = dataSource(new SlowQueryLog(Duration.ofHours(1), 10));
+
+        try (Connection connection = dataSource.getConnection();
+             StatementCounter.Scope outer = StatementCounter.open("outer", 10)) {
+
+            try (StatementCounter.Scope inner = StatementCounter.open("inner");
+                 PreparedStatement insert = connection.prepareStatement("INSERT INTO NOTE VALUES (?, ?)")) {
+                for (int i = 0; i < 3; i++) {
+                    insert.setInt(1, i);
+                    insert.setString(2, "nota secreta");
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                assertEquals(1, inner.count());
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeQuery("SELECT * FROM NOTE WHERE TEXT = 'nota secreta' AND ID > 1").close();
+            }
+
+            assertEquals(2, outer.count());
+            assertEquals(List.of("INSERT INTO NOTE VALUES (?, ?)", "SELECT * FROM NOTE WHERE TEXT = ? AND ID > ?"),
+                    outer.statements());
+        }
+
+        try (StatementCounter.Scope scope = StatementCounter.open("after")) {
+            assertEquals(0, scope.count());
+        }
+    }
+
+    /**
+     * Assert that statements over the threshold are kept newest first with their literals redacted, along with the
+     * scope they ran in and their batch size, and that the capacity is respected.
+     */
+    @Test
+    @DisplayName("SlowQueryLog guarda las sentencias lentas sin valores, hasta su capacidad")
+    public void test_when_statementsOverThreshold_then_keptRedacted() throws SQLException {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(Duration.ZERO, 2);
+        StatementCountingDataSource dataSource = dataSource(slowQueryLog);
+
+        try (Connection connection = dataSource.getConnection();
+             StatementCounter.Scope scope = StatementCounter.open("GET /notes");
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO NOTE VALUES (1, 'nota secreta')");
+            statement.addBatch("INSERT INTO NOTE VALUES (2, 'otra nota')");
+            statement.addBatch("INSERT INTO NOTE VALUES (3, 'y otra más')");
+            statement.executeBatch();
+            statement.executeQuery("SELECT COUNT(*) FROM NOTE WHERE TEXT <> 'it''s'").close();
+        }
+
+        List<SlowQueryLog.SlowQuery> recent = slowQueryLog.recent();
+        assertEquals(3, slowQueryLog.total());
+        assertEquals(2, recent.size());
+
+        assertEquals("SELECT COUNT(*) FROM NOTE WHERE TEXT <> ?", recent.get(0).sql());
+        assertEquals("INSERT INTO NOTE VALUES (?, ?)", recent.get(1).sql());
+        assertEquals(2, recent.get(1).batchSize());
+        assertEquals("GET /notes", recent.get(1).scope());
+    }
+}
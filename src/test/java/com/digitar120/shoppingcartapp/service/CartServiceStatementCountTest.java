@@ -0,0 +1,296 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.context.JsonConfiguration;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
+import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
+import com.digitar120.shoppingcartapp.persistence.PersistenceTestConfiguration;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.persistence.entity.Item;
+import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import reactor.core.publisher.Mono;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+
+/**
+ * Counts the SQL statements run by each Cart endpoint, against the H2 database initialized by the Flyway migrations in
+ * {@code db/migration}.
+ * <p>Each endpoint is reproduced as its {@link CartService} call followed by the JSON serialization of its result, as
+ * lazy loading during serialization would also run statements. The persistence context is cleared beforehand, and
+ * flushed afterwards so that writes are counted too.</p>
+ * <p>Counts are taken over a Cart with {@link CartServiceStatementCountTest#BIG_CART_SIZE} Items, so they would grow
+ * if an endpoint loaded Items or Products one by one. Read endpoints must also leave the persistence context empty,
+ * since they are served from projections instead of entities.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see Cart#WITH_ITEMS
+ * @see Cart#WITH_ITEMS_AND_PRODUCTS
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.digitar120.shoppingcartapp.service.CartServiceStatementCountTest$SequenceCallCounter"
+})
+public class CartServiceStatementCountTest {
+
+    private static final int BIG_CART_SIZE = 20;
+    private static final Integer BIG_CART_USER_ID = 2;
+
+    /**
+     * Counts the calls Hibernate makes to the ID sequences.
+     */
+    public static class SequenceCallCounter implements StatementInspector {
+        static final AtomicLong CALLS = new AtomicLong();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.startsWith("call next value for")) {
+                CALLS.incrementAndGet();
+            }
+            return sql;
+        }
+    }
+
+    @SpringBootConfiguration
+    @Import(PersistenceTestConfiguration.class)
+    static class PersistenceConfiguration {
+    }
+
+    @Autowired
+    private CartService service;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ProductIdIndex productIdIndex;
+
+    @MockBean
+    private ReactiveUserClient userClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JsonConfiguration().hibernateModule());
+
+    private Long bigCartId;
+    private List<Product> products;
+
+    @Before
+    public void setup(){
+        products = new ArrayList<>();
+        for (int i = 1; i <= BIG_CART_SIZE + 1; i++) {
+            Product product = new Product("Producto " + i);
+            entityManager.persist(product);
+            products.add(product);
+        }
+
+        Cart bigCart = new Cart(null, "Carrito grande", new HashSet<>(), BIG_CART_USER_ID);
+        entityManager.persist(bigCart);
+        for (Product product : products.subList(0, BIG_CART_SIZE)) {
+            entityManager.persist(new Item(1, bigCart, product));
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+        bigCartId = bigCart.getId();
+
+        // Los productos no se crearon mediante ProductService: el índice los confirma antes de contar
+        productIdIndex.findMissing(products.stream().map(Product::getId).toList());
+    }
+
+    /**
+     * Runs an endpoint and counts its statements.
+     * <p>Calls to the ID sequences are left out: since IDs are taken in blocks, whether an insert calls a sequence
+     * depends on the IDs used by previous tests.</p>
+     * @param endpoint The service call, including the serialization of its result.
+     * @return Amount of statements prepared.
+     */
+    private long statementsOf(Runnable endpoint){
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        SequenceCallCounter.CALLS.set(0);
+
+        endpoint.run();
+        entityManager.flush();
+
+        return statistics.getPrepareStatementCount() - SequenceCallCounter.CALLS.get();
+    }
+
+    private String serialize(Object value){
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long statementsOfRead(Supplier<Object> endpoint, String expectedContent){
+        StringBuilder json = new StringBuilder();
+        long statements = statementsOf(() -> json.append(serialize(endpoint.get())));
+
+        // Los productos deben estar incluidos en la respuesta
+        assertTrue(json.toString().contains(expectedContent), json.toString());
+        assertNoManagedEntities();
+        return statements;
+    }
+
+    private void assertNoManagedEntities(){
+        assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount(),
+                "La lectura cargó entidades en el contexto de persistencia");
+    }
+
+    // GET /cart
+
+    @Test
+    @DisplayName("GET /cart ejecuta una sola consulta")
+    public void test_when_findAll_then_singleStatement(){
+        assertEquals(1, statementsOfRead(service::findAll, "Producto " + BIG_CART_SIZE));
+    }
+
+    // GET /cart/page
+
+    @Test
+    @DisplayName("GET /cart/page ejecuta dos consultas")
+    public void test_when_findPage_then_twoStatements(){
+        assertEquals(2, statementsOfRead(() -> service.findPage(0L, 50), "Producto " + BIG_CART_SIZE));
+    }
+
+    // GET /cart/stream
+
+    @Test
+    @DisplayName("GET /cart/stream ejecuta una sola consulta")
+    public void test_when_streamAll_then_singleStatement(){
+        List<Long> streamedIds = new ArrayList<>();
+
+        long statements = statementsOf(() -> service.streamAll(0L, cart -> {
+            serialize(cart);
+            streamedIds.add(cart.id());
+        }));
+
+        assertEquals(1, statements);
+        assertNoManagedEntities();
+        assertEquals(List.of(1L, bigCartId), streamedIds);
+    }
+
+    // GET /cart/{id}
+
+    @Test
+    @DisplayName("GET /cart/{id} ejecuta una sola consulta")
+    public void test_when_findById_then_singleStatement(){
+        assertEquals(1, statementsOfRead(() -> service.findViewById(bigCartId), "Producto " + BIG_CART_SIZE));
+    }
+
+    // GET /cart/by-userid/{userId}
+
+    @Test
+    @DisplayName("GET /cart/by-userid/{userId} ejecuta una sola consulta")
+    public void test_when_findByUserId_then_singleStatement(){
+        when(userClient.getUserByUserId(anyInt())).thenReturn(Mono.just(new UserResponse(BIG_CART_USER_ID)));
+
+        assertEquals(1, statementsOfRead(() -> service.findByUserId(BIG_CART_USER_ID), "Producto " + BIG_CART_SIZE));
+    }
+
+    // GET /cart/{id}/items
+
+    @Test
+    @DisplayName("GET /cart/{id}/items ejecuta una sola consulta")
+    public void test_when_getContent_then_singleStatement(){
+        assertEquals(1, statementsOfRead(() -> service.getContent(bigCartId), "Producto " + BIG_CART_SIZE));
+    }
+
+    // POST /cart
+
+    @Test
+    @DisplayName("Guardar un carrito con sus ítems agrupa las inserciones en un lote por tabla")
+    public void test_when_cartSavedWithItems_then_oneBatchPerTable(){
+        Cart cart = new Cart(null, "Carrito nuevo", new HashSet<>(), BIG_CART_USER_ID + 1);
+        for (Product product : products.subList(0, BIG_CART_SIZE)) {
+            cart.addItem(new Item(1, cart, product));
+        }
+
+        assertEquals(2, statementsOf(() -> cartRepository.save(cart)));
+    }
+
+    // POST /cart/{cartId}/product/{productId}/quantity/{quantity}
+
+    @Test
+    @DisplayName("Actualizar la cantidad de un ítem ejecuta una consulta y una actualización")
+    public void test_when_addItemToCart_and_itemExists_then_twoStatements(){
+        Long productId = products.get(0).getId();
+
+        assertEquals(2, statementsOf(() -> serialize(service.addItemToCart(bigCartId, productId, 7))));
+    }
+
+    @Test
+    @DisplayName("Agregar un ítem nuevo ejecuta una consulta y una inserción")
+    public void test_when_addItemToCart_and_itemIsNew_then_twoStatements(){
+        Long productId = products.get(BIG_CART_SIZE).getId();
+
+        assertEquals(2, statementsOf(() -> serialize(service.addItemToCart(bigCartId, productId, 7))));
+    }
+
+    // POST /cart/{cartId}
+
+    @Test
+    @DisplayName("POST /cart/{cartId} carga el carrito con una sola consulta")
+    public void test_when_addMultipleItemsToCart_then_singleStatementThroughHibernate(){
+        Set<Item> items = new HashSet<>();
+        items.add(new Item(null, 3, null, new Product(products.get(0).getId())));
+        items.add(new Item(null, 3, null, new Product(products.get(BIG_CART_SIZE).getId())));
+
+        // Las escrituras van por JDBC en lotes, fuera de las estadísticas de Hibernate
+        assertEquals(1, statementsOf(() -> service.addMultipleItemsToCart(bigCartId, items)));
+    }
+
+    // DELETE /cart/{cartId}/item/{itemId}
+
+    @Test
+    @DisplayName("DELETE /cart/{cartId}/item/{itemId} ejecuta una consulta y un borrado")
+    public void test_when_deleteItemFromCart_then_twoStatements(){
+        Long itemId = service.findById(bigCartId).getItems().iterator().next().getId();
+
+        assertEquals(2, statementsOf(() -> serialize(service.deleteItemFromCart(bigCartId, itemId))));
+    }
+
+    // DELETE /cart/{cartId}
+
+    @Test
+    @DisplayName("DELETE /cart/{cartId} ejecuta tres sentencias")
+    public void test_when_deleteCart_then_threeStatements(){
+        assertEquals(3, statementsOf(() -> service.deleteCart(bigCartId)));
+    }
+}
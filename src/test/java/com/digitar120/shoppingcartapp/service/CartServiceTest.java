@@ -2,15 +2,23 @@ package com.digitar120.shoppingcartapp.service;
 
 import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestException;
 import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
+import com.digitar120.shoppingcartapp.exception.globalhandler.PreconditionFailedException;
 import com.digitar120.shoppingcartapp.exception.globalhandler.ServiceUnavailableException;
-import com.digitar120.shoppingcartapp.feignclient.UserClient;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
 import com.digitar120.shoppingcartapp.feignclient.response.UserResponse;
 import com.digitar120.shoppingcartapp.mapper.CartDTOtoCart;
+import com.digitar120.shoppingcartapp.mapper.CartRowsToCartViews;
 import com.digitar120.shoppingcartapp.persistence.entity.Cart;
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.projection.CartItemRow;
 import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
+import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
+import com.digitar120.shoppingcartapp.service.dto.CartPageDTO;
+import com.digitar120.shoppingcartapp.service.dto.CartView;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import com.digitar120.shoppingcartapp.service.dto.NewCartDTO;
+import com.digitar120.shoppingcartapp.service.dto.QuantityMode;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -19,6 +27,10 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.*;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import reactor.core.publisher.Mono;
 
 import javax.swing.text.html.Option;
 
@@ -26,21 +38,25 @@ import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Unit testing for the Cart endpoint business logic.
  * <p>Uses Mockito Spies for testing methods that depend on other methods in the same class, such as
- * {@link CartService#getContent(Long)}, which depends on {@link CartService#findById(Long)}.</p>
+ * {@link CartService#getContent(Long)}, which depends on {@link CartService#findViewById(Long)}.</p>
  * @author Gabriel Pérez (digitar120)
  * @see CartService
  * @see Cart
  * @see ExpectedException
  * @see CartDTOtoCart
- * @see UserClient
+ * @see ReactiveUserClient
  */
 @RunWith(MockitoJUnitRunner.class)
 public class CartServiceTest {
@@ -53,6 +69,22 @@ public class CartServiceTest {
 
     private final static Cart TEST_CART_2 = new Cart(2L, "Carrito 2", null, 2);
 
+    private final static List<CartItemRow> CART_1_ROWS = List.of(
+            new CartItemRow(ID_CART_1, DESCRIPTION_CART_1, USERID_CART_1, 0L, 1L, 5, 1L, "Producto 1"),
+            new CartItemRow(ID_CART_1, DESCRIPTION_CART_1, USERID_CART_1, 0L, 2L, 3, 2L, "Producto 2"));
+
+    /**
+     * A Cart without Items is read as a single row, without Item nor Product.
+     */
+    private final static List<CartItemRow> CART_2_ROWS = List.of(
+            new CartItemRow(2L, "Carrito 2", 2, 0L, null, null, null, null));
+
+    private final static CartView CART_VIEW_1 = new CartView(ID_CART_1, DESCRIPTION_CART_1, List.of(
+            new ItemView(1L, 5, 1L, "Producto 1"),
+            new ItemView(2L, 3, 2L, "Producto 2")), USERID_CART_1, 0L);
+
+    private final static CartView CART_VIEW_2 = new CartView(2L, "Carrito 2", List.of(), 2, 0L);
+
 
     @InjectMocks
     private CartService service;
@@ -65,17 +97,25 @@ public class CartServiceTest {
     @Mock
     private CartRepository repository;
     @Mock
-    private UserClient userServiceConnection;
+    private ItemRepository itemRepository;
+    @Mock
+    private ReactiveUserClient userServiceConnection;
+    @Mock
+    private ProductIdIndex productIdIndex;
 
     @Mock
     private CartDTOtoCart mapper;
 
+    @Spy
+    private CartRowsToCartViews viewMapper = new CartRowsToCartViews();
+
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
     @Before
     public void setup(){
         serviceSpy = Mockito.spy(service);
+        lenient().when(productIdIndex.exists(any())).thenReturn(true);
 
         CART_1.getItems().add(new Item(1L, 5, null, new Product(1L) ));
     }
@@ -83,17 +123,27 @@ public class CartServiceTest {
     // Helper methods
 
     private void findByIdReturnsCart() {
-        when(repository.findById(ID_CART_1)).thenReturn(Optional.of(CART_1));
+        when(repository.findWithItemsAndProductsForChangeById(ID_CART_1)).thenReturn(Optional.of(CART_1));
     }
 
     private void findByUserIdReturnsCart() {
-        when(repository.findByUserId(anyInt())).thenReturn(Optional.of(new Cart()));
+        when(repository.findRowsByUserId(anyInt())).thenReturn(CART_1_ROWS);
     }
 
     private void spyFindByIdReturnsCart() {
         Mockito.doReturn(CART_1).when(serviceSpy).findById(any());
     }
 
+    private void spyFindViewByIdReturnsCart() {
+        Mockito.doReturn(CART_VIEW_1).when(serviceSpy).findViewById(any());
+    }
+
+    private List<CartItemRow> rowsOfBothCarts() {
+        List<CartItemRow> rows = new ArrayList<>(CART_1_ROWS);
+        rows.addAll(CART_2_ROWS);
+        return rows;
+    }
+
     private void returnCartOnRepositorySave() {
         Mockito
                 .doAnswer(AdditionalAnswers.returnsFirstArg())
@@ -103,16 +153,16 @@ public class CartServiceTest {
     // findAll
 
     /**
-     * Assert that {@link CartService#findAll()} executes {@link CartRepository#findAll()}.
+     * Assert that {@link CartService#findAll()} executes {@link CartRepository#findAllRows()}.
      */
     @Test
     @DisplayName("findAll llama al reposositorio")
     public void test_when_findAll_then_repositorySearchCallMade(){
-        when(repository.findAll()).thenReturn(List.of(CART_1, TEST_CART_2));
+        when(repository.findAllRows()).thenReturn(rowsOfBothCarts());
 
         service.findAll();
 
-        verify(repository, times(1)).findAll();
+        verify(repository, times(1)).findAllRows();
     }
 
     /**
@@ -121,15 +171,103 @@ public class CartServiceTest {
     @Test
     @DisplayName("findAll no devuelve una lista vacía")
     public void test_when_findAll_and_repositoryResponseContainsElements_then_responseContainsElements(){
-        when(repository.findAll()).thenReturn(List.of(CART_1, TEST_CART_2));
+        when(repository.findAllRows()).thenReturn(rowsOfBothCarts());
 
         assertFalse(service.findAll().isEmpty());
     }
 
+    /**
+     * Given {@link CartRepository#findAllRows()} returning the rows of a cart with two items and of an empty cart,
+     * assert that {@link CartService#findAll()} groups them into one view per cart.
+     */
+    @Test
+    @DisplayName("findAll agrupa las filas por carrito")
+    public void test_when_findAll_then_rowsGroupedByCart(){
+        when(repository.findAllRows()).thenReturn(rowsOfBothCarts());
+
+        assertEquals(List.of(CART_VIEW_1, CART_VIEW_2), service.findAll());
+    }
+
+    // findPage
+
+    /**
+     * Given {@link CartRepository#findIdsAfter(Long, Pageable)} returning a full page, assert that
+     * {@link CartService#findPage(Long, Integer)} returns the carts of those IDs, and the last ID as the next cursor.
+     */
+    @Test
+    @DisplayName("findPage devuelve el cursor de la página siguiente")
+    public void test_when_findPage_and_pageIsFull_then_nextCursorIsLastId(){
+        when(repository.findIdsAfter(0L, PageRequest.of(0, 2))).thenReturn(List.of(ID_CART_1, TEST_CART_2.getId()));
+        when(repository.findRowsByIdIn(List.of(ID_CART_1, TEST_CART_2.getId()))).thenReturn(rowsOfBothCarts());
+
+        CartPageDTO page = service.findPage(0L, 2);
+
+        assertEquals(List.of(CART_VIEW_1, CART_VIEW_2), page.getContent());
+        assertEquals(TEST_CART_2.getId(), page.getNextCursor());
+    }
+
+    /**
+     * Given {@link CartRepository#findIdsAfter(Long, Pageable)} returning less IDs than requested, assert that
+     * {@link CartService#findPage(Long, Integer)} signals that there are no more pages.
+     */
+    @Test
+    @DisplayName("findPage no devuelve cursor en la última página")
+    public void test_when_findPage_and_pageIsNotFull_then_nextCursorIsNull(){
+        when(repository.findIdsAfter(0L, PageRequest.of(0, 2))).thenReturn(List.of(ID_CART_1));
+        when(repository.findRowsByIdIn(List.of(ID_CART_1))).thenReturn(CART_1_ROWS);
+
+        assertNull(service.findPage(0L, 2).getNextCursor());
+    }
+
+    /**
+     * Assert that {@link CartService#findPage(Long, Integer)} never asks the repository for more than
+     * {@link CartService#MAX_PAGE_SIZE} carts.
+     */
+    @Test
+    @DisplayName("findPage limita el tamaño de página")
+    public void test_when_findPage_and_sizeTooBig_then_sizeIsCapped(){
+        when(repository.findIdsAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+
+        service.findPage(0L, Integer.MAX_VALUE);
+
+        verify(repository, times(1)).findIdsAfter(0L, PageRequest.of(0, CartService.MAX_PAGE_SIZE));
+        verify(repository, never()).findRowsByIdIn(any());
+    }
+
+    /**
+     * Assert that {@link CartService#findPage(Long, Integer)} throws an appropriate exception if {@code size} equals
+     * or is below 0.
+     */
+    @Test
+    @DisplayName("findPage arroja excepción si el tamaño es inválido")
+    public void test_when_findPage_and_sizeIsInvalid_then_throwException(){
+        expectedException.expect(BadRequestException.class);
+        expectedException.expectMessage("Los parámetros de paginación son inválidos.");
+
+        service.findPage(0L, 0);
+    }
+
+    // streamAll
+
+    /**
+     * Given {@link CartRepository#streamRowsAfter(Long)} returning the rows of two carts, assert that
+     * {@link CartService#streamAll(Long, Consumer)} hands each cart to the consumer once, in order.
+     */
+    @Test
+    @DisplayName("streamAll entrega cada carrito una vez")
+    public void test_when_streamAll_then_eachCartConsumedOnce(){
+        when(repository.streamRowsAfter(0L)).thenReturn(rowsOfBothCarts().stream());
+        List<CartView> consumed = new ArrayList<>();
+
+        service.streamAll(0L, consumed::add);
+
+        assertEquals(List.of(CART_VIEW_1, CART_VIEW_2), consumed);
+    }
+
     // findById
 
     /**
-     * With {@link CartRepository#findById(Object)} returning a valid cart, assert that {@link CartService#findById(Long)}
+     * With {@link CartRepository#findWithItemsAndProductsForChangeById(Long)} returning a valid cart, assert that {@link CartService#findById(Long)}
      * executes it.
      */
     @Test
@@ -139,11 +277,11 @@ public class CartServiceTest {
 
         service.findById(ID_CART_1);
 
-        verify(repository, times(1)).findById(anyLong());
+        verify(repository, times(1)).findWithItemsAndProductsForChangeById(anyLong());
     }
 
     /**
-     * With {@link CartRepository#findById(Object)} returning a valid cart, assert that its returned element matches
+     * With {@link CartRepository#findWithItemsAndProductsForChangeById(Long)} returning a valid cart, assert that its returned element matches
      * the element returned by {@link CartService#findById(Long)}.
      */
     @Test
@@ -154,12 +292,41 @@ public class CartServiceTest {
         assertEquals(CART_1, service.findById(ID_CART_1));
     }
 
+    // findViewById
+
+    /**
+     * Given {@link CartRepository#findRowsById(Long)} returning the rows of a cart, assert that
+     * {@link CartService#findViewById(Long)} returns a view with every item.
+     */
+    @Test
+    @DisplayName("findViewById devuelve elemento correcto")
+    public void test_when_findViewById_then_returnsCorrectElement(){
+        when(repository.findRowsById(ID_CART_1)).thenReturn(CART_1_ROWS);
+
+        assertEquals(CART_VIEW_1, service.findViewById(ID_CART_1));
+    }
+
+    /**
+     * Given {@link CartRepository#findRowsById(Long)} returning no rows, assert that
+     * {@link CartService#findViewById(Long)} throws an appropriate exception.
+     */
+    @Test
+    @DisplayName("findViewById arroja excepción al no encontrar un elemento")
+    public void test_when_findViewById_and_elementNotFound_then_throwException(){
+        when(repository.findRowsById(anyLong())).thenReturn(List.of());
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el carrito de ID " + ID_CART_1);
+
+        service.findViewById(ID_CART_1);
+    }
+
     // findByUserId
 
     /**
      * With: <ul>
      *     <li>{@link CartRepository#findById(Object)} returning a valid cart.</li>
-     *     <li>An {@link UserClient} connection returning <b>a positive response</b>.</li>
+     *     <li>A {@link ReactiveUserClient} connection returning <b>a positive response</b>.</li>
      * </ul>
      *
      * <p>Assert that {@link CartService#findById(Long)} executes calls to both of those items.</p>
@@ -171,11 +338,11 @@ public class CartServiceTest {
         findByUserIdReturnsCart();
 
         // Resultado afirmativo
-        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(new UserResponse(1));
+        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(Mono.just(new UserResponse(1)));
 
         service.findByUserId(1);
 
-        verify(repository, times(1)).findByUserId(anyInt());
+        verify(repository, times(1)).findRowsByUserId(anyInt());
         verify(userServiceConnection, times(1)).getUserByUserId(1);
     }
 
@@ -183,7 +350,7 @@ public class CartServiceTest {
      * With:
      * <ul>
      *     <li>{@link CartRepository#findById(Object)} returning a valid cart.</li>
-     *     <li>{@link UserClient#getUserByUserId(Integer)} returning an error response.</li>
+     *     <li>{@link ReactiveUserClient#getUserByUserId(Integer)} returning an error response.</li>
      * </ul>
      * <p>Assert that {@link CartService#findByUserId(Integer)} throws an appropriate exception.</p>
      */
@@ -191,7 +358,7 @@ public class CartServiceTest {
     @DisplayName("findByUserId arroja excepción al no poder conectar")
     public void test_when_findByUserId_and_cantConnect_then_exceptionThrown(){
         findByUserIdReturnsCart();
-        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(new UserResponse(-1));
+        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(Mono.just(new UserResponse(-1)));
 
         expectedException.expect(ServiceUnavailableException.class);
         expectedException.expectMessage("Error interno. No se pudo verificar que el usuario existe. Intente más tarde.");
@@ -202,8 +369,8 @@ public class CartServiceTest {
     /**
      * With:
      * <ul>
-     *  <li>{@link CartRepository#findByUserId(Integer)} returning an empty response.</li>
-     * <li>{@link UserClient#getUserByUserId(Integer)} returns a valid user.</li>
+     *  <li>{@link CartRepository#findRowsByUserId(Integer)} returning an empty response.</li>
+     * <li>{@link ReactiveUserClient#getUserByUserId(Integer)} returns a valid user.</li>
      * </ul>
      *
      * <p>Assert that {@link CartService#findByUserId(Integer)} throws an appropriate exception.</p>
@@ -211,8 +378,8 @@ public class CartServiceTest {
     @Test
     @DisplayName("findByUserId arroja excepción al no encontrar un elemento")
     public void test_when_findByUserId_and_elementNotFound_then_throwException(){
-        when(repository.findByUserId(anyInt())).thenReturn(Optional.empty());
-        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(new UserResponse(1));
+        when(repository.findRowsByUserId(anyInt())).thenReturn(List.of());
+        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(Mono.just(new UserResponse(1)));
 
         expectedException.expect(NotFoundException.class);
         expectedException.expectMessage("No existe un carrito asignado a ése usuario.");
@@ -223,8 +390,8 @@ public class CartServiceTest {
     /**
      * With:
      * <ul>
-     * <li>{@link CartRepository#findByUserId(Integer)} returning a valid cart.</li>
-     * <li>{@link UserClient#getUserByUserId(Integer)} returning a valid user.</li>
+     * <li>{@link CartRepository#findRowsByUserId(Integer)} returning a valid cart.</li>
+     * <li>{@link ReactiveUserClient#getUserByUserId(Integer)} returning a valid user.</li>
      * </ul>
      *
      * <p>Assert that the cart returned by the repository is the same as the cart returned by {@link CartService#findByUserId(Integer)}.</p>
@@ -232,51 +399,51 @@ public class CartServiceTest {
     @Test
     @DisplayName("findByUserId devuelve elemento correcto")
     public void test_when_findByUserId_then_returnsCorrectElement(){
-        when(repository.findByUserId(anyInt())).thenReturn(Optional.of(CART_1));
-        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(new UserResponse(1));
+        findByUserIdReturnsCart();
+        when(userServiceConnection.getUserByUserId(anyInt())).thenReturn(Mono.just(new UserResponse(1)));
 
-        assertEquals(CART_1, service.findByUserId(1));
+        assertEquals(CART_VIEW_1, service.findByUserId(1));
     }
 
     /**
-     * With a spy copy of an instance of {@code CartService} executing {@link CartService#findById(Long)} and returning a valid
+     * With a spy copy of an instance of {@code CartService} executing {@link CartService#findViewById(Long)} and returning a valid
      * cart, assert that {@link CartService#getContent(Long)} executes that method.
      * @see Spy
      */
     @Test
     @DisplayName("getContent llama para buscar")
     public void test_when_getContent_then_repositorySearchCallMade(){
-        spyFindByIdReturnsCart();
+        spyFindViewByIdReturnsCart();
 
         serviceSpy.getContent(1L);
 
-        verify(serviceSpy, times(1)).findById(any());
+        verify(serviceSpy, times(1)).findViewById(any());
     }
 
 
     /**
-     * Given a spy copy of an instance of {@code CartService}, executing {@link CartService#findById(Long)} and
+     * Given a spy copy of an instance of {@code CartService}, executing {@link CartService#findViewById(Long)} and
      * returning a valid cart, assert that the return of {@link CartService#getContent(Long)} is not empty.
      */
     @Test
     @DisplayName("getContent no devuelve lista vacía")
     public void test_when_getContent_then_returnedListNotEmpty(){
-        spyFindByIdReturnsCart();
+        spyFindViewByIdReturnsCart();
 
         assertFalse(serviceSpy.getContent(1L).isEmpty());
     }
 
     /**
-     * Given a spy copy of an instance of {@code CartService}, executing {@link CartService#findById(Long)} and
+     * Given a spy copy of an instance of {@code CartService}, executing {@link CartService#findViewById(Long)} and
      * returning a valid cart, assert that {@link CartService#getContent(Long)} returns the same item set as that
      * method.
      */
     @Test
     @DisplayName("getContent devuelve lista correcta")
     public void test_when_getContent_then_retunrnsCorrectList(){
-        spyFindByIdReturnsCart();
+        spyFindViewByIdReturnsCart();
 
-        assertEquals(CART_1.getItems(), serviceSpy.getContent(1L));
+        assertEquals(CART_VIEW_1.items(), serviceSpy.getContent(1L));
     }
 
     /**
@@ -313,6 +480,24 @@ public class CartServiceTest {
         assertEquals(CART_1, service.newCart(cartDTO));
     }
 
+    /**
+     * Given {@link CartRepository#save(Object)} failing because the user already holds a cart, assert that
+     * {@link CartService#newCart(NewCartDTO)} throws an appropriate exception.
+     */
+    @Test
+    @DisplayName("newCart arroja excepción si el usuario ya tiene un carrito")
+    public void test_when_newCart_and_userHasCart_then_throwException(){
+        NewCartDTO cartDTO = new NewCartDTO("Description", 1);
+
+        when(mapper.map(cartDTO)).thenReturn(CART_1);
+        when(repository.save(any())).thenThrow(new DataIntegrityViolationException("UK_CART_USER"));
+
+        expectedException.expect(BadRequestException.class);
+        expectedException.expectMessage("El usuario N° 1 ya tiene un carrito asignado.");
+
+        service.newCart(cartDTO);
+    }
+
     // addItemToCart
 
     /**
@@ -328,6 +513,46 @@ public class CartServiceTest {
         service.addItemToCart(null, null, -1);
     }
 
+    /**
+     * Given a Product missing from the {@link ProductIdIndex}, assert that
+     * {@link CartService#addItemToCart(Long, Long, Integer)} throws an appropriate exception without loading the Cart.
+     */
+    @Test
+    @DisplayName("addItemToCart arroja excepción si el producto no existe, sin cargar el carrito")
+    public void test_when_addItemToCart_and_productNotFound_then_throwException(){
+        when(productIdIndex.exists(99L)).thenReturn(false);
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el producto N°99");
+
+        try {
+            service.addItemToCart(ID_CART_1, 99L, 1);
+        } finally {
+            verifyNoInteractions(repository);
+        }
+    }
+
+    /**
+     * Given a cart at version 2, assert that {@link CartService#addItemToCart(Long, Long, Integer, Long)} throws an
+     * appropriate exception when the client expects version 1, without saving the cart.
+     */
+    @Test
+    @DisplayName("addItemToCart arroja excepción si el carrito está en otra versión")
+    public void test_when_addItemToCart_and_versionMismatch_then_throwException(){
+        Cart cart = new Cart(ID_CART_1, DESCRIPTION_CART_1, new HashSet<>(), USERID_CART_1);
+        cart.setVersion(2L);
+        Mockito.doReturn(cart).when(serviceSpy).findById(ID_CART_1);
+
+        expectedException.expect(PreconditionFailedException.class);
+        expectedException.expectMessage("El carrito N° " + ID_CART_1 + " fue modificado. Versión actual: 2");
+
+        try {
+            serviceSpy.addItemToCart(ID_CART_1, 1L, 1, 1L);
+        } finally {
+            verify(repository, never()).save(any());
+        }
+    }
+
     /**
      * Given a spy copy of {@code CartService} executing {@link CartService#findById(Long)} and returning a valid
      * cart, assert that {@link CartService#addItemToCart(Long, Long, Integer)} executes that method.
@@ -380,6 +605,155 @@ public class CartServiceTest {
         assertEquals(CART_1, serviceSpy.addItemToCart(emptyCart.getId(), 1L, 5));
     }
 
+    /**
+     * Given a spy copy of {@code CartService} executing {@link CartService#findById(Long)} and returning a cart that
+     * already references a product, assert that {@link CartService#addItemToCart(Long, Long, Integer)} updates that
+     * item instead of adding another one.
+     */
+    @Test
+    @DisplayName("addItemToCart no duplica ítems de un mismo producto")
+    public void test_when_addItemToCart_and_referencedProductExists_then_noItemAdded(){
+        Cart cart = new Cart(3L, "Carrito 3", new HashSet<>(), 3);
+        cart.addItem(new Item(1L, 5, cart, new Product(1L)));
+        cart.addItem(new Item(2L, 5, cart, new Product(2L)));
+
+        Mockito.doReturn(cart).when(serviceSpy).findById(cart.getId());
+        returnCartOnRepositorySave();
+
+        Cart result = serviceSpy.addItemToCart(cart.getId(), 2L, 7);
+
+        assertEquals(2, result.getItems().size());
+        assertEquals(7, result.findItemByProductId(2L).get().getQuantity());
+    }
+
+    /**
+     * Given a Product deleted after it was verified, so that the insert of its Item violates the foreign key, assert
+     * that {@link CartService#addItemToCart(Long, Long, Integer)} throws an appropriate exception.
+     */
+    @Test
+    @DisplayName("addItemToCart arroja excepción si el producto se eliminó después de verificarlo")
+    public void test_when_addItemToCart_and_productDeletedAfterVerification_then_throwException(){
+        Cart emptyCart = new Cart(3L, "Carrito 3", new HashSet<>(), 3);
+
+        Mockito.doReturn(emptyCart).when(serviceSpy).findById(emptyCart.getId());
+        returnCartOnRepositorySave();
+        doThrow(new DataIntegrityViolationException("FK_ITEM_PRODUCT")).when(repository).flush();
+
+        NotFoundException exception = assertThrows(NotFoundException.class,
+                () -> serviceSpy.addItemToCart(emptyCart.getId(), 1L, 5));
+        assertEquals("No se encontró el producto N°1", exception.getMessage());
+    }
+
+    // upsertItem
+
+    /**
+     * Assert that {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)} throws an appropriate exception if
+     * the quantity is invalid, without writing anything.
+     */
+    @Test
+    @DisplayName("upsertItem arroja excepción si la cantidad es inválida")
+    public void test_when_upsertItem_and_quantityIsInvalid_then_throwException(){
+        expectedException.expect(BadRequestException.class);
+        expectedException.expectMessage("La cantidad ingresada es inválida.");
+
+        try {
+            service.upsertItem(ID_CART_1, 1L, 0, QuantityMode.SET);
+        } finally {
+            verifyNoInteractions(itemRepository, repository);
+        }
+    }
+
+    /**
+     * Assert that each {@link QuantityMode} runs its own upsert, and that the Cart is never loaded, only its version
+     * incremented.
+     */
+    @Test
+    @DisplayName("upsertItem ejecuta el upsert que corresponde al modo")
+    public void test_when_upsertItem_then_upsertOfModeCalled(){
+        when(repository.incrementVersion(ID_CART_1)).thenReturn(1);
+
+        service.upsertItem(ID_CART_1, 1L, 3, QuantityMode.SET);
+        service.upsertItem(ID_CART_1, 2L, 4, QuantityMode.INCREMENT);
+
+        verify(itemRepository, times(1)).upsertQuantity(ID_CART_1, 1L, 3);
+        verify(itemRepository, times(1)).incrementQuantity(ID_CART_1, 2L, 4);
+        verify(repository, times(2)).incrementVersion(ID_CART_1);
+        verify(repository, never()).findWithItemsAndProductsForChangeById(anyLong());
+    }
+
+    /**
+     * Given an upsert failing because the Product doesn't exist, assert that
+     * {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)} throws an appropriate exception.
+     */
+    @Test
+    @DisplayName("upsertItem arroja excepción si el producto no existe")
+    public void test_when_upsertItem_and_productNotFound_then_throwException(){
+        when(repository.incrementVersion(ID_CART_1)).thenReturn(1);
+        doThrow(new DataIntegrityViolationException("FK")).when(itemRepository).incrementQuantity(ID_CART_1, 99L, 1);
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el producto N°99");
+
+        service.upsertItem(ID_CART_1, 99L, 1, QuantityMode.INCREMENT);
+    }
+
+    /**
+     * Given a Product missing from the {@link ProductIdIndex}, assert that
+     * {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)} throws an appropriate exception, without
+     * incrementing the version of the Cart.
+     */
+    @Test
+    @DisplayName("upsertItem arroja excepción si el producto no está en el índice, sin escribir")
+    public void test_when_upsertItem_and_productNotIndexed_then_throwExceptionWithoutWriting(){
+        when(productIdIndex.exists(99L)).thenReturn(false);
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el producto N°99");
+
+        try {
+            service.upsertItem(ID_CART_1, 99L, 1, QuantityMode.SET);
+        } finally {
+            verifyNoInteractions(repository, itemRepository);
+        }
+    }
+
+    /**
+     * Given a version increment that matches no rows while the Cart exists, assert that
+     * {@link CartService#upsertItem(Long, Long, Integer, QuantityMode, Long)} throws an appropriate exception, without
+     * running the upsert.
+     */
+    @Test
+    @DisplayName("upsertItem arroja excepción si el carrito está en otra versión")
+    public void test_when_upsertItem_and_versionMismatch_then_throwException(){
+        when(repository.incrementVersion(ID_CART_1, 3L)).thenReturn(0);
+        when(repository.existsById(ID_CART_1)).thenReturn(true);
+
+        expectedException.expect(PreconditionFailedException.class);
+        expectedException.expectMessage("El carrito N° " + ID_CART_1 + " fue modificado.");
+
+        try {
+            service.upsertItem(ID_CART_1, 1L, 1, QuantityMode.SET, 3L);
+        } finally {
+            verifyNoInteractions(itemRepository);
+        }
+    }
+
+    /**
+     * Given a version increment that matches no rows because the Cart doesn't exist, assert that
+     * {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)} throws an appropriate exception.
+     */
+    @Test
+    @DisplayName("upsertItem arroja excepción si el carrito no existe")
+    public void test_when_upsertItem_and_cartNotFound_then_throwException(){
+        when(repository.incrementVersion(ID_CART_1)).thenReturn(0);
+        when(repository.existsById(ID_CART_1)).thenReturn(false);
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el carrito N° " + ID_CART_1);
+
+        service.upsertItem(ID_CART_1, 1L, 1, QuantityMode.SET);
+    }
+
     // addMultipleItemsToCart
 
     /**
@@ -400,23 +774,89 @@ public class CartServiceTest {
         service.addMultipleItemsToCart(1L, incorrectItemSet);
     }
 
+    /**
+     * Given an Item Set referencing two missing Products, assert that {@link CartService#addMultipleItemsToCart(Long, Set)}
+     * checks them all at once and throws an exception listing them, without loading the Cart nor writing.
+     */
+    @Test
+    @DisplayName("addMultipleItemsToCart arroja excepción con los productos inexistentes, sin escribir")
+    public void test_when_addMultipleItemsToCart_and_productsNotFound_then_throwExceptionWithoutWriting(){
+        Set<Item> items = new HashSet<>();
+        items.add(new Item(1, null, new Product(1L)));
+        items.add(new Item(1, null, new Product(98L)));
+        items.add(new Item(1, null, new Product(99L)));
+        when(productIdIndex.findMissing(anyCollection())).thenReturn(new LinkedHashSet<>(List.of(98L, 99L)));
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontraron los productos N° 98, 99.");
+
+        try {
+            service.addMultipleItemsToCart(ID_CART_1, items);
+        } finally {
+            verify(productIdIndex, times(1)).findMissing(anyCollection());
+            verifyNoInteractions(repository, itemRepository);
+        }
+    }
+
     /**
      * Given an item set containing two elements, and given a spy copy of {@code CartService} executing
-     * {@link CartService#addItemToCart(Long, Long, Integer)} returning valid carts, assert that
-     * {@link CartService#addMultipleItemsToCart(Long, Set)} executes that method two times.
+     * {@link CartService#findWithItems(Long)} and returning a cart, assert that
+     * {@link CartService#addMultipleItemsToCart(Long, Set)} loads the cart once and never executes
+     * {@link CartService#addItemToCart(Long, Long, Integer)}.
      */
     @Test
-    @DisplayName("addMultipleItemsToCart ejecuta addItemToCart por cada item proveído")
-    public void test_when_addMultipleItemsToCart_then_executesAddItemToCartForEachItemProvided(){
+    @DisplayName("addMultipleItemsToCart carga el carrito una sola vez")
+    public void test_when_addMultipleItemsToCart_then_cartLoadedOnce(){
         Set<Item> items = new HashSet<>();
         items.add(new Item(null, 5, null, new Product(1L)));
         items.add(new Item(null, 10, null, new Product(2L)));
 
-        Mockito.doReturn(new Cart()).when(serviceSpy).addItemToCart(anyLong(), anyLong(), anyInt());
+        Mockito.doReturn(new Cart(1L, "Carrito", new HashSet<>(), 1)).when(serviceSpy).findWithItems(1L);
 
         serviceSpy.addMultipleItemsToCart(1L, items);
 
-        verify(serviceSpy, times(2)).addItemToCart(anyLong(), anyLong(), anyInt());
+        verify(serviceSpy, times(1)).findWithItems(1L);
+        verify(serviceSpy, never()).addItemToCart(anyLong(), anyLong(), anyInt());
+    }
+
+    /**
+     * Given a cart that already references a product, and an item set referencing that product twice plus a new one,
+     * assert that {@link CartService#addMultipleItemsToCart(Long, Set)} merges the repeated product, updates the
+     * existing item and inserts the new one, each in a single batch.
+     */
+    @Test
+    @DisplayName("addMultipleItemsToCart unifica productos repetidos y agrupa las escrituras")
+    public void test_when_addMultipleItemsToCart_then_repeatedProductsMergedAndBatched(){
+        Cart cart = new Cart(1L, "Carrito", new HashSet<>(), 1);
+        cart.addItem(new Item(7L, 1, cart, new Product(1L)));
+
+        Set<Item> items = new HashSet<>();
+        items.add(new Item(null, 5, null, new Product(1L)));
+        items.add(new Item(null, 3, null, new Product(1L)));
+        items.add(new Item(null, 10, null, new Product(2L)));
+
+        Mockito.doReturn(cart).when(serviceSpy).findWithItems(1L);
+
+        serviceSpy.addMultipleItemsToCart(1L, items);
+
+        verify(itemRepository, times(1)).batchUpdateQuantities(Map.of(7L, 8));
+        verify(itemRepository, times(1)).batchInsert(1L, Map.of(2L, 10));
+    }
+
+    /**
+     * Given an item set with an invalid quantity, assert that {@link CartService#addMultipleItemsToCart(Long, Set)}
+     * throws an appropriate exception before writing anything.
+     */
+    @Test
+    @DisplayName("addMultipleItemsToCart arroja excepción si una cantidad es inválida")
+    public void test_when_addMultipleItemsToCart_and_quantityIsInvalid_then_throwException(){
+        Set<Item> items = new HashSet<>();
+        items.add(new Item(null, 0, null, new Product(1L)));
+
+        expectedException.expect(BadRequestException.class);
+        expectedException.expectMessage("La cantidad ingresada es inválida.");
+
+        service.addMultipleItemsToCart(1L, items);
     }
 
     // deleteItemFromCart
@@ -467,52 +907,89 @@ public class CartServiceTest {
         assertTrue(serviceSpy.deleteItemFromCart(1L, 1L).getItems().isEmpty());
     }
 
+    /**
+     * Given a spy copy of {@code CartService} executing {@link CartService#findById(Long)} and returning a cart with
+     * two items, assert that {@link CartService#deleteItemFromCart(Long, Long)} removes the item from both the item set
+     * and the cart's indexes.
+     */
+    @Test
+    @DisplayName("deleteItemFromCart actualiza los índices del carrito")
+    public void test_when_deleteItemFromCart_then_indexesUpdated(){
+        Cart cart = new Cart(3L, "Carrito 3", new HashSet<>(), 3);
+        cart.addItem(new Item(1L, 5, cart, new Product(1L)));
+        cart.addItem(new Item(2L, 5, cart, new Product(2L)));
+
+        Mockito.doReturn(cart).when(serviceSpy).findById(cart.getId());
+        returnCartOnRepositorySave();
+
+        Cart result = serviceSpy.deleteItemFromCart(cart.getId(), 1L);
+
+        assertEquals(1, result.getItems().size());
+        assertTrue(result.findItemById(1L).isEmpty());
+        assertTrue(result.findItemByProductId(1L).isEmpty());
+    }
+
     // deleteCart
 
     /**
-     * Given {@link CartRepository#findById(Object)} returning a valid cart, verify that executing
-     * {@link CartService#deleteCart(Long)} executes that method.
-     * <p>Note: {@link CartRepository#deleteById(Object)}, a {@code void} method, needs to be marked with the
-     * {@code Mockito.doNothing()} flag.</p>
+     * Given {@link CartRepository#existsById(Object)} returning {@code true}, verify that executing
+     * {@link CartService#deleteCart(Long)} deletes the cart's items and then the cart, without loading it.
      */
     @Test
     @DisplayName("deleteCart llama para borrar")
     public void test_when_deleteCart_then_repositoryDeleteCallMade(){
-        Mockito.doNothing().when(repository).deleteById(anyLong());
-        findByIdReturnsCart();
+        when(repository.existsById(1L)).thenReturn(true);
 
         service.deleteCart(1L);
 
-        verify(repository, times(1)).deleteById(1L);
+        verify(itemRepository, times(1)).deleteByCartId(1L);
+        verify(repository, times(1)).deleteCartById(1L);
+        verify(repository, never()).findById(any());
+    }
+
+    /**
+     * Given {@link CartRepository#existsById(Object)} returning {@code false}, assert that
+     * {@link CartService#deleteCart(Long)} throws an appropriate exception.
+     */
+    @Test
+    @DisplayName("deleteCart arroja excepción si no encuentra el carrito")
+    public void test_when_deleteCart_and_cartNotFound_then_throwException(){
+        when(repository.existsById(1L)).thenReturn(false);
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el carrito N° 1");
+
+        service.deleteCart(1L);
     }
 
     // deleteCartByUserId
 
     /**
-     * Given {@link CartRepository#findById(Object)} returning a valid cart, assert that
+     * Given {@link CartRepository#findIdByUserId(Integer)} returning a valid cart ID, assert that
      * {@link CartService#deleteCartByUserId(Integer)} executes that method, and also
-     * {@link CartRepository#deleteById(Object)}.
+     * {@link CartRepository#deleteCartById(Long)}.
      */
     @Test
     @DisplayName("deleteCartByUserId llama para buscar y para borrar")
     public void test_when_deleteCartByUserId_then_repositorySearchAndDeletionCallsMade(){
-        Mockito.doReturn(Optional.of(CART_1)).when(repository).findByUserId(USERID_CART_1);
+        Mockito.doReturn(Optional.of(ID_CART_1)).when(repository).findIdByUserId(USERID_CART_1);
 
         service.deleteCartByUserId(USERID_CART_1);
 
-        verify(repository, times(1)).findByUserId(anyInt());
-        verify(repository, times(1)).deleteById(anyLong());
+        verify(repository, times(1)).findIdByUserId(anyInt());
+        verify(itemRepository, times(1)).deleteByCartId(ID_CART_1);
+        verify(repository, times(1)).deleteCartById(ID_CART_1);
     }
 
     /**
-     * Given {@link CartRepository#findByUserId(Integer)} returning an empty response, assert that
+     * Given {@link CartRepository#findIdByUserId(Integer)} returning an empty response, assert that
      * {@link CartService#deleteCartByUserId(Integer)} throws an appropriate exception.
      *
      */
     @Test
     @DisplayName("deleteCartByUserId arroja excepción si no encuentra el carrito")
     public void test_when_deleteCartByUserId_and_cartNotFound_then_throwException(){
-        Mockito.doReturn(Optional.empty()).when(repository).findByUserId(USERID_CART_1);
+        Mockito.doReturn(Optional.empty()).when(repository).findIdByUserId(USERID_CART_1);
 
         expectedException.expect(NotFoundException.class);
         expectedException.expectMessage("No se encontró un carrito con ése ID de usuario.");
@@ -0,0 +1,196 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.exception.globalhandler.PreconditionFailedException;
+import com.digitar120.shoppingcartapp.feignclient.ReactiveUserClient;
+import com.digitar120.shoppingcartapp.persistence.PersistenceTestConfiguration;
+import com.digitar120.shoppingcartapp.persistence.entity.Cart;
+import com.digitar120.shoppingcartapp.service.dto.QuantityMode;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link CartService#upsertItem(Long, Long, Integer, QuantityMode)} against the H2 database initialized by the
+ * Flyway migrations, where Cart 1 holds Products 1 and 2, but not Product 3.
+ * <p>Tests don't run inside a transaction, so that concurrent upserts commit on their own as in production. Changes
+ * are reverted afterwards, except for the version of the Cart, which tests only compare against its previous value.</p>
+ * @author Gabriel Pérez (digitar120)
+ * @see com.digitar120.shoppingcartapp.persistence.repository.ItemBatchRepository
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=none")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class CartServiceUpsertTest {
+
+    private static final Long CART_ID = 1L;
+    private static final Long NEW_PRODUCT_ID = 3L;
+    private static final Long EXISTING_PRODUCT_ID = 1L;
+
+    @SpringBootConfiguration
+    @Import(PersistenceTestConfiguration.class)
+    static class PersistenceConfiguration {
+    }
+
+    @Autowired
+    private CartService service;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private ReactiveUserClient userClient;
+
+    @After
+    public void restoreData(){
+        jdbcTemplate.update("DELETE FROM ITEM WHERE CART_ID = ? AND PRODUCT_ID = ?", CART_ID, NEW_PRODUCT_ID);
+        jdbcTemplate.update("UPDATE ITEM SET ITEM_QUANTITY = 3 WHERE CART_ID = ? AND PRODUCT_ID = ?", CART_ID, EXISTING_PRODUCT_ID);
+    }
+
+    private Long versionOfCart(){
+        return jdbcTemplate.queryForObject("SELECT CART_VERSION FROM CART WHERE CART_ID = ?", Long.class, CART_ID);
+    }
+
+    private Long idOfItem(Long productId){
+        return jdbcTemplate.queryForObject(
+                "SELECT ITEM_ID FROM ITEM WHERE CART_ID = ? AND PRODUCT_ID = ?", Long.class, CART_ID, productId);
+    }
+
+    private List<Map<String, Object>> itemsOf(Long productId){
+        return jdbcTemplate.queryForList(
+                "SELECT ITEM_QUANTITY FROM ITEM WHERE CART_ID = ? AND PRODUCT_ID = ?", CART_ID, productId);
+    }
+
+    /**
+     * Assert that SET creates a missing Item, and replaces the quantity of an existing one.
+     */
+    @Test
+    @DisplayName("SET crea el ítem o reemplaza su cantidad")
+    public void test_when_upsertItem_and_modeIsSet_then_quantityReplaced(){
+        service.upsertItem(CART_ID, NEW_PRODUCT_ID, 4, QuantityMode.SET);
+        service.upsertItem(CART_ID, EXISTING_PRODUCT_ID, 9, QuantityMode.SET);
+
+        assertEquals(4, itemsOf(NEW_PRODUCT_ID).get(0).get("ITEM_QUANTITY"));
+        assertEquals(9, itemsOf(EXISTING_PRODUCT_ID).get(0).get("ITEM_QUANTITY"));
+    }
+
+    /**
+     * Assert that INCREMENT adds to the quantity of an existing Item.
+     */
+    @Test
+    @DisplayName("INCREMENT suma a la cantidad actual")
+    public void test_when_upsertItem_and_modeIsIncrement_then_quantityAdded(){
+        service.upsertItem(CART_ID, EXISTING_PRODUCT_ID, 4, QuantityMode.INCREMENT);
+
+        assertEquals(7, itemsOf(EXISTING_PRODUCT_ID).get(0).get("ITEM_QUANTITY"));
+    }
+
+    /**
+     * Run many concurrent increments of a Product that isn't in the Cart yet. Assert that a single Item is created,
+     * and that no increment is lost.
+     */
+    @Test
+    @DisplayName("Los incrementos concurrentes no se pierden ni duplican el ítem")
+    public void test_when_upsertItem_and_concurrentIncrements_then_noUpdateLost() throws Exception {
+        int threads = 8;
+        int incrementsPerThread = 25;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < incrementsPerThread; j++) {
+                        service.upsertItem(CART_ID, NEW_PRODUCT_ID, 1, QuantityMode.INCREMENT);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Map<String, Object>> items = itemsOf(NEW_PRODUCT_ID);
+        assertEquals(1, items.size());
+        assertEquals(threads * incrementsPerThread, items.get(0).get("ITEM_QUANTITY"));
+    }
+
+    /**
+     * Assert that every upsert increments the version of the Cart, and that an upsert expecting an older version is
+     * rejected without changing the Item.
+     */
+    @Test
+    @DisplayName("El upsert incrementa la versión y rechaza versiones viejas")
+    public void test_when_upsertItem_then_versionIncrementedAndChecked(){
+        Long version = versionOfCart();
+
+        service.upsertItem(CART_ID, EXISTING_PRODUCT_ID, 5, QuantityMode.SET, version);
+        assertEquals(version + 1, versionOfCart());
+
+        assertThrows(PreconditionFailedException.class,
+                () -> service.upsertItem(CART_ID, EXISTING_PRODUCT_ID, 8, QuantityMode.SET, version));
+        assertEquals(5, itemsOf(EXISTING_PRODUCT_ID).get(0).get("ITEM_QUANTITY"));
+        assertEquals(version + 1, versionOfCart());
+    }
+
+    /**
+     * Assert that changing an Item through the loaded Cart also increments its version, and that the returned Cart
+     * carries the new one.
+     */
+    @Test
+    @DisplayName("addItemToCart incrementa la versión del carrito devuelto")
+    public void test_when_addItemToCart_then_versionIncremented(){
+        Long version = versionOfCart();
+
+        Cart cart = service.addItemToCart(CART_ID, EXISTING_PRODUCT_ID, 6, version);
+
+        assertEquals(version + 1, versionOfCart());
+        assertEquals(version + 1, cart.getVersion());
+    }
+
+    /**
+     * Assert that Items created one at a time take consecutive IDs, instead of a whole block of the sequence each.
+     */
+    @Test
+    @DisplayName("Los ítems creados de a uno toman IDs consecutivos")
+    public void test_when_upsertItem_createsItems_then_idsConsecutive(){
+        service.upsertItem(CART_ID, NEW_PRODUCT_ID, 1, QuantityMode.SET);
+        Long firstId = idOfItem(NEW_PRODUCT_ID);
+        restoreData();
+
+        service.upsertItem(CART_ID, NEW_PRODUCT_ID, 1, QuantityMode.SET);
+
+        assertEquals(firstId + 1, idOfItem(NEW_PRODUCT_ID));
+    }
+
+    /**
+     * Assert that the unique constraint rejects a second Item referencing the same Product in a Cart.
+     */
+    @Test
+    @DisplayName("La restricción única impide ítems repetidos")
+    public void test_when_itemInsertedTwice_then_uniqueConstraintViolated(){
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "INSERT INTO ITEM (ITEM_QUANTITY, CART_ID, PRODUCT_ID) VALUES (1, ?, ?)", CART_ID, EXISTING_PRODUCT_ID));
+    }
+}
@@ -1,12 +1,15 @@
 package com.digitar120.shoppingcartapp.service;
 
+import com.digitar120.shoppingcartapp.exception.globalhandler.ConflictException;
 import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
 import com.digitar120.shoppingcartapp.mapper.ItemToEditedItem;
 import com.digitar120.shoppingcartapp.persistence.entity.Cart;
 import com.digitar120.shoppingcartapp.persistence.entity.Item;
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
+import com.digitar120.shoppingcartapp.persistence.repository.CartRepository;
 import com.digitar120.shoppingcartapp.persistence.repository.ItemRepository;
 import com.digitar120.shoppingcartapp.service.dto.EditedItemDTO;
+import com.digitar120.shoppingcartapp.service.dto.ItemView;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -18,8 +21,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import javax.validation.constraints.AssertTrue;
+import java.sql.SQLException;
 import java.util.*;
 
 import static org.mockito.Mockito.*;
@@ -52,7 +57,9 @@ public class ItemServiceTest {
 
 
     private static final Set<Item> itemHashSet = new HashSet<>();
-    private static final List<Item> itemList = Arrays.asList(ITEM_PENCIL_2B, ITEM_PEN);
+    private static final ItemView VIEW_PENCIL_2B = new ItemView(ITEMCODE_PENCIL_2B, 5, 1L, "2B Pencil");
+
+    private static final List<ItemView> itemList = List.of(VIEW_PENCIL_2B, new ItemView(2L, 10, 2L, "Pen"));
 
 
     /**
@@ -72,6 +79,9 @@ public class ItemServiceTest {
     @Mock
     private ItemRepository repository;
 
+    @Mock
+    private CartRepository cartRepository;
+
     @Mock
     private ItemToEditedItem mapper;
 
@@ -81,11 +91,15 @@ public class ItemServiceTest {
     // Method extractions
 
     private void findByIdOf2BReturnsItem() {
-        when(repository.findById(ITEMCODE_PENCIL_2B)).thenReturn(Optional.of(ITEM_PENCIL_2B));
+        when(repository.findViewById(ITEMCODE_PENCIL_2B)).thenReturn(Optional.of(VIEW_PENCIL_2B));
     }
 
     private void findById2BReturnsNothing() {
-        when(repository.findById(ITEMCODE_PENCIL_2B)).thenReturn(Optional.empty());
+        when(repository.findViewById(ITEMCODE_PENCIL_2B)).thenReturn(Optional.empty());
+    }
+
+    private void existsById2BReturns(boolean exists) {
+        when(repository.existsById(ITEMCODE_PENCIL_2B)).thenReturn(exists);
     }
 
     private void repositorySaveReturnsItem() {
@@ -97,27 +111,27 @@ public class ItemServiceTest {
     // findAll
 
     /**
-     * Given {@link ItemRepository#findAll()} returning a non-empty list, assert that {@link ItemService#findAll()}
+     * Given {@link ItemRepository#findAllViews()} returning a non-empty list, assert that {@link ItemService#findAll()}
      * executes that method.
      */
     @Test
     @DisplayName("findAll llama al repositorio")
     public void test_when_findAll_then_callsRepository(){
-        when(repository.findAll()).thenReturn(itemList);
+        when(repository.findAllViews()).thenReturn(itemList);
 
         service.findAll();
 
-        verify(repository, times(1)).findAll();
+        verify(repository, times(1)).findAllViews();
     }
 
     /**
-     * Given {@link ItemRepository#findAll()} returning a non-empty list, assert that the return of {@link ItemService#findAll()}
+     * Given {@link ItemRepository#findAllViews()} returning a non-empty list, assert that the return of {@link ItemService#findAll()}
      * is also non-empty.
      */
     @Test
     @DisplayName("findAll no devuelve listas vacías")
     public void test_when_findAll_then_noEmptyListsReturned(){
-        when(repository.findAll()).thenReturn(itemList);
+        when(repository.findAllViews()).thenReturn(itemList);
 
         assertFalse(service.findAll().isEmpty());
     }
@@ -126,7 +140,7 @@ public class ItemServiceTest {
     //--------------------------------findById-----------------------------
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning a matching item, assert that {@link ItemService#findById(Long)}
+     * Given {@link ItemRepository#findViewById(Long)} returning a matching item, assert that {@link ItemService#findById(Long)}
      * executes that method.
      */
     @Test
@@ -136,11 +150,11 @@ public class ItemServiceTest {
 
         service.findById(ITEMCODE_PENCIL_2B);
 
-        verify(repository, times(1)).findById(ITEMCODE_PENCIL_2B);
+        verify(repository, times(1)).findViewById(ITEMCODE_PENCIL_2B);
     }
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning nothing, assert that {@link ItemService#findById(Long)}
+     * Given {@link ItemRepository#findViewById(Long)} returning nothing, assert that {@link ItemService#findById(Long)}
      * throws an appropriate exception.
      */
     @Test
@@ -155,7 +169,7 @@ public class ItemServiceTest {
     }
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning a matching item, assert that its return and the return of
+     * Given {@link ItemRepository#findViewById(Long)} returning a matching item, assert that its return and the return of
      * {@link ItemService#findById(Long)} are the same.
      */
     @Test
@@ -163,19 +177,19 @@ public class ItemServiceTest {
     public void test_when_findById_and_argumentIsCorrect_then_returnCorrectElement(){
         findByIdOf2BReturnsItem();
 
-        assertEquals(service.findById(ITEMCODE_PENCIL_2B), ITEM_PENCIL_2B);
+        assertEquals(service.findById(ITEMCODE_PENCIL_2B), VIEW_PENCIL_2B);
     }
 
     // saveToRepo -------------------------------------------------------------------------------------
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning nothing and {@link ItemRepository#save(Object)} returning
+     * Given {@link ItemRepository#existsById(Object)} returning {@code false} and {@link ItemRepository#save(Object)} returning
      * a valid item, assert that {@link ItemService#saveToRepo(Item)} executes the later method.
      */
     @Test
     @DisplayName("saveToRepo llama al repositorio para guardar un item")
     public void test_when_saveToRepo_then_repositorySaveCallMade(){
-        findById2BReturnsNothing();
+        existsById2BReturns(false);
         repositorySaveReturnsItem();
 
         service.saveToRepo(ITEM_PENCIL_2B);
@@ -184,28 +198,28 @@ public class ItemServiceTest {
     }
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning nothing and {@link ItemRepository#save(Object)} returning
+     * Given {@link ItemRepository#existsById(Object)} returning {@code false} and {@link ItemRepository#save(Object)} returning
      * a valid item, assert that {@link ItemService#saveToRepo(Item)} executes the former method.
      */
     @Test
     @DisplayName("saveToRepo llama al repositorio para verificar existencia")
     public void test_when_saveToRepo_then_repositoryVerificationCallMade(){
-        findById2BReturnsNothing();
+        existsById2BReturns(false);
         repositorySaveReturnsItem();
 
         service.saveToRepo(ITEM_PENCIL_2B);
 
-        verify(repository, times(1)).findById(ITEMCODE_PENCIL_2B);
+        verify(repository, times(1)).existsById(ITEMCODE_PENCIL_2B);
     }
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning nothing, and {@link ItemRepository#save(Object)}
+     * Given {@link ItemRepository#existsById(Object)} returning {@code false}, and {@link ItemRepository#save(Object)}
      * returning a valid item, assert its return and the return of {@link ItemService#saveToRepo(Item)} are the same.
      */
     @Test
     @DisplayName("saveToRepo devuelve el objeto correcto")
     public void test_when_saveToRepo_then_returnCorrectObject(){
-        findById2BReturnsNothing();
+        existsById2BReturns(false);
         repositorySaveReturnsItem();
 
         assertEquals(ITEM_PENCIL_2B, service.saveToRepo(ITEM_PENCIL_2B));
@@ -219,6 +233,7 @@ public class ItemServiceTest {
     @DisplayName("newItem llama al repositorio para guardar un ítem")
     public void test_when_newItem_then_repositorySaveCallMade(){
         repositorySaveReturnsItem();
+        when(cartRepository.incrementVersion(1L)).thenReturn(1);
 
         service.newItem(1L, 1L,5);
 
@@ -243,16 +258,67 @@ public class ItemServiceTest {
         );
 
         when(repository.save(any(Item.class))).thenReturn(builtItem);
+        when(cartRepository.incrementVersion(cartIdInput)).thenReturn(1);
 
         assertEquals(builtItem, service.newItem(cartIdInput, productIdInput, quantityInput));
     }
 
+    /**
+     * Given {@link CartRepository#incrementVersion(Long)} matching no Cart, assert that
+     * {@link ItemService#newItem(Long, Long, Integer)} throws an appropriate exception without saving the item.
+     */
+    @Test
+    @DisplayName("newItem arroja excepción si no encuentra el carrito")
+    public void test_when_newItem_and_cartNotFound_then_throwException(){
+        when(cartRepository.incrementVersion(1L)).thenReturn(0);
+
+        expectedException.expect(NotFoundException.class);
+        expectedException.expectMessage("No se encontró el carrito N° 1");
+
+        try {
+            service.newItem(1L, 1L, 5);
+        } finally {
+            verify(repository, never()).save(any());
+        }
+    }
+
+    /**
+     * Given the insert violating {@code UK_ITEM_CART_PRODUCT}, assert that {@link ItemService#newItem(Long, Long, Integer)}
+     * throws a {@link ConflictException} instead of letting the {@link DataIntegrityViolationException} through.
+     */
+    @Test
+    @DisplayName("newItem arroja excepción de conflicto si el carrito ya tiene el producto")
+    public void test_when_newItem_and_productAlreadyInCart_then_throwConflictException(){
+        when(cartRepository.incrementVersion(1L)).thenReturn(1);
+        doThrow(new DataIntegrityViolationException("could not execute statement", new SQLException(
+                "Unique index or primary key violation: \"PUBLIC.UK_ITEM_CART_PRODUCT_INDEX_2 ON PUBLIC.ITEM(CART_ID, PRODUCT_ID)\"")))
+                .when(repository).flush();
+
+        ConflictException exception = assertThrows(ConflictException.class, () -> service.newItem(1L, 1L, 5));
+        assertEquals("El carrito N° 1 ya tiene un ítem del producto N° 1.", exception.getMessage());
+    }
+
+    /**
+     * Given the insert violating the foreign key to the Product, assert that {@link ItemService#newItem(Long, Long, Integer)}
+     * throws a {@link NotFoundException}.
+     */
+    @Test
+    @DisplayName("newItem arroja excepción si no encuentra el producto")
+    public void test_when_newItem_and_productNotFound_then_throwException(){
+        when(cartRepository.incrementVersion(1L)).thenReturn(1);
+        doThrow(new DataIntegrityViolationException("could not execute statement", new SQLException(
+                "Referential integrity constraint violation: \"CONSTRAINT_22: PUBLIC.ITEM FOREIGN KEY(PRODUCT_ID)\"")))
+                .when(repository).flush();
+
+        assertThrows(NotFoundException.class, () -> service.newItem(1L, 9L, 5));
+    }
+
     // editItem ---------------------------------------------------------------------------------------
 
     /**
      * Given the following methods returning a valid item:
      * <ul>
-     * <li>{@link ItemRepository#findById(Object)}</li>
+     * <li>{@link ItemRepository#existsById(Object)}</li>
      * <li>{@link ItemRepository#save(Object)}</li>
      * <li>{@link ItemToEditedItem#map(EditedItemDTO)}</li>
      * </ul>
@@ -262,24 +328,24 @@ public class ItemServiceTest {
     @Test
     @DisplayName("editItem llama al repositorio para guardar y verificar")
     public void test_when_editItem_then_repositorySaveAndVerificationCallsMade(){
-        findByIdOf2BReturnsItem();
+        existsById2BReturns(true);
         repositorySaveReturnsItem();
         when(mapper.map(any(EditedItemDTO.class))).thenReturn(new Item());
 
         service.editItem(new EditedItemDTO( 5), ITEMCODE_PENCIL_2B);
 
         verify(repository, times(1)).save(any(Item.class));
-        verify(repository, times(1)).findById(ITEMCODE_PENCIL_2B);
+        verify(repository, times(1)).existsById(ITEMCODE_PENCIL_2B);
     }
 
     /**
-     * Given {@link ItemRepository#findById(Object)} returning nothing, assert that {@link ItemService#editItem(EditedItemDTO, Long)}
+     * Given {@link ItemRepository#existsById(Object)} returning {@code false}, assert that {@link ItemService#editItem(EditedItemDTO, Long)}
      * throws an appropriate exception.
      */
     @Test
     @DisplayName("editItem arroja excepción correctamente")
     public void test_when_editItem_then_exceptionThrownCorrectly(){
-        findById2BReturnsNothing();
+        existsById2BReturns(false);
 
         expectedException.expect(NotFoundException.class);
         expectedException.expectMessage("No se encontró un ítem de N°" + ITEMCODE_PENCIL_2B);
@@ -290,7 +356,7 @@ public class ItemServiceTest {
     /**
      * Given the following methods returning valid items:
      * <ul>
-     * <li>{@link ItemRepository#findById(Object)}</li>
+     * <li>{@link ItemRepository#existsById(Object)}</li>
      * <li> {@link ItemRepository#save(Object)}</li>
      * <li> {@link ItemToEditedItem#map(EditedItemDTO)}</li>
      * </ul>
@@ -299,7 +365,7 @@ public class ItemServiceTest {
     @Test
     @DisplayName("editItem devuelve objetos correctamente")
     public void test_when_editItem_then_returnsCorrectObject(){
-        findByIdOf2BReturnsItem();
+        existsById2BReturns(true);
         when(repository.save(any(Item.class))).thenReturn(ITEM_PENCIL_2B);
         when(mapper.map(any(EditedItemDTO.class))).thenReturn(new Item());
 
@@ -307,13 +373,13 @@ public class ItemServiceTest {
     }
 
     /**
-     * Given the following method returning a valid item:
+     * Given the following method returning {@code true}:
      * <ul>
-     * <li> {@link ItemRepository#findById(Object)}</li>
+     * <li> {@link ItemRepository#existsById(Object)}</li>
      * </ul>
      * <p>Assert that {@link ItemService#deleteById(Long)} executes that method, and also the following:
      * <ul>
-     * <li> {@link ItemRepository#deleteById(Object)}</li>
+     * <li> {@link ItemRepository#deleteItemById(Long)}</li>
      * </ul>
      * </p>
      *
@@ -321,25 +387,26 @@ public class ItemServiceTest {
     @Test
     @DisplayName("deleteItem llama al repositorio para verificar y borrar")
     public void test_when_editItem_then_repositoryVerificationAndDeletionCallsMade(){
-        findByIdOf2BReturnsItem();
+        existsById2BReturns(true);
 
         service.deleteById(ITEMCODE_PENCIL_2B);
 
-        verify(repository, times(1)).findById(ITEMCODE_PENCIL_2B);
-        verify(repository, times(1)).deleteById(ITEMCODE_PENCIL_2B);
+        verify(repository, times(1)).existsById(ITEMCODE_PENCIL_2B);
+        verify(repository, times(1)).deleteItemById(ITEMCODE_PENCIL_2B);
+        verify(repository, never()).findById(any());
     }
 
     /**
-     * Given the following method returning nothing:
+     * Given the following method returning {@code false}:
      * <ul>
-     * <li> {@link ItemRepository#findById(Object)}</li>
+     * <li> {@link ItemRepository#existsById(Object)}</li>
      * </ul>
      * <p>Assert that {@link ItemRepository#deleteById(Object)} throws an appropriate exception.</p>
      */
     @Test
     @DisplayName("deleteItem arroja excepción correctamente")
     public void test_when_deleteItem_then_exceptionThrownCorrectly(){
-        findById2BReturnsNothing();
+        existsById2BReturns(false);
 
         expectedException.expect(NotFoundException.class);
         expectedException.expectMessage("No se encontró un ítem de N°" + ITEMCODE_PENCIL_2B);
@@ -0,0 +1,80 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the in-memory index of Product IDs.
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductIdIndex
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ProductIdIndexTest {
+
+    @Mock
+    private ProductRepository repository;
+
+    private ProductIdIndex productIdIndex;
+
+    @Before
+    public void setup(){
+        productIdIndex = new ProductIdIndex(repository);
+        when(repository.findAllIds()).thenReturn(List.of(1L, 2L, 70L));
+    }
+
+    /**
+     * Assert that the IDs are loaded once, and that indexed IDs are accepted without further queries.
+     */
+    @Test
+    @DisplayName("exists carga los IDs una sola vez y acepta los indexados sin consultar")
+    public void test_when_existsWithIndexedIds_then_loadedOnceAndNoLookups(){
+        assertTrue(productIdIndex.exists(1L));
+        assertTrue(productIdIndex.exists(70L));
+        assertTrue(productIdIndex.findMissing(List.of(1L, 2L, 70L)).isEmpty());
+
+        verify(repository, times(1)).findAllIds();
+        verify(repository, never()).findExistingIds(anyCollection());
+    }
+
+    /**
+     * Assert that IDs missing from the index are confirmed with a single lookup, and that the ones found are indexed.
+     */
+    @Test
+    @DisplayName("findMissing confirma los IDs no indexados con una sola consulta, e indexa los encontrados")
+    public void test_when_findMissingWithUnindexedIds_then_confirmedWithOneLookup(){
+        when(repository.findExistingIds(List.of(3L, 99L))).thenReturn(List.of(3L));
+
+        Set<Long> missing = productIdIndex.findMissing(List.of(1L, 3L, 99L));
+
+        assertEquals(Set.of(99L), missing);
+        assertTrue(productIdIndex.exists(3L));
+        verify(repository, times(1)).findExistingIds(anyCollection());
+    }
+
+    /**
+     * Assert that added and deleted Products are reflected in the index.
+     */
+    @Test
+    @DisplayName("productAdded y productDeleted actualizan el índice")
+    public void test_when_productAddedAndDeleted_then_indexUpdated(){
+        when(repository.findExistingIds(anyCollection())).thenReturn(List.of());
+        productIdIndex.exists(1L);
+
+        productIdIndex.productAdded(500L);
+        productIdIndex.productDeleted(2L);
+
+        assertTrue(productIdIndex.exists(500L));
+        assertFalse(productIdIndex.exists(2L));
+    }
+}
@@ -0,0 +1,111 @@
+package com.digitar120.shoppingcartapp.service;
+
+import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the in-memory search index of Product descriptions.
+ * @author Gabriel Pérez (digitar120)
+ * @see ProductSearchIndex
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ProductSearchIndexTest {
+
+    private static final ProductView PENCIL = new ProductView(1L, "Lápiz");
+    private static final ProductView BLUE_PENCIL = new ProductView(2L, "Lápiz azul");
+    private static final ProductView PENCIL_CASE = new ProductView(3L, "Lapicera");
+    private static final ProductView BLUE_NOTEBOOK = new ProductView(4L, "Cuaderno azul");
+    private static final ProductView RED_PENCIL = new ProductView(5L, "Lápiz rojo");
+
+    @Mock
+    private ProductRepository repository;
+
+    private ProductSearchIndex productSearchIndex;
+
+    @Before
+    public void setup(){
+        productSearchIndex = new ProductSearchIndex(repository);
+        when(repository.findAllViews()).thenReturn(List.of(BLUE_NOTEBOOK, RED_PENCIL, PENCIL_CASE, BLUE_PENCIL, PENCIL));
+    }
+
+    /**
+     * Assert that matching ignores case and accents, both in the query and in the descriptions, and that the catalog
+     * is loaded once.
+     */
+    @Test
+    @DisplayName("search no distingue mayúsculas ni acentos, y carga el catálogo una sola vez")
+    public void test_when_searchWithoutAccents_then_accentedDescriptionsMatch(){
+        assertEquals(List.of(PENCIL, BLUE_PENCIL, RED_PENCIL), productSearchIndex.search("LAPIZ", 10));
+        assertEquals(List.of(PENCIL, BLUE_PENCIL, RED_PENCIL), productSearchIndex.search("lápiz", 10));
+
+        verify(repository, times(1)).findAllViews();
+    }
+
+    /**
+     * Assert that whole words rank before prefixes, shorter descriptions before longer ones, and that the limit is
+     * respected.
+     */
+    @Test
+    @DisplayName("search ordena las palabras completas antes que los prefijos, y las descripciones cortas primero")
+    public void test_when_searchPrefix_then_rankedAndLimited(){
+        assertEquals(List.of(PENCIL, PENCIL_CASE, BLUE_PENCIL, RED_PENCIL), productSearchIndex.search("lap", 10));
+        assertEquals(List.of(PENCIL, PENCIL_CASE), productSearchIndex.search("la", 2));
+
+        // "Lapizera" es más corta que "Lápiz azul", pero sólo coincide por prefijo
+        ProductView pencilHolder = new ProductView(7L, "Lapizera");
+        productSearchIndex.productAdded(pencilHolder);
+        assertEquals(List.of(PENCIL, BLUE_PENCIL, RED_PENCIL, pencilHolder), productSearchIndex.search("lapiz", 10));
+    }
+
+    /**
+     * Assert that every word of the query must match, in any order, and that the last word may be incomplete.
+     */
+    @Test
+    @DisplayName("search exige que coincidan todas las palabras de la búsqueda")
+    public void test_when_searchSeveralWords_then_allMustMatch(){
+        assertEquals(List.of(BLUE_PENCIL), productSearchIndex.search("azul lapiz", 10));
+        assertEquals(List.of(BLUE_PENCIL), productSearchIndex.search("lapiz az", 10));
+        assertEquals(List.of(), productSearchIndex.search("lapiz verde", 10));
+        assertEquals(List.of(), productSearchIndex.search(" - ", 10));
+    }
+
+    /**
+     * Assert that a word with a typo matches words a few edits away, when no word starts with it.
+     */
+    @Test
+    @DisplayName("search tolera errores de tipeo en palabras que no son prefijo de ninguna otra")
+    public void test_when_searchWithTypo_then_similarWordsMatch(){
+        assertEquals(List.of(PENCIL, BLUE_PENCIL, RED_PENCIL), productSearchIndex.search("lapis", 10));
+        assertEquals(List.of(BLUE_NOTEBOOK), productSearchIndex.search("cuadreno", 10));
+        assertEquals(List.of(), productSearchIndex.search("lxpxs", 10));
+    }
+
+    /**
+     * Assert that added and deleted Products are reflected in the index.
+     */
+    @Test
+    @DisplayName("productAdded y productDeleted actualizan el índice")
+    public void test_when_productAddedAndDeleted_then_indexUpdated(){
+        productSearchIndex.search("lapiz", 10);
+
+        productSearchIndex.productAdded(new ProductView(6L, "Lápiz verde"));
+        productSearchIndex.productDeleted(2L);
+        productSearchIndex.productDeleted(4L);
+
+        assertEquals(List.of(new ProductView(6L, "Lápiz verde")), productSearchIndex.search("lapiz verde", 10));
+        assertEquals(List.of(), productSearchIndex.search("azul", 10));
+        assertEquals(List.of(), productSearchIndex.search("cuaderno", 10));
+        assertEquals(4, productSearchIndex.size());
+    }
+}
@@ -4,6 +4,8 @@ import com.digitar120.shoppingcartapp.exception.globalhandler.BadRequestExceptio
 import com.digitar120.shoppingcartapp.exception.globalhandler.NotFoundException;
 import com.digitar120.shoppingcartapp.persistence.entity.Product;
 import com.digitar120.shoppingcartapp.persistence.repository.ProductRepository;
+import com.digitar120.shoppingcartapp.service.dto.ProductView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -12,6 +14,7 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.ArrayList;
@@ -28,6 +31,7 @@ import static org.junit.jupiter.api.Assertions.*;
  * @see Product
  * @see ProductService
  * @see ProductRepository
+ * @see ProductCatalogCache
  */
 @RunWith(MockitoJUnitRunner.class)
 public class ProductServiceTest {
@@ -47,6 +51,15 @@ public class ProductServiceTest {
     @Mock
     private ProductRepository repository;
 
+    @Mock
+    private ProductIdIndex productIdIndex;
+
+    @Mock
+    private ProductSearchIndex productSearchIndex;
+
+    @Spy
+    private ProductCatalogCache catalogCache = new ProductCatalogCache(new SimpleMeterRegistry(), 100);
+
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
@@ -219,6 +232,7 @@ public class ProductServiceTest {
     public void test_when_newProduct_then_repositoryVerificationAndSavingCallsMade(){
         Product newProduct = new Product(PENCIL_2B);
         when(repository.findByDescription(PENCIL_2B)).thenReturn(List.of());
+        when(repository.save(any(Product.class))).thenAnswer(invocation -> invocation.getArgument(0));
         repoFindByIdReturnsProduct();
 
         productService.newProduct(PENCIL_2B);
@@ -266,16 +280,16 @@ public class ProductServiceTest {
 
     /**
      * Given a positive match from searching the repository by ID, assert that {@link ProductService#deleteProduct(Long)}
-     * executes {@link ProductRepository#findById(Object)}.
+     * executes {@link ProductRepository#existsById(Object)}.
      */
     @Test
     @DisplayName("deleteProduct verifies if the product already exists")
     public void test_when_deleteProduct_then_verifiesIfProductAlreadyExists(){
-        repoFindByIdReturnsProduct();
+        when(repository.existsById(CODE_PENCIL_2B)).thenReturn(true);
 
         productService.deleteProduct(CODE_PENCIL_2B);
 
-        verify(repository, times(1)).findById(CODE_PENCIL_2B);
+        verify(repository, times(1)).existsById(CODE_PENCIL_2B);
     }
 
     /**
@@ -285,13 +299,121 @@ public class ProductServiceTest {
     @Test
     @DisplayName("deleteProduct produces repository call")
     public void test_when_deleteProduct_then_repositoryCallMade(){
-        repoFindByIdReturnsProduct();
+        when(repository.existsById(CODE_PENCIL_2B)).thenReturn(true);
 
         productService.deleteProduct(CODE_PENCIL_2B);
         verify(repository, times(1)).deleteById(1L);
     }
 
 
+    // Catalog cache
+
+    /**
+     * Assert that a second listing is served from the snapshot, and that the snapshot can't be modified.
+     */
+    @Test
+    @DisplayName("listAllProducts sirve la segunda consulta desde la instantánea del catálogo")
+    public void test_when_listAllProductsTwice_then_repositoryQueriedOnce(){
+        when(repository.findAll()).thenReturn(sampleProductList);
+
+        productService.listAllProducts();
+        List<Product> products = productService.listAllProducts();
+
+        verify(repository, times(1)).findAll();
+        assertEquals(1, catalogCache.snapshotBuilds());
+        assertThrows(UnsupportedOperationException.class, () -> products.add(PRODUCT_PENCIL_2B));
+    }
+
+    /**
+     * Assert that a second lookup of the same ID and of the same description is served from the cache.
+     */
+    @Test
+    @DisplayName("findById y findByDescription sirven la segunda consulta desde la caché")
+    public void test_when_lookupsRepeated_then_repositoryQueriedOnce(){
+        repoFindByIdReturnsProduct();
+        when(repository.findByDescription(PENCIL_2B)).thenReturn(List.of(PRODUCT_PENCIL_2B));
+
+        productService.findById(CODE_PENCIL_2B);
+        assertSame(PRODUCT_PENCIL_2B, productService.findById(CODE_PENCIL_2B));
+        productService.findByDescription(PENCIL_2B);
+        assertEquals(List.of(PRODUCT_PENCIL_2B), productService.findByDescription(PENCIL_2B));
+
+        verify(repository, times(1)).findById(CODE_PENCIL_2B);
+        verify(repository, times(1)).findByDescription(PENCIL_2B);
+        assertEquals(1, catalogCache.byIdStats().hitCount());
+    }
+
+    /**
+     * Assert that a Product that wasn't found is looked up again on the next call.
+     */
+    @Test
+    @DisplayName("findById no guarda en caché los productos no encontrados")
+    public void test_when_findByIdNotFound_then_notCached(){
+        when(repository.findById(0L)).thenReturn(Optional.empty());
+
+        assertThrows(NotFoundException.class, () -> productService.findById(0L));
+        assertThrows(NotFoundException.class, () -> productService.findById(0L));
+
+        verify(repository, times(2)).findById(0L);
+    }
+
+    /**
+     * Assert that a new Product is added to the {@link ProductIdIndex}, and invalidates the lookups of its description and
+     * the snapshot.
+     */
+    @Test
+    @DisplayName("newProduct invalida la descripción del producto y la instantánea del catálogo")
+    public void test_when_newProduct_then_descriptionAndSnapshotInvalidated(){
+        when(repository.save(any(Product.class))).thenReturn(PRODUCT_PENCIL_2B);
+        productService.listAllProducts();
+        productService.newProduct(PENCIL_2B);
+        verify(productIdIndex, times(1)).productAdded(CODE_PENCIL_2B);
+
+        when(repository.findAll()).thenReturn(sampleProductList);
+        when(repository.findByDescription(PENCIL_2B)).thenReturn(List.of(PRODUCT_PENCIL_2B));
 
+        assertEquals(sampleProductList, productService.listAllProducts());
+        assertEquals(List.of(PRODUCT_PENCIL_2B), productService.findByDescription(PENCIL_2B));
+        verify(repository, times(2)).findAll();
+        verify(repository, times(2)).findByDescription(PENCIL_2B);
+    }
 
+    /**
+     * Assert that a deleted Product is removed from the {@link ProductIdIndex}, and no longer served from the cache.
+     */
+    @Test
+    @DisplayName("deleteProduct quita el producto de la caché")
+    public void test_when_deleteProduct_then_productInvalidated(){
+        repoFindByIdReturnsProduct();
+        when(repository.existsById(CODE_PENCIL_2B)).thenReturn(true);
+        productService.findById(CODE_PENCIL_2B);
+
+        productService.deleteProduct(CODE_PENCIL_2B);
+        verify(productIdIndex, times(1)).productDeleted(CODE_PENCIL_2B);
+        when(repository.findById(CODE_PENCIL_2B)).thenReturn(Optional.empty());
+
+        expectedException.expect(NotFoundException.class);
+        productService.findById(CODE_PENCIL_2B);
+    }
+
+    // search
+
+    /**
+     * Assert that {@link ProductService#search(String, Integer)} rejects a limit out of range, without querying the
+     * {@link ProductSearchIndex}, and delegates valid searches to it.
+     */
+    @Test
+    @DisplayName("search rechaza un límite fuera de rango y delega las búsquedas válidas al índice")
+    public void test_when_searchWithLimitOutOfRange_then_throwsBadRequestException(){
+        List<ProductView> results = List.of(new ProductView(CODE_PENCIL_2B, PENCIL_2B));
+        when(productSearchIndex.search("penc", 5)).thenReturn(results);
+
+        assertEquals(results, productService.search("penc", 5));
+        assertThrows(BadRequestException.class, () -> productService.search("  ", 5));
+
+        expectedException.expect(BadRequestException.class);
+        expectedException.expectMessage("La cantidad de resultados debe estar entre 1 y " + ProductService.MAX_SEARCH_RESULTS + ".");
+
+        productService.search("penc", ProductService.MAX_SEARCH_RESULTS + 1);
+    }
 }
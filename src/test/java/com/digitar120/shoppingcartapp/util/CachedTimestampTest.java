@@ -0,0 +1,43 @@
+package com.digitar120.shoppingcartapp.util;
+
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit testing for {@link CachedTimestamp}.
+ * @author Gabriel Pérez (digitar120)
+ */
+public class CachedTimestampTest {
+
+    /**
+     * Assert that the time is formatted once per second, as {@link Date#toString()} would.
+     */
+    @Test
+    @DisplayName("now formatea la hora una vez por segundo, como Date.toString()")
+    public void test_when_nowWithinSameSecond_then_sameInstance(){
+        AtomicLong millis = new AtomicLong(Instant.parse("2024-03-05T14:07:09.000Z").toEpochMilli());
+        CachedTimestamp timestamp = new CachedTimestamp(new Clock() {
+            public ZoneId getZone() { return ZoneId.systemDefault(); }
+            public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+            public Instant instant() { return Instant.ofEpochMilli(millis.get()); }
+        });
+
+        String first = timestamp.now();
+        millis.addAndGet(999);
+        String sameSecond = timestamp.now();
+        millis.addAndGet(1);
+        String nextSecond = timestamp.now();
+
+        assertEquals(new Date(millis.get() - 1000).toString(), first);
+        assertSame(first, sameSecond);
+        assertEquals(new Date(millis.get()).toString(), nextSecond);
+    }
+}
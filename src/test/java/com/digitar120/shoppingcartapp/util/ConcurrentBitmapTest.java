@@ -0,0 +1,81 @@
+package com.digitar120.shoppingcartapp.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit testing for {@link ConcurrentBitmap}.
+ * @author Gabriel Pérez (digitar120)
+ */
+public class ConcurrentBitmapTest {
+
+    private static final int WRITERS = 8;
+    private static final int BITS_PER_WRITER = 10_000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+
+    @After
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * Assert that set and cleared bits are read back, including bits past the initial capacity.
+     */
+    @Test
+    @DisplayName("get devuelve los bits establecidos, incluso fuera de la capacidad inicial")
+    public void test_when_setAndClear_then_bitsReadBack(){
+        ConcurrentBitmap bitmap = new ConcurrentBitmap(10);
+
+        bitmap.set(3);
+        bitmap.set(64);
+        bitmap.set(1_000_000);
+        bitmap.clear(64);
+        bitmap.clear(5_000_000);
+
+        assertTrue(bitmap.get(3));
+        assertFalse(bitmap.get(64));
+        assertTrue(bitmap.get(1_000_000));
+        assertFalse(bitmap.get(4));
+        assertFalse(bitmap.get(-1));
+        assertFalse(bitmap.get(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.set(-1));
+    }
+
+    /**
+     * Assert that bits set by concurrent writers, while the bitmap keeps growing, are all kept.
+     */
+    @Test
+    @DisplayName("set no pierde bits de escritores concurrentes mientras el mapa de bits crece")
+    public void test_when_setConcurrentlyWhileGrowing_then_noBitLost() throws Exception {
+        ConcurrentBitmap bitmap = new ConcurrentBitmap(0);
+
+        // Cada escritor establece índices intercalados con los de los demás, así comparten palabras
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            int offset = writer;
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < BITS_PER_WRITER; i++) {
+                    bitmap.set((long) i * WRITERS + offset);
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+
+        for (long index = 0; index < (long) WRITERS * BITS_PER_WRITER; index++) {
+            assertTrue(bitmap.get(index), "Bit perdido: " + index);
+        }
+    }
+}
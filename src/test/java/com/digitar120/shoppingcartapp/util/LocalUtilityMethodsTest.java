@@ -47,27 +47,41 @@ public class LocalUtilityMethodsTest {
     // verifyElementExists
 
     /**
-     * Return an Optional containing an empty Product when executing {@link ProductRepository#findById(Object)},
-     * then verify that {@code verifyElementExists()} executes that method.
+     * Return {@code true} when executing {@link ProductRepository#existsById(Object)}, then verify that
+     * {@code verifyElementExists()} executes that method.
      */
     @Test
     @DisplayName("verifiyElementExists llama para buscar")
     public void test_when_verifyElementExists_then_repositorySearchCallMade(){
-        when(repository.findById(1L)).thenReturn(MATCH_FOUND);
+        when(repository.existsById(1L)).thenReturn(true);
 
         LocalUtilityMethods.verifyElementExists(repository, 1L, "Mensaje", HttpStatus.NOT_FOUND);
 
-        verify(repository, times(1)).findById(1L);
+        verify(repository, times(1)).existsById(1L);
+    }
+
+    /**
+     * Return {@code true} when executing {@link ProductRepository#existsById(Object)}, then verify that
+     * {@code verifyElementExists()} never loads the element.
+     */
+    @Test
+    @DisplayName("verifyElementExists no carga el elemento")
+    public void test_when_verifyElementExists_then_elementNotLoaded(){
+        when(repository.existsById(1L)).thenReturn(true);
+
+        LocalUtilityMethods.verifyElementExists(repository, 1L, "Mensaje", HttpStatus.NOT_FOUND);
+
+        verify(repository, never()).findById(any());
     }
 
     /**
-     * Return an empty Optional when executing a repository's {@code findById()}, then assert that {@code verifyElementExists()}
+     * Return {@code false} when executing a repository's {@code existsById()}, then assert that {@code verifyElementExists()}
      * throws an appropriate exception.
      */
     @Test
     @DisplayName("verifyElementExists arroja excepción")
     public void test_when_verifyElementExists_and_elementNotFound_then_throwException(){
-        when(repository.findById(1L)).thenReturn(NO_RESULT);
+        when(repository.existsById(1L)).thenReturn(false);
 
         expectedException.expect(NotFoundException.class);
         expectedException.expectMessage("Mensaje");
@@ -123,27 +137,27 @@ public class LocalUtilityMethodsTest {
     // verifyElementNotExists
 
     /**
-     * When executing {@link ProductRepository#findById(Object)}, return an empty Optional. Then, assert that {@code verifyElementNotExists}
+     * When executing {@link ProductRepository#existsById(Object)}, return {@code false}. Then, assert that {@code verifyElementNotExists}
      * executes that method.
      */
     @Test
     @DisplayName("verifyElementNotExists llama para buscar")
     public void test_when_verifiyElementNotExists_then_repositorySearchCallMade(){
-        when(repository.findById(1L)).thenReturn(NO_RESULT);
+        when(repository.existsById(1L)).thenReturn(false);
 
         LocalUtilityMethods.verifyElementNotExists(repository, 1L, "Mensaje", HttpStatus.BAD_REQUEST);
 
-        verify(repository, times(1)).findById(1L);
+        verify(repository, times(1)).existsById(1L);
     }
 
     /**
-     * When executing {@link ProductRepository#findById(Object)}, return an Optional containing a Product. Then, assert
+     * When executing {@link ProductRepository#existsById(Object)}, return {@code true}. Then, assert
      * that {@code verifyElementNotExists} throws an appropriate exception.
      */
     @Test
     @DisplayName("verifyElementNotExists arroja excepción")
     public void test_when_verifyElementNotExists_and_elementFound_then_throwsException(){
-        when(repository.findById(1L)).thenReturn(MATCH_FOUND);
+        when(repository.existsById(1L)).thenReturn(true);
 
         expectedException.expect(BadRequestException.class);
         expectedException.expectMessage("Mensaje");
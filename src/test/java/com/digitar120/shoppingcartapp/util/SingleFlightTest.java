@@ -0,0 +1,145 @@
+package com.digitar120.shoppingcartapp.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit testing for {@link SingleFlight}.
+ * <p>Each test holds the first call open with a latch until every other caller is waiting for it.</p>
+ * @author Gabriel Pérez (digitar120)
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<Integer, String> singleFlight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @After
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * Assert that concurrent callers for the same key execute the call once and share its result.
+     */
+    @Test
+    @DisplayName("execute comparte una misma llamada entre llamadores concurrentes")
+    public void test_when_executeConcurrently_then_callMadeOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(1, () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "user";
+            })));
+        }
+
+        waitForCoalescedCalls(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("user", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCalls());
+    }
+
+    /**
+     * Assert that an exception thrown by the call reaches every caller that waited for it.
+     */
+    @Test
+    @DisplayName("execute propaga la excepción a todos los llamadores")
+    public void test_when_callFails_then_everyCallerGetsException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(1, () -> {
+                await(release);
+                throw new IllegalStateException("Falla");
+            })));
+        }
+
+        waitForCoalescedCalls(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Assert that calls for different keys are not coalesced.
+     */
+    @Test
+    @DisplayName("execute no comparte llamadas de claves distintas")
+    public void test_when_executeWithDifferentKeys_then_notCoalesced(){
+        assertEquals("1", singleFlight.execute(1, () -> "1"));
+        assertEquals("2", singleFlight.execute(2, () -> "2"));
+        assertEquals(0, singleFlight.coalescedCalls());
+    }
+
+    /**
+     * Given a call started with {@link SingleFlight#executeAsync}, assert that blocking and non-blocking callers join
+     * it, that cancelling a caller's future doesn't cancel the call, and that the call is forgotten once it finishes.
+     */
+    @Test
+    @DisplayName("executeAsync comparte la llamada en curso con llamadores bloqueantes y no bloqueantes")
+    public void test_when_executeAsync_then_callSharedAndNotCancelled() throws Exception {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = singleFlight.executeAsync(1, () -> {
+            calls.incrementAndGet();
+            return call;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync(1, () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("otro");
+        });
+        Future<String> blocking = executor.submit(() -> singleFlight.execute(1, () -> "otro"));
+        waitForCoalescedCalls(2);
+
+        first.cancel(false);
+        call.complete("user");
+
+        assertEquals("user", second.get(5, TimeUnit.SECONDS));
+        assertEquals("user", blocking.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCalls());
+    }
+
+    private void waitForCoalescedCalls(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.coalescedCalls() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, singleFlight.coalescedCalls());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}